@@ -0,0 +1,14 @@
+#!/bin/bash
+set -e
+
+# Builds the splice(2) binding used by -DspliceTunnels=true, Linux only.
+readonly script_dir=$(cd $(dirname $0); pwd)
+readonly root_dir=$(cd "${script_dir}/../"; pwd)
+readonly source="${root_dir}/nio-http-proxy/src/main/native/splice.c"
+readonly lib="${script_dir}/lib/libniosplice.so"
+
+mkdir -p "${script_dir}/lib"
+${CC:-cc} -O2 -Wall -shared -fPIC \
+    -I"${JAVA_HOME}/include" -I"${JAVA_HOME}/include/linux" \
+    -o "${lib}" "${source}"
+echo "built ${lib}"
@@ -0,0 +1,26 @@
+#!/bin/bash
+set -e
+
+readonly script_dir=$(cd $(dirname $0); pwd)
+readonly root_dir=$(cd "${script_dir}/../"; pwd)
+readonly lib="${root_dir}/nio-http-proxy-benchmarks/target/benchmarks.jar"
+
+if [[ $1 == 'rebuild' || ! -f "${lib}" ]]; then
+    [[ $1 == 'rebuild' ]] && shift
+    (cd "${root_dir}" && mvn clean package -DskipTests)
+fi
+
+# NIO engine vs blocking engine, from 100 to 100k concurrent keep-alive connections.
+# JAVA_HOME should point to JDK 21+ so the blocking engine runs on virtual threads.
+# Each proxied connection holds 2 sockets in the proxy, plus one in the load generator and one in
+# the origin, so the open files limit and the local port range must fit 100k connections.
+ulimit -n 1048576 || echo "cannot raise the open files limit, large connection counts may fail"
+
+CONNECTIONS=${CONNECTIONS:-"100,1000,10000,100000"}
+LOAD_OPTS="-Dconnections=${CONNECTIONS} -Dthreads=4 -Dwarmup=10 -Dduration=30 -DbodySize=1024 -DtunnelPercent=0"
+PROXY_JVM_OPTS="-Xms4g -Xmx4g -XX:MaxDirectMemorySize=8g"
+PROXY_OPTS="maxNumBuffers=250000,bufferSize=16"
+
+$JAVA_HOME/bin/java -Xmx4g ${LOAD_OPTS} "-DproxyJvmOptions=${PROXY_JVM_OPTS}" \
+    -cp "${lib}" org.zlambda.projects.benchmarks.LoadTest \
+    "engine=nio,${PROXY_OPTS}" "engine=blocking,${PROXY_OPTS}" "$@"
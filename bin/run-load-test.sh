@@ -0,0 +1,18 @@
+#!/bin/bash
+set -e
+
+readonly script_dir=$(cd $(dirname $0); pwd)
+readonly root_dir=$(cd "${script_dir}/../"; pwd)
+readonly lib="${root_dir}/nio-http-proxy-benchmarks/target/benchmarks.jar"
+
+if [[ $1 == 'rebuild' || ! -f "${lib}" ]]; then
+    [[ $1 == 'rebuild' ]] && shift
+    (cd "${root_dir}" && mvn clean package -DskipTests)
+fi
+
+# each argument is one proxy configuration, e.g. "worker=8,bufferSize=10,useDirectBuffer=true"
+LOAD_OPTS="-Dconnections=1000 -Dthreads=4 -Dwarmup=5 -Dduration=30 -DbodySize=1024 -DtunnelPercent=0"
+PROXY_JVM_OPTS="-Xms512m -Xmx512m"
+
+$JAVA_HOME/bin/java -Xmx1g ${LOAD_OPTS} "-DproxyJvmOptions=${PROXY_JVM_OPTS}" \
+    -cp "${lib}" org.zlambda.projects.benchmarks.LoadTest "$@"
@@ -0,0 +1,75 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zlambda.projects.buffer.ChannelBuffer;
+import org.zlambda.projects.buffer.ChannelBufferPool;
+import org.zlambda.projects.buffer.DirectChannelBufferPool;
+import org.zlambda.projects.buffer.HeapChannelBufferPool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the two take() and two release() every proxied connection does, alone and with several
+ * workers contending for the pool. {@code direct} uses the thread local caches, {@code
+ * direct-shared} goes to the shared pool on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ChannelBufferPoolBenchmark {
+  @Param({"direct", "direct-shared", "heap"})
+  public String pool;
+
+  @Param({"10"})
+  public int bufferSize;
+
+  private ChannelBufferPool<ChannelBuffer> bufferPool;
+
+  @Setup
+  public void setup() {
+    switch (pool) {
+      case "direct":
+        bufferPool = new DirectChannelBufferPool(100, 200, bufferSize);
+        break;
+      case "direct-shared":
+        bufferPool = new DirectChannelBufferPool(100, 200, bufferSize, 0);
+        break;
+      default:
+        bufferPool = new HeapChannelBufferPool(bufferSize);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public ChannelBuffer takeRelease() {
+    return takeAndReleasePair();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public ChannelBuffer takeReleaseContended() {
+    return takeAndReleasePair();
+  }
+
+  private ChannelBuffer takeAndReleasePair() {
+    ChannelBuffer upstream = bufferPool.take();
+    ChannelBuffer downstream = bufferPool.take();
+    bufferPool.release(upstream);
+    bufferPool.release(downstream);
+    return downstream;
+  }
+}
@@ -0,0 +1,127 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zlambda.projects.buffer.ChannelBuffer;
+import org.zlambda.projects.buffer.ChannelBufferPool;
+import org.zlambda.projects.buffer.DirectChannelBufferPool;
+import org.zlambda.projects.buffer.HeapChannelBufferPool;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChannelBuffer.write over a loopback socket pair whose socket buffers are {@link #SOCKET_BUFFER}.
+ * With a payload larger than that most writes are partial, which is where the flip/compact per
+ * write shows up, unless {@code ringBuffer} is set.
+ *
+ * putWriteDrain writes one full buffer out, relay keeps putting quarter buffers while there is
+ * room, like a proxied connection reading while the other side drains, so a ring buffer wraps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ChannelBufferWriteBenchmark {
+  /**
+   * not smaller than the loopback MSS, otherwise the receiver window crawls open
+   */
+  private static final int SOCKET_BUFFER = 64 * 1024;
+
+  @Param({"direct", "heap"})
+  public String pool;
+
+  /**
+   * in KB, the buffer is as large as the payload
+   */
+  @Param({"10", "256"})
+  public int payloadSize;
+
+  @Param({"false", "true"})
+  public boolean ringBuffer;
+
+  private ChannelBuffer buffer;
+  private byte[] payload;
+  private byte[] chunk;
+  private ServerSocketChannel server;
+  private SocketChannel source;
+  private SocketChannel sink;
+  private final ByteBuffer drain = ByteBuffer.allocateDirect(64 * 1024);
+
+  @Setup
+  public void setup() throws IOException {
+    ChannelBufferPool<ChannelBuffer> bufferPool = "direct".equals(pool) ?
+        new DirectChannelBufferPool(1, 2, payloadSize, 0, ringBuffer) :
+        new HeapChannelBufferPool(payloadSize, ringBuffer);
+    buffer = bufferPool.take();
+    payload = new byte[payloadSize * 1024];
+    chunk = new byte[payload.length / 4];
+    server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+    source = SocketChannel.open(server.getLocalAddress());
+    sink = server.accept();
+    source.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    source.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER);
+    sink.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER);
+    source.configureBlocking(false);
+    sink.configureBlocking(false);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    source.close();
+    sink.close();
+    server.close();
+  }
+
+  @Benchmark
+  public int putWriteDrain() throws IOException {
+    buffer.put(payload);
+    int written = 0;
+    while (!buffer.empty()) {
+      written += buffer.write(source);
+      drain.clear();
+      while (sink.read(drain) > 0) {
+        drain.clear();
+      }
+    }
+    return written;
+  }
+
+  /**
+   * moves four buffers worth of data
+   */
+  @Benchmark
+  public int relay() throws IOException {
+    int remaining = 4 * payload.length;
+    int written = 0;
+    while (remaining > 0 || !buffer.empty()) {
+      if (remaining > 0 && payload.length - buffer.size() >= chunk.length) {
+        buffer.put(chunk);
+        remaining -= chunk.length;
+      }
+      written += buffer.write(source);
+      drain.clear();
+      while (sink.read(drain) > 0) {
+        drain.clear();
+      }
+    }
+    return written;
+  }
+}
@@ -0,0 +1,67 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connections per second: every operation opens a new client connection, fetches an empty body
+ * and closes it, so the accept path dominates. {@code dispatcher} is the single listener feeding
+ * the Dispatcher through the client queue, {@code acceptors} several acceptors sharing one
+ * listening socket and {@code reuseport} one SO_REUSEPORT listening socket per acceptor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ConnectionRateBenchmark {
+  @Param({"dispatcher", "acceptors", "reuseport"})
+  public String acceptMode;
+
+  @Param({"4"})
+  public String worker;
+
+  private LocalOriginServer origin;
+  private int proxyPort;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    origin = new LocalOriginServer();
+    Map<String, String> properties = new HashMap<>();
+    properties.put("worker", worker);
+    properties.put("acceptors", "dispatcher".equals(acceptMode) ? "0" : "4");
+    properties.put("reusePort", String.valueOf("reuseport".equals(acceptMode)));
+    proxyPort = LocalProxy.start(properties);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    origin.close();
+  }
+
+  @Benchmark
+  public long connectAndGet() throws IOException {
+    try (ProxyClient client = new ProxyClient(proxyPort)) {
+      return client.get(origin.getPort(), 0);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zlambda.projects.buffer.ChannelBuffer;
+import org.zlambda.projects.buffer.DirectChannelBufferPool;
+import org.zlambda.projects.http.HttpHeadParser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request head parsing at various head sizes, with the head either arriving at once or in {@code
+ * chunk} bytes pieces, where the legacy parser starts over on every piece.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HeadParserBenchmark {
+  @Param({"2", "10", "40"})
+  public int numHeaders;
+
+  @Param({"32"})
+  public int chunk;
+
+  private byte[] head;
+  private ChannelBuffer channelBuffer;
+  private ByteBuffer byteBuffer;
+  private HttpHeadParser parser;
+
+  @Setup
+  public void setup() {
+    StringBuilder sb = new StringBuilder(
+        "GET http://www.example.com/static/assets/app.js?v=1 HTTP/1.1\r\n"
+        + "Host: www.example.com\r\n");
+    for (int i = 1; i < numHeaders; ++i) {
+      sb.append("X-Benchmark-Header-").append(i).append(": some value of header ").append(i)
+          .append("\r\n");
+    }
+    head = sb.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+    channelBuffer = new DirectChannelBufferPool(1, 2, 64).take();
+    channelBuffer.put(head);
+    byteBuffer = ByteBuffer.allocateDirect(head.length);
+    byteBuffer.put(head);
+    parser = new HttpHeadParser(64 * 1024);
+  }
+
+  @Benchmark
+  public Object legacyWholeHead() {
+    return LegacyHeadParser.parse(byteBuffer);
+  }
+
+  @Benchmark
+  public int parserWholeHead() {
+    parser.reset();
+    parser.parse(channelBuffer, 0, head.length);
+    return parser.getNumHeaders();
+  }
+
+  @Benchmark
+  public Object legacyIncremental() {
+    Object ret = null;
+    for (int visible = chunk; visible < head.length + chunk; visible += chunk) {
+      byteBuffer.position(Math.min(visible, head.length));
+      ret = LegacyHeadParser.parse(byteBuffer);
+    }
+    return ret;
+  }
+
+  @Benchmark
+  public int parserIncremental() {
+    parser.reset();
+    for (int from = 0; from < head.length; from += chunk) {
+      parser.parse(channelBuffer, from, Math.min(from + chunk, head.length));
+    }
+    return parser.getNumHeaders();
+  }
+}
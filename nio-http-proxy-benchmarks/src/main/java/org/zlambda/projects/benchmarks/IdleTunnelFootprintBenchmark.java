@@ -0,0 +1,168 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory pinned by established but idle CONNECT tunnels. Every operation opens {@code tunnels}
+ * tunnels through the proxy and reports, per tunnel, how much off-heap memory the proxy's buffer
+ * pool reserved for them. Eager connections take both of their buffers up front, lazy ones hold
+ * none once the CONNECT response is written out.
+ *
+ * Run it with -prof gc or a larger {@code tunnels} to see the effect on the heap as well; the
+ * reported heap figure includes the client side of the tunnels, which lives in the same JVM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(1)
+public class IdleTunnelFootprintBenchmark {
+  @Param({"true", "false"})
+  public String lazyBuffers;
+
+  @Param({"false", "true"})
+  public String useSlabBuffer;
+
+  @Param({"1000"})
+  public int tunnels;
+
+  /**
+   * Only accepts and holds the tunnelled connections. A thread blocked reading a socket stream pins
+   * a temporary direct buffer, which would be counted against the proxy.
+   */
+  private ServerSocketChannel sink;
+  private final List<SocketChannel> sinkChannels = new CopyOnWriteArrayList<>();
+  private int proxyPort;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Footprint {
+    public long directBytesPerTunnel;
+    public long heapBytesPerTunnel;
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    sink = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0), 4096);
+    Thread acceptor = new Thread(this::acceptSink, "sink");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    Map<String, String> properties = new HashMap<>();
+    properties.put("worker", "4");
+    properties.put("lazyBuffers", lazyBuffers);
+    properties.put("useSlabBuffer", useSlabBuffer);
+    properties.put("minNumBuffers", "16");
+    properties.put("maxNumBuffers", String.valueOf(2 * tunnels + 256));
+    properties.put("slabMaxMemory", "1024");
+    proxyPort = LocalProxy.start(properties);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    sink.close();
+  }
+
+  private void acceptSink() {
+    while (sink.isOpen()) {
+      try {
+        sinkChannels.add(sink.accept());
+      } catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  @Benchmark
+  public int openIdleTunnels(Footprint footprint) throws Exception {
+    long direct = directMemoryUsed();
+    long heap = heapUsed();
+    List<SocketChannel> channels = new ArrayList<>(tunnels);
+    try {
+      for (int i = 0; i < tunnels; ++i) {
+        channels.add(openTunnel());
+      }
+      /**
+       * let the workers finish writing the last responses
+       */
+      Thread.sleep(500);
+      footprint.directBytesPerTunnel = (directMemoryUsed() - direct) / tunnels;
+      footprint.heapBytesPerTunnel = (heapUsed() - heap) / tunnels;
+      return channels.size();
+    } finally {
+      for (SocketChannel channel : channels) {
+        channel.close();
+      }
+      for (SocketChannel channel : sinkChannels) {
+        channel.close();
+      }
+      sinkChannels.clear();
+    }
+  }
+
+  private SocketChannel openTunnel() throws IOException {
+    SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", proxyPort));
+    String target = "127.0.0.1:" + sink.socket().getLocalPort();
+    channel.write(ByteBuffer.wrap(("CONNECT " + target + " HTTP/1.1\r\nHost: " + target + "\r\n\r\n")
+                                      .getBytes(StandardCharsets.US_ASCII)));
+    ByteBuffer response = ByteBuffer.allocate(1024);
+    while (!endsWithHead(response)) {
+      if (channel.read(response) < 0) {
+        throw new IOException("proxy closed the tunnel");
+      }
+    }
+    if (!new String(response.array(), 0, response.position(), StandardCharsets.US_ASCII)
+        .startsWith("HTTP/1.1 200")) {
+      throw new IOException("failed to establish the tunnel");
+    }
+    return channel;
+  }
+
+  private static boolean endsWithHead(ByteBuffer response) {
+    int end = response.position();
+    return end >= 4 && response.get(end - 4) == '\r' && response.get(end - 3) == '\n'
+           && response.get(end - 2) == '\r' && response.get(end - 1) == '\n';
+  }
+
+  private static long directMemoryUsed() {
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if ("direct".equals(pool.getName())) {
+        return pool.getMemoryUsed();
+      }
+    }
+    return 0;
+  }
+
+  private static long heapUsed() {
+    System.gc();
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+}
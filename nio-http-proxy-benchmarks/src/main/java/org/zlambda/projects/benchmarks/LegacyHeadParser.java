@@ -0,0 +1,63 @@
+package org.zlambda.projects.benchmarks;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Scanner;
+
+/**
+ * The request head parsing the proxy used before {@link org.zlambda.projects.http.HttpHeadParser}:
+ * a Scanner over a view InputStream of the whole buffer, re-run on every read event. Kept as the
+ * baseline of {@link HeadParserBenchmark}.
+ */
+enum LegacyHeadParser {
+  ;
+
+  /**
+   * @param buffer holds the data in [0, position)
+   */
+  static Optional<List<String>> parse(ByteBuffer buffer) {
+    Scanner scanner = new Scanner(new ViewInputStream(buffer.asReadOnlyBuffer()), "utf-8");
+    List<String> ret = new ArrayList<>();
+    while (scanner.hasNextLine()) {
+      String line = scanner.nextLine();
+      ret.add(line);
+      if (line.equals("")) {
+        break;
+      }
+    }
+    if (ret.isEmpty() || !ret.get(ret.size() - 1).equals("")) {
+      return Optional.empty();
+    } else {
+      return Optional.of(ret);
+    }
+  }
+
+  private static class ViewInputStream extends InputStream {
+    private static final int CACHE_SIZE = 1024;
+    private final byte[] onHeapCache = new byte[CACHE_SIZE];
+    private final ByteBuffer byteBuffer;
+    private int currentLimit;
+    private int i;
+
+    ViewInputStream(ByteBuffer readOnlyByteBuffer) {
+      readOnlyByteBuffer.flip();
+      this.byteBuffer = readOnlyByteBuffer;
+    }
+
+    @Override
+    public int read() {
+      if (i == currentLimit) {
+        i = 0;
+        this.currentLimit = Math.min(byteBuffer.remaining(), CACHE_SIZE);
+        if (this.currentLimit == 0) {
+          return -1;
+        }
+        byteBuffer.get(onHeapCache, 0, currentLimit);
+      }
+      return onHeapCache[i++];
+    }
+  }
+}
@@ -0,0 +1,326 @@
+package org.zlambda.projects.benchmarks;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives keep-alive {@code GET}s through the proxy from a few selector threads, each owning a share
+ * of the connections. A connection is either a plain HTTP one, sending absolute-form requests, or a
+ * CONNECT tunnel to the origin, sending origin-form requests once the tunnel is established.
+ *
+ * The load is closed loop: a connection sends its next request as soon as the previous response is
+ * complete, so latencies are those seen by a client waiting for the proxy, not by an open arrival
+ * rate. Connections failing during the run are counted as errors and reopened.
+ */
+public class LoadGenerator {
+  /**
+   * connects in flight per thread, so thousands of connections do not overflow the listen backlog
+   */
+  private static final int MAX_PENDING_CONNECTS = 32;
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+  private final InetSocketAddress proxy;
+  private final int originPort;
+  private final int bodySize;
+  private final int tunnelPercent;
+
+  /**
+   * @param tunnelPercent share of the connections, 0 to 100, tunnelled through CONNECT
+   */
+  public LoadGenerator(int proxyPort, int originPort, int bodySize, int tunnelPercent) {
+    this.proxy = new InetSocketAddress("127.0.0.1", proxyPort);
+    this.originPort = originPort;
+    this.bodySize = bodySize;
+    this.tunnelPercent = tunnelPercent;
+  }
+
+  public LoadResult run(int connections, int threads, int warmupSeconds, int durationSeconds)
+      throws Exception {
+    long measureStart = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+    long measureEnd = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+    List<EventLoop> loops = new ArrayList<>();
+    List<Thread> loopThreads = new ArrayList<>();
+    for (int i = 0; i < threads; ++i) {
+      EventLoop loop = new EventLoop(measureStart, measureEnd);
+      for (int index = i; index < connections; index += threads) {
+        loop.toOpen.add(index);
+      }
+      Thread thread = new Thread(loop, "load-" + i);
+      loops.add(loop);
+      loopThreads.add(thread);
+      thread.start();
+    }
+    Histogram latency = new Histogram(3);
+    long requests = 0;
+    long bytes = 0;
+    long errors = 0;
+    for (int i = 0; i < threads; ++i) {
+      loopThreads.get(i).join();
+      EventLoop loop = loops.get(i);
+      if (null != loop.failure) {
+        throw loop.failure;
+      }
+      latency.add(loop.latency);
+      requests += loop.requests;
+      bytes += loop.bytes;
+      errors += loop.errors;
+    }
+    return new LoadResult(latency, requests, bytes, errors, measureEnd - measureStart);
+  }
+
+  private boolean isTunnel(int index) {
+    return index % 100 < tunnelPercent;
+  }
+
+  private class EventLoop implements Runnable {
+    private final long measureStart;
+    private final long measureEnd;
+    private final Deque<Integer> toOpen = new ArrayDeque<>();
+    private final List<Connection> connections = new ArrayList<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final Histogram latency = new Histogram(3);
+    private Selector selector;
+    private int pendingConnects;
+    private long requests;
+    private long bytes;
+    private long errors;
+    private Exception failure;
+
+    EventLoop(long measureStart, long measureEnd) {
+      this.measureStart = measureStart;
+      this.measureEnd = measureEnd;
+    }
+
+    @Override
+    public void run() {
+      try (Selector s = Selector.open()) {
+        selector = s;
+        long now;
+        while ((now = System.nanoTime()) < measureEnd) {
+          openConnections();
+          selector.select(Math.max(1, Math.min(100, TimeUnit.NANOSECONDS.toMillis(measureEnd - now))));
+          for (SelectionKey key : selector.selectedKeys()) {
+            Connection connection = (Connection) key.attachment();
+            try {
+              connection.onReady(key);
+            } catch (IOException e) {
+              onError(connection);
+            }
+          }
+          selector.selectedKeys().clear();
+        }
+      } catch (Exception e) {
+        failure = e;
+      } finally {
+        connections.forEach(Connection::close);
+      }
+    }
+
+    private void openConnections() throws IOException {
+      while (pendingConnects < MAX_PENDING_CONNECTS && !toOpen.isEmpty()) {
+        int index = toOpen.poll();
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(index, isTunnel(index), channel);
+        connections.add(connection);
+        ++pendingConnects;
+        connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+        try {
+          if (channel.connect(proxy)) {
+            connection.onConnected();
+          }
+        } catch (IOException e) {
+          onError(connection);
+        }
+      }
+    }
+
+    private void onError(Connection connection) {
+      if (connection.state == State.CONNECTING) {
+        --pendingConnects;
+      }
+      if (System.nanoTime() >= measureStart) {
+        ++errors;
+      }
+      connection.close();
+      connections.remove(connection);
+      toOpen.add(connection.index);
+    }
+
+    private void onResponse(long sentAt, long bodyBytes) {
+      long now = System.nanoTime();
+      if (sentAt >= measureStart && now <= measureEnd) {
+        latency.recordValue(now - sentAt);
+        ++requests;
+        bytes += bodyBytes;
+      }
+    }
+
+    private class Connection {
+      private final int index;
+      private final boolean tunnel;
+      private final SocketChannel channel;
+      private final ByteBuffer request;
+      private final StringBuilder line = new StringBuilder();
+      private SelectionKey key;
+      private State state = State.CONNECTING;
+      private ByteBuffer out;
+      private long sentAt;
+      private int status;
+      private long contentLength;
+      private long remaining;
+
+      Connection(int index, boolean tunnel, SocketChannel channel) {
+        this.index = index;
+        this.tunnel = tunnel;
+        this.channel = channel;
+        String origin = "127.0.0.1:" + originPort;
+        String target = tunnel ? "/" + bodySize : "http://" + origin + "/" + bodySize;
+        this.request = ByteBuffer.wrap(("GET " + target + " HTTP/1.1\r\nHost: " + origin + "\r\n\r\n")
+                                           .getBytes(StandardCharsets.ISO_8859_1));
+      }
+
+      void onReady(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+          throw new IOException("connection closed");
+        }
+        if (key.isConnectable()) {
+          if (channel.finishConnect()) {
+            onConnected();
+          }
+          return;
+        }
+        if (key.isWritable()) {
+          flush();
+        }
+        if (key.isReadable()) {
+          receive();
+        }
+      }
+
+      void onConnected() throws IOException {
+        --pendingConnects;
+        if (tunnel) {
+          String origin = "127.0.0.1:" + originPort;
+          state = State.TUNNEL_HEAD;
+          send(ByteBuffer.wrap(("CONNECT " + origin + " HTTP/1.1\r\nHost: " + origin + "\r\n\r\n")
+                                   .getBytes(StandardCharsets.ISO_8859_1)));
+        } else {
+          sendRequest();
+        }
+      }
+
+      private void sendRequest() throws IOException {
+        state = State.RESPONSE_HEAD;
+        sentAt = System.nanoTime();
+        request.clear();
+        send(request);
+      }
+
+      private void send(ByteBuffer buffer) throws IOException {
+        out = buffer;
+        status = 0;
+        contentLength = -1;
+        line.setLength(0);
+        flush();
+      }
+
+      private void flush() throws IOException {
+        channel.write(out);
+        key.interestOps(out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+      }
+
+      private void receive() throws IOException {
+        readBuffer.clear();
+        if (-1 == channel.read(readBuffer)) {
+          throw new IOException("connection closed by the proxy");
+        }
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+          if (state == State.RESPONSE_BODY) {
+            int n = (int) Math.min(remaining, readBuffer.remaining());
+            readBuffer.position(readBuffer.position() + n);
+            remaining -= n;
+            if (0 == remaining) {
+              onResponse(sentAt, contentLength);
+              sendRequest();
+            }
+          } else if (onHeadByte(readBuffer.get())) {
+            onHead();
+          }
+        }
+      }
+
+      /**
+       * @return true when the head is complete
+       */
+      private boolean onHeadByte(byte b) throws IOException {
+        if ('\r' == b) {
+          return false;
+        }
+        if ('\n' != b) {
+          line.append((char) b);
+          return false;
+        }
+        if (0 == line.length()) {
+          return true;
+        }
+        String header = line.toString();
+        line.setLength(0);
+        if (0 == status) {
+          String[] split = header.split(" ");
+          status = split.length < 2 ? -1 : Integer.parseInt(split[1]);
+        } else if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+          contentLength = Long.parseLong(header.substring(15).trim());
+        }
+        return false;
+      }
+
+      private void onHead() throws IOException {
+        if (200 != status) {
+          throw new IOException("got status " + status);
+        }
+        if (state == State.TUNNEL_HEAD) {
+          sendRequest();
+          return;
+        }
+        if (contentLength < 0) {
+          throw new IOException("response without Content-Length");
+        }
+        remaining = contentLength;
+        state = State.RESPONSE_BODY;
+        if (0 == remaining) {
+          onResponse(sentAt, 0);
+          sendRequest();
+        }
+      }
+
+      void close() {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          // nothing to do
+        }
+      }
+    }
+  }
+
+  private enum State {
+    CONNECTING,
+    TUNNEL_HEAD,
+    RESPONSE_HEAD,
+    RESPONSE_BODY,
+  }
+}
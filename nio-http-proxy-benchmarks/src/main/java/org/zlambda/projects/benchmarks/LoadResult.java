@@ -0,0 +1,51 @@
+package org.zlambda.projects.benchmarks;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What one {@link LoadGenerator} run measured. Latencies are recorded in nanoseconds.
+ */
+public class LoadResult {
+  private final Histogram latency;
+  private final long requests;
+  private final long bytes;
+  private final long errors;
+  private final long durationNanos;
+
+  public LoadResult(Histogram latency, long requests, long bytes, long errors, long durationNanos) {
+    this.latency = latency;
+    this.requests = requests;
+    this.bytes = bytes;
+    this.errors = errors;
+    this.durationNanos = durationNanos;
+  }
+
+  public long getRequests() {
+    return requests;
+  }
+
+  public long getErrors() {
+    return errors;
+  }
+
+  public double getRequestsPerSecond() {
+    return requests * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos;
+  }
+
+  public double getBytesPerSecond() {
+    return bytes * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos;
+  }
+
+  /**
+   * @return latency at the given percentile in milliseconds
+   */
+  public double getLatencyMillis(double percentile) {
+    return latency.getValueAtPercentile(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  public double getMaxLatencyMillis() {
+    return latency.getMaxValue() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
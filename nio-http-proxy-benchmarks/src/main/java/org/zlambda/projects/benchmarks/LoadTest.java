@@ -0,0 +1,130 @@
+package org.zlambda.projects.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * End to end load test. Every argument is one proxy configuration, a comma separated list of the
+ * proxy system properties, e.g. {@code worker=8,bufferSize=10,useDirectBuffer=true}; no argument
+ * runs the defaults once. Each configuration gets a fresh proxy JVM, is driven by the same
+ * {@link LoadGenerator} against one {@link LocalOriginServer}, and the results are printed side by
+ * side, relative to the first configuration.
+ *
+ * {@code connections} may list several connection counts, e.g. {@code 100,1000,10000}; every
+ * configuration is then run at each of them, and compared with the first configuration at the same
+ * count. Listing {@code engine=nio} and {@code engine=blocking} as configurations puts the two
+ * engines side by side as the number of connections grows.
+ *
+ * The load itself is set with system properties of the load test JVM, see bin/run-load-test.sh.
+ */
+public class LoadTest {
+  private static final String[] CSV_COLUMNS = {
+      "config", "connections", "requests", "errors", "requests_per_second", "mb_per_second",
+      "p50_ms", "p99_ms", "p999_ms", "max_ms"
+  };
+
+  public static void main(String[] args) throws Exception {
+    int[] connectionCounts = Arrays.stream(System.getProperty("connections", "1000").split(","))
+        .mapToInt(count -> Integer.parseInt(count.trim())).toArray();
+    int threads = Integer.parseInt(System.getProperty("threads", "4"));
+    int warmup = Integer.parseInt(System.getProperty("warmup", "5")); // second
+    int duration = Integer.parseInt(System.getProperty("duration", "30")); // second
+    int bodySize = Integer.parseInt(System.getProperty("bodySize", "1024")); // byte
+    int tunnelPercent = Integer.parseInt(System.getProperty("tunnelPercent", "0"));
+    String proxyJvmOptions = System.getProperty("proxyJvmOptions", "-Xms512m -Xmx512m");
+    String csv = System.getProperty("csv", "");
+
+    List<String> configs = args.length == 0 ? Arrays.asList("") : Arrays.asList(args);
+    /**
+     * one row per connection count, one column per configuration
+     */
+    List<List<LoadResult>> results = new ArrayList<>();
+    try (LocalOriginServer origin = new LocalOriginServer()) {
+      for (int connections : connectionCounts) {
+        List<LoadResult> row = new ArrayList<>();
+        for (String config : configs) {
+          System.out.printf("running [%s] with %d connections (%d%% tunnelled), %d bytes bodies, "
+                            + "%ds warmup, %ds measurement%n",
+                            config, connections, tunnelPercent, bodySize, warmup, duration);
+          try (ProxyProcess proxy = new ProxyProcess(parse(config), proxyJvmOptions)) {
+            System.out.printf("proxy log: %s%n", proxy.getLog());
+            LoadGenerator generator =
+                new LoadGenerator(proxy.getPort(), origin.getPort(), bodySize, tunnelPercent);
+            row.add(generator.run(connections, threads, warmup, duration));
+          }
+        }
+        results.add(row);
+      }
+    }
+    report(System.out, configs, connectionCounts, results);
+    if (!csv.isEmpty()) {
+      writeCsv(csv, configs, connectionCounts, results);
+    }
+  }
+
+  private static Map<String, String> parse(String config) {
+    Map<String, String> properties = new LinkedHashMap<>();
+    for (String property : config.split(",")) {
+      if (property.trim().isEmpty()) {
+        continue;
+      }
+      String[] split = property.split("=", 2);
+      if (split.length != 2) {
+        throw new IllegalArgumentException("expect name=value but got " + property);
+      }
+      properties.put(split[0].trim(), split[1].trim());
+    }
+    return properties;
+  }
+
+  private static void report(PrintStream out, List<String> configs, int[] connectionCounts,
+                             List<List<LoadResult>> results) {
+    int width = Math.max(8, configs.stream().mapToInt(String::length).max().orElse(0));
+    String format = "%-" + width + "s %11s %10s %8s %12s %9s %10s %10s %10s %10s %9s%n";
+    out.printf(format, "config", "connections", "requests", "errors", "req/s", "MB/s",
+               "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)", "vs first");
+    for (int row = 0; row < connectionCounts.length; ++row) {
+      LoadResult first = results.get(row).get(0);
+      for (int i = 0; i < configs.size(); ++i) {
+        LoadResult result = results.get(row).get(i);
+        out.printf(format, configs.get(i).isEmpty() ? "defaults" : configs.get(i),
+                   connectionCounts[row], result.getRequests(), result.getErrors(),
+                   String.format(Locale.ROOT, "%.1f", result.getRequestsPerSecond()),
+                   String.format(Locale.ROOT, "%.2f", result.getBytesPerSecond() / (1024 * 1024)),
+                   String.format(Locale.ROOT, "%.3f", result.getLatencyMillis(50)),
+                   String.format(Locale.ROOT, "%.3f", result.getLatencyMillis(99)),
+                   String.format(Locale.ROOT, "%.3f", result.getLatencyMillis(99.9)),
+                   String.format(Locale.ROOT, "%.3f", result.getMaxLatencyMillis()),
+                   String.format(Locale.ROOT, "x%.2f",
+                                 result.getRequestsPerSecond() / first.getRequestsPerSecond()));
+      }
+    }
+  }
+
+  private static void writeCsv(String file, List<String> configs, int[] connectionCounts,
+                               List<List<LoadResult>> results) throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add(String.join(",", CSV_COLUMNS));
+    for (int row = 0; row < connectionCounts.length; ++row) {
+      for (int i = 0; i < configs.size(); ++i) {
+        LoadResult result = results.get(row).get(i);
+        lines.add(String.format(Locale.ROOT, "\"%s\",%d,%d,%d,%.1f,%.2f,%.3f,%.3f,%.3f,%.3f",
+                                configs.get(i), connectionCounts[row], result.getRequests(),
+                                result.getErrors(), result.getRequestsPerSecond(),
+                                result.getBytesPerSecond() / (1024 * 1024),
+                                result.getLatencyMillis(50), result.getLatencyMillis(99),
+                                result.getLatencyMillis(99.9), result.getMaxLatencyMillis()));
+      }
+    }
+    Files.write(Paths.get(file), lines, StandardCharsets.UTF_8);
+  }
+}
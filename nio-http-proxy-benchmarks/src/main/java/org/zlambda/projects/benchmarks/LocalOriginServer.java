@@ -0,0 +1,115 @@
+package org.zlambda.projects.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * In-process keep-alive origin server, one thread per connection. {@code GET /<n>} is answered with
+ * an {@code n} bytes body, anything else with an empty one.
+ */
+public class LocalOriginServer implements AutoCloseable {
+  private static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+  /**
+   * the load test keeps thousands of connections open
+   */
+  private static final long CONNECTION_STACK_SIZE = 256 * 1024;
+  private final ServerSocket serverSocket;
+  private final byte[] body = new byte[MAX_BODY_SIZE];
+  private final String extraHeaders;
+
+  public LocalOriginServer() throws IOException {
+    this("");
+  }
+
+  /**
+   * @param extraHeaders added to every response, each ending with CRLF, e.g. a Cache-Control
+   */
+  public LocalOriginServer(String extraHeaders) throws IOException {
+    this.extraHeaders = extraHeaders;
+    Arrays.fill(body, (byte) 'x');
+    serverSocket = new ServerSocket();
+    serverSocket.setReuseAddress(true);
+    serverSocket.bind(new InetSocketAddress("127.0.0.1", 0), 4096);
+    Thread acceptor = new Thread(this::accept, LocalOriginServer.class.getSimpleName());
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        Thread connection =
+            new Thread(null, () -> serve(socket), "origin-" + socket.getPort(), CONNECTION_STACK_SIZE);
+        connection.setDaemon(true);
+        connection.start();
+      } catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (Socket s = socket) {
+      InputStream in = new BufferedInputStream(s.getInputStream());
+      OutputStream out = s.getOutputStream();
+      String requestLine;
+      while (null != (requestLine = readHead(in))) {
+        int size = bodySize(requestLine);
+        out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + size + "\r\n" + extraHeaders + "\r\n")
+                      .getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body, 0, size);
+        out.flush();
+      }
+    } catch (IOException e) {
+      // connection closed by the proxy
+    }
+  }
+
+  /**
+   * @return the request line, null on EOF
+   */
+  private static String readHead(InputStream in) throws IOException {
+    StringBuilder head = new StringBuilder();
+    int b;
+    while (-1 != (b = in.read())) {
+      head.append((char) b);
+      int length = head.length();
+      if (length >= 4 && '\n' == b && '\r' == head.charAt(length - 2)
+          && '\n' == head.charAt(length - 3) && '\r' == head.charAt(length - 4)) {
+        return head.substring(0, head.indexOf("\r\n"));
+      }
+    }
+    return null;
+  }
+
+  private static int bodySize(String requestLine) {
+    String[] split = requestLine.split(" ");
+    if (split.length < 2) {
+      return 0;
+    }
+    String path = split[1].substring(split[1].lastIndexOf('/') + 1);
+    try {
+      return Math.min(MAX_BODY_SIZE, Integer.parseInt(path));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+  }
+}
@@ -0,0 +1,47 @@
+package org.zlambda.projects.benchmarks;
+
+import org.zlambda.projects.NIOHttpProxy;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+
+/**
+ * Starts {@link NIOHttpProxy} inside the benchmark JVM. The proxy is configured through system
+ * properties, exactly like when it is started from bin/run-nio-http-proxy.sh, and runs until the JVM
+ * exits.
+ */
+public enum LocalProxy {
+  ;
+
+  /**
+   * @return the port the proxy listens on
+   */
+  public static int start(Map<String, String> properties) throws Exception {
+    int port = freePort();
+    System.setProperty("port", String.valueOf(port));
+    System.setProperty("enableMonitor", "false");
+    properties.forEach(System::setProperty);
+    new NIOHttpProxy().start();
+    awaitListening(port);
+    return port;
+  }
+
+  static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  static void awaitListening(int port) throws InterruptedException {
+    for (int i = 0; i < 100; ++i) {
+      try (Socket ignored = new Socket("127.0.0.1", port)) {
+        return;
+      } catch (IOException e) {
+        Thread.sleep(50);
+      }
+    }
+    throw new IllegalStateException("proxy is not listening on port " + port);
+  }
+}
@@ -0,0 +1,96 @@
+package org.zlambda.projects.benchmarks;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zlambda.projects.logging.BackgroundAppender;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connections per second with the per-connection log statements on or off: every operation opens
+ * a new client connection, fetches an empty body and closes it. {@code off} disables logging,
+ * {@code info} logs at INFO through the {@link BackgroundAppender} as shipped, which leaves the
+ * per-connection statements disabled. {@code debug-sync} logs them to a file on the logging
+ * threads, as the log4j appenders do, and {@code debug-background} through the
+ * {@link BackgroundAppender}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class LoggingBenchmark {
+  private static final String PATTERN = "%d{yyyy/MM/dd HH:mm:ss,SSSS} %-5p [%t]: %m%n";
+
+  @Param({"off", "info", "debug-sync", "debug-background"})
+  public String logging;
+
+  private LocalOriginServer origin;
+  private int proxyPort;
+  private File log;
+
+  @Setup(org.openjdk.jmh.annotations.Level.Trial)
+  public void setup() throws Exception {
+    log = File.createTempFile("nio-http-proxy-", ".log");
+    log.deleteOnExit();
+    Logger root = LogManager.getRootLogger();
+    root.removeAllAppenders();
+    if ("off".equals(logging)) {
+      root.setLevel(Level.OFF);
+    } else {
+      root.setLevel("info".equals(logging) ? Level.INFO : Level.DEBUG);
+      root.addAppender(createAppender());
+    }
+    origin = new LocalOriginServer();
+    Map<String, String> properties = new HashMap<>();
+    properties.put("worker", "4");
+    proxyPort = LocalProxy.start(properties);
+  }
+
+  private Appender createAppender() throws IOException {
+    if ("debug-sync".equals(logging)) {
+      return new FileAppender(new PatternLayout(PATTERN), log.getPath(), true);
+    }
+    BackgroundAppender appender = new BackgroundAppender();
+    appender.setName("background");
+    appender.setFile(log.getPath());
+    appender.setLayout(new PatternLayout(PATTERN));
+    appender.activateOptions();
+    return appender;
+  }
+
+  @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+  public void tearDown() throws IOException {
+    origin.close();
+  }
+
+  @Benchmark
+  public long connectAndGet() throws IOException {
+    try (ProxyClient client = new ProxyClient(proxyPort)) {
+      return client.get(origin.getPort(), 0);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end: keep-alive clients fetch {@code bodySize} bytes from an in-process origin through an
+ * in-process proxy, so this covers parsing, routing and the bridge loop in both directions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LoopbackThroughputBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Environment {
+    @Param({"4"})
+    public String worker;
+
+    @Param({"10"})
+    public String bufferSize;
+
+    @Param({"true"})
+    public String useDirectBuffer;
+
+    @Param({"false", "true"})
+    public String useSlabBuffer;
+
+    /**
+     * 1 reads once per event and forwards on the next write event
+     */
+    @Param({"16"})
+    public String ioLoopMaxRounds;
+
+    private LocalOriginServer origin;
+    private int proxyPort;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      origin = new LocalOriginServer();
+      Map<String, String> properties = new HashMap<>();
+      properties.put("worker", worker);
+      properties.put("bufferSize", bufferSize);
+      properties.put("useDirectBuffer", useDirectBuffer);
+      properties.put("useSlabBuffer", useSlabBuffer);
+      properties.put("ioLoopMaxRounds", ioLoopMaxRounds);
+      proxyPort = LocalProxy.start(properties);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      origin.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+    private ProxyClient client;
+
+    @Setup(Level.Trial)
+    public void setup(Environment environment) throws IOException {
+      client = new ProxyClient(environment.proxyPort);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      client.close();
+    }
+  }
+
+  @Param({"1024", "65536", "1048576"})
+  public int bodySize;
+
+  @Benchmark
+  public long get(Environment environment, Client client) throws IOException {
+    return client.client.get(environment.origin.getPort(), bodySize);
+  }
+}
@@ -0,0 +1,83 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zlambda.projects.buffer.HeapChannelBufferPool;
+import org.zlambda.projects.metrics.MetricsRegistry;
+import org.zlambda.projects.metrics.MetricsSnapshot;
+import org.zlambda.projects.metrics.WorkerMetrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the metrics on the I/O path: 4 threads, standing for 4 workers, each update their own
+ * metrics as a worker does on every write and once per select loop iteration, while {@code
+ * snapshot} measures what reading all of them costs the monitor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+  private static final int NUM_WORKERS = 4;
+
+  @State(Scope.Benchmark)
+  public static class Registry {
+    private final MetricsRegistry registry = new MetricsRegistry(new HeapChannelBufferPool(16));
+  }
+
+  @State(Scope.Thread)
+  public static class Worker {
+    private WorkerMetrics metrics;
+
+    @Setup(Level.Trial)
+    public void setup(Registry registry) {
+      metrics = registry.registry.newWorkerMetrics();
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Populated {
+    private final MetricsRegistry registry = new MetricsRegistry(new HeapChannelBufferPool(16));
+
+    @Setup(Level.Trial)
+    public void setup() {
+      for (int i = 0; i < NUM_WORKERS; ++i) {
+        WorkerMetrics metrics = registry.newWorkerMetrics();
+        for (int j = 0; j < 100_000; ++j) {
+          metrics.onLoop(ThreadLocalRandom.current().nextInt(1_000_000));
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  @Threads(NUM_WORKERS)
+  public void addBytes(Worker worker) {
+    worker.metrics.onDownstreamWritten(1460);
+  }
+
+  @Benchmark
+  @Threads(NUM_WORKERS)
+  public void recordLatency(Worker worker) {
+    worker.metrics.onLoop(ThreadLocalRandom.current().nextInt(1_000_000));
+  }
+
+  @Benchmark
+  public long snapshot(Populated populated) {
+    MetricsSnapshot snapshot = populated.registry.snapshot();
+    return snapshot.getTotal().getEventLoopLag().getPercentile(99);
+  }
+}
@@ -0,0 +1,86 @@
+package org.zlambda.projects.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal blocking keep-alive HTTP/1.1 client talking to the origin through the proxy. It only
+ * understands Content-Length delimited responses, which is all {@link LocalOriginServer} sends.
+ */
+public class ProxyClient implements AutoCloseable {
+  private final Socket socket;
+  private final InputStream in;
+  private final OutputStream out;
+  private final byte[] scratch = new byte[64 * 1024];
+
+  public ProxyClient(int proxyPort) throws IOException {
+    socket = new Socket("127.0.0.1", proxyPort);
+    socket.setTcpNoDelay(true);
+    in = new BufferedInputStream(socket.getInputStream(), scratch.length);
+    out = socket.getOutputStream();
+  }
+
+  /**
+   * @return the number of body bytes received
+   */
+  public long get(int originPort, int bodySize) throws IOException {
+    return get("127.0.0.1", originPort, bodySize);
+  }
+
+  /**
+   * @param originHost resolved by the proxy unless it is a literal address
+   * @return the number of body bytes received
+   */
+  public long get(String originHost, int originPort, int bodySize) throws IOException {
+    String target = originHost + ":" + originPort;
+    out.write(("GET http://" + target + "/" + bodySize + " HTTP/1.1\r\nHost: " + target
+               + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    out.flush();
+    long remaining = readContentLength();
+    long received = 0;
+    while (remaining > 0) {
+      int n = in.read(scratch, 0, (int) Math.min(scratch.length, remaining));
+      if (-1 == n) {
+        throw new IOException("unexpected EOF");
+      }
+      remaining -= n;
+      received += n;
+    }
+    return received;
+  }
+
+  private long readContentLength() throws IOException {
+    long contentLength = -1;
+    StringBuilder line = new StringBuilder();
+    int b;
+    while (-1 != (b = in.read())) {
+      if ('\n' != b) {
+        if ('\r' != b) {
+          line.append((char) b);
+        }
+        continue;
+      }
+      if (0 == line.length()) {
+        if (contentLength < 0) {
+          throw new IOException("response without Content-Length");
+        }
+        return contentLength;
+      }
+      String header = line.toString();
+      if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+        contentLength = Long.parseLong(header.substring(15).trim());
+      }
+      line.setLength(0);
+    }
+    throw new IOException("unexpected EOF");
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+}
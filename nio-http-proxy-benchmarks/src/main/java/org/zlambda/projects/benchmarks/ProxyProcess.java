@@ -0,0 +1,63 @@
+package org.zlambda.projects.benchmarks;
+
+import org.zlambda.projects.NIOHttpProxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link NIOHttpProxy} in a child JVM, so every configuration of a load test starts from a
+ * cold proxy with its own system properties. The proxy output goes to {@link #getLog()}.
+ */
+public class ProxyProcess implements AutoCloseable {
+  private final Process process;
+  private final int port;
+  private final File log;
+
+  public ProxyProcess(Map<String, String> properties, String jvmOptions) throws Exception {
+    port = LocalProxy.freePort();
+    log = File.createTempFile("nio-http-proxy-", ".log");
+    List<String> command = new ArrayList<>();
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    if (!jvmOptions.trim().isEmpty()) {
+      command.addAll(Arrays.asList(jvmOptions.trim().split("\\s+")));
+    }
+    command.add("-Dport=" + port);
+    command.add("-DenableMonitor=false");
+    properties.forEach((name, value) -> command.add("-D" + name + "=" + value));
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(NIOHttpProxy.class.getName());
+    process = new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+        .start();
+    try {
+      LocalProxy.awaitListening(port);
+    } catch (Exception e) {
+      close();
+      throw e;
+    }
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public File getLog() {
+    return log;
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    process.destroy();
+    if (!process.waitFor(10, TimeUnit.SECONDS)) {
+      process.destroyForcibly().waitFor();
+    }
+  }
+}
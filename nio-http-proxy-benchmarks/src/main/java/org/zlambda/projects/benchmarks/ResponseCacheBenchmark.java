@@ -0,0 +1,85 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep-alive clients fetch the same cacheable response over and over. With {@code cacheMaxMemory}
+ * 0 every request goes to the origin, otherwise all but the first are answered from the response
+ * cache without touching a host connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ResponseCacheBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Environment {
+    @Param({"4"})
+    public String worker;
+
+    @Param({"0", "64"})
+    public String cacheMaxMemory;
+
+    private LocalOriginServer origin;
+    private int proxyPort;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      origin = new LocalOriginServer("Cache-Control: max-age=3600\r\n");
+      Map<String, String> properties = new HashMap<>();
+      properties.put("worker", worker);
+      properties.put("cacheMaxMemory", cacheMaxMemory);
+      proxyPort = LocalProxy.start(properties);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      origin.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+    private ProxyClient client;
+
+    @Setup(Level.Trial)
+    public void setup(Environment environment) throws IOException {
+      client = new ProxyClient(environment.proxyPort);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      client.close();
+    }
+  }
+
+  @Param({"1024", "65536"})
+  public int bodySize;
+
+  @Benchmark
+  public long get(Environment environment, Client client) throws IOException {
+    return client.client.get(environment.origin.getPort(), bodySize);
+  }
+}
@@ -0,0 +1,134 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client reading a CONNECT tunnel far slower than its origin writes: every operation reads 4 KB
+ * and then sleeps 1 ms. The proxy's downstream buffer stays full, so without backpressure the
+ * worker is woken up for reads it cannot take. {@code cpuMillisPerSecond} is the CPU time of the
+ * whole JVM, the client and the origin included, per second of wall time; with backpressure it
+ * should stay close to the cost of the bytes actually moved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SlowConsumerBenchmark {
+  private static final int CHUNK = 4 * 1024;
+
+  @Param({"false", "true"})
+  public String backpressure;
+
+  private ServerSocketChannel origin;
+  private SocketChannel tunnel;
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(CHUNK);
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Cpu {
+    public long cpuMillisPerSecond;
+    private long cpuStart;
+    private long wallStart;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      cpuStart = processCpuTime();
+      wallStart = System.nanoTime();
+    }
+
+    private void onRead() {
+      long wall = System.nanoTime() - wallStart;
+      cpuMillisPerSecond = wall <= 0 ? 0 : (processCpuTime() - cpuStart) * 1000 / wall;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    origin = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+    Thread firehose = new Thread(this::serveFirehose, "firehose");
+    firehose.setDaemon(true);
+    firehose.start();
+    Map<String, String> properties = new HashMap<>();
+    properties.put("worker", "1");
+    properties.put("backpressure", backpressure);
+    int proxyPort = LocalProxy.start(properties);
+    tunnel = SocketChannel.open(new InetSocketAddress("127.0.0.1", proxyPort));
+    String target = "127.0.0.1:" + origin.socket().getLocalPort();
+    tunnel.write(ByteBuffer.wrap(("CONNECT " + target + " HTTP/1.1\r\nHost: " + target + "\r\n\r\n")
+                                     .getBytes(StandardCharsets.US_ASCII)));
+    /**
+     * the 200 response, byte by byte so none of the body is consumed
+     */
+    StringBuilder head = new StringBuilder();
+    ByteBuffer one = ByteBuffer.allocate(1);
+    while (!head.toString().endsWith("\r\n\r\n")) {
+      one.clear();
+      if (tunnel.read(one) < 0) {
+        throw new IOException("proxy closed the tunnel");
+      }
+      head.append((char) one.get(0));
+    }
+  }
+
+  private void serveFirehose() {
+    try (SocketChannel channel = origin.accept()) {
+      ByteBuffer data = ByteBuffer.allocateDirect(256 * 1024);
+      while (true) {
+        data.clear();
+        channel.write(data);
+      }
+    } catch (IOException e) {
+      // tunnel closed
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    tunnel.close();
+    origin.close();
+  }
+
+  @Benchmark
+  public int readSlowly(Cpu cpu) throws Exception {
+    readBuffer.clear();
+    while (readBuffer.hasRemaining()) {
+      if (tunnel.read(readBuffer) < 0) {
+        throw new IOException("proxy closed the tunnel");
+      }
+    }
+    Thread.sleep(1);
+    cpu.onRead();
+    return CHUNK;
+  }
+
+  private static long processCpuTime() {
+    return ((com.sun.management.OperatingSystemMXBean)
+        ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+  }
+}
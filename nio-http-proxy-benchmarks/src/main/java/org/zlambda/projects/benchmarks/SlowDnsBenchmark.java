@@ -0,0 +1,74 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of requests by host name while the DNS is slow: every lookup of the
+ * {@link SlowNameService} takes {@code slowDnsDelay} milliseconds. Each operation opens a new
+ * client connection to one of {@code numHosts} names, so with {@code dnsCacheTtl=0} every request
+ * waits for a lookup, while with caching only the first request to each name does and the tail
+ * shows whether the others are held up meanwhile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class SlowDnsBenchmark {
+  @Param({"0", "60"})
+  public String dnsCacheTtl;
+
+  @Param({"100"})
+  public String slowDnsDelay;
+
+  @Param({"64"})
+  public int numHosts;
+
+  private LocalOriginServer origin;
+  private int proxyPort;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    origin = new LocalOriginServer();
+    Map<String, String> properties = new HashMap<>();
+    properties.put("nameService", SlowNameService.class.getName());
+    properties.put("slowDnsDelay", slowDnsDelay);
+    properties.put("dnsCacheTtl", dnsCacheTtl);
+    properties.put("resolverThreads", "4");
+    proxyPort = LocalProxy.start(properties);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    origin.close();
+  }
+
+  @Benchmark
+  public long getByName() throws IOException {
+    String host = "host-" + ThreadLocalRandom.current().nextInt(numHosts) + ".test";
+    try (ProxyClient client = new ProxyClient(proxyPort)) {
+      return client.get(host, origin.getPort(), 0);
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package org.zlambda.projects.benchmarks;
+
+import org.zlambda.projects.resolver.NameService;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threadsafe Class
+ *
+ * Local stand-in resolver answering every host name with the loopback address after {@code
+ * slowDnsDelay} milliseconds, to measure the proxy under a slow DNS. Names under {@code .invalid}
+ * do not exist. Configure the proxy with {@code
+ * nameService=org.zlambda.projects.benchmarks.SlowNameService}.
+ */
+public class SlowNameService implements NameService {
+  private static final byte[] LOOPBACK = {127, 0, 0, 1};
+  private final long delay;
+
+  public SlowNameService() {
+    this(Long.getLong("slowDnsDelay", 100));
+  }
+
+  /**
+   * @param delay in millisecond
+   */
+  public SlowNameService(long delay) {
+    this.delay = delay;
+  }
+
+  @Override
+  public InetAddress lookup(String host) throws UnknownHostException {
+    try {
+      TimeUnit.MILLISECONDS.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UnknownHostException(host + ": interrupted");
+    }
+    if (host.endsWith(".invalid")) {
+      throw new UnknownHostException(host);
+    }
+    return InetAddress.getByAddress(host, LOOPBACK);
+  }
+}
@@ -0,0 +1,64 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zlambda.projects.timer.TimingWheel;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the per connection deadlines on a worker holding {@code connections} of them: arming and
+ * cancelling one, as every connection does when it goes through its stages, and advancing the
+ * wheel, as the worker does on every select loop iteration. Neither should grow with {@code
+ * connections}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimingWheelBenchmark {
+  private static final Runnable NOOP = () -> {
+  };
+
+  @Param({"1000", "100000"})
+  public int connections;
+
+  private TimingWheel wheel;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    wheel = new TimingWheel(100, 512);
+    /**
+     * idle deadlines spread over 5 minutes, none of them fires during the run
+     */
+    for (int i = 0; i < connections; ++i) {
+      wheel.schedule(NOOP, TimeUnit.MINUTES.toMillis(5)
+                           + ThreadLocalRandom.current().nextInt(300_000));
+    }
+  }
+
+  @Benchmark
+  public boolean scheduleAndCancel() {
+    TimingWheel.Timeout timeout = wheel.schedule(NOOP, TimeUnit.SECONDS.toMillis(30));
+    timeout.cancel();
+    return timeout.isPending();
+  }
+
+  @Benchmark
+  public int advance() {
+    return wheel.advance();
+  }
+}
@@ -0,0 +1,119 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of small messages through a CONNECT tunnel to an echo server, the pattern of
+ * interactive traffic such as SSH. Every message crosses the proxy twice, so the per hop cost of
+ * {@code cutThrough} and {@code tcpNoDelay} shows up directly in the sampled latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TunnelPingPongBenchmark {
+  @Param({"true", "false"})
+  public String cutThrough;
+
+  @Param({"true", "false"})
+  public String tcpNoDelay;
+
+  /**
+   * in bytes
+   */
+  @Param({"64"})
+  public int messageSize;
+
+  private ServerSocket echo;
+  private SocketChannel tunnel;
+  private ByteBuffer message;
+  private ByteBuffer reply;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    echo = new ServerSocket(0, 16, InetAddress.getLoopbackAddress());
+    Thread acceptor = new Thread(this::serveEcho, "echo");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    Map<String, String> properties = new HashMap<>();
+    properties.put("worker", "2");
+    properties.put("cutThrough", cutThrough);
+    properties.put("tcpNoDelay", tcpNoDelay);
+    int proxyPort = LocalProxy.start(properties);
+    tunnel = SocketChannel.open(new InetSocketAddress("127.0.0.1", proxyPort));
+    tunnel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    String target = "127.0.0.1:" + echo.getLocalPort();
+    tunnel.write(ByteBuffer.wrap(("CONNECT " + target + " HTTP/1.1\r\nHost: " + target + "\r\n\r\n")
+                                     .getBytes(StandardCharsets.US_ASCII)));
+    ByteBuffer response = ByteBuffer.allocate(1024);
+    while (!new String(response.array(), 0, response.position(), StandardCharsets.US_ASCII)
+        .endsWith("\r\n\r\n")) {
+      if (tunnel.read(response) < 0) {
+        throw new IOException("proxy closed the tunnel");
+      }
+    }
+    message = ByteBuffer.allocateDirect(messageSize);
+    reply = ByteBuffer.allocateDirect(messageSize);
+  }
+
+  private void serveEcho() {
+    try (Socket socket = echo.accept()) {
+      socket.setTcpNoDelay(true);
+      byte[] bytes = new byte[64 * 1024];
+      int numOfRead;
+      while ((numOfRead = socket.getInputStream().read(bytes)) > 0) {
+        socket.getOutputStream().write(bytes, 0, numOfRead);
+      }
+    } catch (IOException e) {
+      // tunnel closed
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    tunnel.close();
+    echo.close();
+  }
+
+  @Benchmark
+  public int roundTrip() throws IOException {
+    message.clear();
+    while (message.hasRemaining()) {
+      tunnel.write(message);
+    }
+    reply.clear();
+    while (reply.hasRemaining()) {
+      if (tunnel.read(reply) < 0) {
+        throw new IOException("proxy closed the tunnel");
+      }
+    }
+    return reply.position();
+  }
+}
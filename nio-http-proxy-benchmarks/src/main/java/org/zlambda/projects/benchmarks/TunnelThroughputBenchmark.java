@@ -0,0 +1,138 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk download through a CONNECT tunnel from an origin which writes as fast as it can. Every
+ * operation reads 1 MB, so the score is in MB/s; {@code cpuMicrosPerMB} is the CPU time of the
+ * whole JVM, the client and the origin included, spent per MB.
+ *
+ * The spliced runs need the native binding: run bin/build-splice.sh first and the benchmarks from
+ * the root of the repository, otherwise the proxy falls back to buffers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.library.path=bin/lib")
+public class TunnelThroughputBenchmark {
+  private static final int MB = 1024 * 1024;
+
+  @Param({"false", "true"})
+  public String spliceTunnels;
+
+  private ServerSocketChannel origin;
+  private SocketChannel tunnel;
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(256 * 1024);
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Cpu {
+    public long cpuMicrosPerMB;
+    private long cpuStart;
+    private long numOfMB;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      cpuStart = processCpuTime();
+      numOfMB = 0;
+    }
+
+    private void onRead() {
+      ++numOfMB;
+      cpuMicrosPerMB = (processCpuTime() - cpuStart) / 1000 / numOfMB;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    origin = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+    Thread firehose = new Thread(this::serveFirehose, "firehose");
+    firehose.setDaemon(true);
+    firehose.start();
+    Map<String, String> properties = new HashMap<>();
+    properties.put("worker", "2");
+    properties.put("spliceTunnels", spliceTunnels);
+    int proxyPort = LocalProxy.start(properties);
+    tunnel = SocketChannel.open(new InetSocketAddress("127.0.0.1", proxyPort));
+    String target = "127.0.0.1:" + origin.socket().getLocalPort();
+    tunnel.write(ByteBuffer.wrap(("CONNECT " + target + " HTTP/1.1\r\nHost: " + target + "\r\n\r\n")
+                                     .getBytes(StandardCharsets.US_ASCII)));
+    /**
+     * the 200 response, byte by byte so none of the body is consumed
+     */
+    StringBuilder head = new StringBuilder();
+    ByteBuffer one = ByteBuffer.allocate(1);
+    while (!head.toString().endsWith("\r\n\r\n")) {
+      one.clear();
+      if (tunnel.read(one) < 0) {
+        throw new IOException("proxy closed the tunnel");
+      }
+      head.append((char) one.get(0));
+    }
+  }
+
+  private void serveFirehose() {
+    try (SocketChannel channel = origin.accept()) {
+      ByteBuffer data = ByteBuffer.allocateDirect(256 * 1024);
+      while (true) {
+        data.clear();
+        channel.write(data);
+      }
+    } catch (IOException e) {
+      // tunnel closed
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    tunnel.close();
+    origin.close();
+  }
+
+  @Benchmark
+  public int readMB(Cpu cpu) throws IOException {
+    int remaining = MB;
+    while (remaining > 0) {
+      readBuffer.clear();
+      readBuffer.limit(Math.min(remaining, readBuffer.capacity()));
+      int numOfRead = tunnel.read(readBuffer);
+      if (numOfRead < 0) {
+        throw new IOException("proxy closed the tunnel");
+      }
+      remaining -= numOfRead;
+    }
+    cpu.onRead();
+    return MB;
+  }
+
+  private static long processCpuTime() {
+    return ((com.sun.management.OperatingSystemMXBean)
+        ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+  }
+}
@@ -0,0 +1,95 @@
+package org.zlambda.projects.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tail latency of short connections under skewed traffic: a few background clients keep streaming
+ * large bodies over long lived connections, pinning the workers they landed on, while every
+ * measured operation opens a new connection for a small body. Where the new connections land is up
+ * to {@code workerSelection}; the sample mode reports the latency percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class WorkerSelectionBenchmark {
+  private static final int HEAVY_BODY_SIZE = 16 * 1024 * 1024;
+
+  @Param({"leastConnections", "roundRobin", "powerOfTwoChoices", "weighted"})
+  public String workerSelection;
+
+  @Param({"4"})
+  public String worker;
+
+  @Param({"2"})
+  public int heavyClients;
+
+  private final List<Thread> heavyThreads = new ArrayList<>();
+  private volatile boolean running = true;
+  private LocalOriginServer origin;
+  private int proxyPort;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    origin = new LocalOriginServer();
+    Map<String, String> properties = new HashMap<>();
+    properties.put("worker", worker);
+    properties.put("workerSelection", workerSelection);
+    proxyPort = LocalProxy.start(properties);
+    for (int i = 0; i < heavyClients; ++i) {
+      Thread thread = new Thread(this::streamHeavy, "heavy-" + i);
+      thread.setDaemon(true);
+      heavyThreads.add(thread);
+      thread.start();
+    }
+  }
+
+  private void streamHeavy() {
+    try (ProxyClient client = new ProxyClient(proxyPort)) {
+      while (running) {
+        client.get(origin.getPort(), HEAVY_BODY_SIZE);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    running = false;
+    for (Thread thread : heavyThreads) {
+      thread.join();
+    }
+    origin.close();
+  }
+
+  @Benchmark
+  public long connectAndGet() throws IOException {
+    try (ProxyClient client = new ProxyClient(proxyPort)) {
+      return client.get(origin.getPort(), 1024);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package org.zlambda.projects.benchmarks;
+
+import org.junit.Test;
+import org.zlambda.projects.buffer.ChannelBuffer;
+import org.zlambda.projects.buffer.DirectChannelBufferPool;
+import org.zlambda.projects.http.HttpHeadParser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link HttpHeadParser} finds the same lines as the parser it replaced, so {@link
+ * HeadParserBenchmark} compares equal work
+ */
+public class LegacyHeadParserTest {
+  private static final DirectChannelBufferPool POOL = new DirectChannelBufferPool(1, 2, 64);
+  private static final String[] HEADS = {
+      "GET http://www.example.com/static/assets/app.js?v=1 HTTP/1.1\r\n"
+      + "Host: www.example.com\r\n"
+      + "User-Agent: curl/7.68.0\r\n"
+      + "Accept: */*\r\n"
+      + "\r\n",
+      "POST /form HTTP/1.0\nHost: a.com\nContent-Length: 3\n\n",
+      "HTTP/1.1 200 OK\r\nContent-Type: text/html; charset=utf-8\r\nX-Empty:\r\n\r\n",
+      "HTTP/1.1 204\r\n\r\n",
+      "CONNECT a.com:443 HTTP/1.1\r\nHost: a.com:443\r\nProxy-Connection: keep-alive\r\n\r\n",
+      manyHeaders(100),
+  };
+
+  @Test
+  public void sameLines() {
+    for (String head : HEADS) {
+      Optional<List<String>> legacy = LegacyHeadParser.parse(byteBuffer(head));
+      assertTrue(head, legacy.isPresent());
+      assertEquals(head, legacy.get(), lines(head));
+    }
+  }
+
+  @Test
+  public void sameCompleteness() {
+    for (String head : HEADS) {
+      for (int length = 1; length <= head.length(); ++length) {
+        String prefix = head.substring(0, length);
+        if (prefix.endsWith("\r")) {
+          /**
+           * the Scanner takes a lone CR for a line end, the parser waits for the LF
+           */
+          continue;
+        }
+        assertEquals(prefix, LegacyHeadParser.parse(byteBuffer(prefix)).isPresent(),
+                     parse(prefix).isComplete());
+      }
+    }
+  }
+
+  /**
+   * return the lines the legacy parser returns, rebuilt from the offsets of the parser
+   */
+  private static List<String> lines(String head) {
+    ChannelBuffer buffer = channelBuffer(head);
+    HttpHeadParser parser = new HttpHeadParser(64 * 1024);
+    parser.parse(buffer, 0, buffer.size());
+    List<String> ret = new ArrayList<>();
+    ret.add(HttpHeadParser.toString(buffer, parser.tokenStart(0), parser.tokenEnd(2)).trim());
+    for (int i = 0; i < parser.getNumHeaders(); ++i) {
+      ret.add(HttpHeadParser.toString(buffer, parser.nameStart(i), parser.valueEnd(i)));
+    }
+    ret.add("");
+    buffer.free();
+    return ret;
+  }
+
+  private static HttpHeadParser parse(String head) {
+    ChannelBuffer buffer = channelBuffer(head);
+    HttpHeadParser parser = new HttpHeadParser(64 * 1024);
+    parser.parse(buffer, 0, buffer.size());
+    buffer.free();
+    return parser;
+  }
+
+  private static ChannelBuffer channelBuffer(String head) {
+    ChannelBuffer buffer = POOL.take();
+    buffer.put(head.getBytes(StandardCharsets.ISO_8859_1));
+    return buffer;
+  }
+
+  /**
+   * @return a buffer holding {@code head} in [0, position), as the legacy parser expects
+   */
+  private static ByteBuffer byteBuffer(String head) {
+    ByteBuffer ret = ByteBuffer.allocate(head.length());
+    ret.put(head.getBytes(StandardCharsets.ISO_8859_1));
+    return ret;
+  }
+
+  private static String manyHeaders(int numHeaders) {
+    StringBuilder sb = new StringBuilder("GET / HTTP/1.1\r\n");
+    for (int i = 0; i < numHeaders; ++i) {
+      sb.append("X-Header-").append(i).append(": value ").append(i).append("\r\n");
+    }
+    return sb.append("\r\n").toString();
+  }
+}
@@ -0,0 +1,144 @@
+package org.zlambda.projects;
+
+import org.slf4j.Logger;
+import org.zlambda.projects.context.SystemContext;
+import org.zlambda.projects.utils.Common;
+import org.zlambda.projects.utils.SocketChannelUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepts client connections and hands them straight to a worker, skipping the client queue and
+ * the {@link Dispatcher}. Several acceptors either share one listening socket, or, with
+ * SO_REUSEPORT, each own a listening socket bound to the same port and let the kernel spread the
+ * connections over them.
+ */
+public class Acceptor extends Thread {
+  private static final Logger LOGGER = Common.getSystemLogger();
+  private static final int BACKLOG = 1024;
+  private static final long MIN_ACCEPT_BACKOFF = 1; // ms
+  private static final long MAX_ACCEPT_BACKOFF = 1000; // ms
+  private static final long ACCEPT_FAILURE_LOG_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+  private final ServerSocketChannel server;
+  private final WorkerGroup workerGroup;
+  /**
+   * in ms, 0 after a successful accept
+   */
+  private long acceptBackoff = 0;
+  private long nextAcceptFailureLogAt = System.nanoTime();
+  private int numUnloggedAcceptFailures = 0;
+
+  private Acceptor(String name, ServerSocketChannel server, WorkerGroup workerGroup) {
+    super(name);
+    this.server = server;
+    this.workerGroup = workerGroup;
+  }
+
+  /**
+   * Bind the listening socket(s) and create {@code numAcceptors} acceptors. SO_REUSEPORT is only
+   * used when the platform supports it (JDK 9+ on Linux and BSD), otherwise the acceptors share one
+   * listening socket.
+   */
+  public static List<Acceptor> create(SystemContext systemContext, WorkerGroup workerGroup)
+      throws IOException {
+    List<Acceptor> acceptors = new ArrayList<>();
+    ServerSocketChannel shared = null;
+    for (int i = 0; i < systemContext.getNumAcceptors(); ++i) {
+      ServerSocketChannel server;
+      if (systemContext.isReusePort()) {
+        server = ServerSocketChannel.open();
+        Optional<SocketOption<Boolean>> reusePort = reusePortOption(server);
+        if (reusePort.isPresent()) {
+          server.setOption(reusePort.get(), true);
+          server.bind(new InetSocketAddress(systemContext.getPort()), BACKLOG);
+        } else {
+          LOGGER.warn("SO_REUSEPORT is not supported, acceptors share one listening socket.");
+          server.close();
+          server = null == shared ? shared = bind(systemContext) : shared;
+        }
+      } else {
+        server = null == shared ? shared = bind(systemContext) : shared;
+      }
+      acceptors.add(new Acceptor(Acceptor.class.getSimpleName() + "-" + i, server, workerGroup));
+    }
+    return acceptors;
+  }
+
+  private static ServerSocketChannel bind(SystemContext systemContext) throws IOException {
+    return ServerSocketChannel.open().bind(new InetSocketAddress(systemContext.getPort()), BACKLOG);
+  }
+
+  /**
+   * StandardSocketOptions.SO_REUSEPORT does not exist before JDK 9, so look it up by name
+   */
+  @SuppressWarnings("unchecked")
+  private static Optional<SocketOption<Boolean>> reusePortOption(ServerSocketChannel server) {
+    return server.supportedOptions().stream()
+        .filter(option -> "SO_REUSEPORT".equals(option.name()))
+        .map(option -> (SocketOption<Boolean>) option)
+        .findFirst();
+  }
+
+  @Override
+  public void run() {
+    LOGGER.info("{} listens on port {}", getName(), server.socket().getLocalPort());
+    try {
+      while (server.isOpen()) {
+        /**
+         * while under memory pressure new clients wait in the listen backlog
+         */
+        workerGroup.awaitMemory();
+        SocketChannel client;
+        try {
+          client = server.accept();
+        } catch (IOException e) {
+          backOff(e);
+          continue;
+        }
+        acceptBackoff = 0;
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug("connected with client. {}", SocketChannelUtils.getRemoteAddress(client));
+        }
+        try {
+          client.configureBlocking(false);
+          workerGroup.assign(client);
+        } catch (IOException e) {
+          LOGGER.error("failed to hand over client <{}>.",
+                       SocketChannelUtils.getRemoteAddress(client), e);
+          Common.close(client);
+        }
+      }
+    } catch (Exception e) {
+      LOGGER.error("got exception <{}>, so terminate proxy.", e.getMessage(), e);
+    } finally {
+      System.exit(-1);
+    }
+  }
+
+  /**
+   * An accept failure, e.g. running out of file descriptors, repeats at once until connections
+   * are closed, so pause before the next accept, twice as long on each failure in a row, and log
+   * once per {@link #ACCEPT_FAILURE_LOG_INTERVAL} only
+   */
+  private void backOff(IOException e) throws InterruptedException {
+    acceptBackoff = Math.min(MAX_ACCEPT_BACKOFF, Math.max(MIN_ACCEPT_BACKOFF, 2 * acceptBackoff));
+    long now = System.nanoTime();
+    if (now - nextAcceptFailureLogAt >= 0) {
+      LOGGER.error("failed on connection, {} more failures since the last report, retry in {} ms.",
+                   numUnloggedAcceptFailures, acceptBackoff, e);
+      nextAcceptFailureLogAt = now + ACCEPT_FAILURE_LOG_INTERVAL;
+      numUnloggedAcceptFailures = 0;
+    } else {
+      ++numUnloggedAcceptFailures;
+    }
+    Thread.sleep(acceptBackoff);
+  }
+}
@@ -0,0 +1,399 @@
+package org.zlambda.projects;
+
+import org.slf4j.Logger;
+import org.zlambda.projects.buffer.ChannelBuffer;
+import org.zlambda.projects.buffer.ConnectionBuffer;
+import org.zlambda.projects.context.SystemContext;
+import org.zlambda.projects.http.HttpExchange;
+import org.zlambda.projects.http.RequestTarget;
+import org.zlambda.projects.utils.Common;
+import org.zlambda.projects.utils.SocketChannelUtils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threadsafe Class
+ *
+ * One client connection of the blocking engine. The thread running it copies the client to the
+ * host, while a second thread, started per host connection, copies the host back to the client,
+ * both with plain blocking reads and writes.
+ *
+ * Plain HTTP requests are followed by an {@link HttpExchange} as in the NIO engine, shared by the
+ * two threads under its own lock: a request to another origin is held back until the current host
+ * answered every request routed to it, then the host connection is replaced. CONNECT tunnels are
+ * copied as they are.
+ *
+ * A blocking read ignores SO_TIMEOUT on a {@link SocketChannel}, so the idle deadline is enforced
+ * by {@link BlockingEngine}, which calls {@link #expireIfIdle} from its reaper thread.
+ */
+public class BlockingConnection implements Runnable {
+  private static final Logger LOGGER = Common.getSystemLogger();
+  private static final int KB = 1024;
+  private final SystemContext systemContext;
+  private final ThreadFactory threadFactory;
+  private final SocketChannel client;
+  private final String clientName;
+  private final ConnectionBuffer connectionBuffer;
+  /**
+   * Guarded by itself, null once the connection turns out to be a CONNECT tunnel
+   */
+  private HttpExchange httpExchange;
+  private RequestTarget hostTarget;
+  /**
+   * Written by the connection thread, read by the reaper as well
+   */
+  private volatile SocketChannel host;
+  private Thread downstreamThread;
+  /**
+   * Set once the host connection is replaced, so its downstream thread does not take the end of
+   * its stream for the end of the responses
+   */
+  private volatile boolean hostRetired;
+  /**
+   * Set by the downstream thread when it stops copying, guarded by {@link #httpExchange}
+   */
+  private boolean hostDone;
+  /**
+   * in ns, when a read or write last moved bytes
+   */
+  private volatile long lastActiveAt = System.nanoTime();
+  /**
+   * Only touched by the reaper, set once the sockets were shut down for idling
+   */
+  private boolean isExpired;
+
+  public BlockingConnection(SystemContext systemContext, ThreadFactory threadFactory,
+                            SocketChannel client) {
+    this.systemContext = systemContext;
+    this.threadFactory = threadFactory;
+    this.client = client;
+    this.clientName = SocketChannelUtils.getName(client);
+    this.connectionBuffer = new ConnectionBuffer(systemContext.getBufferPool(),
+                                                 systemContext.isLazyBuffers());
+    this.httpExchange = new HttpExchange(systemContext.getBufferSize() * KB);
+  }
+
+  @Override
+  public void run() {
+    try {
+      if (!readInitialRequest()) {
+        return;
+      }
+      while (connectHost() && copyUpstream()) {
+        switchHost();
+      }
+    } finally {
+      awaitDownstream();
+      Common.close(host, null == hostTarget ? null : hostTarget.toString());
+      Common.close(client, clientName);
+      connectionBuffer.free();
+    }
+  }
+
+  private boolean readInitialRequest() {
+    ChannelBuffer upstream = connectionBuffer.upstream();
+    while (null == httpExchange.getTarget()) {
+      if (-1 == onActive(SocketChannelUtils.readFromChannel(client, upstream))) {
+        return false;
+      }
+      if (!httpExchange.onUpstreamRead(upstream)) {
+        LOGGER.error("cannot parse request line, so close client socket channel <{}>",
+                     clientName);
+        return false;
+      }
+    }
+    LOGGER.debug("got initial request line <{} {}>.",
+                 httpExchange.getMethod(), httpExchange.getUri());
+    hostTarget = httpExchange.getTarget();
+    /**
+     * for https request, discard the initial request
+     */
+    if ("CONNECT".equalsIgnoreCase(httpExchange.getMethod())) {
+      upstream.clear();
+      httpExchange = null;
+    }
+    return true;
+  }
+
+  /**
+   * Resolve and connect the current target, then start copying its responses
+   *
+   * @return false if the host cannot be reached
+   */
+  private boolean connectHost() {
+    InetAddress address;
+    try {
+      address = systemContext.getResolver().resolve(hostTarget.getHostName()).join();
+    } catch (CompletionException e) {
+      LOGGER.error("cannot resolve address for <{}>, reason <{}>.",
+                   hostTarget.getHostName(), e.getCause().getMessage());
+      return false;
+    }
+    try {
+      host = SocketChannel.open();
+      host.setOption(StandardSocketOptions.TCP_NODELAY, systemContext.isTcpNoDelay());
+      host.socket().connect(new InetSocketAddress(address, hostTarget.getPort()),
+                            (int) TimeUnit.SECONDS.toMillis(systemContext.getConnectTimeout()));
+    } catch (IOException e) {
+      LOGGER.error("Host channel <{}> failed to connect, reason: {}.",
+                   hostTarget, e.getMessage(), e);
+      return false;
+    }
+    if (null == httpExchange && !writeFully(
+        client, "HTTP/1.1 200 Connection Established\r\n\r\n".getBytes())) {
+      return false;
+    }
+    hostRetired = false;
+    downstreamThread = threadFactory.newThread(this::copyDownstream);
+    downstreamThread.start();
+    return true;
+  }
+
+  /**
+   * [Client -- IS --> Proxy] -- OS --> Host
+   *
+   * @return true if a request to another origin is held back and the current host is done with
+   * every request routed to it
+   */
+  private boolean copyUpstream() {
+    ChannelBuffer upstream = connectionBuffer.upstream();
+    while (true) {
+      int routable = upstream.size();
+      if (null != httpExchange) {
+        synchronized (httpExchange) {
+          if (!httpExchange.onUpstreamRead(upstream)) {
+            LOGGER.error("cannot route request, so close client socket channel <{}>",
+                         clientName);
+            shutdownInput(host);
+            return false;
+          }
+          routable = httpExchange.getRoutableBytes();
+          if (0 == routable && null != httpExchange.getPendingTarget()) {
+            return awaitHostIdle();
+          }
+        }
+      }
+      if (routable > 0) {
+        int numOfWritten = onActive(SocketChannelUtils.writeToChannel(host, upstream, routable));
+        if (-1 == numOfWritten) {
+          shutdownInput(host);
+          return false;
+        }
+        onUpstreamWritten(numOfWritten);
+      } else if (-1 == onActive(SocketChannelUtils.readFromChannel(client, upstream))) {
+        /**
+         * client is done, the host still gets to answer what was sent
+         */
+        shutdownOutput(host);
+        return false;
+      }
+    }
+  }
+
+  private void onUpstreamWritten(int numOfWritten) {
+    if (null != httpExchange && numOfWritten > 0) {
+      synchronized (httpExchange) {
+        httpExchange.onUpstreamWritten(numOfWritten);
+      }
+    }
+  }
+
+  /**
+   * Should hold the lock of {@link #httpExchange}
+   */
+  private boolean awaitHostIdle() {
+    try {
+      while (!hostDone && !httpExchange.isHostIdle()) {
+        httpExchange.wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return httpExchange.isHostIdle();
+  }
+
+  /**
+   * Route the held back request, the responses of the current host are all read already, so its
+   * downstream thread only has to flush them.
+   */
+  private void switchHost() {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("<{}> switch host from <{}> to <{}>.", clientName, hostTarget,
+                   httpExchange.getPendingTarget());
+    }
+    hostRetired = true;
+    shutdownInput(host);
+    awaitDownstream();
+    Common.close(host, hostTarget.toString());
+    host = null;
+    synchronized (httpExchange) {
+      hostDone = false;
+      httpExchange.switchToPendingTarget(connectionBuffer.upstream());
+      hostTarget = httpExchange.getTarget();
+    }
+  }
+
+  /**
+   * Client < -- OS -- [Proxy <-- IS -- Host], runs on the downstream thread of the current host
+   */
+  private void copyDownstream() {
+    ChannelBuffer downstream = connectionBuffer.downstream();
+    try {
+      while (true) {
+        int numOfRead = onActive(SocketChannelUtils.readFromChannel(host, downstream));
+        if (-1 == numOfRead) {
+          /**
+           * a retired host keeps the client open for the next one
+           */
+          if (-1 != SocketChannelUtils.writeToChannel(client, downstream) && !hostRetired
+              && !isReadyToSwitchHost()) {
+            shutdownOutput(client);
+          }
+          return;
+        }
+        int writable = onDownstreamRead(numOfRead);
+        if (writable > 0) {
+          int numOfWritten =
+              onActive(SocketChannelUtils.writeToChannel(client, downstream, writable));
+          if (-1 == numOfWritten) {
+            /**
+             * error on output stream should always immediately terminate its corresponding input
+             * stream
+             */
+            shutdownInput(client);
+            return;
+          }
+          onDownstreamWritten(numOfWritten);
+        }
+      }
+    } finally {
+      if (null != httpExchange) {
+        synchronized (httpExchange) {
+          hostDone = true;
+          httpExchange.notifyAll();
+        }
+      }
+    }
+  }
+
+  private boolean isReadyToSwitchHost() {
+    if (null == httpExchange) {
+      return false;
+    }
+    synchronized (httpExchange) {
+      return null != httpExchange.getPendingTarget() && httpExchange.isHostIdle();
+    }
+  }
+
+  /**
+   * return the number of downstream bytes which may be sent to the client
+   */
+  private int onDownstreamRead(int numOfRead) {
+    ChannelBuffer downstream = connectionBuffer.downstream();
+    if (null == httpExchange) {
+      return downstream.size();
+    }
+    synchronized (httpExchange) {
+      httpExchange.onDownstreamRead(downstream, downstream.size() - numOfRead, downstream.size());
+      return httpExchange.getWritableDownstreamBytes(downstream.size());
+    }
+  }
+
+  private void onDownstreamWritten(int numOfWritten) {
+    if (null != httpExchange && numOfWritten > 0) {
+      synchronized (httpExchange) {
+        httpExchange.onDownstreamWritten(numOfWritten);
+        httpExchange.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * @return {@code numOfBytes}, recording the activity if it moved any
+   */
+  private int onActive(int numOfBytes) {
+    if (numOfBytes > 0) {
+      lastActiveAt = System.nanoTime();
+    }
+    return numOfBytes;
+  }
+
+  /**
+   * Shut the input of both sockets down once the connection moved no byte for {@code
+   * idleTimeout} ns, so both threads read the end of the stream and finish as usual. If it is
+   * still idle on the next call, a write is stuck on a peer which does not read, so close them.
+   */
+  void expireIfIdle(long now, long idleTimeout) {
+    if (now - lastActiveAt < idleTimeout) {
+      return;
+    }
+    SocketChannel currentHost = host;
+    if (isExpired) {
+      Common.close(client, clientName);
+      Common.close(currentHost);
+      return;
+    }
+    LOGGER.debug("<{}> passed its idle deadline, so close it.", clientName);
+    isExpired = true;
+    shutdownInput(client);
+    if (null != currentHost) {
+      shutdownInput(currentHost);
+    }
+  }
+
+  private void awaitDownstream() {
+    if (null == downstreamThread) {
+      return;
+    }
+    try {
+      downstreamThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    downstreamThread = null;
+  }
+
+  private static boolean writeFully(SocketChannel channel, byte[] bytes) {
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      return true;
+    } catch (IOException e) {
+      LOGGER.debug("Failed to write to <{}>, reason <{}>.",
+                   SocketChannelUtils.getName(channel), e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Wakes up a thread blocked reading the channel, which then reads the end of the stream
+   */
+  private static void shutdownInput(SocketChannel channel) {
+    try {
+      channel.shutdownInput();
+    } catch (IOException e) {
+      LOGGER.debug("cannot shutdown input of <{}>, reason <{}>.",
+                   SocketChannelUtils.getName(channel), e.getMessage());
+    }
+  }
+
+  private static void shutdownOutput(SocketChannel channel) {
+    try {
+      channel.shutdownOutput();
+    } catch (IOException e) {
+      LOGGER.debug("cannot shutdown output of <{}>, reason <{}>.",
+                   SocketChannelUtils.getName(channel), e.getMessage());
+    }
+  }
+}
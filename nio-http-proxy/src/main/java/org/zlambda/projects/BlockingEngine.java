@@ -0,0 +1,125 @@
+package org.zlambda.projects;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.zlambda.projects.context.SystemContext;
+import org.zlambda.projects.utils.Common;
+import org.zlambda.projects.utils.SocketChannelUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accepts client connections for the blocking engine and runs each of them as a {@link
+ * BlockingConnection} on a thread of its own, instead of handing them to the selector workers.
+ *
+ * Connection threads are virtual threads when the runtime has them (JDK 21+), so a blocked read
+ * only parks the thread, otherwise platform threads with a small stack.
+ *
+ * A reaper thread checks the live connections every second and expires those which moved no
+ * byte for {@code idleTimeout}, the other deadlines are only enforced by the nio engine.
+ */
+public class BlockingEngine extends Thread {
+  private static final Logger LOGGER = Common.getSystemLogger();
+  private static final long PLATFORM_THREAD_STACK_SIZE = 256 * 1024;
+  private final SystemContext systemContext;
+  private final ThreadFactory threadFactory;
+  private final Set<BlockingConnection> connections = ConcurrentHashMap.newKeySet();
+
+  public BlockingEngine(SystemContext systemContext) {
+    super(BlockingEngine.class.getSimpleName());
+    this.systemContext = systemContext;
+    this.threadFactory = createThreadFactory();
+  }
+
+  @Override
+  public void run() {
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress(systemContext.getPort()));
+      LOGGER.info("listen on port {}, waiting for client connection...", systemContext.getPort());
+      startReaper();
+      while (true) {
+        SocketChannel client = server.accept();
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug("connected with client. {}", SocketChannelUtils.getRemoteAddress(client));
+        }
+        try {
+          client.setOption(StandardSocketOptions.TCP_NODELAY, systemContext.isTcpNoDelay());
+          serve(new BlockingConnection(systemContext, threadFactory, client));
+        } catch (IOException | RuntimeException e) {
+          LOGGER.error("failed on connection", e);
+          Common.close(client);
+        }
+      }
+    } catch (Exception e) {
+      LOGGER.error("got exception <{}>, so terminate proxy.", e.getMessage(), e);
+    } finally {
+      System.exit(-1);
+    }
+  }
+
+  private void serve(BlockingConnection connection) {
+    connections.add(connection);
+    try {
+      threadFactory.newThread(() -> {
+        try {
+          connection.run();
+        } finally {
+          connections.remove(connection);
+        }
+      }).start();
+    } catch (RuntimeException e) {
+      connections.remove(connection);
+      throw e;
+    }
+  }
+
+  private void startReaper() {
+    if (0 == systemContext.getIdleTimeout()) {
+      return;
+    }
+    long idleTimeout = TimeUnit.SECONDS.toNanos(systemContext.getIdleTimeout());
+    Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("BlockingEngine-Reaper").setDaemon(true).build())
+        .scheduleWithFixedDelay(() -> {
+          long now = System.nanoTime();
+          for (BlockingConnection connection : connections) {
+            connection.expireIfIdle(now, idleTimeout);
+          }
+        }, 1, 1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Thread.ofVirtual() is looked up reflectively, the proxy still builds and runs on JDK 8
+   */
+  private static ThreadFactory createThreadFactory() {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class)
+          .invoke(builder, "Connection-", 0L);
+      ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+      LOGGER.info("connections run on virtual threads.");
+      return factory;
+    } catch (ReflectiveOperationException e) {
+      LOGGER.info("virtual threads are not available, so connections run on platform threads.");
+    }
+    AtomicLong numThreads = new AtomicLong(0);
+    return runnable -> {
+      Thread thread = new Thread(null, runnable, "Connection-" + numThreads.getAndIncrement(),
+                                 PLATFORM_THREAD_STACK_SIZE);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -2,23 +2,23 @@ package org.zlambda.projects;
 
 import org.slf4j.Logger;
 import org.zlambda.projects.buffer.ChannelBuffer;
+import org.zlambda.projects.cache.CachedResponse;
+import org.zlambda.projects.cache.ResponseCache;
 import org.zlambda.projects.context.ConnectionContext;
 import org.zlambda.projects.context.ProxyContext;
+import org.zlambda.projects.context.SystemContext;
+import org.zlambda.projects.http.HttpExchange;
 import org.zlambda.projects.utils.Common;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
-import java.nio.channels.UnresolvedAddressException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
-import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class ClientSocketChannelHandler implements EventHandler {
   private static final Logger LOGGER = Common.getSystemLogger();
@@ -31,8 +31,11 @@ public class ClientSocketChannelHandler implements EventHandler {
 
   @Override
   public void execute(SelectionKey selectionKey) {
+    HandlerState performed = state;
+    long startedAt = System.nanoTime();
     state = state.perform(context);
     context.cleanup();
+    context.onHandled("client", performed, System.nanoTime() - startedAt);
   }
 
   private enum HandlerState {
@@ -48,35 +51,85 @@ public class ClientSocketChannelHandler implements EventHandler {
           client.closeIO();
           return PARSING_INITIAL_REQUEST;
         }
-        Optional<List<String>> header =
-            parseInitialRequestHeader(upstreamBuffer.toViewInputStream());
-        if (!header.isPresent()) {
-          LOGGER.debug("<{}> cannot find header", client.getName());
-          return PARSING_INITIAL_REQUEST;
+        return parseInitialRequest(context);
+      }
+    },
+
+    /**
+     * Host name lookup is in flight, this state is re-entered by the worker once the lookup
+     * completes
+     */
+    RESOLVING {
+      @Override
+      public HandlerState perform(ProxyContext context) {
+        ConnectionContext client = context.getClient();
+        CompletableFuture<InetAddress> resolution = context.getHostResolution();
+        if (!resolution.isDone() || !client.isOpen()) {
+          return RESOLVING;
         }
-        LOGGER.info("got initial request line <{}>.", header.get().get(0));
-        Optional<RequestLine> requestLine = RequestLine.construct(header.get().get(0));
-        if (!requestLine.isPresent()) {
-          LOGGER.error("cannot parse request line, so close client socket channel <{}>",
-                       client.getName());
+        InetAddress address;
+        try {
+          address = resolution.join();
+        } catch (CompletionException e) {
+          LOGGER.error("cannot resolve address for <{}>, reason <{}>.",
+                       context.getHostName(), e.getCause().getMessage());
           client.closeIO();
-          return PARSING_INITIAL_REQUEST;
+          return RESOLVING;
+        }
+        if (!createHostAndRegisterChannel(
+            new InetSocketAddress(address, context.getHostPort()), context)) {
+          client.closeIO();
+          return RESOLVING;
         }
+        return BRIDGING;
+      }
+    },
+
+    /**
+     * Another connection fetches the response for the cache, this state is re-entered by the
+     * worker once it is done
+     */
+    WAITING_FOR_CACHE {
+      @Override
+      public HandlerState perform(ProxyContext context) {
+        CompletableFuture<CachedResponse> pending = context.getPendingResponse();
+        if (!pending.isDone() || !context.getClient().isOpen()) {
+          return WAITING_FOR_CACHE;
+        }
+        context.setPendingResponse(null);
+        CachedResponse response = pending.join();
         /**
-         * for https request, discard the initial request
+         * nothing was stored, so go to the origin without looking the cache up again
          */
-        if (requestLine.get().isHttps) {
-          upstreamBuffer.clear();
+        return null == response ? connectHost(context) : serveCachedResponse(context, response);
+      }
+    },
+
+    /**
+     * A cached response is written to the client, no host is involved
+     */
+    SERVING_CACHED_RESPONSE {
+      @Override
+      public HandlerState perform(ProxyContext context) {
+        ConnectionContext client = context.getClient();
+        ByteBuffer response = context.getCachedResponse();
+        int numOfWritten = client.write(response);
+        if (-1 == numOfWritten) {
+          client.closeIO();
+          return SERVING_CACHED_RESPONSE;
+        }
+        context.onCachedResponseWritten(numOfWritten);
+        if (response.hasRemaining()) {
+          return SERVING_CACHED_RESPONSE;
         }
-        if (!createHostAndRegisterChannel(requestLine.get(), context)) {
+        if (!context.finishCachedResponse()) {
           client.closeIO();
-          return PARSING_INITIAL_REQUEST;
+          return SERVING_CACHED_RESPONSE;
         }
-        /**
-         * Wait Host to be connected
-         */
-        client.unregister(SelectionKey.OP_READ);
-        return BRIDGING;
+        client.unregister(SelectionKey.OP_WRITE);
+        client.register(SelectionKey.OP_READ);
+        return context.getConnectionBuffer().upstream().empty() ?
+            PARSING_INITIAL_REQUEST : parseInitialRequest(context);
       }
     },
 
@@ -86,8 +139,19 @@ public class ClientSocketChannelHandler implements EventHandler {
     BRIDGING {
       @Override
       public HandlerState perform(ProxyContext context) {
+        if (context.isReadyToSwitchHost()) {
+          return switchHost(context);
+        }
+        CachedResponse revalidated = context.getRevalidatedResponse();
+        if (null != revalidated) {
+          return serveCachedResponse(context, revalidated);
+        }
         ConnectionContext host = context.getHost();
         ConnectionContext client = context.getClient();
+        if (context.releaseHostForNextRequest()) {
+          client.unregister(SelectionKey.OP_WRITE);
+          return PARSING_INITIAL_REQUEST.perform(context);
+        }
         /**
          * [Client -- IS --> Proxy] -- OS --> Host
          */
@@ -99,13 +163,49 @@ public class ClientSocketChannelHandler implements EventHandler {
             client.shutdownIS();
           } else {
             ChannelBuffer upstreamBuffer = context.getConnectionBuffer().upstream();
-            if (-1 == client.read(upstreamBuffer)) {
-              client.shutdownIS();
+            SystemContext systemContext = context.getSystemContext();
+            boolean isEndOfStream = false;
+            for (int round = 1, numOfBytes = 0; ; ++round) {
+              int numOfRead = client.read(upstreamBuffer);
+              if (-1 == numOfRead) {
+                /**
+                 * client is done, keep the host connection for the next client if possible
+                 */
+                if (context.releaseHostIfReusable()) {
+                  client.closeIO();
+                  return BRIDGING;
+                }
+                client.shutdownIS();
+                isEndOfStream = true;
+                break;
+              } else if (!context.onUpstreamRead()) {
+                LOGGER.error("cannot route request, so close client socket channel <{}>",
+                             client.getName());
+                client.closeIO();
+                host.closeIO();
+                return BRIDGING;
+              }
+              if (systemContext.isCutThrough() && !upstreamBuffer.empty()
+                  && !forwardUpstream(context)) {
+                break;
+              }
+              /**
+               * keep going until the client would block, or the budget of this event is spent
+               */
+              numOfBytes += numOfRead;
+              if (0 == numOfRead || round >= systemContext.getIoLoopMaxRounds()
+                  || numOfBytes >= systemContext.getIoLoopMaxBytes()
+                  || context.isReadyToSwitchHost()) {
+                break;
+              }
             }
             /**
-             * Read Event always trigger output stream to listen on write event
+             * Host output stream only listens on write event for what could not be forwarded yet,
+             * or to be shut down
              */
-            host.register(SelectionKey.OP_WRITE);
+            if (isEndOfStream || !upstreamBuffer.empty()) {
+              host.register(SelectionKey.OP_WRITE);
+            }
           }
         }
 
@@ -120,106 +220,191 @@ public class ClientSocketChannelHandler implements EventHandler {
                 host.getName(), client.getName());
             client.shutdownOS();
           } else {
-            if (downstreamBuffer.empty()) {
+            /**
+             * a partial response head is held back, unless the host is done
+             */
+            int writable = host.isInputShutdown() ?
+                downstreamBuffer.size() : context.getWritableDownstreamBytes();
+            if (0 == writable) {
               // keep cpu free
               client.unregister(SelectionKey.OP_WRITE);
-            } else if (-1 == client.write(downstreamBuffer)) {
-              client.shutdownOS();
-              /**
-               * error on output stream should always immediately terminate its corresponding input stream
-               */
-              host.shutdownIS();
+            } else {
+              int numOfWritten = client.write(downstreamBuffer, writable);
+              if (-1 == numOfWritten) {
+                client.shutdownOS();
+                /**
+                 * error on output stream should always immediately terminate its corresponding input stream
+                 */
+                host.shutdownIS();
+              } else {
+                context.onDownstreamWritten(numOfWritten);
+              }
             }
           }
         }
-        return BRIDGING;
+        return context.isReadyToSwitchHost() ? switchHost(context) : BRIDGING;
       }
     },;
 
-    private static Optional<List<String>>
-    parseInitialRequestHeader(InputStream inputStream) {
-      Scanner scanner = new Scanner(inputStream, "utf-8");
-      List<String> ret = new ArrayList<>();
-      while (scanner.hasNextLine()) {
-        String line = scanner.nextLine();
-        ret.add(line);
-        if (line.equals("")) {
-          break;
-        }
+    /**
+     * Route the first request of the upstream buffer, which may have been read along with the
+     * previous request
+     */
+    private static HandlerState parseInitialRequest(ProxyContext context) {
+      ConnectionContext client = context.getClient();
+      HttpExchange exchange = context.getHttpExchange();
+      if (!context.onUpstreamRead()) {
+        LOGGER.error("cannot parse request line, so close client socket channel <{}>",
+                     client.getName());
+        client.closeIO();
+        return PARSING_INITIAL_REQUEST;
+      }
+      if (null == exchange.getTarget()) {
+        LOGGER.debug("<{}> cannot find header", client.getName());
+        return PARSING_INITIAL_REQUEST;
       }
-      if (ret.isEmpty() || !ret.get(ret.size() - 1).equals("")) {
-        return Optional.empty();
-      } else {
-        return Optional.of(ret);
+      LOGGER.debug("got initial request line <{} {}>.", exchange.getMethod(), exchange.getUri());
+      context.onInitialRequestRead();
+      context.setHostTarget(exchange.getTarget());
+      /**
+       * for https request, discard the initial request
+       */
+      if ("CONNECT".equalsIgnoreCase(exchange.getMethod())) {
+        context.getConnectionBuffer().upstream().clear();
+        context.markAsHttps();
       }
+      return routeToHost(context);
     }
 
-    private static final Pattern PROTOCOL_MATCHER = Pattern.compile("^(https|http).*");
+    /**
+     * Every response of the current host has been received, so the request held back can be sent
+     * to its own origin.
+     */
+    private static HandlerState switchHost(ProxyContext context) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("<{}> switch host from <{}> to <{}>.", context.getClient().getName(),
+                     context.getHostTarget(), context.getHttpExchange().getPendingTarget());
+      }
+      context.switchHost();
+      return routeToHost(context);
+    }
 
-    private static boolean
-    createHostAndRegisterChannel(RequestLine line, ProxyContext context) {
-      String uri = line.uri;
+    /**
+     * Write what was just read to the host without waiting for its write event
+     *
+     * @return false if the host took nothing
+     */
+    private static boolean forwardUpstream(ProxyContext context) {
+      ConnectionContext client = context.getClient();
+      ConnectionContext host = context.getHost();
+      int routable = context.getRoutableUpstreamBytes();
+      if (0 == routable || !host.isConnected() || host.isOutputShutdown()) {
+        return false;
+      }
+      int numOfWritten = host.write(context.getConnectionBuffer().upstream(), routable);
+      if (-1 == numOfWritten) {
+        host.shutdownOS();
+        client.shutdownIS();
+        return false;
+      }
+      context.onUpstreamWritten(numOfWritten);
+      return numOfWritten > 0;
+    }
+
+    private static HandlerState routeToHost(ProxyContext context) {
+      if (!context.isHttps()) {
+        ResponseCache.Lookup lookup = context.lookupResponseCache();
+        if (null != lookup && null != lookup.getHit()) {
+          return serveCachedResponse(context, lookup.getHit());
+        }
+        if (null != lookup && null != lookup.getPending()) {
+          return waitForCache(context, lookup.getPending());
+        }
+      }
+      return connectHost(context);
+    }
+
+    private static HandlerState connectHost(ProxyContext context) {
+      ConnectionContext client = context.getClient();
+      if (!context.isHttps() && reusePooledHost(context)) {
+        return BRIDGING;
+      }
+      context.onConnectingHost();
+      context.setHostResolution(
+          context.getSystemContext().getResolver().resolve(context.getHostName()));
       /**
-       * Java URL cannot parse uri without protocol
+       * Wait Host to be resolved and connected
        */
-      if (line.isHttps && !PROTOCOL_MATCHER.matcher(uri).matches()) {
-        uri = "https://" + uri;
-        context.markAsHttps();
+      client.unregister(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+      if (!context.getHostResolution().isDone()) {
+        SelectionKey clientKey = client.getKey();
+        context.getHostResolution().whenComplete(
+            (address, e) -> context.getWorkerContext().execute(
+                () -> ((EventHandler) clientKey.attachment()).execute(clientKey)));
+        return RESOLVING;
+      }
+      return RESOLVING.perform(context);
+    }
+
+    private static HandlerState waitForCache(ProxyContext context,
+                                             CompletableFuture<CachedResponse> pending) {
+      ConnectionContext client = context.getClient();
+      context.setPendingResponse(pending);
+      client.unregister(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+      SelectionKey clientKey = client.getKey();
+      pending.whenComplete(
+          (response, e) -> context.getWorkerContext().execute(
+              () -> ((EventHandler) clientKey.attachment()).execute(clientKey)));
+      return WAITING_FOR_CACHE;
+    }
+
+    /**
+     * Write the response without waiting for a write event, the rest goes out on the following
+     * ones
+     */
+    private static HandlerState serveCachedResponse(ProxyContext context,
+                                                    CachedResponse response) {
+      ConnectionContext client = context.getClient();
+      context.serveCachedResponse(response);
+      client.unregister(SelectionKey.OP_READ);
+      client.register(SelectionKey.OP_WRITE);
+      return SERVING_CACHED_RESPONSE.perform(context);
+    }
+
+    private static boolean reusePooledHost(ProxyContext context) {
+      ConnectionContext host = context.getWorkerContext().getUpstreamPool().acquire(
+          context.getHostName(), context.getHostPort());
+      context.getWorkerContext().getMetrics().onPooledHostLookup(null != host);
+      if (null == host) {
+        return false;
       }
+      context.setHost(host);
+      host.getKey().attach(HostSocketChannelHandler.connected(context));
+      return true;
+    }
 
+    private static boolean
+    createHostAndRegisterChannel(InetSocketAddress inetSocketAddress, ProxyContext context) {
       SocketChannel hostSocketChannel = null;
       try {
-        InetSocketAddress inetSocketAddress = constructInetSocketAddress(new URL(uri));
         hostSocketChannel = SocketChannel.open();
         hostSocketChannel.configureBlocking(false);
+        hostSocketChannel.setOption(StandardSocketOptions.TCP_NODELAY,
+                                    context.getSystemContext().isTcpNoDelay());
         HostSocketChannelHandler handler = new HostSocketChannelHandler(context);
         SelectionKey hostKey = hostSocketChannel.register(
             context.selector(), SelectionKey.OP_CONNECT, handler);
         context.setHost(new ConnectionContext(hostKey, inetSocketAddress.toString()));
         hostSocketChannel.connect(inetSocketAddress);
         return true;
-      } catch (MalformedURLException e) {
-        LOGGER.error("cannot parse URL <{}>.", uri, e);
       } catch (IOException e) {
         LOGGER.error("cannot create or register host socket channel", e);
-      } catch (UnresolvedAddressException e) {
-        LOGGER.error("cannot resolve address for <{}>.", uri, e);
       }
       Common.close(hostSocketChannel);
       return false;
     }
 
-    private static InetSocketAddress constructInetSocketAddress(URL url) {
-      int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
-      return new InetSocketAddress(url.getHost(), port);
-    }
-
     abstract HandlerState perform(ProxyContext context);
-
-    /**
-     * Reference https://www.w3.org/Protocols/rfc2616/rfc2616-sec5.html
-     */
-    private static class RequestLine {
-      private static final Pattern CONNECT_MATCHER = Pattern.compile("^connect.*", Pattern.CASE_INSENSITIVE);
-      private static final Pattern SPLIT_MATCHER = Pattern.compile("\\s+");
-      private final String method;
-      private final String uri;
-      private final String version;
-      private final boolean isHttps;
-
-      private RequestLine(String method, String uri, String version) {
-        this.method = method;
-        this.uri = uri;
-        this.version = version;
-        this.isHttps = CONNECT_MATCHER.matcher(method).matches();
-      }
-
-      private static Optional<RequestLine> construct(String requestLine) {
-        String[] split = SPLIT_MATCHER.split(requestLine, 3);
-        return (3 == split.length) ? Optional.of(
-            new RequestLine(split[0], split[1], split[2])) : Optional.empty();
-      }
-    }
   }
 
 }
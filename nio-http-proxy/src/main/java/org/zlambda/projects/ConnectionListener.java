@@ -18,10 +18,12 @@ import java.util.Iterator;
 public class ConnectionListener extends Thread {
   private static final Logger LOGGER = Common.getSystemLogger();
   private final SystemContext systemContext;
+  private final WorkerGroup workerGroup;
 
-  public ConnectionListener(SystemContext systemContext) {
+  public ConnectionListener(SystemContext systemContext, WorkerGroup workerGroup) {
     super(ConnectionListener.class.getSimpleName());
     this.systemContext = systemContext;
+    this.workerGroup = workerGroup;
   }
 
   @Override
@@ -64,8 +66,14 @@ public class ConnectionListener extends Thread {
       }
       ServerSocketChannel server = SelectionKeyUtils.getServerSocketChannel(key);
       try {
+        /**
+         * while under memory pressure new clients wait in the listen backlog
+         */
+        workerGroup.awaitMemory();
         SocketChannel client = server.accept();
-        LOGGER.info("connected with client. {}", SocketChannelUtils.getRemoteAddress(client));
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug("connected with client. {}", SocketChannelUtils.getRemoteAddress(client));
+        }
         client.configureBlocking(false);
         try {
           systemContext.getClientQueue().put(client);
@@ -76,6 +84,9 @@ public class ConnectionListener extends Thread {
         }
       } catch (IOException e) {
         LOGGER.error("failed on connection", e);
+      } catch (InterruptedException e) {
+        LOGGER.error("got interrupted exception when waiting for memory.", e);
+        Thread.currentThread().interrupt();
       }
     }
   }
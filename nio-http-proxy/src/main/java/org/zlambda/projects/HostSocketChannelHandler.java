@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.zlambda.projects.buffer.ChannelBuffer;
 import org.zlambda.projects.context.ConnectionContext;
 import org.zlambda.projects.context.ProxyContext;
+import org.zlambda.projects.context.SystemContext;
 import org.zlambda.projects.utils.Common;
 
 import java.io.IOException;
@@ -19,10 +20,23 @@ public class HostSocketChannelHandler implements EventHandler {
     this.context = context;
   }
 
+  /**
+   * Create a handler for a host channel which is already connected, e.g. one taken from the
+   * upstream pool
+   */
+  public static HostSocketChannelHandler connected(ProxyContext context) {
+    HostSocketChannelHandler handler = new HostSocketChannelHandler(context);
+    handler.state = HandlerState.startBridging(context);
+    return handler;
+  }
+
   @Override
   public void execute(SelectionKey selectionKey) {
+    HandlerState performed = state;
+    long startedAt = System.nanoTime();
     state = state.perform(context);
     context.cleanup();
+    context.onHandled("host", performed, System.nanoTime() - startedAt);
   }
 
   private enum HandlerState {
@@ -44,14 +58,11 @@ public class HostSocketChannelHandler implements EventHandler {
           return WAIT_FOR_CONNECTION;
         }
         host.unregister(SelectionKey.OP_CONNECT);
-        host.register(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-        client.register(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
         if (context.isHttps()) {
           context.getConnectionBuffer().downstream().put(
               "HTTP/1.1 200 Connection Established\r\n\r\n".getBytes());
         }
-        MonitorSingleton.get().collectChannelPair(client, host);
-        return BRIDGING;
+        return startBridging(context);
       }
     },
     BRIDGING {
@@ -70,13 +81,36 @@ public class HostSocketChannelHandler implements EventHandler {
             host.shutdownIS();
           } else {
             ChannelBuffer downstream = context.getConnectionBuffer().downstream();
-            if (-1 == host.read(downstream)) {
-              host.shutdownIS();
+            SystemContext systemContext = context.getSystemContext();
+            boolean isEndOfStream = false;
+            for (int round = 1, numOfBytes = 0; ; ++round) {
+              int numOfRead = host.read(downstream);
+              if (-1 == numOfRead) {
+                host.shutdownIS();
+                isEndOfStream = true;
+                break;
+              }
+              context.onDownstreamRead(numOfRead);
+              if (systemContext.isCutThrough() && !downstream.empty()
+                  && !forwardDownstream(context)) {
+                break;
+              }
+              /**
+               * keep going until the host would block, or the budget of this event is spent
+               */
+              numOfBytes += numOfRead;
+              if (0 == numOfRead || round >= systemContext.getIoLoopMaxRounds()
+                  || numOfBytes >= systemContext.getIoLoopMaxBytes()) {
+                break;
+              }
             }
             /**
-             * Read Event always trigger output stream to listen on write event
+             * Client output stream only listens on write event for what could not be forwarded
+             * yet, or to be shut down
              */
-            client.register(SelectionKey.OP_WRITE);
+            if (isEndOfStream || !downstream.empty()) {
+              client.register(SelectionKey.OP_WRITE);
+            }
           }
         }
 
@@ -85,28 +119,71 @@ public class HostSocketChannelHandler implements EventHandler {
          */
         if (host.isWritable()) {
           ChannelBuffer upstream = context.getConnectionBuffer().upstream();
+          int routable = context.getRoutableUpstreamBytes();
           if (client.isInputShutdown() && upstream.empty()) {
             LOGGER.debug(
                 "Client channel <{}> input stream is closed and upstream buffer is empty, so close Host socket channel <{}> output stream",
                 client.getName(), host.getName());
             host.shutdownOS();
           } else {
-            if (upstream.empty()) {
-              // keep cpu free
+            if (0 == routable) {
+              // keep cpu free, bytes held back for another host wait for the host switch
               host.unregister(SelectionKey.OP_WRITE);
-            } else if (-1 == host.write(upstream)) {
-              host.shutdownOS();
-              /**
-               * error on output stream should always immediately terminate its corresponding input stream
-               */
-              client.shutdownIS();
+            } else {
+              int numOfWritten = host.write(upstream, routable);
+              if (-1 == numOfWritten) {
+                host.shutdownOS();
+                /**
+                 * error on output stream should always immediately terminate its corresponding input stream
+                 */
+                client.shutdownIS();
+              } else {
+                context.onUpstreamWritten(numOfWritten);
+              }
             }
           }
         }
+        /**
+         * the client handler performs the host switch, or serves the revalidated response
+         */
+        if (context.isReadyToSwitchHost() || null != context.getRevalidatedResponse()) {
+          client.register(SelectionKey.OP_WRITE);
+        }
         return BRIDGING;
       }
     },;
 
+    /**
+     * Write what was just read to the client without waiting for its write event
+     *
+     * @return false if the client took nothing
+     */
+    private static boolean forwardDownstream(ProxyContext context) {
+      ConnectionContext client = context.getClient();
+      ConnectionContext host = context.getHost();
+      int writable = context.getWritableDownstreamBytes();
+      if (0 == writable) {
+        return false;
+      }
+      int numOfWritten = client.write(context.getConnectionBuffer().downstream(), writable);
+      if (-1 == numOfWritten) {
+        client.shutdownOS();
+        host.shutdownIS();
+        return false;
+      }
+      context.onDownstreamWritten(numOfWritten);
+      return numOfWritten > 0;
+    }
+
+    private static HandlerState startBridging(ProxyContext context) {
+      ConnectionContext client = context.getClient();
+      ConnectionContext host = context.getHost();
+      host.register(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+      client.register(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+      context.onHostConnected();
+      return BRIDGING;
+    }
+
     abstract HandlerState perform(ProxyContext context);
   }
 
@@ -1,9 +1,14 @@
 package org.zlambda.projects;
 
 import org.slf4j.Logger;
+import org.zlambda.projects.buffer.SlabChannelBufferPool;
 import org.zlambda.projects.context.SystemContext;
 import org.zlambda.projects.utils.Common;
 
+/**
+ * Logs a snapshot of the metrics every {@code monitorUpdateInterval}, reading them never blocks
+ * the workers
+ */
 public class MonitorThread extends Thread {
   private static final Logger LOGGER = Common.getSystemLogger();
   private final SystemContext context;
@@ -22,10 +27,19 @@ public class MonitorThread extends Thread {
     while (true) {
       try {
         sleep(context.getMonitorUpdateInterval() * SECOND);
-        LOGGER.info("Monitor Stats\n{}", MonitorSingleton.get().dumpStats());
+        LOGGER.info("Monitor Stats\n{}", dumpStats());
       } catch (Exception e) {
         LOGGER.error("Debugger failed.", e);
       }
     }
   }
+
+  private String dumpStats() {
+    StringBuilder sb = new StringBuilder(context.getMetrics().snapshot().toString());
+    if (context.isUseSlabBuffer()) {
+      SlabChannelBufferPool bufferPool = (SlabChannelBufferPool) context.getBufferPool();
+      bufferPool.getAllocator().getSizeClasses().forEach(c -> sb.append(c).append('\n'));
+    }
+    return sb.toString();
+  }
 }
@@ -1,10 +1,18 @@
 package org.zlambda.projects;
 
 import org.slf4j.Logger;
+import org.zlambda.projects.admin.AdminServer;
+import org.zlambda.projects.buffer.SpliceChannelBuffer;
 import org.zlambda.projects.context.SystemContext;
+import org.zlambda.projects.context.WorkerContext;
+import org.zlambda.projects.resolver.NameService;
 import org.zlambda.projects.utils.Common;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -12,12 +20,22 @@ public class NIOHttpProxy {
   private static final Logger LOGGER = Common.getSystemLogger();
   private final SystemContext systemContext;
   private final List<Thread> failThenTerminateJVM;
+  /**
+   * null if disabled, its failure leaves the proxy running
+   */
+  private final AdminServer adminServer;
 
   public NIOHttpProxy() {
     systemContext = new SystemContext.Builder()
         .clientQueue(new LinkedBlockingQueue<>())
         .numWorkers(Integer.parseInt(System.getProperty("worker", "8")))
         .port(Integer.parseInt(System.getProperty("port", "9999")))
+        .adminPort(Integer.parseInt(System.getProperty("adminPort", "0"))) // 0 disables
+        .adminHost(System.getProperty("adminHost", "127.0.0.1")) // 0.0.0.0 for all interfaces
+        .engine(System.getProperty("engine", SystemContext.NIO_ENGINE))
+        .numAcceptors(Integer.parseInt(System.getProperty("acceptors", "0")))
+        .reusePort(Boolean.parseBoolean(System.getProperty("reusePort", "false")))
+        .workerSelection(System.getProperty("workerSelection", "leastConnections"))
         .enableMonitor(Boolean.parseBoolean(System.getProperty("enableMonitor", "true")))
         /**
          * Each proxy connection use 2 channelBufferS,
@@ -28,16 +46,77 @@ public class NIOHttpProxy {
         .maxBuffers(Integer.parseInt(System.getProperty("maxNumBuffers", "200")))
         .bufferSize(Integer.parseInt(System.getProperty("bufferSize", "10"))) // unit KB
         .useDirectBuffer(Boolean.parseBoolean(System.getProperty("useDirectBuffer", "true")))
+        .useSlabBuffer(Boolean.parseBoolean(System.getProperty("useSlabBuffer", "false")))
+        .slabMaxMemory(Integer.parseInt(System.getProperty("slabMaxMemory", "256"))) // unit MB
+        .lazyBuffers(Boolean.parseBoolean(System.getProperty("lazyBuffers", "true")))
+        .ringBuffer(Boolean.parseBoolean(System.getProperty("ringBuffer", "false")))
+        .ioLoopMaxRounds(Integer.parseInt(System.getProperty("ioLoopMaxRounds", "16")))
+        .ioLoopMaxBytes(Integer.parseInt(System.getProperty("ioLoopMaxBytes", "256"))) // unit KB
+        .cutThrough(Boolean.parseBoolean(System.getProperty("cutThrough", "true")))
+        .tcpNoDelay(Boolean.parseBoolean(System.getProperty("tcpNoDelay", "true")))
+        .spliceTunnels(Boolean.parseBoolean(System.getProperty("spliceTunnels", "false")))
+        .splicePipeSize(Integer.parseInt(System.getProperty("splicePipeSize", "256"))) // unit KB
+        .backpressure(Boolean.parseBoolean(System.getProperty("backpressure", "true")))
+        .lowWaterMark(Integer.parseInt(System.getProperty("lowWaterMark", "50"))) // percent of bufferSize
+        .maxInFlight(Integer.parseInt(System.getProperty("maxInFlight", "0"))) // unit MB
+        .workerMaxInFlight(Integer.parseInt(System.getProperty("workerMaxInFlight", "0"))) // unit MB
+        .localBufferCacheSize(Integer.parseInt(System.getProperty("localBufferCacheSize", "16"))) // per worker
         .monitorUpdateInterval(Integer.parseInt(System.getProperty("monitorUpdateInterval", "30"))) // second
+        .resolverThreads(Integer.parseInt(System.getProperty("resolverThreads", "4")))
+        .dnsCacheTtl(Integer.parseInt(System.getProperty("dnsCacheTtl", "60"))) // second
+        .dnsNegativeCacheTtl(Integer.parseInt(System.getProperty("dnsNegativeCacheTtl", "10"))) // second
+        .dnsCacheSize(Integer.parseInt(System.getProperty("dnsCacheSize", "10000")))
+        .nameService(NameService.create(System.getProperty("nameService", NameService.SYSTEM_NAME)))
+        .upstreamPoolMaxIdle(Integer.parseInt(System.getProperty("upstreamPoolMaxIdle", "8"))) // per host per worker
+        .upstreamPoolIdleTimeout(Integer.parseInt(System.getProperty("upstreamPoolIdleTimeout", "30"))) // second
+        .connectTimeout(Integer.parseInt(System.getProperty("connectTimeout", "10"))) // second
+        .headerReadTimeout(Integer.parseInt(System.getProperty("headerReadTimeout", "30"))) // second
+        .idleTimeout(Integer.parseInt(System.getProperty("idleTimeout", "300"))) // second
+        .maxConnectionLifetime(Integer.parseInt(System.getProperty("maxConnectionLifetime", "0"))) // second
+        .slowHandlerThreshold(Integer.parseInt(System.getProperty("slowHandlerThreshold", "50"))) // ms
+        .accessLogFile(System.getProperty("accessLogFile", "")) // empty disables
+        .accessLogRingSize(Integer.parseInt(System.getProperty("accessLogRingSize", "4096"))) // per worker
+        .cacheMaxMemory(Integer.parseInt(System.getProperty("cacheMaxMemory", "0"))) // MB, 0 disables the response cache
+        .cacheMaxEntrySize(Integer.parseInt(System.getProperty("cacheMaxEntrySize", "1024"))) // KB
         .build();
 
     LOGGER.info("current system settings:\n{}", systemContext);
-    MonitorSingleton.init(systemContext);
-    failThenTerminateJVM = Arrays.asList(
-        new ConnectionListener(systemContext),
-        new Dispatcher(systemContext),
-        new MonitorThread(systemContext)
-    );
+    if (systemContext.isSpliceTunnels() && !SpliceChannelBuffer.isAvailable()) {
+      LOGGER.warn("splice is not available, CONNECT tunnels use buffers.");
+    }
+    if (systemContext.isBlockingEngine() && !systemContext.getAccessLogFile().isEmpty()) {
+      LOGGER.warn("the blocking engine writes no access log, accessLogFile is ignored.");
+    }
+    if (systemContext.isUseSlabBuffer() && systemContext.isRingBuffer()) {
+      LOGGER.warn("the slab buffer pool has no ring buffers, ringBuffer is ignored.");
+    }
+    if (systemContext.isUseSlabBuffer() && null != System.getProperty("localBufferCacheSize")) {
+      LOGGER.warn("the slab buffer pool has no per worker cache, localBufferCacheSize is ignored.");
+    }
+    failThenTerminateJVM = new ArrayList<>();
+    Collection<WorkerContext> workers = Collections.emptyList();
+    if (systemContext.isBlockingEngine()) {
+      failThenTerminateJVM.add(new BlockingEngine(systemContext));
+    } else {
+      WorkerGroup workerGroup = new WorkerGroup(systemContext);
+      workers = workerGroup.getWorkers();
+      if (null != systemContext.getAccessLog()) {
+        failThenTerminateJVM.add(systemContext.getAccessLog());
+      }
+      if (0 == systemContext.getNumAcceptors()) {
+        failThenTerminateJVM.add(new ConnectionListener(systemContext, workerGroup));
+        failThenTerminateJVM.add(new Dispatcher(systemContext, workerGroup));
+      } else {
+        try {
+          failThenTerminateJVM.addAll(Acceptor.create(systemContext, workerGroup));
+        } catch (IOException e) {
+          throw new UncheckedIOException("failed to listen on port " + systemContext.getPort(), e);
+        }
+      }
+    }
+    failThenTerminateJVM.add(new MonitorThread(systemContext));
+    adminServer = 0 == systemContext.getAdminPort() ?
+        null : new AdminServer(systemContext, workers);
   }
 
   public static void main(String[] args) {
@@ -46,5 +125,8 @@ public class NIOHttpProxy {
 
   public void start() {
     failThenTerminateJVM.forEach(Thread::start);
+    if (null != adminServer) {
+      adminServer.start();
+    }
   }
 }
@@ -2,6 +2,8 @@ package org.zlambda.projects;
 
 import org.slf4j.Logger;
 import org.zlambda.projects.context.WorkerContext;
+import org.zlambda.projects.timer.TimingWheel;
+import org.zlambda.projects.upstream.UpstreamConnectionPool;
 import org.zlambda.projects.utils.Common;
 import org.zlambda.projects.utils.SelectionKeyUtils;
 
@@ -12,6 +14,10 @@ import java.util.Iterator;
 
 public class Worker implements Runnable {
   private static final Logger LOGGER = Common.getSystemLogger();
+  /**
+   * while idle host connections are pooled, wake up at least this often to expire them
+   */
+  private static final long POOL_EVICTION_INTERVAL = 1000; // ms
   private final WorkerContext context;
 
   public Worker(WorkerContext context) {
@@ -25,29 +31,48 @@ public class Worker implements Runnable {
       LOGGER.info("start worker <{}>.", context.getName());
       Selector selector = context.getSelector();
       while (true) {
-        int selected = selector.select();
-        synchronized (context.getWakeupBarrier()) {
+        UpstreamConnectionPool upstreamPool = context.getUpstreamPool();
+        TimingWheel timingWheel = context.getTimingWheel();
+        /**
+         * 0 blocks until an event, which is fine only if nothing waits for a timeout
+         */
+        long timeout = timingWheel.millisToNextTick();
+        if (0 != upstreamPool.size()) {
+          timeout = earliest(timeout, POOL_EVICTION_INTERVAL);
         }
-        context.setNumConnections(selector.keys().size());
-        if (0 == selected) {
-          continue;
+        /**
+         * while connections are paused, see whether the other workers drained
+         */
+        if (context.hasPausedConnections()) {
+          timeout = earliest(timeout, WorkerGroup.MEMORY_PRESSURE_INTERVAL);
         }
-        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
-        while (iterator.hasNext()) {
-          SelectionKey key = iterator.next();
-          if (!key.isValid()) {
-            LOGGER.error("got invalid key <{}>.", SelectionKeyUtils.getName(key));
-          } else {
-            ((EventHandler) key.attachment()).execute(key);
+        int selected = context.select(timeout);
+        long busySince = System.nanoTime();
+        context.getMetrics().onSelected(selected);
+        context.runPendingTasks();
+        upstreamPool.evictExpired();
+        if (0 != selected) {
+          Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+          while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            if (!key.isValid()) {
+              LOGGER.error("got invalid key <{}>.", SelectionKeyUtils.getName(key));
+            } else {
+              ((EventHandler) key.attachment()).execute(key);
+            }
+            iterator.remove();
           }
-          iterator.remove();
         }
+        /**
+         * after the events, so a connection closed on timeout leaves no selected key behind
+         */
+        timingWheel.advance();
+        context.updateMemoryPressure();
+        context.updateLoad(System.nanoTime() - busySince);
       }
     } catch (Exception e) {
       LOGGER.error("got unexpected error. so terminate worker <{}>", context.getName(), e);
-      synchronized (context.getContextSetMonitor()) {
-        context.getContextSet().remove(context);
-      }
+      context.getWorkers().remove(context);
       /**
        * close of selector will not immediate close the socket channel,
        * so we need to cleanup
@@ -59,4 +84,11 @@ public class Worker implements Runnable {
       Common.close(context.getSelector());
     }
   }
+
+  /**
+   * @param timeout of select, 0 if none
+   */
+  private static long earliest(long timeout, long interval) {
+    return 0 == timeout ? interval : Math.min(timeout, interval);
+  }
 }
@@ -0,0 +1,163 @@
+package org.zlambda.projects;
+
+import org.slf4j.Logger;
+import org.zlambda.projects.balancer.WorkerSelectionStrategy;
+import org.zlambda.projects.context.ConnectionContext;
+import org.zlambda.projects.context.ProxyContext;
+import org.zlambda.projects.context.SystemContext;
+import org.zlambda.projects.context.WorkerContext;
+import org.zlambda.projects.timer.TimingWheel;
+import org.zlambda.projects.upstream.UpstreamConnectionPool;
+import org.zlambda.projects.utils.Common;
+import org.zlambda.projects.utils.SelectionKeyUtils;
+import org.zlambda.projects.utils.SocketChannelUtils;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threadsafe Class
+ *
+ * The worker threads and how accepted client connections are spread over them. Workers are started
+ * lazily, one per new client connection until there are {@code numWorkers} of them, then each
+ * client goes to the worker picked by the {@link WorkerSelectionStrategy}.
+ */
+public class WorkerGroup {
+  private static final Logger LOGGER = Common.getSystemLogger();
+  /**
+   * a round of the timing wheel covers about 51 seconds, longer timeouts take several rounds
+   */
+  private static final long TIMER_TICK = 100; // ms
+  private static final int TIMER_SLOTS = 512;
+  /**
+   * how often the acceptors and the workers with paused connections check the memory pressure
+   */
+  static final long MEMORY_PRESSURE_INTERVAL = 10; // ms
+  private final SystemContext systemContext;
+  private final WorkerSelectionStrategy selectionStrategy;
+  /**
+   * Workers remove themselves when they terminate on an unexpected exception
+   */
+  private final List<WorkerContext> workers = new CopyOnWriteArrayList<>();
+  private final ExecutorService executorService;
+
+  public WorkerGroup(SystemContext systemContext) {
+    this.systemContext = systemContext;
+    this.selectionStrategy = WorkerSelectionStrategy.create(systemContext.getWorkerSelection());
+    this.executorService = Executors.newFixedThreadPool(systemContext.getNumWorkers());
+  }
+
+  private void createAndStartWorker() throws IOException {
+    WorkerContext context = new WorkerContext.Builder()
+        .selector(Selector.open())
+        .workers(workers)
+        .upstreamPool(new UpstreamConnectionPool(systemContext.getUpstreamPoolMaxIdle(),
+                                                 systemContext.getUpstreamPoolIdleTimeout()))
+        .timingWheel(new TimingWheel(TIMER_TICK, TIMER_SLOTS))
+        .metrics(systemContext.getMetrics().newWorkerMetrics())
+        .accessLog(null == systemContext.getAccessLog() ?
+                   null : systemContext.getAccessLog().newRing())
+        .maxInFlight(systemContext.getMaxInFlight())
+        .workerMaxInFlight(systemContext.getWorkerMaxInFlight())
+        .build();
+    workers.add(context);
+    executorService.submit(new Worker(context));
+  }
+
+  /**
+   * return a live view of the started workers
+   */
+  public Collection<WorkerContext> getWorkers() {
+    return Collections.unmodifiableList(workers);
+  }
+
+  /**
+   * Threadsafe. return true if the connections of all workers hold more bytes than allowed
+   */
+  public boolean isUnderMemoryPressure() {
+    return systemContext.getMaxInFlight() > 0
+           && WorkerContext.getInFlightBytes(workers) > systemContext.getMaxInFlight();
+  }
+
+  /**
+   * Block the calling acceptor while under memory pressure, so new connections wait in the listen
+   * backlog instead of taking more buffers
+   */
+  public void awaitMemory() throws InterruptedException {
+    while (isUnderMemoryPressure()) {
+      Thread.sleep(MEMORY_PRESSURE_INTERVAL);
+    }
+  }
+
+  /**
+   * return the worker picked by the configured {@link WorkerSelectionStrategy}
+   */
+  public WorkerContext select() throws IOException {
+    /**
+     * Only contended while the workers are started, selection itself is lock free
+     */
+    if (workers.size() < systemContext.getNumWorkers()) {
+      synchronized (this) {
+        if (workers.size() < systemContext.getNumWorkers()) {
+          createAndStartWorker();
+        }
+      }
+    }
+    WorkerContext[] candidates = workers.toArray(new WorkerContext[0]);
+    WorkerContext target = selectionStrategy.select(candidates);
+    if (LOGGER.isDebugEnabled()) {
+      List<String> activeChannelStats = new ArrayList<>();
+      for (WorkerContext ct : candidates) {
+        activeChannelStats.add(String.format("[%s:%d]", ct.getName(), ct.getNumConnections()));
+      }
+      /**
+       * approximate statds
+       */
+      LOGGER.debug("picked <{}>, stats <{}>", target.getName(), activeChannelStats);
+    }
+    return target;
+  }
+
+  /**
+   * Hand {@code client} over to a worker, which registers it with its selector on its own thread,
+   * so the caller never waits for the worker's select loop.
+   */
+  public void assign(SocketChannel client) throws IOException {
+    client.setOption(StandardSocketOptions.TCP_NODELAY, systemContext.isTcpNoDelay());
+    WorkerContext worker = select();
+    worker.onAssigned();
+    worker.execute(() -> register(client, worker));
+  }
+
+  /**
+   * Should only be called by the thread of {@code worker}
+   */
+  private void register(SocketChannel client, WorkerContext worker) {
+    worker.onRegistered();
+    try {
+      ProxyContext proxyContext = new ProxyContext(systemContext, worker);
+      SelectionKey key = client.register(
+          worker.getSelector(),
+          SelectionKey.OP_READ,
+          new ClientSocketChannelHandler(proxyContext));
+      proxyContext.setClient(new ConnectionContext(key, SelectionKeyUtils.getName(key)));
+      proxyContext.startTimeouts();
+      worker.getMetrics().onAccepted();
+    } catch (ClosedChannelException e) {
+      LOGGER.error("Failed to register socket channel <{}>, reason {}.",
+                   SocketChannelUtils.getRemoteAddress(client), e.getCause(), e);
+      Common.close(client);
+    }
+  }
+}
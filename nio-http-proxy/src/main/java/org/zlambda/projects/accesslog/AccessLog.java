@@ -0,0 +1,119 @@
+package org.zlambda.projects.accesslog;
+
+import org.slf4j.Logger;
+import org.zlambda.projects.utils.Common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the access log records of every worker to {@code accessLogFile}, one line per proxied
+ * connection.
+ *
+ * Each worker fills an {@link AccessLogRing} of its own, this thread drains them in batches and
+ * does the formatting and the file i/o, so closing a connection never waits on the disk. Records
+ * which do not fit in a full ring are dropped and counted by the worker. On JVM shutdown the rings
+ * are drained one last time and the file is forced to disk.
+ */
+public class AccessLog extends Thread {
+  private static final Logger LOGGER = Common.getSystemLogger();
+  private static final long FLUSH_INTERVAL = 10; // ms
+  private static final long SHUTDOWN_WAIT = TimeUnit.SECONDS.toMillis(1);
+  private final String file;
+  private final int ringSize;
+  private final List<AccessLogRing> rings = new CopyOnWriteArrayList<>();
+  /**
+   * the records drained in one round, written with a single write
+   */
+  private final StringBuilder batch = new StringBuilder(64 * 1024);
+  private volatile boolean isClosing = false;
+
+  /**
+   * @param ringSize records buffered per worker
+   */
+  public AccessLog(String file, int ringSize) {
+    super(AccessLog.class.getSimpleName());
+    setDaemon(true);
+    this.file = file;
+    this.ringSize = ringSize;
+  }
+
+  /**
+   * return the ring of a new worker, to be filled by the worker thread only
+   */
+  public AccessLogRing newRing() {
+    AccessLogRing ring = new AccessLogRing(ringSize);
+    rings.add(ring);
+    return ring;
+  }
+
+  @Override
+  public synchronized void start() {
+    super.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+  }
+
+  @Override
+  public void run() {
+    try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.APPEND)) {
+      LOGGER.info("access log goes to {}", file);
+      while (true) {
+        /**
+         * read before draining, so the last round takes what was published before the close
+         */
+        boolean isLastRound = isClosing;
+        int numOfRecords = 0;
+        for (AccessLogRing ring : rings) {
+          numOfRecords += ring.drain(this::append);
+        }
+        flush(channel);
+        if (isLastRound) {
+          channel.force(false);
+          return;
+        }
+        if (0 == numOfRecords) {
+          sleep(FLUSH_INTERVAL);
+        }
+      }
+    } catch (Exception e) {
+      LOGGER.error("access log <{}> failed, so stop writing it.", file, e);
+    }
+  }
+
+  /**
+   * Write the records published so far and stop, waiting at most {@link #SHUTDOWN_WAIT} for it
+   */
+  public void close() {
+    isClosing = true;
+    try {
+      join(SHUTDOWN_WAIT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void append(AccessLogRecord record) {
+    record.appendTo(batch);
+  }
+
+  private void flush(FileChannel channel) throws IOException {
+    if (0 == batch.length()) {
+      return;
+    }
+    ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(batch));
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+    batch.setLength(0);
+  }
+}
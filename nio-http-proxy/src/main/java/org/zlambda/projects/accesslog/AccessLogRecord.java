@@ -0,0 +1,141 @@
+package org.zlambda.projects.accesslog;
+
+import org.zlambda.projects.http.RequestTarget;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Not Threadsafe Class
+ *
+ * What one proxied connection did, a slot of an {@link AccessLogRing} reused for every record
+ * written through it, so logging a connection allocates nothing on the worker.
+ */
+public class AccessLogRecord {
+  public static final String HTTP = "HTTP";
+  public static final String CONNECT = "CONNECT";
+  private long closedAt;
+  private String client;
+  private String scheme;
+  private RequestTarget target;
+  private long upstreamBytes;
+  private long downstreamBytes;
+  /**
+   * in nanoseconds, -1 if not measured
+   */
+  private long connectTime;
+  private long timeToFirstByte;
+  private long duration;
+  private String closedBy;
+
+  AccessLogRecord() {
+  }
+
+  /**
+   * @param closedAt wall clock time in milliseconds
+   */
+  public void setClosedAt(long closedAt) {
+    this.closedAt = closedAt;
+  }
+
+  public void setClient(String client) {
+    this.client = client;
+  }
+
+  /**
+   * @param scheme {@link #HTTP} or {@link #CONNECT}
+   */
+  public void setScheme(String scheme) {
+    this.scheme = scheme;
+  }
+
+  /**
+   * @param target the last origin of the connection, null if none was routed to
+   */
+  public void setTarget(RequestTarget target) {
+    this.target = target;
+  }
+
+  /**
+   * @param upstreamBytes written to hosts
+   */
+  public void setUpstreamBytes(long upstreamBytes) {
+    this.upstreamBytes = upstreamBytes;
+  }
+
+  /**
+   * @param downstreamBytes written to the client
+   */
+  public void setDownstreamBytes(long downstreamBytes) {
+    this.downstreamBytes = downstreamBytes;
+  }
+
+  /**
+   * @param connectTime nanoseconds spent resolving and connecting hosts, -1 if none was connected
+   *                    by this connection
+   */
+  public void setConnectTime(long connectTime) {
+    this.connectTime = connectTime;
+  }
+
+  /**
+   * @param timeToFirstByte nanoseconds from the first byte written to a host until the first byte
+   *                        read from it, -1 if the host never answered
+   */
+  public void setTimeToFirstByte(long timeToFirstByte) {
+    this.timeToFirstByte = timeToFirstByte;
+  }
+
+  /**
+   * @param duration nanoseconds from accepting the client until closing the connection
+   */
+  public void setDuration(long duration) {
+    this.duration = duration;
+  }
+
+  /**
+   * @param closedBy the deadline which closed the connection, null if the peers did
+   */
+  public void setClosedBy(String closedBy) {
+    this.closedBy = closedBy;
+  }
+
+  /**
+   * Append the record as one line, space separated: time, client, scheme, target, upstream bytes,
+   * downstream bytes, connect time, time to first byte and duration in microseconds, and the
+   * deadline which closed it. Missing values are written as '-'.
+   */
+  void appendTo(StringBuilder sb) {
+    sb.append(Instant.ofEpochMilli(closedAt)).append(' ')
+        .append(client).append(' ')
+        .append(scheme).append(' ');
+    if (null == target) {
+      sb.append('-');
+    } else {
+      sb.append(target.getHostName()).append(':').append(target.getPort());
+    }
+    sb.append(' ').append(upstreamBytes).append(' ').append(downstreamBytes);
+    appendMicros(sb, connectTime);
+    appendMicros(sb, timeToFirstByte);
+    appendMicros(sb, duration);
+    sb.append(' ').append(null == closedBy ? "-" : closedBy).append('\n');
+  }
+
+  private static void appendMicros(StringBuilder sb, long nanos) {
+    sb.append(' ');
+    if (nanos < 0) {
+      sb.append('-');
+    } else {
+      sb.append(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+  }
+
+  /**
+   * Drop the references, so a drained slot keeps no connection state alive
+   */
+  void clear() {
+    client = null;
+    target = null;
+    closedBy = null;
+  }
+}
@@ -0,0 +1,76 @@
+package org.zlambda.projects.accesslog;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * Bounded single producer, single consumer queue of access log records: the worker owning it
+ * fills records, the {@link AccessLog} thread drains them.
+ *
+ * The records are allocated once and reused, and handing one over is an ordered write (lazySet)
+ * of a sequence, neither a lock nor a CAS. When the ring is full the worker drops the record
+ * rather than waiting for the disk.
+ */
+public class AccessLogRing {
+  private static final AtomicLongFieldUpdater<AccessLogRing> HEAD =
+      AtomicLongFieldUpdater.newUpdater(AccessLogRing.class, "head");
+  private static final AtomicLongFieldUpdater<AccessLogRing> TAIL =
+      AtomicLongFieldUpdater.newUpdater(AccessLogRing.class, "tail");
+  private final AccessLogRecord[] records;
+  private final int mask;
+  /**
+   * Sequence of the next record to publish, only written by the producer
+   */
+  private volatile long head = 0;
+  /**
+   * Sequence of the next record to drain, only written by the consumer
+   */
+  private volatile long tail = 0;
+
+  /**
+   * @param capacity rounded up to a power of 2
+   */
+  AccessLogRing(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.records = new AccessLogRecord[size];
+    this.mask = size - 1;
+    for (int i = 0; i < size; ++i) {
+      records[i] = new AccessLogRecord();
+    }
+  }
+
+  /**
+   * Should only be called by the producer, followed by {@link #publish()} once the record is
+   * filled
+   *
+   * @return the next free record, or null if the ring is full
+   */
+  public AccessLogRecord claim() {
+    return head - tail == records.length ? null : records[(int) (head & mask)];
+  }
+
+  /**
+   * Should only be called by the producer, hands the claimed record over to the consumer
+   */
+  public void publish() {
+    HEAD.lazySet(this, head + 1);
+  }
+
+  /**
+   * Should only be called by the consumer
+   *
+   * @return the number of records drained
+   */
+  int drain(Consumer<AccessLogRecord> consumer) {
+    long published = head;
+    long drained = tail;
+    for (; drained < published; ++drained) {
+      AccessLogRecord record = records[(int) (drained & mask)];
+      consumer.accept(record);
+      record.clear();
+    }
+    int numOfRecords = (int) (published - tail);
+    TAIL.lazySet(this, published);
+    return numOfRecords;
+  }
+}
@@ -0,0 +1,384 @@
+package org.zlambda.projects.admin;
+
+import org.slf4j.Logger;
+import org.zlambda.projects.buffer.SlabAllocator;
+import org.zlambda.projects.buffer.SlabChannelBufferPool;
+import org.zlambda.projects.cache.ResponseCache;
+import org.zlambda.projects.context.SystemContext;
+import org.zlambda.projects.context.WorkerContext;
+import org.zlambda.projects.metrics.MetricsSnapshot;
+import org.zlambda.projects.metrics.WorkerMetrics;
+import org.zlambda.projects.utils.Common;
+import org.zlambda.projects.utils.JsonUtils;
+import org.zlambda.projects.utils.SocketChannelUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the state of the proxy over plain HTTP on {@code adminHost}:{@code adminPort}, one request
+ * per connection:
+ *
+ * <ul>
+ * <li>/metrics: counters, gauges and histograms in the Prometheus text format</li>
+ * <li>/config: the system settings as JSON</li>
+ * <li>/workers: the load of each worker as JSON</li>
+ * <li>/buffers: the buffer pool as JSON</li>
+ * </ul>
+ *
+ * It runs on its own thread and selector, and only reads what the workers publish, so a scrape
+ * never adds latency to the worker loops. A failure stops the endpoint, not the proxy.
+ */
+public class AdminServer extends Thread {
+  private static final Logger LOGGER = Common.getSystemLogger();
+  private static final int MAX_REQUEST_SIZE = 8 * 1024;
+  private static final String JSON = "application/json; charset=utf-8";
+  private final SystemContext systemContext;
+  /**
+   * Threadsafe, empty for the blocking engine
+   */
+  private final Collection<WorkerContext> workers;
+
+  public AdminServer(SystemContext systemContext, Collection<WorkerContext> workers) {
+    super(AdminServer.class.getSimpleName());
+    this.systemContext = systemContext;
+    this.workers = workers;
+  }
+
+  @Override
+  public void run() {
+    try (Selector selector = Selector.open();
+         ServerSocketChannel server = ServerSocketChannel.open()) {
+      try {
+        serve(selector, server);
+      } finally {
+        /**
+         * closing the selector leaves the admin connections open
+         */
+        for (SelectionKey key : selector.keys()) {
+          Common.close(key.channel());
+        }
+      }
+    } catch (Exception e) {
+      LOGGER.error("got exception <{}>, so stop the admin endpoint, the proxy keeps running.",
+                   e.getMessage(), e);
+    }
+  }
+
+  private void serve(Selector selector, ServerSocketChannel server) throws IOException {
+    server.bind(new InetSocketAddress(systemContext.getAdminHost(), systemContext.getAdminPort()));
+    server.configureBlocking(false);
+    server.register(selector, SelectionKey.OP_ACCEPT);
+    LOGGER.info("admin endpoint listens on {}:{}", systemContext.getAdminHost(),
+                systemContext.getAdminPort());
+    while (true) {
+      selector.select();
+      Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+      while (iterator.hasNext()) {
+        SelectionKey key = iterator.next();
+        iterator.remove();
+        if (key.isAcceptable()) {
+          accept(server, selector);
+        } else {
+          handle(key);
+        }
+      }
+    }
+  }
+
+  private static void accept(ServerSocketChannel server, Selector selector) throws IOException {
+    SocketChannel client;
+    while (null != (client = server.accept())) {
+      try {
+        client.configureBlocking(false);
+        client.register(selector, SelectionKey.OP_READ, new Exchange());
+      } catch (IOException e) {
+        LOGGER.error("failed on admin connection", e);
+        Common.close(client);
+      }
+    }
+  }
+
+  private void handle(SelectionKey key) {
+    SocketChannel channel = (SocketChannel) key.channel();
+    Exchange exchange = (Exchange) key.attachment();
+    try {
+      if (key.isReadable()) {
+        if (-1 == channel.read(exchange.request)) {
+          Common.close(channel);
+          return;
+        }
+        String head = exchange.head();
+        if (null == head) {
+          if (!exchange.request.hasRemaining()) {
+            exchange.respond(431, "text/plain", "request head too large\n");
+            key.interestOps(SelectionKey.OP_WRITE);
+          }
+          return;
+        }
+        route(exchange, head);
+        key.interestOps(SelectionKey.OP_WRITE);
+      }
+      if (key.isValid() && key.isWritable()) {
+        channel.write(exchange.response);
+        if (!exchange.response.hasRemaining()) {
+          Common.close(channel);
+        }
+      }
+    } catch (Exception e) {
+      LOGGER.debug("admin connection <{}> failed, reason <{}>.",
+                   SocketChannelUtils.getName(channel), e.getMessage());
+      Common.close(channel);
+    }
+  }
+
+  private void route(Exchange exchange, String head) throws Exception {
+    String[] requestLine = head.substring(0, head.indexOf("\r\n")).split(" ");
+    if (requestLine.length < 2 || !"GET".equals(requestLine[0])) {
+      exchange.respond(405, "text/plain", "only GET is supported\n");
+      return;
+    }
+    String path = requestLine[1];
+    int query = path.indexOf('?');
+    switch (query < 0 ? path : path.substring(0, query)) {
+      case "/metrics":
+        exchange.respond(200, PrometheusWriter.CONTENT_TYPE, metrics());
+        break;
+      case "/config":
+        exchange.respond(200, JSON, systemContext.toString());
+        break;
+      case "/workers":
+        exchange.respond(200, JSON, JsonUtils.serialize(workerLoads()));
+        break;
+      case "/buffers":
+        exchange.respond(200, JSON, JsonUtils.serialize(bufferPoolState()));
+        break;
+      default:
+        exchange.respond(404, "text/plain", "try /metrics, /config, /workers or /buffers\n");
+    }
+  }
+
+  private String metrics() {
+    MetricsSnapshot snapshot = systemContext.getMetrics().snapshot();
+    List<WorkerMetrics.Snapshot> perWorker = snapshot.getWorkers();
+    PrometheusWriter writer = new PrometheusWriter();
+    writer.declare("nioproxy_connections_accepted_total", "counter",
+                   "Client connections accepted.");
+    perWorker.forEach(w -> writer.sample("nioproxy_connections_accepted_total",
+                                         w.getAcceptedConnections(), "worker", w.getName()));
+    writer.declare("nioproxy_connections_active", "gauge", "Client connections open.");
+    perWorker.forEach(w -> writer.sample("nioproxy_connections_active",
+                                         w.getActiveConnections(), "worker", w.getName()));
+    writer.declare("nioproxy_upstream_bytes_total", "counter", "Bytes written to hosts.");
+    perWorker.forEach(w -> writer.sample("nioproxy_upstream_bytes_total",
+                                         w.getUpstreamBytes(), "worker", w.getName()));
+    writer.declare("nioproxy_downstream_bytes_total", "counter", "Bytes written to clients.");
+    perWorker.forEach(w -> writer.sample("nioproxy_downstream_bytes_total",
+                                         w.getDownstreamBytes(), "worker", w.getName()));
+    writer.declare("nioproxy_pooled_host_hits_total", "counter",
+                   "Requests served by a pooled host connection.");
+    perWorker.forEach(w -> writer.sample("nioproxy_pooled_host_hits_total",
+                                         w.getPooledHostHits(), "worker", w.getName()));
+    writer.declare("nioproxy_pooled_host_misses_total", "counter",
+                   "Requests which found no pooled host connection.");
+    perWorker.forEach(w -> writer.sample("nioproxy_pooled_host_misses_total",
+                                         w.getPooledHostMisses(), "worker", w.getName()));
+    writer.declare("nioproxy_pooled_hosts_idle", "gauge", "Idle pooled host connections.");
+    perWorker.forEach(w -> writer.sample("nioproxy_pooled_hosts_idle",
+                                         w.getIdlePooledHosts(), "worker", w.getName()));
+    writer.declare("nioproxy_connect_latency_seconds", "histogram",
+                   "Time to resolve and connect a host.");
+    perWorker.forEach(w -> writer.latency("nioproxy_connect_latency_seconds",
+                                          w.getConnectLatency(), "worker", w.getName()));
+    writer.declare("nioproxy_header_read_seconds", "histogram",
+                   "Time from accepting a client until its initial request head is read.");
+    perWorker.forEach(w -> writer.latency("nioproxy_header_read_seconds",
+                                          w.getHeaderReadTime(), "worker", w.getName()));
+    writer.declare("nioproxy_event_loop_lag_seconds", "histogram",
+                   "Time a task handed to a worker waits until it runs.");
+    perWorker.forEach(w -> writer.latency("nioproxy_event_loop_lag_seconds",
+                                          w.getEventLoopLag(), "worker", w.getName()));
+    writer.declare("nioproxy_loop_time_seconds", "histogram",
+                   "Time a select loop iteration spends on what it selected.");
+    perWorker.forEach(w -> writer.latency("nioproxy_loop_time_seconds",
+                                          w.getLoopTime(), "worker", w.getName()));
+    writer.declare("nioproxy_ready_keys", "histogram", "Keys ready per select.");
+    perWorker.forEach(w -> writer.histogram("nioproxy_ready_keys", w.getReadyKeys(),
+                                            PrometheusWriter.COUNT_BUCKETS, 1,
+                                            "worker", w.getName()));
+    writer.declare("nioproxy_handler_seconds", "histogram",
+                   "Time spent on an event, by handler and its state.");
+    perWorker.forEach(w -> w.getHandlerTimes().forEach((handler, states) -> states.forEach(
+        (state, time) -> writer.latency("nioproxy_handler_seconds", time, "worker",
+                                        w.getName(), "handler", handler, "state", state))));
+    writer.declare("nioproxy_slow_events_total", "counter",
+                   "Events which took longer than slowHandlerThreshold.");
+    perWorker.forEach(w -> writer.sample("nioproxy_slow_events_total", w.getSlowHandlers(),
+                                         "worker", w.getName()));
+    writer.declare("nioproxy_access_log_dropped_total", "counter",
+                   "Access log records dropped because the worker's ring was full.");
+    perWorker.forEach(w -> writer.sample("nioproxy_access_log_dropped_total",
+                                         w.getDroppedAccessLogs(), "worker", w.getName()));
+    writer.declare("nioproxy_cache_hits_total", "counter",
+                   "Requests answered by a fresh cached response.");
+    perWorker.forEach(w -> writer.sample("nioproxy_cache_hits_total", w.getCacheHits(),
+                                         "worker", w.getName()));
+    writer.declare("nioproxy_cache_misses_total", "counter",
+                   "Requests which fetched or revalidated a response for the cache.");
+    perWorker.forEach(w -> writer.sample("nioproxy_cache_misses_total", w.getCacheMisses(),
+                                         "worker", w.getName()));
+    writer.declare("nioproxy_cache_coalesced_total", "counter",
+                   "Requests which waited for the fetch of another request.");
+    perWorker.forEach(w -> writer.sample("nioproxy_cache_coalesced_total",
+                                         w.getCacheCoalesced(), "worker", w.getName()));
+    writer.declare("nioproxy_cache_revalidated_total", "counter",
+                   "Stale responses served after the origin answered 304.");
+    perWorker.forEach(w -> writer.sample("nioproxy_cache_revalidated_total",
+                                         w.getCacheRevalidated(), "worker", w.getName()));
+
+    writer.declare("nioproxy_worker_connections", "gauge",
+                   "Channels registered with the worker, plus clients handed over.");
+    workers.forEach(w -> writer.sample("nioproxy_worker_connections", w.getNumConnections(),
+                                       "worker", w.getName()));
+    writer.declare("nioproxy_worker_loop_latency_seconds", "gauge",
+                   "Moving average of the time spent on the events of one select.");
+    workers.forEach(w -> writer.sample("nioproxy_worker_loop_latency_seconds",
+                                       w.getLoopLatency() / 1e9, "worker", w.getName()));
+    writer.declare("nioproxy_worker_transfer_rate_bytes", "gauge",
+                   "Moving average of the bytes forwarded per second.");
+    workers.forEach(w -> writer.sample("nioproxy_worker_transfer_rate_bytes",
+                                       w.getTransferRate(), "worker", w.getName()));
+    writer.declare("nioproxy_worker_in_flight_bytes", "gauge",
+                   "Bytes held in the connection buffers of the worker.");
+    workers.forEach(w -> writer.sample("nioproxy_worker_in_flight_bytes",
+                                       w.getInFlightBytes(), "worker", w.getName()));
+
+    ResponseCache responseCache = systemContext.getResponseCache();
+    if (null != responseCache) {
+      writer.declare("nioproxy_cache_entries", "gauge", "Responses in the response cache.");
+      writer.sample("nioproxy_cache_entries", responseCache.size());
+      writer.declare("nioproxy_cache_bytes", "gauge", "Off-heap memory of the cached responses.");
+      writer.sample("nioproxy_cache_bytes", responseCache.getUsedMemory());
+    }
+
+    writer.declare("nioproxy_buffers_used", "gauge", "Buffers taken and not released.");
+    writer.sample("nioproxy_buffers_used", snapshot.getUsedBuffers());
+    writer.declare("nioproxy_buffers_allocated", "gauge", "Buffers allocated by the pool.");
+    writer.sample("nioproxy_buffers_allocated", systemContext.getBufferPool().size());
+    if (systemContext.isUseSlabBuffer()) {
+      SlabAllocator allocator =
+          ((SlabChannelBufferPool) systemContext.getBufferPool()).getAllocator();
+      writer.declare("nioproxy_slab_reserved_bytes", "gauge", "Off-heap memory of the slabs.");
+      writer.sample("nioproxy_slab_reserved_bytes", allocator.getReservedMemory());
+      writer.declare("nioproxy_slab_chunks", "gauge", "Chunks carved, per size class.");
+      allocator.getSizeClasses().forEach(c -> writer.sample(
+          "nioproxy_slab_chunks", c.getNumChunks(), "chunk_size",
+          String.valueOf(c.getChunkSize())));
+      writer.declare("nioproxy_slab_used_chunks", "gauge", "Chunks in use, per size class.");
+      allocator.getSizeClasses().forEach(c -> writer.sample(
+          "nioproxy_slab_used_chunks", c.getNumUsedChunks(), "chunk_size",
+          String.valueOf(c.getChunkSize())));
+    }
+    return writer.toString();
+  }
+
+  private List<Map<String, Object>> workerLoads() {
+    List<Map<String, Object>> loads = new ArrayList<>();
+    for (WorkerContext worker : workers) {
+      Map<String, Object> load = new LinkedHashMap<>();
+      load.put("name", worker.getName());
+      load.put("connections", worker.getNumConnections());
+      load.put("loopLatencyNanos", worker.getLoopLatency());
+      load.put("transferRate", worker.getTransferRate());
+      load.put("inFlightBytes", worker.getInFlightBytes());
+      WorkerMetrics.Snapshot metrics = worker.getMetrics().snapshot();
+      load.put("loopTimeP99Nanos", metrics.getLoopTime().getPercentile(99));
+      load.put("readyKeysP99", metrics.getReadyKeys().getPercentile(99));
+      load.put("eventLoopLagP99Nanos", metrics.getEventLoopLag().getPercentile(99));
+      load.put("slowEvents", metrics.getSlowHandlers());
+      load.put("lastSlowEvent", metrics.getLastSlowHandler());
+      loads.add(load);
+    }
+    return loads;
+  }
+
+  private Map<String, Object> bufferPoolState() {
+    Map<String, Object> state = new LinkedHashMap<>();
+    state.put("type", systemContext.getBufferPool().getClass().getSimpleName());
+    state.put("allocated", systemContext.getBufferPool().size());
+    state.put("used", systemContext.getBufferPool().numUsedBuffers());
+    if (systemContext.isUseSlabBuffer()) {
+      SlabAllocator allocator =
+          ((SlabChannelBufferPool) systemContext.getBufferPool()).getAllocator();
+      state.put("reservedMemory", allocator.getReservedMemory());
+      List<Map<String, Object>> sizeClasses = new ArrayList<>();
+      for (SlabAllocator.SizeClass sizeClass : allocator.getSizeClasses()) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("chunkSize", sizeClass.getChunkSize());
+        entry.put("slabs", sizeClass.getNumSlabs());
+        entry.put("chunks", sizeClass.getNumChunks());
+        entry.put("usedChunks", sizeClass.getNumUsedChunks());
+        entry.put("exhausted", sizeClass.getNumExhausted());
+        sizeClasses.add(entry);
+      }
+      state.put("sizeClasses", sizeClasses);
+    }
+    return state;
+  }
+
+  /**
+   * Not Threadsafe Class, one request and its response
+   */
+  private static class Exchange {
+    private final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+    private ByteBuffer response;
+
+    /**
+     * return the request head once complete, otherwise null
+     */
+    private String head() {
+      String received = new String(request.array(), 0, request.position(),
+                                   StandardCharsets.ISO_8859_1);
+      int end = received.indexOf("\r\n\r\n");
+      return end < 0 ? null : received.substring(0, end + 2);
+    }
+
+    private void respond(int status, String contentType, String body) {
+      byte[] content = body.getBytes(StandardCharsets.UTF_8);
+      String head = "HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+                    + "Content-Type: " + contentType + "\r\n"
+                    + "Content-Length: " + content.length + "\r\n"
+                    + "Connection: close\r\n\r\n";
+      byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+      response = ByteBuffer.allocate(headBytes.length + content.length);
+      response.put(headBytes).put(content).flip();
+    }
+
+    private static String reason(int status) {
+      switch (status) {
+        case 200:
+          return "OK";
+        case 404:
+          return "Not Found";
+        case 405:
+          return "Method Not Allowed";
+        case 431:
+          return "Request Header Fields Too Large";
+        default:
+          return "Unknown";
+      }
+    }
+  }
+}
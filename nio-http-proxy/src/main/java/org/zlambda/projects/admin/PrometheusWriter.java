@@ -0,0 +1,106 @@
+package org.zlambda.projects.admin;
+
+import org.zlambda.projects.metrics.Histogram;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Not Threadsafe Class
+ *
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4). Every metric family is
+ * declared once with {@link #declare}, then followed by its samples.
+ */
+class PrometheusWriter {
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  /**
+   * in seconds, the buckets of the recorded histograms are folded into these
+   */
+  private static final double[] LATENCY_BUCKETS = {
+      0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5,
+      10};
+  static final double[] COUNT_BUCKETS = {0, 1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024};
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private final StringBuilder sb = new StringBuilder();
+
+  /**
+   * @param type counter, gauge or histogram
+   */
+  PrometheusWriter declare(String name, String type, String help) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    return this;
+  }
+
+  /**
+   * @param labels pairs of label name and value, may be empty
+   */
+  PrometheusWriter sample(String name, double value, String... labels) {
+    sb.append(name);
+    appendLabels(labels, null);
+    sb.append(' ').append(format(value)).append('\n');
+    return this;
+  }
+
+  /**
+   * @param nanos histogram of durations in nanoseconds, written in seconds
+   */
+  PrometheusWriter latency(String name, Histogram.Snapshot nanos, String... labels) {
+    return histogram(name, nanos, LATENCY_BUCKETS, NANOS_PER_SECOND, labels);
+  }
+
+  /**
+   * @param buckets upper bounds, in units of {@code unit} recorded values
+   */
+  PrometheusWriter histogram(String name, Histogram.Snapshot histogram, double[] buckets,
+                             double unit, String... labels) {
+    for (double bucket : buckets) {
+      sb.append(name).append("_bucket");
+      appendLabels(labels, format(bucket));
+      sb.append(' ').append(histogram.getCountAtOrBelow((long) (bucket * unit))).append('\n');
+    }
+    sb.append(name).append("_bucket");
+    appendLabels(labels, "+Inf");
+    sb.append(' ').append(histogram.getCount()).append('\n');
+    sb.append(name).append("_sum");
+    appendLabels(labels, null);
+    sb.append(' ').append(format(histogram.getSum() / unit)).append('\n');
+    sb.append(name).append("_count");
+    appendLabels(labels, null);
+    sb.append(' ').append(histogram.getCount()).append('\n');
+    return this;
+  }
+
+  private void appendLabels(String[] labels, String le) {
+    if (0 == labels.length && null == le) {
+      return;
+    }
+    sb.append('{');
+    for (int i = 0; i + 1 < labels.length; i += 2) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+    }
+    if (null != le) {
+      sb.append(labels.length > 0 ? "," : "").append("le=\"").append(le).append('"');
+    }
+    sb.append('}');
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static String format(double value) {
+    if (value == Math.rint(value) && !Double.isInfinite(value)) {
+      return Long.toString((long) value);
+    }
+    return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+  }
+
+  @Override
+  public String toString() {
+    return sb.toString();
+  }
+}
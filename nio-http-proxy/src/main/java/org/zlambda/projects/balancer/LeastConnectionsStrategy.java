@@ -0,0 +1,24 @@
+package org.zlambda.projects.balancer;
+
+import org.zlambda.projects.context.WorkerContext;
+
+/**
+ * Threadsafe Class
+ *
+ * The worker with the least connections, the first one on ties
+ */
+public class LeastConnectionsStrategy implements WorkerSelectionStrategy {
+  @Override
+  public WorkerContext select(WorkerContext[] workers) {
+    WorkerContext target = workers[0];
+    int minNumConnections = target.getNumConnections();
+    for (int i = 1; i < workers.length; ++i) {
+      int num = workers[i].getNumConnections();
+      if (num < minNumConnections) {
+        minNumConnections = num;
+        target = workers[i];
+      }
+    }
+    return target;
+  }
+}
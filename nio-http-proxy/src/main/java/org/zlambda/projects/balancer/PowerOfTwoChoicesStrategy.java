@@ -0,0 +1,28 @@
+package org.zlambda.projects.balancer;
+
+import org.zlambda.projects.context.WorkerContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Threadsafe Class
+ *
+ * The less loaded of two workers picked at random. Unlike always picking the least loaded worker,
+ * concurrent acceptors working from the same slightly stale counts do not all pile onto one worker.
+ */
+public class PowerOfTwoChoicesStrategy implements WorkerSelectionStrategy {
+  @Override
+  public WorkerContext select(WorkerContext[] workers) {
+    if (1 == workers.length) {
+      return workers[0];
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(workers.length);
+    int second = random.nextInt(workers.length - 1);
+    if (second >= first) {
+      ++second;
+    }
+    return workers[first].getNumConnections() <= workers[second].getNumConnections() ?
+        workers[first] : workers[second];
+  }
+}
@@ -0,0 +1,19 @@
+package org.zlambda.projects.balancer;
+
+import org.zlambda.projects.context.WorkerContext;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threadsafe Class
+ *
+ * Each worker in turn, regardless of its load
+ */
+public class RoundRobinStrategy implements WorkerSelectionStrategy {
+  private final AtomicInteger next = new AtomicInteger(0);
+
+  @Override
+  public WorkerContext select(WorkerContext[] workers) {
+    return workers[Math.floorMod(next.getAndIncrement(), workers.length)];
+  }
+}
@@ -0,0 +1,46 @@
+package org.zlambda.projects.balancer;
+
+import org.zlambda.projects.context.WorkerContext;
+
+/**
+ * Threadsafe Class
+ *
+ * The worker with the least combined load. Connections, bytes forwarded per second and event loop
+ * latency each count as the worker's share of the group total, so a worker streaming a few large
+ * tunnels looks as loaded as one serving many small requests.
+ */
+public class WeightedStrategy implements WorkerSelectionStrategy {
+  @Override
+  public WorkerContext select(WorkerContext[] workers) {
+    long[] connections = new long[workers.length];
+    long[] transferRates = new long[workers.length];
+    long[] loopLatencies = new long[workers.length];
+    long totalConnections = 0;
+    long totalTransferRate = 0;
+    long totalLoopLatency = 0;
+    for (int i = 0; i < workers.length; ++i) {
+      connections[i] = workers[i].getNumConnections();
+      transferRates[i] = workers[i].getTransferRate();
+      loopLatencies[i] = workers[i].getLoopLatency();
+      totalConnections += connections[i];
+      totalTransferRate += transferRates[i];
+      totalLoopLatency += loopLatencies[i];
+    }
+    WorkerContext target = workers[0];
+    double minLoad = Double.MAX_VALUE;
+    for (int i = 0; i < workers.length; ++i) {
+      double load = share(connections[i], totalConnections)
+                    + share(transferRates[i], totalTransferRate)
+                    + share(loopLatencies[i], totalLoopLatency);
+      if (load < minLoad) {
+        minLoad = load;
+        target = workers[i];
+      }
+    }
+    return target;
+  }
+
+  private static double share(long value, long total) {
+    return 0 == total ? 0 : (double) value / total;
+  }
+}
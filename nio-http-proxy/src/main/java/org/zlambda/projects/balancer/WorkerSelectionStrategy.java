@@ -0,0 +1,45 @@
+package org.zlambda.projects.balancer;
+
+import org.zlambda.projects.context.WorkerContext;
+
+/**
+ * Picks the worker a new client connection is handed to. Implementations must be threadsafe, as
+ * several acceptors may select concurrently, and should not block.
+ *
+ * Besides the built in strategies, any implementation with a public no-argument constructor can be
+ * configured by its class name.
+ */
+public interface WorkerSelectionStrategy {
+  String LEAST_CONNECTIONS = "leastConnections";
+  String ROUND_ROBIN = "roundRobin";
+  String POWER_OF_TWO_CHOICES = "powerOfTwoChoices";
+  String WEIGHTED = "weighted";
+
+  /**
+   * @param workers the running workers, never empty
+   */
+  WorkerContext select(WorkerContext[] workers);
+
+  /**
+   * @param name one of the built in strategy names, or a class name
+   */
+  static WorkerSelectionStrategy create(String name) {
+    switch (name) {
+      case LEAST_CONNECTIONS:
+        return new LeastConnectionsStrategy();
+      case ROUND_ROBIN:
+        return new RoundRobinStrategy();
+      case POWER_OF_TWO_CHOICES:
+        return new PowerOfTwoChoicesStrategy();
+      case WEIGHTED:
+        return new WeightedStrategy();
+      default:
+        try {
+          return Class.forName(name).asSubclass(WorkerSelectionStrategy.class)
+              .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+          throw new IllegalArgumentException("unknown worker selection strategy " + name, e);
+        }
+    }
+  }
+}
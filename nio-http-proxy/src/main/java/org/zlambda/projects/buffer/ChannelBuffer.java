@@ -1,7 +1,6 @@
 package org.zlambda.projects.buffer;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.channels.SocketChannel;
 
 public interface ChannelBuffer {
@@ -15,16 +14,31 @@ public interface ChannelBuffer {
    */
   int write(SocketChannel channel) throws IOException;
 
+  /**
+   * [Buffer -> Channel] Same as {@link #write(SocketChannel)}, but write at most {@code maxBytes}
+   */
+  int write(SocketChannel channel, int maxBytes) throws IOException;
+
   /**
    * Put {code bytes} into buffer
    */
   void put(byte[] bytes);
 
   /**
-   * Create a "view" input stream, which means the read operation of the input stream will not modify
-   * the actual pointer of the internal buffer
+   * Get the byte at {@code index}, where 0 is the first unconsumed byte. The buffer state is not
+   * modified.
    */
-  InputStream toViewInputStream();
+  byte get(int index);
+
+  /**
+   * Copy {@code length} bytes from {@code index} into {@code dst} at {@code offset}. The buffer
+   * state is not modified. Buffers holding their bytes in memory override it with a bulk copy.
+   */
+  default void get(int index, byte[] dst, int offset, int length) {
+    for (int i = 0; i < length; ++i) {
+      dst[offset + i] = get(index + i);
+    }
+  }
 
   /**
    * return the size of unconsumed data
@@ -33,6 +47,11 @@ public interface ChannelBuffer {
 
   boolean empty();
 
+  /**
+   * return true if a read would not take any byte
+   */
+  boolean full();
+
   void clear();
 
   void free();
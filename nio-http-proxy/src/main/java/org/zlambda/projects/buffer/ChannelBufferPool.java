@@ -2,6 +2,15 @@ package org.zlambda.projects.buffer;
 
 public interface ChannelBufferPool<T extends ChannelBuffer> {
   T take();
+
+  /**
+   * return a buffer which only holds memory of the pool while it holds data, release it like the
+   * others
+   */
+  default ChannelBuffer takeLazy() {
+    return new LazyChannelBuffer<>(this);
+  }
+
   void release(T buffer);
 
   int size();
@@ -1,12 +1,22 @@
 package org.zlambda.projects.buffer;
 
+import org.slf4j.Logger;
+import org.zlambda.projects.utils.Common;
+
+import java.io.IOException;
+
 public class ConnectionBuffer {
-  private final ChannelBuffer downstream, upstream;
+  private static final Logger LOGGER = Common.getSystemLogger();
+  private ChannelBuffer downstream, upstream;
   private final ChannelBufferPool<ChannelBuffer> pool;
+  private boolean isFree = false;
 
-  public ConnectionBuffer(ChannelBufferPool<ChannelBuffer> pool) {
-    this.downstream = pool.take();
-    this.upstream = pool.take();
+  /**
+   * @param lazy take memory from the pool only while a direction holds data
+   */
+  public ConnectionBuffer(ChannelBufferPool<ChannelBuffer> pool, boolean lazy) {
+    this.downstream = lazy ? pool.takeLazy() : pool.take();
+    this.upstream = lazy ? pool.takeLazy() : pool.take();
     this.pool = pool;
   }
 
@@ -18,7 +28,43 @@ public class ConnectionBuffer {
     return upstream;
   }
 
+  /**
+   * Move both directions into kernel pipes, see {@link SpliceChannelBuffer}. Only for connections
+   * whose bytes are never looked at, and only while both buffers are empty.
+   *
+   * @param pipeSize requested pipe capacity in bytes
+   * @return false if the buffers are kept
+   */
+  public boolean splice(int pipeSize) {
+    if (!SpliceChannelBuffer.isAvailable() || !upstream.empty() || !downstream.empty()) {
+      return false;
+    }
+    SpliceChannelBuffer upstreamPipe = null;
+    try {
+      upstreamPipe = new SpliceChannelBuffer(pipeSize);
+      SpliceChannelBuffer downstreamPipe = new SpliceChannelBuffer(pipeSize);
+      pool.release(upstream);
+      pool.release(downstream);
+      upstream = upstreamPipe;
+      downstream = downstreamPipe;
+      return true;
+    } catch (IOException e) {
+      LOGGER.warn("cannot open pipes, reason <{}>.", e.getMessage());
+      if (null != upstreamPipe) {
+        upstreamPipe.free();
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Idempotent, the buffers may be handed out again by the pool right after
+   */
   public void free() {
+    if (isFree) {
+      return;
+    }
+    isFree = true;
     pool.release(upstream);
     pool.release(downstream);
   }
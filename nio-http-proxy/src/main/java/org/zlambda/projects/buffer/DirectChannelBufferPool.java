@@ -3,15 +3,16 @@ package org.zlambda.projects.buffer;
 import com.google.common.base.Preconditions;
 
 import org.slf4j.Logger;
+import org.zlambda.projects.utils.ByteBufferUtils;
 import org.zlambda.projects.utils.Common;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Threadsafe Class
@@ -19,21 +20,55 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Part of the code refers to https://github.com/midonet/midonet/blob/master/netlink/src/main/java/org/midonet/netlink/BufferPool.java
  *
  * This implementation removes the checking ownership checking of byte buffer when it is released
+ *
+ * Buffers are kept in two tiers. Each thread, in practice each worker, caches up to
+ * {@code localCacheSize} released buffers of its own and serves take() from them without any
+ * synchronization. Only when its cache runs empty or full does it move half a cache worth of
+ * buffers from or to the shared pool, under one lock. Buffer wrappers are pooled together with
+ * their byte buffers, so taking a pooled buffer allocates nothing.
  */
 public class DirectChannelBufferPool implements ChannelBufferPool<ChannelBuffer> {
   private static final int KB = 1024;
+  private static final int DEFAULT_LOCAL_CACHE_SIZE = 16;
   private static final Logger LOGGER = Common.getSystemLogger();
   private final int minNumBuffers;
   private final int maxNumBuffers;
   private final int bufferSize;
-  private final BlockingQueue<ByteBuffer> pool;
+  private final int localCacheSize;
+  private final boolean ringBuffer;
+  /**
+   * Guarded by itself
+   */
+  private final Deque<DirectChannelBuffer> pool;
+  private final ThreadLocal<Deque<DirectChannelBuffer>> localCache;
   private final AtomicInteger numBuffers;
-  private final AtomicInteger usedBuffers;
+  private final LongAdder usedBuffers;
 
   /**
    * @param bufferSize in KB
    */
   public DirectChannelBufferPool(int minNumBuffers, int maxNumBuffers, int bufferSize) {
+    this(minNumBuffers, maxNumBuffers, bufferSize, DEFAULT_LOCAL_CACHE_SIZE);
+  }
+
+  /**
+   * @param bufferSize     in KB
+   * @param localCacheSize max number of released buffers kept by each thread, 0 disables the
+   *                       thread local caches
+   */
+  public DirectChannelBufferPool(int minNumBuffers, int maxNumBuffers, int bufferSize,
+                                 int localCacheSize) {
+    this(minNumBuffers, maxNumBuffers, bufferSize, localCacheSize, false);
+  }
+
+  /**
+   * @param bufferSize     in KB
+   * @param localCacheSize max number of released buffers kept by each thread, 0 disables the
+   *                       thread local caches
+   * @param ringBuffer     lay the data of the buffers out as a {@link RingBuffer}
+   */
+  public DirectChannelBufferPool(int minNumBuffers, int maxNumBuffers, int bufferSize,
+                                 int localCacheSize, boolean ringBuffer) {
     Preconditions.checkArgument(
         minNumBuffers < maxNumBuffers,
         "minNumBuffers should not greater than maxNumBuffers"
@@ -42,18 +77,23 @@ public class DirectChannelBufferPool implements ChannelBufferPool<ChannelBuffer>
         minNumBuffers > 0 && maxNumBuffers > 0 && bufferSize > 0,
         "minNumBuffers, maxNumBuffers, bufferSize should > 0"
     );
+    Preconditions.checkArgument(localCacheSize >= 0, "localCacheSize should >= 0");
     this.minNumBuffers = minNumBuffers;
     this.maxNumBuffers = maxNumBuffers;
     this.bufferSize = bufferSize * KB;
-    this.pool = new ArrayBlockingQueue<>(maxNumBuffers);
+    this.localCacheSize = localCacheSize;
+    this.ringBuffer = ringBuffer;
+    this.pool = new ArrayDeque<>(maxNumBuffers);
+    this.localCache = ThreadLocal.withInitial(() -> new ArrayDeque<>(localCacheSize));
     this.numBuffers = new AtomicInteger(0);
-    this.usedBuffers = new AtomicInteger(0);
+    this.usedBuffers = new LongAdder();
     init();
   }
 
   private void init() {
-    while (numBuffers.getAndIncrement() < minNumBuffers) {
-      pool.offer(ByteBuffer.allocate(bufferSize));
+    while (numBuffers.get() < minNumBuffers) {
+      numBuffers.incrementAndGet();
+      pool.offer(newBuffer(ByteBuffer.allocateDirect(bufferSize), true));
     }
   }
 
@@ -64,24 +104,48 @@ public class DirectChannelBufferPool implements ChannelBufferPool<ChannelBuffer>
 
   @Override
   public int numUsedBuffers() {
-    return usedBuffers.get();
+    return usedBuffers.intValue();
   }
 
   @Override
   public ChannelBuffer take() {
-    usedBuffers.incrementAndGet();
-    ByteBuffer byteBuffer = pool.poll();
-    if (null == byteBuffer) {
-      if (numBuffers.incrementAndGet() <= maxNumBuffers) {
-        byteBuffer = ByteBuffer.allocateDirect(bufferSize);
-      } else {
-        LOGGER.warn("onHeap buffer is used.");
-        numBuffers.decrementAndGet();
-        byteBuffer = ByteBuffer.allocate(bufferSize);
+    usedBuffers.increment();
+    DirectChannelBuffer buffer;
+    if (0 == localCacheSize) {
+      synchronized (pool) {
+        buffer = pool.pollLast();
       }
+    } else {
+      Deque<DirectChannelBuffer> cache = localCache.get();
+      if (cache.isEmpty()) {
+        synchronized (pool) {
+          for (int i = batchSize(); i > 0 && !pool.isEmpty(); --i) {
+            cache.addLast(pool.pollLast());
+          }
+        }
+      }
+      buffer = cache.pollLast();
+    }
+    if (null == buffer) {
+      buffer = allocate();
+    }
+    buffer.reset();
+    return buffer;
+  }
+
+  private DirectChannelBuffer allocate() {
+    if (numBuffers.incrementAndGet() <= maxNumBuffers) {
+      return newBuffer(ByteBuffer.allocateDirect(bufferSize), true);
     }
-    byteBuffer.clear();
-    return new DirectChannelBuffer(byteBuffer, this);
+    LOGGER.warn("onHeap buffer is used.");
+    numBuffers.decrementAndGet();
+    return newBuffer(ByteBuffer.allocate(bufferSize), false);
+  }
+
+  private DirectChannelBuffer newBuffer(ByteBuffer byteBuffer, boolean pooled) {
+    return ringBuffer ?
+        new DirectRingChannelBuffer(byteBuffer, this, pooled) :
+        new DirectChannelBuffer(byteBuffer, this, pooled);
   }
 
   @Override
@@ -89,22 +153,55 @@ public class DirectChannelBufferPool implements ChannelBufferPool<ChannelBuffer>
     channelBuffer.free();
   }
 
-  private void doRelease(ByteBuffer byteBuffer) {
-    usedBuffers.decrementAndGet();
-    if (null == byteBuffer || !byteBuffer.isDirect()) {
+  private void doRelease(DirectChannelBuffer buffer) {
+    usedBuffers.decrement();
+    if (!buffer.pooled) {
+      return;
+    }
+    if (0 == localCacheSize) {
+      synchronized (pool) {
+        pool.addLast(buffer);
+      }
       return;
     }
-    pool.offer(byteBuffer);
+    Deque<DirectChannelBuffer> cache = localCache.get();
+    if (cache.size() >= localCacheSize) {
+      synchronized (pool) {
+        for (int i = batchSize(); i > 0; --i) {
+          pool.addLast(cache.pollFirst());
+        }
+      }
+    }
+    cache.addLast(buffer);
+  }
+
+  /**
+   * Half a cache, so a thread alternating take() and release() at the boundary does not move
+   * buffers on every call
+   */
+  private int batchSize() {
+    return Math.max(1, localCacheSize / 2);
   }
 
   private static class DirectChannelBuffer implements ChannelBuffer {
     private final ByteBuffer internal;
     private final DirectChannelBufferPool pool;
+    /**
+     * false for the on-heap buffers handed out once the pool is exhausted
+     */
+    private final boolean pooled;
     private boolean isFree = false;
 
-    public DirectChannelBuffer(ByteBuffer byteBuffer, DirectChannelBufferPool pool) {
+    public DirectChannelBuffer(ByteBuffer byteBuffer, DirectChannelBufferPool pool,
+                               boolean pooled) {
       this.internal = byteBuffer;
       this.pool = pool;
+      this.pooled = pooled;
+    }
+
+    private void reset() {
+      clear();
+      isFree = false;
     }
 
     /**
@@ -128,6 +225,21 @@ public class DirectChannelBufferPool implements ChannelBufferPool<ChannelBuffer>
       return ret;
     }
 
+    /**
+     * Invariant: 0 index should point to the first available byte in the buffer internal.position()
+     * should points to first free space
+     */
+    @Override
+    public int write(SocketChannel channel, int maxBytes) throws IOException {
+      internal.flip();
+      int limit = internal.limit();
+      internal.limit(Math.min(limit, maxBytes));
+      int ret = channel.write(internal);
+      internal.limit(limit);
+      internal.compact();
+      return ret;
+    }
+
     /**
      * Invariant: 0 index should point to the first available byte in the buffer internal.position()
      * should points to first free space
@@ -138,11 +250,17 @@ public class DirectChannelBufferPool implements ChannelBufferPool<ChannelBuffer>
     }
 
     /**
-     * Invariant: @{code internal}'s state should not be modified
+     * Invariant: 0 index should point to the first available byte in the buffer internal.position()
+     * should points to first free space
      */
     @Override
-    public InputStream toViewInputStream() {
-      return new IncrementalInputStream(internal.asReadOnlyBuffer());
+    public byte get(int index) {
+      return internal.get(index);
+    }
+
+    @Override
+    public void get(int index, byte[] dst, int offset, int length) {
+      ByteBufferUtils.get(internal, index, dst, offset, length);
     }
 
     /**
@@ -159,6 +277,11 @@ public class DirectChannelBufferPool implements ChannelBufferPool<ChannelBuffer>
       return size() == 0;
     }
 
+    @Override
+    public boolean full() {
+      return !internal.hasRemaining();
+    }
+
     @Override
     public void clear() {
       internal.clear();
@@ -169,41 +292,63 @@ public class DirectChannelBufferPool implements ChannelBufferPool<ChannelBuffer>
       if (isFree) {
         return;
       }
-      pool.doRelease(internal);
       isFree = true;
+      pool.doRelease(this);
     }
+  }
 
-    /**
-     * this input stream will not read everything in the byte buffer into the on heap cache.
-     * Instead, it will read it CACHE_SIZE each time when there is not enough data in the on heap
-     * cache.
-     */
-    private static class IncrementalInputStream extends InputStream {
-      private static int CACHE_SIZE = 1024;
-      private final byte[] onHeapCache = new byte[CACHE_SIZE];
-      private final ByteBuffer byteBuffer;
-      private int currentLimit;
-      private int i;
-
-      IncrementalInputStream(ByteBuffer readOnlyByteBuffer) {
-        readOnlyByteBuffer.flip();
-        this.byteBuffer = readOnlyByteBuffer;
-        this.currentLimit = 0;
-        this.i = 0;
-      }
+  private static class DirectRingChannelBuffer extends DirectChannelBuffer {
+    private final RingBuffer ring;
 
-      @Override
-      public int read() throws IOException {
-        if (i == currentLimit) {
-          i = 0;
-          this.currentLimit = Math.min(byteBuffer.remaining(), CACHE_SIZE);
-          if (this.currentLimit == 0) {
-            return -1;
-          }
-          byteBuffer.get(onHeapCache, 0, currentLimit);
-        }
-        return onHeapCache[i++];
-      }
+    public DirectRingChannelBuffer(ByteBuffer byteBuffer, DirectChannelBufferPool pool,
+                                   boolean pooled) {
+      super(byteBuffer, pool, pooled);
+      this.ring = new RingBuffer(byteBuffer);
+    }
+
+    @Override
+    public int read(SocketChannel channel) throws IOException {
+      return ring.read(channel);
+    }
+
+    @Override
+    public int write(SocketChannel channel) throws IOException {
+      return ring.write(channel, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int write(SocketChannel channel, int maxBytes) throws IOException {
+      return ring.write(channel, maxBytes);
+    }
+
+    @Override
+    public void put(byte[] bytes) {
+      ring.put(bytes);
+    }
+
+    @Override
+    public byte get(int index) {
+      return ring.get(index);
+    }
+
+    @Override
+    public void get(int index, byte[] dst, int offset, int length) {
+      ring.get(index, dst, offset, length);
+    }
+
+    @Override
+    public int size() {
+      return ring.size();
+    }
+
+    @Override
+    public boolean full() {
+      return ring.full();
+    }
+
+    @Override
+    public void clear() {
+      ring.clear();
     }
   }
 }
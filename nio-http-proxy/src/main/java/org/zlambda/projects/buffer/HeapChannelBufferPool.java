@@ -1,7 +1,8 @@
 package org.zlambda.projects.buffer;
 
+import org.zlambda.projects.utils.ByteBufferUtils;
+
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -11,17 +12,28 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class HeapChannelBufferPool implements ChannelBufferPool<ChannelBuffer> {
   private final int bufferSize;
+  private final boolean ringBuffer;
   private final AtomicInteger usedBuffers;
 
   public HeapChannelBufferPool(int bufferSize) {
+    this(bufferSize, false);
+  }
+
+  /**
+   * @param ringBuffer lay the data of the buffers out as a {@link RingBuffer}
+   */
+  public HeapChannelBufferPool(int bufferSize, boolean ringBuffer) {
     this.bufferSize = bufferSize;
+    this.ringBuffer = ringBuffer;
     this.usedBuffers = new AtomicInteger(0);
   }
 
   @Override
   public ChannelBuffer take() {
     usedBuffers.incrementAndGet();
-    return new SimpleChannelBuffer(bufferSize, this);
+    return ringBuffer ?
+        new SimpleRingChannelBuffer(bufferSize, this) :
+        new SimpleChannelBuffer(bufferSize, this);
   }
 
   @Override
@@ -45,7 +57,7 @@ public class HeapChannelBufferPool implements ChannelBufferPool<ChannelBuffer> {
 
   private static class SimpleChannelBuffer implements ChannelBuffer {
     private static final int KB = 1024;
-    private final ByteBuffer internal;
+    final ByteBuffer internal;
     private boolean isFree = false;
     private final HeapChannelBufferPool pool;
 
@@ -75,6 +87,21 @@ public class HeapChannelBufferPool implements ChannelBufferPool<ChannelBuffer> {
       return ret;
     }
 
+    /**
+     * Invariant: 0 index should point to the first available byte in the buffer internal.position()
+     * should points to first free space
+     */
+    @Override
+    public int write(SocketChannel channel, int maxBytes) throws IOException {
+      internal.flip();
+      int limit = internal.limit();
+      internal.limit(Math.min(limit, maxBytes));
+      int ret = channel.write(internal);
+      internal.limit(limit);
+      internal.compact();
+      return ret;
+    }
+
     /**
      * Invariant: 0 index should point to the first available byte in the buffer internal.position()
      * should points to first free space
@@ -85,23 +112,17 @@ public class HeapChannelBufferPool implements ChannelBufferPool<ChannelBuffer> {
     }
 
     /**
-     * Invariant: @{code internal}'s state should not be modified
+     * Invariant: 0 index should point to the first available byte in the buffer internal.position()
+     * should points to first free space
      */
     @Override
-    public InputStream toViewInputStream() {
-      return new InputStream() {
-        int limit = internal.position();
-        int i = 0;
+    public byte get(int index) {
+      return internal.get(index);
+    }
 
-        @Override
-        public int read() throws IOException {
-          if (i < limit) {
-            return internal.array()[i++];
-          } else {
-            return -1;
-          }
-        }
-      };
+    @Override
+    public void get(int index, byte[] dst, int offset, int length) {
+      ByteBufferUtils.get(internal, index, dst, offset, length);
     }
 
     /**
@@ -118,6 +139,11 @@ public class HeapChannelBufferPool implements ChannelBufferPool<ChannelBuffer> {
       return size() == 0;
     }
 
+    @Override
+    public boolean full() {
+      return !internal.hasRemaining();
+    }
+
     @Override
     public void clear() {
       internal.clear();
@@ -132,4 +158,58 @@ public class HeapChannelBufferPool implements ChannelBufferPool<ChannelBuffer> {
       pool.doRelease();
     }
   }
+
+  private static class SimpleRingChannelBuffer extends SimpleChannelBuffer {
+    private final RingBuffer ring;
+
+    public SimpleRingChannelBuffer(int size, HeapChannelBufferPool pool) {
+      super(size, pool);
+      this.ring = new RingBuffer(internal);
+    }
+
+    @Override
+    public int read(SocketChannel channel) throws IOException {
+      return ring.read(channel);
+    }
+
+    @Override
+    public int write(SocketChannel channel) throws IOException {
+      return ring.write(channel, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int write(SocketChannel channel, int maxBytes) throws IOException {
+      return ring.write(channel, maxBytes);
+    }
+
+    @Override
+    public void put(byte[] bytes) {
+      ring.put(bytes);
+    }
+
+    @Override
+    public byte get(int index) {
+      return ring.get(index);
+    }
+
+    @Override
+    public void get(int index, byte[] dst, int offset, int length) {
+      ring.get(index, dst, offset, length);
+    }
+
+    @Override
+    public int size() {
+      return ring.size();
+    }
+
+    @Override
+    public boolean full() {
+      return ring.full();
+    }
+
+    @Override
+    public void clear() {
+      ring.clear();
+    }
+  }
 }
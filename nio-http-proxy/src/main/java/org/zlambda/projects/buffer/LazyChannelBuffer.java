@@ -0,0 +1,124 @@
+package org.zlambda.projects.buffer;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Not Threadsafe Class
+ *
+ * Only holds a buffer of the pool while there is data in it: the buffer is taken right before a
+ * read or put, and released as soon as a write, a read at EOF or a clear leaves it empty. A
+ * connection idling between requests, or a quiet tunnel, holds no buffer at all.
+ */
+public class LazyChannelBuffer<T extends ChannelBuffer> implements ChannelBuffer {
+  private final ChannelBufferPool<T> pool;
+  private T internal;
+
+  public LazyChannelBuffer(ChannelBufferPool<T> pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public int read(SocketChannel channel) throws IOException {
+    acquire();
+    try {
+      return internal.read(channel);
+    } finally {
+      releaseIfEmpty();
+    }
+  }
+
+  @Override
+  public int write(SocketChannel channel) throws IOException {
+    if (null == internal) {
+      return 0;
+    }
+    try {
+      return internal.write(channel);
+    } finally {
+      releaseIfEmpty();
+    }
+  }
+
+  @Override
+  public int write(SocketChannel channel, int maxBytes) throws IOException {
+    if (null == internal) {
+      return 0;
+    }
+    try {
+      return internal.write(channel, maxBytes);
+    } finally {
+      releaseIfEmpty();
+    }
+  }
+
+  @Override
+  public void put(byte[] bytes) {
+    acquire();
+    internal.put(bytes);
+    releaseIfEmpty();
+  }
+
+  @Override
+  public byte get(int index) {
+    if (null == internal) {
+      throw new IndexOutOfBoundsException();
+    }
+    return internal.get(index);
+  }
+
+  @Override
+  public void get(int index, byte[] dst, int offset, int length) {
+    if (null == internal) {
+      if (0 != length) {
+        throw new IndexOutOfBoundsException();
+      }
+      return;
+    }
+    internal.get(index, dst, offset, length);
+  }
+
+  @Override
+  public int size() {
+    return null == internal ? 0 : internal.size();
+  }
+
+  @Override
+  public boolean empty() {
+    return size() == 0;
+  }
+
+  @Override
+  public boolean full() {
+    return null != internal && internal.full();
+  }
+
+  @Override
+  public void clear() {
+    release();
+  }
+
+  @Override
+  public void free() {
+    release();
+  }
+
+  private void acquire() {
+    if (null == internal) {
+      internal = pool.take();
+    }
+  }
+
+  private void releaseIfEmpty() {
+    if (null != internal && internal.empty()) {
+      release();
+    }
+  }
+
+  private void release() {
+    if (null != internal) {
+      pool.release(internal);
+      internal = null;
+    }
+  }
+}
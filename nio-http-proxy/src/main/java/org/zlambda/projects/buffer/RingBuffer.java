@@ -0,0 +1,146 @@
+package org.zlambda.projects.buffer;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Not Threadsafe Class
+ *
+ * Circular layout of the data of a {@link ChannelBuffer}. Unconsumed bytes run from {@code head}
+ * for {@code size} bytes, wrapping at the end of the byte buffer, so a partial write only moves
+ * {@code head} instead of compacting the rest of the data. Reads and writes across the wrap point
+ * use scattering and gathering socket calls, the two regions being described by two views which
+ * are allocated once.
+ */
+final class RingBuffer {
+  private final ByteBuffer internal;
+  private final ByteBuffer[] views;
+  private final int capacity;
+  /**
+   * index of the first unconsumed byte
+   */
+  private int head = 0;
+  private int size = 0;
+
+  RingBuffer(ByteBuffer internal) {
+    this.internal = internal;
+    this.capacity = internal.capacity();
+    this.views = new ByteBuffer[]{internal.duplicate(), internal.duplicate()};
+  }
+
+  int read(SocketChannel channel) throws IOException {
+    if (size == capacity) {
+      return 0;
+    }
+    int tail = tail();
+    long ret;
+    if (tail < head) {
+      ret = channel.read(view(0, tail, head));
+    } else if (0 == head) {
+      ret = channel.read(view(0, tail, capacity));
+    } else {
+      view(0, tail, capacity);
+      view(1, 0, head);
+      ret = channel.read(views, 0, 2);
+    }
+    if (ret > 0) {
+      size += ret;
+    }
+    return (int) ret;
+  }
+
+  int write(SocketChannel channel, int maxBytes) throws IOException {
+    int length = Math.min(size, maxBytes);
+    if (length <= 0) {
+      return 0;
+    }
+    int first = Math.min(length, capacity - head);
+    long ret;
+    if (first == length) {
+      ret = channel.write(view(0, head, head + first));
+    } else {
+      view(0, head, capacity);
+      view(1, 0, length - first);
+      ret = channel.write(views, 0, 2);
+    }
+    consume((int) ret);
+    return (int) ret;
+  }
+
+  void put(byte[] bytes) {
+    if (bytes.length > capacity - size) {
+      throw new BufferOverflowException();
+    }
+    int tail = tail();
+    int first = Math.min(bytes.length, capacity - tail);
+    view(0, tail, tail + first).put(bytes, 0, first);
+    if (first < bytes.length) {
+      view(1, 0, bytes.length - first).put(bytes, first, bytes.length - first);
+    }
+    size += bytes.length;
+  }
+
+  byte get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException();
+    }
+    int position = head + index;
+    return internal.get(position < capacity ? position : position - capacity);
+  }
+
+  void get(int index, byte[] dst, int offset, int length) {
+    if (index < 0 || length < 0 || index + length > size) {
+      throw new IndexOutOfBoundsException();
+    }
+    int start = head + index;
+    if (start >= capacity) {
+      start -= capacity;
+    }
+    int first = Math.min(length, capacity - start);
+    view(0, start, start + first).get(dst, offset, first);
+    if (first < length) {
+      view(1, 0, length - first).get(dst, offset + first, length - first);
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean full() {
+    return size == capacity;
+  }
+
+  void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  private void consume(int numOfBytes) {
+    size -= numOfBytes;
+    /**
+     * start over once drained, so the next read gets the whole buffer in one region
+     */
+    if (0 == size) {
+      head = 0;
+    } else {
+      head += numOfBytes;
+      if (head >= capacity) {
+        head -= capacity;
+      }
+    }
+  }
+
+  private int tail() {
+    int tail = head + size;
+    return tail < capacity ? tail : tail - capacity;
+  }
+
+  private ByteBuffer view(int index, int from, int to) {
+    ByteBuffer view = views[index];
+    view.limit(to).position(from);
+    return view;
+  }
+}
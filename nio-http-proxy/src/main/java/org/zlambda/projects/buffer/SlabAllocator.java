@@ -0,0 +1,157 @@
+package org.zlambda.projects.buffer;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Threadsafe Class
+ *
+ * Hands out fixed size chunks of off-heap memory in a few size classes. Memory is reserved from the
+ * JVM one slab at a time; a slab is carved into chunks of a single size class the first time that
+ * class runs out, and its chunks are recycled within that class only. No slab is allocated once
+ * {@code maxMemory} is reserved.
+ */
+public class SlabAllocator {
+  private static final int KB = 1024;
+  private static final int SLAB_SIZE = 1024 * KB;
+  private static final int[] CHUNK_SIZES = {2 * KB, 8 * KB, 32 * KB, 128 * KB};
+  private final long maxMemory;
+  private final AtomicLong reservedMemory = new AtomicLong(0);
+  private final List<SizeClass> sizeClasses;
+
+  /**
+   * @param maxMemory in bytes, at least one slab
+   */
+  public SlabAllocator(long maxMemory) {
+    Preconditions.checkArgument(maxMemory >= SLAB_SIZE, "maxMemory should >= %s", SLAB_SIZE);
+    this.maxMemory = maxMemory;
+    SizeClass[] classes = new SizeClass[CHUNK_SIZES.length];
+    for (int i = 0; i < CHUNK_SIZES.length; ++i) {
+      classes[i] = new SizeClass(CHUNK_SIZES[i]);
+    }
+    this.sizeClasses = Collections.unmodifiableList(Arrays.asList(classes));
+  }
+
+  public int numSizeClasses() {
+    return CHUNK_SIZES.length;
+  }
+
+  public int chunkSize(int sizeClass) {
+    return CHUNK_SIZES[sizeClass];
+  }
+
+  /**
+   * return the smallest size class whose chunks hold {@code numOfBytes}, the largest class if none
+   * does
+   */
+  public int sizeClassOf(int numOfBytes) {
+    for (int i = 0; i < CHUNK_SIZES.length - 1; ++i) {
+      if (numOfBytes <= CHUNK_SIZES[i]) {
+        return i;
+      }
+    }
+    return CHUNK_SIZES.length - 1;
+  }
+
+  /**
+   * return a cleared chunk of {@code sizeClass}, or null if the class is out of chunks and no more
+   * slab may be reserved
+   */
+  public ByteBuffer allocate(int sizeClass) {
+    return sizeClasses.get(sizeClass).allocate();
+  }
+
+  public void release(int sizeClass, ByteBuffer chunk) {
+    sizeClasses.get(sizeClass).release(chunk);
+  }
+
+  public long getReservedMemory() {
+    return reservedMemory.get();
+  }
+
+  public List<SizeClass> getSizeClasses() {
+    return sizeClasses;
+  }
+
+  public class SizeClass {
+    private final int chunkSize;
+    /**
+     * Guarded by this
+     */
+    private final Deque<ByteBuffer> freeChunks = new ArrayDeque<>();
+    private volatile int numSlabs = 0;
+    private volatile int numUsedChunks = 0;
+    private volatile long numExhausted = 0;
+
+    private SizeClass(int chunkSize) {
+      this.chunkSize = chunkSize;
+    }
+
+    private synchronized ByteBuffer allocate() {
+      if (freeChunks.isEmpty() && !carveSlab()) {
+        ++numExhausted;
+        return null;
+      }
+      ++numUsedChunks;
+      ByteBuffer chunk = freeChunks.pollLast();
+      chunk.clear();
+      return chunk;
+    }
+
+    private synchronized void release(ByteBuffer chunk) {
+      --numUsedChunks;
+      freeChunks.addLast(chunk);
+    }
+
+    private boolean carveSlab() {
+      if (reservedMemory.addAndGet(SLAB_SIZE) > maxMemory) {
+        reservedMemory.addAndGet(-SLAB_SIZE);
+        return false;
+      }
+      ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+      for (int offset = 0; offset + chunkSize <= SLAB_SIZE; offset += chunkSize) {
+        slab.limit(offset + chunkSize).position(offset);
+        freeChunks.addLast(slab.slice());
+      }
+      ++numSlabs;
+      return true;
+    }
+
+    public int getChunkSize() {
+      return chunkSize;
+    }
+
+    public int getNumSlabs() {
+      return numSlabs;
+    }
+
+    public int getNumChunks() {
+      return numSlabs * (SLAB_SIZE / chunkSize);
+    }
+
+    public int getNumUsedChunks() {
+      return numUsedChunks;
+    }
+
+    /**
+     * return how often a chunk was refused because no more slab could be reserved
+     */
+    public long getNumExhausted() {
+      return numExhausted;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("size class <%dKB>: slabs <%d>, chunks <%d>, used chunks <%d>, "
+                           + "exhausted <%d>", chunkSize / KB, getNumSlabs(), getNumChunks(),
+                           getNumUsedChunks(), getNumExhausted());
+    }
+  }
+}
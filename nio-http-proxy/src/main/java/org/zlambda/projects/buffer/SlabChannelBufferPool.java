@@ -0,0 +1,302 @@
+package org.zlambda.projects.buffer;
+
+import org.slf4j.Logger;
+import org.zlambda.projects.utils.ByteBufferUtils;
+import org.zlambda.projects.utils.Common;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Threadsafe Class
+ *
+ * Hands out elastic buffers backed by {@link SlabAllocator} chunks. A buffer starts with a chunk of
+ * the smallest size class and moves to larger chunks while its direction keeps filling it, so bulk
+ * transfers read and write in large rounds, then moves back to a small chunk once it drains after
+ * the traffic calmed down, so idle connections pin little memory.
+ */
+public class SlabChannelBufferPool implements ChannelBufferPool<ChannelBuffer> {
+  private static final Logger LOGGER = Common.getSystemLogger();
+  private final SlabAllocator allocator;
+  private final LongAdder usedBuffers = new LongAdder();
+
+  public SlabChannelBufferPool(SlabAllocator allocator) {
+    this.allocator = allocator;
+  }
+
+  public SlabAllocator getAllocator() {
+    return allocator;
+  }
+
+  @Override
+  public ChannelBuffer take() {
+    usedBuffers.increment();
+    return new ElasticChannelBuffer(this, false);
+  }
+
+  /**
+   * The elastic buffer gives its chunk back whenever it drains, but keeps track of the size class
+   * the next burst needs.
+   */
+  @Override
+  public ChannelBuffer takeLazy() {
+    usedBuffers.increment();
+    return new ElasticChannelBuffer(this, true);
+  }
+
+  @Override
+  public void release(ChannelBuffer buffer) {
+    buffer.free();
+  }
+
+  private void doRelease() {
+    usedBuffers.decrement();
+  }
+
+  /**
+   * return the number of chunks carved so far
+   */
+  @Override
+  public int size() {
+    return allocator.getSizeClasses().stream().mapToInt(SlabAllocator.SizeClass::getNumChunks).sum();
+  }
+
+  @Override
+  public int numUsedBuffers() {
+    return usedBuffers.intValue();
+  }
+
+  /**
+   * Not Threadsafe Class
+   */
+  private static class ElasticChannelBuffer implements ChannelBuffer {
+    private final SlabChannelBufferPool pool;
+    private final SlabAllocator allocator;
+    /**
+     * holds no chunk while drained
+     */
+    private final boolean lazy;
+    /**
+     * null while drained, if lazy
+     */
+    private ByteBuffer internal;
+    private int sizeClass;
+    /**
+     * false for the on-heap chunk used when the allocator is exhausted
+     */
+    private boolean pooled;
+    /**
+     * size class expected to fit the next burst of reads
+     */
+    private int nextSizeClass = 0;
+    private boolean isFree = false;
+
+    public ElasticChannelBuffer(SlabChannelBufferPool pool, boolean lazy) {
+      this.pool = pool;
+      this.allocator = pool.allocator;
+      this.lazy = lazy;
+      if (!lazy) {
+        attach(0);
+      }
+    }
+
+    /**
+     * Invariant: 0 index should point to the first available byte in the buffer internal.position()
+     * should points to first free space
+     */
+    @Override
+    public int read(SocketChannel channel) throws IOException {
+      if (null == internal) {
+        attach(nextSizeClass);
+      } else if (empty() && sizeClass < nextSizeClass) {
+        resize(nextSizeClass);
+      } else if (!internal.hasRemaining() && sizeClass < allocator.numSizeClasses() - 1) {
+        resize(sizeClass + 1);
+      }
+      int ret = channel.read(internal);
+      /**
+       * a full chunk means the peer has more, otherwise the read tells what the burst needs
+       */
+      nextSizeClass = internal.hasRemaining() ?
+          allocator.sizeClassOf(Math.max(0, ret)) :
+          Math.min(sizeClass + 1, allocator.numSizeClasses() - 1);
+      shrinkIfDrained();
+      return ret;
+    }
+
+    /**
+     * Invariant: 0 index should point to the first available byte in the buffer internal.position()
+     * should points to first free space
+     */
+    @Override
+    public int write(SocketChannel channel) throws IOException {
+      if (null == internal) {
+        return 0;
+      }
+      internal.flip();
+      int ret = channel.write(internal);
+      internal.compact();
+      shrinkIfDrained();
+      return ret;
+    }
+
+    /**
+     * Invariant: 0 index should point to the first available byte in the buffer internal.position()
+     * should points to first free space
+     */
+    @Override
+    public int write(SocketChannel channel, int maxBytes) throws IOException {
+      if (null == internal) {
+        return 0;
+      }
+      internal.flip();
+      int limit = internal.limit();
+      internal.limit(Math.min(limit, maxBytes));
+      int ret = channel.write(internal);
+      internal.limit(limit);
+      internal.compact();
+      shrinkIfDrained();
+      return ret;
+    }
+
+    /**
+     * Invariant: 0 index should point to the first available byte in the buffer internal.position()
+     * should points to first free space
+     */
+    @Override
+    public void put(byte[] bytes) {
+      if (null == internal) {
+        attach(Math.max(nextSizeClass, allocator.sizeClassOf(bytes.length)));
+      }
+      int required = internal.position() + bytes.length;
+      if (required > internal.capacity()) {
+        int target = allocator.sizeClassOf(required);
+        if (allocator.chunkSize(target) < required) {
+          throw new BufferOverflowException();
+        }
+        resize(target);
+        if (internal.capacity() < required) {
+          /**
+           * the bytes have to fit, so fall back on the heap as attach does
+           */
+          LOGGER.warn("onHeap buffer is used.");
+          moveTo(ByteBuffer.allocate(allocator.chunkSize(target)), target, false);
+        }
+      }
+      internal.put(bytes);
+    }
+
+    @Override
+    public byte get(int index) {
+      return internal.get(index);
+    }
+
+    @Override
+    public void get(int index, byte[] dst, int offset, int length) {
+      if (null == internal) {
+        if (0 != length) {
+          throw new IndexOutOfBoundsException();
+        }
+        return;
+      }
+      ByteBufferUtils.get(internal, index, dst, offset, length);
+    }
+
+    @Override
+    public int size() {
+      return null == internal ? 0 : internal.position();
+    }
+
+    @Override
+    public boolean empty() {
+      return size() == 0;
+    }
+
+    /**
+     * only once the largest chunk is full, smaller ones grow on the next read
+     */
+    @Override
+    public boolean full() {
+      return null != internal && !internal.hasRemaining()
+             && sizeClass == allocator.numSizeClasses() - 1;
+    }
+
+    @Override
+    public void clear() {
+      if (null != internal) {
+        internal.clear();
+        shrinkIfDrained();
+      }
+    }
+
+    @Override
+    public void free() {
+      if (isFree) {
+        return;
+      }
+      isFree = true;
+      detach();
+      pool.doRelease();
+    }
+
+    private void shrinkIfDrained() {
+      if (!empty()) {
+        return;
+      }
+      if (lazy) {
+        detach();
+      } else if (nextSizeClass < sizeClass) {
+        resize(nextSizeClass);
+      }
+    }
+
+    /**
+     * Move the data to a chunk of {@code target} class. Stays on the current chunk if the
+     * allocator has none left.
+     */
+    private void resize(int target) {
+      ByteBuffer chunk = allocator.allocate(target);
+      if (null == chunk) {
+        return;
+      }
+      moveTo(chunk, target, true);
+    }
+
+    private void moveTo(ByteBuffer chunk, int target, boolean isPooled) {
+      ByteBuffer old = internal;
+      int oldSizeClass = sizeClass;
+      boolean oldPooled = pooled;
+      internal = chunk;
+      sizeClass = target;
+      pooled = isPooled;
+      old.flip();
+      internal.put(old);
+      if (oldPooled) {
+        allocator.release(oldSizeClass, old);
+      }
+    }
+
+    private void attach(int target) {
+      internal = allocator.allocate(target);
+      sizeClass = target;
+      pooled = null != internal;
+      if (!pooled) {
+        LOGGER.warn("onHeap buffer is used.");
+        internal = ByteBuffer.allocate(allocator.chunkSize(target));
+      }
+    }
+
+    private void detach() {
+      if (pooled) {
+        allocator.release(sizeClass, internal);
+        pooled = false;
+      }
+      if (lazy) {
+        internal = null;
+      }
+    }
+  }
+}
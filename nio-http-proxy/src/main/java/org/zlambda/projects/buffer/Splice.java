@@ -0,0 +1,62 @@
+package org.zlambda.projects.buffer;
+
+import org.slf4j.Logger;
+import org.zlambda.projects.utils.Common;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Binding of splice(2), built from src/main/native/splice.c by bin/build-splice.sh and loaded from
+ * java.library.path. Only available on Linux.
+ */
+enum Splice {
+  ;
+  private static final Logger LOGGER = Common.getSystemLogger();
+  private static final String LIBRARY = "niosplice";
+  private static final boolean AVAILABLE = load();
+
+  private static boolean load() {
+    try {
+      System.loadLibrary(LIBRARY);
+      return true;
+    } catch (UnsatisfiedLinkError e) {
+      LOGGER.debug("cannot load <{}>, reason <{}>.", LIBRARY, e.getMessage());
+      return false;
+    }
+  }
+
+  static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  /**
+   * return the file descriptor of {@code channel}, -1 if it cannot be found
+   */
+  static native int fdOf(SocketChannel channel);
+
+  /**
+   * Open a non-blocking pipe, {@code fds} receives the read and the write end
+   *
+   * @param size requested capacity in bytes, 0 keeps the system default
+   * @return the capacity of the pipe
+   */
+  static native int pipe(int[] fds, int size) throws IOException;
+
+  /**
+   * return the number of bytes moved, 0 if either side would block, -1 on end of stream
+   */
+  static native int splice(int in, int out, int len) throws IOException;
+
+  /**
+   * return the number of bytes written, 0 if {@code fd} would block
+   */
+  static native int write(int fd, byte[] bytes) throws IOException;
+
+  /**
+   * return the number of bytes read and dropped
+   */
+  static native int skip(int fd, int len);
+
+  static native void close(int fd);
+}
@@ -0,0 +1,149 @@
+package org.zlambda.projects.buffer;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Not Threadsafe Class
+ *
+ * Keeps its data in a kernel pipe instead of a byte buffer: read splices from the socket into the
+ * pipe and write from the pipe into the socket, so the bytes never reach user space. Meant for
+ * CONNECT tunnels, whose bytes are never looked at, so {@link #get(int)} is not supported.
+ */
+public class SpliceChannelBuffer implements ChannelBuffer {
+  private final int readFd;
+  private final int writeFd;
+  private final int capacity;
+  private int size = 0;
+  private boolean isFree = false;
+  /**
+   * a direction always reads from the same socket and writes to the same socket. The descriptor of
+   * a closed channel may already belong to another connection, so the channels are checked to be
+   * open on every call.
+   */
+  private SocketChannel source, sink;
+  private int sourceFd, sinkFd;
+
+  /**
+   * @param size requested pipe capacity in bytes, 0 keeps the system default
+   */
+  public SpliceChannelBuffer(int size) throws IOException {
+    int[] fds = new int[2];
+    this.capacity = Splice.pipe(fds, size);
+    this.readFd = fds[0];
+    this.writeFd = fds[1];
+  }
+
+  /**
+   * return true if the native binding is loaded
+   */
+  public static boolean isAvailable() {
+    return Splice.isAvailable();
+  }
+
+  @Override
+  public int read(SocketChannel channel) throws IOException {
+    if (size == capacity) {
+      return 0;
+    }
+    if (!channel.isOpen()) {
+      throw new ClosedChannelException();
+    }
+    if (channel != source) {
+      source = channel;
+      sourceFd = fdOf(channel);
+    }
+    int ret = Splice.splice(sourceFd, writeFd, capacity - size);
+    if (ret > 0) {
+      size += ret;
+    }
+    return ret;
+  }
+
+  @Override
+  public int write(SocketChannel channel) throws IOException {
+    return write(channel, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int write(SocketChannel channel, int maxBytes) throws IOException {
+    int length = Math.min(size, maxBytes);
+    if (length <= 0) {
+      return 0;
+    }
+    if (!channel.isOpen()) {
+      throw new ClosedChannelException();
+    }
+    if (channel != sink) {
+      sink = channel;
+      sinkFd = fdOf(channel);
+    }
+    /**
+     * the write end stays open, so the pipe never reports end of stream
+     */
+    int ret = Math.max(0, Splice.splice(readFd, sinkFd, length));
+    size -= ret;
+    return ret;
+  }
+
+  @Override
+  public void put(byte[] bytes) {
+    if (bytes.length > capacity - size) {
+      throw new BufferOverflowException();
+    }
+    try {
+      int ret = Splice.write(writeFd, bytes);
+      size += ret;
+      if (ret < bytes.length) {
+        throw new BufferOverflowException();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public byte get(int index) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean empty() {
+    return size == 0;
+  }
+
+  @Override
+  public boolean full() {
+    return size == capacity;
+  }
+
+  @Override
+  public void clear() {
+    size -= Splice.skip(readFd, size);
+  }
+
+  @Override
+  public void free() {
+    if (isFree) {
+      return;
+    }
+    isFree = true;
+    Splice.close(readFd);
+    Splice.close(writeFd);
+  }
+
+  private static int fdOf(SocketChannel channel) throws IOException {
+    int fd = Splice.fdOf(channel);
+    if (-1 == fd) {
+      throw new IOException("cannot find the file descriptor of " + channel);
+    }
+    return fd;
+  }
+}
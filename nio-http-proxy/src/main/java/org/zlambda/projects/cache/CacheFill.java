@@ -0,0 +1,209 @@
+package org.zlambda.projects.cache;
+
+import org.zlambda.projects.buffer.ChannelBuffer;
+import org.zlambda.projects.http.CacheHeaders;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Not Threadsafe Class
+ *
+ * The fetch of one response into the {@link ResponseCache}, performed by the connection whose
+ * lookup missed while the response goes to its own client as usual. Every byte the origin sends is
+ * copied aside until the response is complete, then stored off-heap. The fill is abandoned as soon
+ * as the response turns out not to be storable or too large.
+ *
+ * If a stale response with a validator is known, the request is made conditional, and the
+ * response is held back until its head tells whether the origin answered 304 Not Modified, in
+ * which case the stale response is renewed and served instead.
+ */
+public class CacheFill {
+  private static final int INITIAL_CAPACITY = 8 * 1024;
+  private static final byte[] END_OF_HEAD = "\r\n\r\n".getBytes();
+  private final ResponseCache cache;
+  private final String key;
+  /**
+   * null unless revalidating
+   */
+  private final CachedResponse stale;
+  private final CompletableFuture<CachedResponse> future;
+  private byte[] captured = new byte[0];
+  private int size = 0;
+  /**
+   * head plus body, known once the head is complete
+   */
+  private long expectedSize = -1;
+  private boolean isRevalidating = false;
+  private boolean isHeadSeen = false;
+  private boolean isDone = false;
+  private long lifetime;
+  private String etag;
+  private String lastModified;
+  private boolean keepAlive;
+
+  CacheFill(ResponseCache cache, String key, CachedResponse stale,
+            CompletableFuture<CachedResponse> future) {
+    this.cache = cache;
+    this.key = key;
+    this.stale = stale;
+    this.future = future;
+  }
+
+  String getKey() {
+    return key;
+  }
+
+  CompletableFuture<CachedResponse> getFuture() {
+    return future;
+  }
+
+  /**
+   * return true if a stale response may be revalidated, see {@link #toConditionalRequest}
+   */
+  public boolean hasStaleResponse() {
+    return null != stale;
+  }
+
+  /**
+   * return {@code request} carrying the validators of the stale response, null if there is no
+   * stale response, or the request does not end as expected or would grow beyond {@code maxSize},
+   * then the fill fetches the response as if nothing was cached
+   */
+  public byte[] toConditionalRequest(byte[] request, int maxSize) {
+    int end = request.length - END_OF_HEAD.length;
+    if (null == stale || end < 0
+        || !Arrays.equals(END_OF_HEAD, Arrays.copyOfRange(request, end, request.length))) {
+      return null;
+    }
+    StringBuilder validators = new StringBuilder();
+    if (null != stale.getEtag()) {
+      validators.append("If-None-Match: ").append(stale.getEtag()).append("\r\n");
+    }
+    if (null != stale.getLastModified()) {
+      validators.append("If-Modified-Since: ").append(stale.getLastModified()).append("\r\n");
+    }
+    byte[] extra = validators.toString().getBytes();
+    if (request.length + extra.length > maxSize) {
+      return null;
+    }
+    /**
+     * the validators go right before the empty line ending the head
+     */
+    byte[] conditional = Arrays.copyOf(request, request.length + extra.length);
+    System.arraycopy(extra, 0, conditional, end + 2, extra.length);
+    System.arraycopy(END_OF_HEAD, 2, conditional, conditional.length - 2, 2);
+    isRevalidating = true;
+    return conditional;
+  }
+
+  public boolean isRevalidating() {
+    return isRevalidating;
+  }
+
+  /**
+   * return true if the response should not reach the client yet, since it may be a 304 answering
+   * the validators the client did not send
+   */
+  public boolean isHolding() {
+    return isRevalidating && !isHeadSeen;
+  }
+
+  public boolean isHeadSeen() {
+    return isHeadSeen;
+  }
+
+  /**
+   * The origin confirmed the stale response, which is renewed with the freshness of {@code
+   * headers}, or with its former lifetime if they carry none, and handed to the waiting requests
+   *
+   * @return the renewed response to be served
+   */
+  public CachedResponse onNotModified(CacheHeaders headers, long now) {
+    isHeadSeen = true;
+    long renewedLifetime = stale.getLifetime();
+    if (null != headers.getCacheControl() || null != headers.getExpires()) {
+      renewedLifetime = TimeUnit.SECONDS.toNanos(ResponseCache.getFreshnessLifetime(headers));
+    }
+    CachedResponse renewed = stale.renew(now + renewedLifetime, renewedLifetime);
+    finish(ResponseCache.isStorable(headers) ? renewed : null, now);
+    return renewed;
+  }
+
+  /**
+   * The final response head is complete
+   *
+   * @param contentLength -1 if absent or chunked
+   * @return false if the response may not be stored, the caller should then abandon the fill
+   */
+  public boolean onResponseHead(int statusCode, int headLength, long contentLength,
+                                boolean keepAlive, CacheHeaders headers) {
+    isHeadSeen = true;
+    if (200 != statusCode || contentLength < 0
+        || headLength + contentLength > cache.getMaxEntrySize()
+        || !ResponseCache.isStorable(headers)) {
+      return false;
+    }
+    this.expectedSize = headLength + contentLength;
+    this.lifetime = TimeUnit.SECONDS.toNanos(ResponseCache.getFreshnessLifetime(headers));
+    this.etag = headers.getEtag();
+    this.lastModified = headers.getLastModified();
+    this.keepAlive = keepAlive;
+    return lifetime > 0 || null != etag || null != lastModified;
+  }
+
+  /**
+   * Copy bytes [{@code from}, {@code to}) of {@code buffer} aside
+   *
+   * @return false if the response grows larger than it may be, the caller should then abandon the
+   * fill
+   */
+  public boolean capture(ChannelBuffer buffer, int from, int to) {
+    int numOfBytes = to - from;
+    long limit = expectedSize < 0 ? cache.getMaxEntrySize() : expectedSize;
+    if (size + numOfBytes > limit) {
+      return false;
+    }
+    if (size + numOfBytes > captured.length) {
+      captured = Arrays.copyOf(captured, (int) Math.min(
+          limit, Math.max(INITIAL_CAPACITY, Math.max(size + numOfBytes, 2L * captured.length))));
+    }
+    buffer.get(from, captured, size, numOfBytes);
+    size += numOfBytes;
+    return true;
+  }
+
+  /**
+   * The response is complete, store it if every byte of it has been captured
+   */
+  public void complete(long now) {
+    if (size != expectedSize) {
+      abandon(now);
+      return;
+    }
+    ByteBuffer bytes = ByteBuffer.allocateDirect(size);
+    bytes.put(captured, 0, size);
+    bytes.flip();
+    captured = null;
+    finish(new CachedResponse(key, bytes.asReadOnlyBuffer(), now + lifetime, lifetime, etag,
+                              lastModified, keepAlive), now);
+  }
+
+  /**
+   * Nothing is stored, the waiting requests go to the origin on their own
+   */
+  public void abandon(long now) {
+    captured = null;
+    finish(null, now);
+  }
+
+  private void finish(CachedResponse response, long now) {
+    if (isDone) {
+      return;
+    }
+    isDone = true;
+    cache.complete(this, response, now);
+  }
+}
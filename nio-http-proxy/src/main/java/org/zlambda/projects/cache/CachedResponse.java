@@ -0,0 +1,90 @@
+package org.zlambda.projects.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Threadsafe Class
+ *
+ * A complete response, head and body as the origin sent them, kept in a direct buffer of its own
+ * outside of the Java heap. The bytes never change once stored, so any number of clients may be
+ * served from them at the same time, each through a view of its own. A revalidated response shares
+ * the bytes of the stale one.
+ */
+public class CachedResponse {
+  private final String key;
+  private final ByteBuffer bytes;
+  private final long expireAt;
+  private final long lifetime;
+  private final String etag;
+  private final String lastModified;
+  private final boolean keepAlive;
+
+  /**
+   * @param expireAt     in nanoTime
+   * @param lifetime     in nanosecond, what a revalidation without freshness information renews
+   * @param etag         validator, null if absent
+   * @param lastModified validator, null if absent
+   */
+  CachedResponse(String key, ByteBuffer bytes, long expireAt, long lifetime, String etag,
+                 String lastModified, boolean keepAlive) {
+    this.key = key;
+    this.bytes = bytes;
+    this.expireAt = expireAt;
+    this.lifetime = lifetime;
+    this.etag = etag;
+    this.lastModified = lastModified;
+    this.keepAlive = keepAlive;
+  }
+
+  /**
+   * return the same response with a new expiry, after the origin confirmed it is still valid
+   */
+  CachedResponse renew(long expireAt, long lifetime) {
+    return new CachedResponse(key, bytes, expireAt, lifetime, etag, lastModified, keepAlive);
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * return a view over the bytes to be written to one client
+   */
+  public ByteBuffer newReader() {
+    return bytes.duplicate();
+  }
+
+  public int size() {
+    return bytes.capacity();
+  }
+
+  public boolean isFresh(long now) {
+    return expireAt - now > 0;
+  }
+
+  long getLifetime() {
+    return lifetime;
+  }
+
+  /**
+   * return true if a stale copy may be revalidated with a conditional request
+   */
+  public boolean hasValidator() {
+    return null != etag || null != lastModified;
+  }
+
+  public String getEtag() {
+    return etag;
+  }
+
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * return false if the origin asked to close the connection after this response
+   */
+  public boolean isKeepAlive() {
+    return keepAlive;
+  }
+}
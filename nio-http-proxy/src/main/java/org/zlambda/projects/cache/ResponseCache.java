@@ -0,0 +1,280 @@
+package org.zlambda.projects.cache;
+
+import com.google.common.base.Preconditions;
+
+import org.zlambda.projects.http.CacheHeaders;
+import org.zlambda.projects.http.HttpMethods;
+import org.zlambda.projects.http.RequestTarget;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Threadsafe Class
+ *
+ * Shared cache of complete responses to plain HTTP GET requests, keyed by origin and path. The
+ * responses live outside of the Java heap, see {@link CachedResponse}, and the least recently used
+ * ones are evicted once they take more than {@code maxMemory} bytes together.
+ *
+ * A lookup which finds no fresh response makes the caller fetch it, or revalidate the stale one,
+ * through a {@link CacheFill}. Concurrent lookups of the same key meanwhile wait on the in-flight
+ * fill rather than going to the origin as well.
+ *
+ * Reference https://tools.ietf.org/html/rfc7234
+ */
+public class ResponseCache {
+  private final long maxMemory;
+  private final int maxEntrySize;
+  /**
+   * guarded by this, in access order so the eldest is the least recently used
+   */
+  private final LinkedHashMap<String, CachedResponse> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  /**
+   * guarded by this
+   */
+  private final Map<String, CompletableFuture<CachedResponse>> inflight = new HashMap<>();
+  /**
+   * guarded by this
+   */
+  private long usedMemory = 0;
+
+  /**
+   * @param maxMemory    in byte, for all responses
+   * @param maxEntrySize in byte, head included, larger responses are never cached
+   */
+  public ResponseCache(long maxMemory, int maxEntrySize) {
+    Preconditions.checkArgument(maxMemory > 0 && maxEntrySize > 0,
+                                "maxMemory and maxEntrySize should > 0");
+    this.maxMemory = maxMemory;
+    this.maxEntrySize = maxEntrySize;
+  }
+
+  /**
+   * return the key of a request to {@code target}, a request target in absolute form is reduced
+   * to its path so both forms share an entry
+   */
+  public static String keyOf(RequestTarget target, String uri) {
+    int scheme = uri.indexOf("://");
+    if (scheme > 0 && !uri.startsWith("/")) {
+      int path = uri.indexOf('/', scheme + 3);
+      uri = path < 0 ? "/" : uri.substring(path);
+    }
+    return target + uri;
+  }
+
+  /**
+   * return true if the response to the request may come from the cache, i.e. a GET which asks
+   * for neither a fresh copy, a part, nor a conditional answer, and carries no credentials
+   */
+  public static boolean isCacheable(String method, CacheHeaders request) {
+    if (!HttpMethods.GET.equals(method) || request.hasAuthorization() || request.hasRange()
+        || request.isConditional() || request.isPragmaNoCache()) {
+      return false;
+    }
+    String cacheControl = lowerCase(request.getCacheControl());
+    return null == cacheControl
+           || (null == directive(cacheControl, "no-cache")
+               && null == directive(cacheControl, "no-store")
+               && !"0".equals(directive(cacheControl, "max-age")));
+  }
+
+  /**
+   * @param now in nanoTime
+   */
+  public synchronized Lookup lookup(String key, long now) {
+    CachedResponse response = entries.get(key);
+    if (null != response && response.isFresh(now)) {
+      return new Lookup(response, null, null);
+    }
+    CompletableFuture<CachedResponse> pending = inflight.get(key);
+    if (null != pending) {
+      return new Lookup(null, null, pending);
+    }
+    pending = new CompletableFuture<>();
+    inflight.put(key, pending);
+    return new Lookup(null, new CacheFill(
+        this, key, null != response && response.hasValidator() ? response : null, pending), null);
+  }
+
+  int getMaxEntrySize() {
+    return maxEntrySize;
+  }
+
+  /**
+   * Store what {@code fill} got, null if nothing may be stored, and hand it to the requests
+   * waiting for the fill. The response is stored before the fill is dropped, so a concurrent
+   * lookup always finds one of them.
+   */
+  void complete(CacheFill fill, CachedResponse response, long now) {
+    synchronized (this) {
+      if (null != response) {
+        store(response);
+      } else {
+        CachedResponse stale = entries.get(fill.getKey());
+        if (null != stale && !stale.isFresh(now)) {
+          remove(fill.getKey());
+        }
+      }
+      inflight.remove(fill.getKey(), fill.getFuture());
+    }
+    fill.getFuture().complete(response);
+  }
+
+  private void store(CachedResponse response) {
+    remove(response.getKey());
+    entries.put(response.getKey(), response);
+    usedMemory += response.size();
+    Iterator<CachedResponse> eldest = entries.values().iterator();
+    while (usedMemory > maxMemory && eldest.hasNext()) {
+      usedMemory -= eldest.next().size();
+      eldest.remove();
+    }
+  }
+
+  private void remove(String key) {
+    CachedResponse removed = entries.remove(key);
+    if (null != removed) {
+      usedMemory -= removed.size();
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * return the bytes taken by the responses
+   */
+  public synchronized long getUsedMemory() {
+    return usedMemory;
+  }
+
+  /**
+   * return the seconds a response stays fresh after it left the origin, from s-maxage, max-age,
+   * or Expires and Date in that order, 0 if it has to be revalidated on every use
+   */
+  static long getFreshnessLifetime(CacheHeaders response) {
+    long age = Math.max(0, response.getAge());
+    String cacheControl = lowerCase(response.getCacheControl());
+    if (null != cacheControl) {
+      if (null != directive(cacheControl, "no-cache")) {
+        return 0;
+      }
+      long maxAge = parseSeconds(directive(cacheControl, "s-maxage"));
+      if (maxAge < 0) {
+        maxAge = parseSeconds(directive(cacheControl, "max-age"));
+      }
+      if (maxAge >= 0) {
+        return Math.max(0, maxAge - age);
+      }
+    }
+    if (null != response.getExpires()) {
+      long expires = parseDate(response.getExpires());
+      long date = null == response.getDate() ?
+          System.currentTimeMillis() / 1000 : parseDate(response.getDate());
+      return expires < 0 || date < 0 ? 0 : Math.max(0, expires - date - age);
+    }
+    return 0;
+  }
+
+  /**
+   * return true if the response may be kept by a shared cache at all
+   */
+  static boolean isStorable(CacheHeaders response) {
+    String cacheControl = lowerCase(response.getCacheControl());
+    return !response.hasVary() && !response.hasSetCookie()
+           && (null == cacheControl || (null == directive(cacheControl, "no-store")
+                                        && null == directive(cacheControl, "private")));
+  }
+
+  /**
+   * return the value of {@code name} in the lower case Cache-Control {@code directives}, empty if
+   * it has none, null if the directive is absent
+   */
+  private static String directive(String directives, String name) {
+    for (String directive : directives.split(",")) {
+      directive = directive.trim();
+      int equals = directive.indexOf('=');
+      String directiveName = equals < 0 ? directive : directive.substring(0, equals).trim();
+      if (name.equals(directiveName)) {
+        return equals < 0 ? "" : directive.substring(equals + 1).trim().replace("\"", "");
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return -1 if absent or malformed
+   */
+  private static long parseSeconds(String value) {
+    if (null == value) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * @return the epoch second of an HTTP date, -1 if malformed, e.g. "Expires: 0"
+   */
+  private static long parseDate(String value) {
+    try {
+      return DateTimeFormatter.RFC_1123_DATE_TIME.parse(value, Instant::from).getEpochSecond();
+    } catch (DateTimeParseException e) {
+      return -1;
+    }
+  }
+
+  private static String lowerCase(String value) {
+    return null == value ? null : value.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Immutable, exactly one of the three is set
+   */
+  public static class Lookup {
+    private final CachedResponse hit;
+    private final CacheFill fill;
+    private final CompletableFuture<CachedResponse> pending;
+
+    private Lookup(CachedResponse hit, CacheFill fill, CompletableFuture<CachedResponse> pending) {
+      this.hit = hit;
+      this.fill = fill;
+      this.pending = pending;
+    }
+
+    /**
+     * return the fresh response, null if there is none
+     */
+    public CachedResponse getHit() {
+      return hit;
+    }
+
+    /**
+     * return the fill the caller has to perform, null if there is a fresh response or another
+     * request is fetching it
+     */
+    public CacheFill getFill() {
+      return fill;
+    }
+
+    /**
+     * return the fill of another request, completed with the response or with null if it could
+     * not be stored, null if there is none
+     */
+    public CompletableFuture<CachedResponse> getPending() {
+      return pending;
+    }
+  }
+}
@@ -8,6 +8,7 @@ import org.zlambda.projects.utils.SocketChannelUtils;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 
@@ -45,6 +46,14 @@ public class ConnectionContext {
     return SocketChannelUtils.writeToChannel(channel, buffer);
   }
 
+  public int write(ChannelBuffer buffer, int maxBytes) {
+    return SocketChannelUtils.writeToChannel(channel, buffer, maxBytes);
+  }
+
+  public int write(ByteBuffer buffer) {
+    return SocketChannelUtils.writeToChannel(channel, buffer);
+  }
+
   public boolean isInputShutdown() {
     Socket socket = channel.socket();
     return socket.isClosed() || !socket.isConnected() || socket.isInputShutdown();
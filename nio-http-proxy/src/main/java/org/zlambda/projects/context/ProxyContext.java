@@ -1,17 +1,108 @@
 package org.zlambda.projects.context;
 
+import org.slf4j.Logger;
+import org.zlambda.projects.accesslog.AccessLogRecord;
+import org.zlambda.projects.accesslog.AccessLogRing;
+import org.zlambda.projects.buffer.ChannelBuffer;
 import org.zlambda.projects.buffer.ConnectionBuffer;
+import org.zlambda.projects.cache.CacheFill;
+import org.zlambda.projects.cache.CachedResponse;
+import org.zlambda.projects.cache.ResponseCache;
+import org.zlambda.projects.http.HttpExchange;
+import org.zlambda.projects.http.RequestTarget;
+import org.zlambda.projects.timer.TimingWheel;
+import org.zlambda.projects.utils.Common;
 
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class ProxyContext {
+  private static final Logger LOGGER = Common.getSystemLogger();
+  private static final int KB = 1024;
+  private final SystemContext systemContext;
+  private final WorkerContext workerContext;
   private final ConnectionBuffer connectionBuffer;
   private ConnectionContext client;
   private ConnectionContext host;
   private boolean isHttps = false;
+  /**
+   * Origin of the current host connection
+   */
+  private RequestTarget hostTarget;
+  private CompletableFuture<InetAddress> hostResolution;
+  /**
+   * Only tracked for plain HTTP, null once the connection turns out to be a CONNECT tunnel
+   */
+  private HttpExchange httpExchange;
+  /**
+   * Deadlines on the worker's timing wheel, null if not armed
+   */
+  private TimingWheel.Timeout headerReadTimeout;
+  private TimingWheel.Timeout connectTimeout;
+  private TimingWheel.Timeout idleTimeout;
+  private TimingWheel.Timeout lifetimeTimeout;
+  /**
+   * Time of the last read or write which moved bytes, the idle timeout is re-armed once it fires
+   * rather than moved on every read and write
+   */
+  private long lastActiveAt = System.nanoTime();
+  private final long createdAt = System.nanoTime();
+  /**
+   * Time the current host started to be resolved, 0 once connected
+   */
+  private long connectingSince = 0;
+  private boolean isClosed = false;
+  /**
+   * Bytes of the connection buffers accounted to the worker's in-flight bytes
+   */
+  private long accountedBytes = 0;
+  /**
+   * Sides which stopped reading because their buffer is full or the worker is under memory
+   * pressure
+   */
+  private boolean isClientPaused = false;
+  private boolean isHostPaused = false;
+  private boolean isWaitingForMemory = false;
+  /**
+   * What the connection did, written to the access log once closed. Times are in nanoseconds,
+   * -1 if not measured.
+   */
+  private long upstreamBytes = 0;
+  private long downstreamBytes = 0;
+  private long connectTime = -1;
+  private long firstUpstreamWrittenAt = 0;
+  private long timeToFirstByte = -1;
+  private String closedBy;
+  private boolean isInitialRequestRead = false;
+  /**
+   * The response this connection fetches for the response cache, null if none
+   */
+  private CacheFill cacheFill;
+  /**
+   * The fetch of another connection this one waits for, null if none
+   */
+  private CompletableFuture<CachedResponse> pendingResponse;
+  /**
+   * Renewed by a 304 of the host, to be served by the client handler, null if none
+   */
+  private CachedResponse revalidatedResponse;
+  /**
+   * What is left to write of the cached response being served, null if none
+   */
+  private ByteBuffer cachedResponse;
+  private boolean isCachedResponseKeepAlive;
 
-  public ProxyContext(SystemContext systemContext) {
-    this.connectionBuffer = new ConnectionBuffer(systemContext.getBufferPool());
+  public ProxyContext(SystemContext systemContext, WorkerContext workerContext) {
+    this.systemContext = systemContext;
+    this.workerContext = workerContext;
+    this.connectionBuffer = new ConnectionBuffer(systemContext.getBufferPool(),
+                                                 systemContext.isLazyBuffers());
+    this.httpExchange = new HttpExchange(systemContext.getBufferSize() * KB,
+                                         null != systemContext.getResponseCache());
   }
 
   public ConnectionContext getClient() {
@@ -30,21 +121,575 @@ public class ProxyContext {
     this.host = host;
   }
 
+  /**
+   * The connection is a CONNECT tunnel, whose bytes are never looked at, so they may bypass user
+   * space if splice is enabled. The CONNECT request should be discarded already.
+   */
   public void markAsHttps() {
     this.isHttps = true;
+    this.httpExchange = null;
+    if (systemContext.isSpliceTunnels()) {
+      connectionBuffer.splice(systemContext.getSplicePipeSize());
+    }
   }
 
   public boolean isHttps() {
     return isHttps;
   }
 
+  public SystemContext getSystemContext() {
+    return systemContext;
+  }
+
+  public WorkerContext getWorkerContext() {
+    return workerContext;
+  }
+
+  public RequestTarget getHostTarget() {
+    return hostTarget;
+  }
+
+  public void setHostTarget(RequestTarget hostTarget) {
+    this.hostTarget = hostTarget;
+  }
+
+  public String getHostName() {
+    return hostTarget.getHostName();
+  }
+
+  public int getHostPort() {
+    return hostTarget.getPort();
+  }
+
+  public CompletableFuture<InetAddress> getHostResolution() {
+    return hostResolution;
+  }
+
+  public void setHostResolution(CompletableFuture<InetAddress> hostResolution) {
+    this.hostResolution = hostResolution;
+  }
+
+  public HttpExchange getHttpExchange() {
+    return httpExchange;
+  }
+
+  /**
+   * Follow the bytes read into the upstream buffer
+   *
+   * @return false if the client sent a request which cannot be routed
+   */
+  public boolean onUpstreamRead() {
+    lastActiveAt = System.nanoTime();
+    return null == httpExchange || httpExchange.onUpstreamRead(connectionBuffer.upstream());
+  }
+
+  /**
+   * return the number of upstream bytes which may be sent to the current host
+   */
+  public int getRoutableUpstreamBytes() {
+    return null == httpExchange ?
+        connectionBuffer.upstream().size() : httpExchange.getRoutableBytes();
+  }
+
+  public void onUpstreamWritten(int numOfWritten) {
+    if (numOfWritten > 0) {
+      lastActiveAt = System.nanoTime();
+      upstreamBytes += numOfWritten;
+      if (0 == firstUpstreamWrittenAt) {
+        firstUpstreamWrittenAt = lastActiveAt;
+      }
+      workerContext.onBytesTransferred(numOfWritten);
+      workerContext.getMetrics().onUpstreamWritten(numOfWritten);
+    }
+    if (null != httpExchange && numOfWritten > 0) {
+      httpExchange.onUpstreamWritten(numOfWritten);
+    }
+  }
+
+  /**
+   * Follow the last {@code numOfRead} bytes read into the downstream buffer
+   */
+  public void onDownstreamRead(int numOfRead) {
+    if (numOfRead > 0) {
+      lastActiveAt = System.nanoTime();
+      if (timeToFirstByte < 0 && 0 != firstUpstreamWrittenAt) {
+        timeToFirstByte = lastActiveAt - firstUpstreamWrittenAt;
+      }
+    }
+    if (null != httpExchange && numOfRead > 0) {
+      ChannelBuffer downstream = connectionBuffer.downstream();
+      httpExchange.onDownstreamRead(downstream, downstream.size() - numOfRead, downstream.size());
+      if (null != cacheFill) {
+        followCacheFill(downstream, downstream.size() - numOfRead, downstream.size());
+      }
+    }
+  }
+
+  /**
+   * Copy the response aside for the cache until it is complete, or until it turns out not to be
+   * storable
+   */
+  private void followCacheFill(ChannelBuffer downstream, int from, int to) {
+    long now = System.nanoTime();
+    if (!cacheFill.isHeadSeen() && httpExchange.getNumResponseHeads() > 0) {
+      if (cacheFill.isRevalidating() && 304 == httpExchange.getResponseStatus()) {
+        CachedResponse renewed =
+            cacheFill.onNotModified(httpExchange.getResponseCacheHeaders(), now);
+        cacheFill = null;
+        workerContext.getMetrics().onCacheRevalidated();
+        if (1 != httpExchange.getNumRoutedRequests()) {
+          /**
+           * the host owes responses to requests routed after the revalidated one, so it cannot be
+           * let go, the client gets the 304 as is
+           */
+          client.register(SelectionKey.OP_READ);
+          return;
+        }
+        /**
+         * the client did not ask for a 304, it gets the renewed response instead
+         */
+        revalidatedResponse = renewed;
+        httpExchange.onDownstreamWritten(downstream.size());
+        downstream.clear();
+        return;
+      }
+      boolean isStorable = cacheFill.onResponseHead(
+          httpExchange.getResponseStatus(), httpExchange.getResponseHeadLength(),
+          httpExchange.getResponseContentLength(), httpExchange.isResponseKeepAlive(),
+          httpExchange.getResponseCacheHeaders());
+      if (cacheFill.isRevalidating()) {
+        client.register(SelectionKey.OP_READ);
+      }
+      if (!isStorable) {
+        abandonCacheFill(now);
+        return;
+      }
+    }
+    if (!cacheFill.capture(downstream, from, to)) {
+      abandonCacheFill(now);
+    } else if (httpExchange.getNumResponses() > 0) {
+      cacheFill.complete(now);
+      cacheFill = null;
+    }
+  }
+
+  private void abandonCacheFill(long now) {
+    if (cacheFill.isHolding() && client.isOpen()) {
+      client.register(SelectionKey.OP_READ);
+    }
+    cacheFill.abandon(now);
+    cacheFill = null;
+  }
+
+  /**
+   * return the number of downstream bytes which may be sent to the client
+   */
+  public int getWritableDownstreamBytes() {
+    if (null != cacheFill && cacheFill.isHolding()) {
+      return 0;
+    }
+    int size = connectionBuffer.downstream().size();
+    return null == httpExchange ? size : httpExchange.getWritableDownstreamBytes(size);
+  }
+
+  public void onDownstreamWritten(int numOfWritten) {
+    if (numOfWritten > 0) {
+      lastActiveAt = System.nanoTime();
+      downstreamBytes += numOfWritten;
+      workerContext.onBytesTransferred(numOfWritten);
+      workerContext.getMetrics().onDownstreamWritten(numOfWritten);
+    }
+    if (null != httpExchange && numOfWritten > 0) {
+      httpExchange.onDownstreamWritten(numOfWritten);
+    }
+  }
+
+  /**
+   * return true if a request to another origin is held back and the current host is done with
+   * every request routed to it
+   */
+  public boolean isReadyToSwitchHost() {
+    return null != httpExchange && null != httpExchange.getPendingTarget()
+           && httpExchange.isHostIdle();
+  }
+
+  /**
+   * Route the held back request, the current host connection is either parked in the upstream pool
+   * or closed.
+   */
+  public void switchHost() {
+    if (null != host && !releaseHost()) {
+      host.closeIO();
+    }
+    host = null;
+    httpExchange.switchToPendingTarget(connectionBuffer.upstream());
+    hostTarget = httpExchange.getTarget();
+  }
+
+  /**
+   * Hand the host connection over to the worker's upstream pool if the client has nothing in
+   * flight either. On success the host is detached from this context.
+   */
+  public boolean releaseHostIfReusable() {
+    if (null == httpExchange || !httpExchange.isClientIdle()
+        || !connectionBuffer.upstream().empty() || !connectionBuffer.downstream().empty()) {
+      return false;
+    }
+    if (!releaseHost()) {
+      return false;
+    }
+    host = null;
+    return true;
+  }
+
+  /**
+   * With a response cache every request is looked up on its own, so once the host answered all it
+   * got and the client has nothing in flight, the host goes back to the upstream pool and the
+   * exchange starts over, and the next request is routed like an initial one.
+   *
+   * @return true if the host has been released
+   */
+  public boolean releaseHostForNextRequest() {
+    if (null == systemContext.getResponseCache() || !releaseHostIfReusable()) {
+      return false;
+    }
+    httpExchange.reset();
+    return true;
+  }
+
+  /**
+   * Look the single routed request up in the response cache. On a miss this connection fetches
+   * the response for the cache while forwarding it to the client, as a conditional request if a
+   * stale response can be revalidated.
+   *
+   * @return null if the response may not come from the cache
+   */
+  public ResponseCache.Lookup lookupResponseCache() {
+    ResponseCache responseCache = systemContext.getResponseCache();
+    ChannelBuffer upstream = connectionBuffer.upstream();
+    if (null == responseCache || null == httpExchange || !connectionBuffer.downstream().empty()
+        || !httpExchange.isSingleRequest(upstream)
+        || !ResponseCache.isCacheable(httpExchange.getMethod(),
+                                      httpExchange.getRequestCacheHeaders())) {
+      return null;
+    }
+    ResponseCache.Lookup lookup = responseCache.lookup(
+        ResponseCache.keyOf(hostTarget, httpExchange.getUri()), System.nanoTime());
+    if (null != lookup.getHit()) {
+      workerContext.getMetrics().onCacheHit();
+    } else if (null != lookup.getPending()) {
+      workerContext.getMetrics().onCacheCoalesced();
+    } else {
+      workerContext.getMetrics().onCacheMiss();
+      cacheFill = lookup.getFill();
+      if (cacheFill.hasStaleResponse()) {
+        byte[] request = new byte[upstream.size()];
+        upstream.get(0, request, 0, request.length);
+        byte[] conditional = cacheFill.toConditionalRequest(
+            request, systemContext.getBufferSize() * KB);
+        if (null != conditional) {
+          httpExchange.rewriteRequest(upstream, conditional);
+        }
+      }
+    }
+    return lookup;
+  }
+
+  public CompletableFuture<CachedResponse> getPendingResponse() {
+    return pendingResponse;
+  }
+
+  public void setPendingResponse(CompletableFuture<CachedResponse> pendingResponse) {
+    this.pendingResponse = pendingResponse;
+  }
+
+  /**
+   * return the response renewed by a 304 of the host, which the client handler should serve, null
+   * if none
+   */
+  public CachedResponse getRevalidatedResponse() {
+    return revalidatedResponse;
+  }
+
+  /**
+   * Answer the request with {@code response} rather than through the host: the host, if any, goes
+   * back to the upstream pool, and the exchange starts over for the next request. A request
+   * answered on lookup has not been sent and is dropped, while a revalidated request has been sent
+   * whole, so whatever the client sent after it stays in the upstream buffer, to be routed like an
+   * initial request once the response is written.
+   */
+  public void serveCachedResponse(CachedResponse response) {
+    if (null == revalidatedResponse) {
+      connectionBuffer.upstream().clear();
+    }
+    isCachedResponseKeepAlive = httpExchange.isRequestKeepAlive() && response.isKeepAlive();
+    if (null != host && !releaseHost()) {
+      host.closeIO();
+    }
+    host = null;
+    httpExchange.reset();
+    revalidatedResponse = null;
+    cachedResponse = response.newReader();
+    cancel(connectTimeout);
+    armIdleTimeout();
+  }
+
+  /**
+   * return what is left to write of the cached response being served, null if none
+   */
+  public ByteBuffer getCachedResponse() {
+    return cachedResponse;
+  }
+
+  public void onCachedResponseWritten(int numOfWritten) {
+    if (numOfWritten > 0) {
+      lastActiveAt = System.nanoTime();
+      downstreamBytes += numOfWritten;
+      workerContext.onBytesTransferred(numOfWritten);
+      workerContext.getMetrics().onDownstreamWritten(numOfWritten);
+    }
+  }
+
+  /**
+   * The cached response has been written
+   *
+   * @return false if the client connection should be closed
+   */
+  public boolean finishCachedResponse() {
+    cachedResponse = null;
+    return isCachedResponseKeepAlive;
+  }
+
+  private boolean releaseHost() {
+    return null != host && httpExchange.isHostReusable()
+           && !host.isInputShutdown() && !host.isOutputShutdown()
+           && workerContext.getUpstreamPool().release(getHostName(), getHostPort(), host);
+  }
+
   public ConnectionBuffer getConnectionBuffer() {
     return connectionBuffer;
   }
 
+  /**
+   * Should only be called by the worker thread, after each event of the connection
+   *
+   * @param handler e.g. client or host
+   * @param state   of the handler when the event came
+   * @param time    nanoseconds spent on the event
+   */
+  public void onHandled(String handler, Enum<?> state, long time) {
+    workerContext.getMetrics().onHandled(handler, state, time);
+    long threshold = systemContext.getSlowHandlerThreshold();
+    if (0 != threshold && time > threshold) {
+      String description = String.format(
+          "<%s -> %s> %s handler in state %s took %dus", client.getName(), hostTarget, handler,
+          state, TimeUnit.NANOSECONDS.toMicros(time));
+      LOGGER.warn("slow event: {}.", description);
+      workerContext.getMetrics().onSlowHandler(description);
+    }
+  }
+
+  /**
+   * Runs after every event of the connection
+   */
   public void cleanup() {
+    if (null != cacheFill && (!client.isOpen() || isHostGone())) {
+      abandonCacheFill(System.nanoTime());
+    }
     if (!client.isOpen() && (null == host || !host.isOpen())) {
+      workerContext.onBuffered(-accountedBytes);
+      accountedBytes = 0;
       connectionBuffer.free();
+      cancel(headerReadTimeout);
+      cancel(connectTimeout);
+      cancel(idleTimeout);
+      cancel(lifetimeTimeout);
+      if (!isClosed) {
+        isClosed = true;
+        workerContext.getMetrics().onClosed();
+        logAccess();
+      }
+      return;
+    }
+    long bufferedBytes = connectionBuffer.upstream().size() + connectionBuffer.downstream().size();
+    workerContext.onBuffered(bufferedBytes - accountedBytes);
+    accountedBytes = bufferedBytes;
+    applyBackpressure();
+  }
+
+  /**
+   * return true if the host has closed or will not send anything anymore
+   */
+  private boolean isHostGone() {
+    return null != host && (!host.isOpen() || (host.isConnected() && host.isInputShutdown()));
+  }
+
+  /**
+   * Hand the record of the closed connection over to the access log, it is dropped rather than
+   * waited for if the worker's ring is full
+   */
+  private void logAccess() {
+    AccessLogRing accessLog = workerContext.getAccessLog();
+    if (null == accessLog) {
+      return;
+    }
+    AccessLogRecord record = accessLog.claim();
+    if (null == record) {
+      workerContext.getMetrics().onAccessLogDropped();
+      return;
+    }
+    record.setClosedAt(System.currentTimeMillis());
+    record.setClient(client.getName());
+    record.setScheme(isHttps ? AccessLogRecord.CONNECT : AccessLogRecord.HTTP);
+    record.setTarget(hostTarget);
+    record.setUpstreamBytes(upstreamBytes);
+    record.setDownstreamBytes(downstreamBytes);
+    record.setConnectTime(connectTime);
+    record.setTimeToFirstByte(timeToFirstByte);
+    record.setDuration(System.nanoTime() - createdAt);
+    record.setClosedBy(closedBy);
+    accessLog.publish();
+  }
+
+  /**
+   * Should only be called by the worker thread. While bridging, a side stops reading once the
+   * buffer it reads into is full, or the worker holds too many bytes, instead of being woken up
+   * for reads it cannot take. It reads again once its buffer drained to the low water mark and the
+   * memory pressure is gone.
+   */
+  public void applyBackpressure() {
+    if (!systemContext.isBackpressure() || !client.isOpen() || null == host || !host.isOpen()
+        || !host.isConnected()) {
+      return;
+    }
+    boolean isUnderMemoryPressure = workerContext.isUnderMemoryPressure();
+    isClientPaused = throttle(client, connectionBuffer.upstream(), isClientPaused,
+                              isUnderMemoryPressure);
+    isHostPaused = throttle(host, connectionBuffer.downstream(), isHostPaused,
+                            isUnderMemoryPressure);
+    if (isUnderMemoryPressure && (isClientPaused || isHostPaused) && !isWaitingForMemory) {
+      isWaitingForMemory = true;
+      workerContext.onPausedByMemoryPressure(this);
+    } else if (!isUnderMemoryPressure) {
+      isWaitingForMemory = false;
+    }
+  }
+
+  /**
+   * @return true if {@code source} is paused
+   */
+  private boolean throttle(ConnectionContext source, ChannelBuffer buffer, boolean isPaused,
+                           boolean isUnderMemoryPressure) {
+    if (source.isInputShutdown()) {
+      return false;
+    }
+    if (buffer.full() || (isUnderMemoryPressure && !isPaused)) {
+      source.unregister(SelectionKey.OP_READ);
+      return true;
+    }
+    if (isPaused && !isUnderMemoryPressure && buffer.size() <= systemContext.getLowWaterMark()) {
+      source.register(SelectionKey.OP_READ);
+      return false;
+    }
+    return isPaused;
+  }
+
+  /**
+   * Should only be called by the worker thread, once the client is registered. Arms the header read
+   * and lifetime deadlines.
+   */
+  public void startTimeouts() {
+    headerReadTimeout = schedule(systemContext.getHeaderReadTimeout(),
+                                 () -> expire("header read"));
+    lifetimeTimeout = schedule(systemContext.getMaxConnectionLifetime(),
+                               () -> expire("lifetime"));
+  }
+
+  /**
+   * The initial request head is complete
+   */
+  public void onInitialRequestRead() {
+    if (isInitialRequestRead) {
+      return;
+    }
+    isInitialRequestRead = true;
+    cancel(headerReadTimeout);
+    workerContext.getMetrics().onInitialRequestRead(System.nanoTime() - createdAt);
+  }
+
+  /**
+   * A host is about to be resolved and connected
+   */
+  public void onConnectingHost() {
+    cancel(connectTimeout);
+    connectingSince = System.nanoTime();
+    connectTimeout = schedule(systemContext.getConnectTimeout(), () -> expire("connect"));
+  }
+
+  /**
+   * The host is connected and the connection starts bridging, idle time counts from now on
+   */
+  public void onHostConnected() {
+    cancel(connectTimeout);
+    /**
+     * a pooled host is connected already
+     */
+    if (0 != connectingSince) {
+      long latency = System.nanoTime() - connectingSince;
+      workerContext.getMetrics().onHostConnected(latency);
+      connectTime = Math.max(0, connectTime) + latency;
+      connectingSince = 0;
+    }
+    isClientPaused = false;
+    isHostPaused = false;
+    if (null != cacheFill && cacheFill.isHolding()) {
+      /**
+       * nothing more is routed until the revalidation is decided
+       */
+      client.unregister(SelectionKey.OP_READ);
+    }
+    armIdleTimeout();
+  }
+
+  private void armIdleTimeout() {
+    if (null == idleTimeout) {
+      lastActiveAt = System.nanoTime();
+      idleTimeout = schedule(systemContext.getIdleTimeout(), this::onIdleTimeout);
+    }
+  }
+
+  private void onIdleTimeout() {
+    long remaining = TimeUnit.SECONDS.toNanos(systemContext.getIdleTimeout())
+                     - (System.nanoTime() - lastActiveAt);
+    if (remaining > 0) {
+      idleTimeout = workerContext.getTimingWheel().schedule(
+          this::onIdleTimeout, TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+    } else {
+      expire("idle");
+    }
+  }
+
+  private void expire(String deadline) {
+    LOGGER.debug("<{}> passed its {} deadline, so close it.", client.getName(), deadline);
+    closedBy = deadline.replace(' ', '-');
+    client.closeIO();
+    if (null != host) {
+      host.closeIO();
+    }
+    cleanup();
+  }
+
+  /**
+   * @param delay in second, 0 arms nothing
+   */
+  private TimingWheel.Timeout schedule(int delay, Runnable task) {
+    return 0 == delay ?
+        null : workerContext.getTimingWheel().schedule(task, TimeUnit.SECONDS.toMillis(delay));
+  }
+
+  private static void cancel(TimingWheel.Timeout timeout) {
+    if (null != timeout) {
+      timeout.cancel();
     }
   }
 
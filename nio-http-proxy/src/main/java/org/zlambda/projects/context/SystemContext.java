@@ -1,55 +1,219 @@
 package org.zlambda.projects.context;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import org.zlambda.projects.accesslog.AccessLog;
 import org.zlambda.projects.buffer.ChannelBuffer;
 import org.zlambda.projects.buffer.ChannelBufferPool;
 import org.zlambda.projects.buffer.DirectChannelBufferPool;
 import org.zlambda.projects.buffer.HeapChannelBufferPool;
+import org.zlambda.projects.buffer.SlabAllocator;
+import org.zlambda.projects.buffer.SlabChannelBufferPool;
+import org.zlambda.projects.cache.ResponseCache;
+import org.zlambda.projects.metrics.MetricsRegistry;
+import org.zlambda.projects.resolver.CachingHostResolver;
+import org.zlambda.projects.resolver.HostResolver;
+import org.zlambda.projects.resolver.NameService;
 import org.zlambda.projects.utils.JsonUtils;
 
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Thread Safe Class
  */
 public class SystemContext {
+  private static final int KB = 1024;
+  private static final int MB = 1024 * KB;
+  public static final String NIO_ENGINE = "nio";
+  public static final String BLOCKING_ENGINE = "blocking";
   @JsonIgnore
   private final BlockingQueue<SocketChannel> clientQueue;
   @JsonIgnore
   private final ChannelBufferPool<ChannelBuffer> bufferPool;
+  @JsonIgnore
+  private final HostResolver resolver;
+  @JsonIgnore
+  private final MetricsRegistry metrics;
+  /**
+   * null if the access log is disabled
+   */
+  @JsonIgnore
+  private final AccessLog accessLog;
+  /**
+   * null if the response cache is disabled
+   */
+  @JsonIgnore
+  private final ResponseCache responseCache;
   private final int port;
+  private final int adminPort;
+  private final String adminHost;
+  private final String engine;
   private final int numWorkers;
+  private final int numAcceptors;
+  private final boolean reusePort;
+  private final String workerSelection;
   private final boolean enableMonitor;
   private final boolean useDirectBuffer;
+  private final boolean useSlabBuffer;
+  private final int slabMaxMemory;
+  private final boolean lazyBuffers;
+  private final boolean ringBuffer;
+  private final int ioLoopMaxRounds;
+  private final int ioLoopMaxBytes;
+  private final boolean cutThrough;
+  private final boolean tcpNoDelay;
+  private final boolean spliceTunnels;
+  private final int splicePipeSize;
+  private final boolean backpressure;
+  private final int lowWaterMark;
+  private final long maxInFlight;
+  private final long workerMaxInFlight;
   private final int minBuffers;
   private final int maxBuffers;
   private final int bufferSize;
+  private final int localBufferCacheSize;
   private final int monitorUpdateInterval;
+  private final int resolverThreads;
+  private final int dnsCacheTtl;
+  private final int dnsNegativeCacheTtl;
+  private final int dnsCacheSize;
+  private final int upstreamPoolMaxIdle;
+  private final int upstreamPoolIdleTimeout;
+  private final int connectTimeout;
+  private final int headerReadTimeout;
+  private final int idleTimeout;
+  private final int maxConnectionLifetime;
+  private final long slowHandlerThreshold;
+  private final String accessLogFile;
+  private final int accessLogRingSize;
+  private final int cacheMaxMemory;
+  private final int cacheMaxEntrySize;
 
   private SystemContext(Builder builder) {
     this.clientQueue = builder.clientQueue;
     this.port = builder.port;
+    this.adminPort = builder.adminPort;
+    this.adminHost = builder.adminHost;
+    this.engine = builder.engine;
     this.numWorkers = builder.numWorkers;
+    this.numAcceptors = builder.numAcceptors;
+    this.reusePort = builder.reusePort;
+    this.workerSelection = builder.workerSelection;
     this.enableMonitor = builder.enableMonitor;
     this.maxBuffers = builder.maxBuffers;
     this.minBuffers = builder.minBuffers;
     this.bufferSize = builder.bufferSize;
+    this.localBufferCacheSize = builder.localBufferCacheSize;
     this.useDirectBuffer = builder.useDirectBuffer;
+    this.useSlabBuffer = builder.useSlabBuffer;
+    this.slabMaxMemory = builder.slabMaxMemory;
+    this.lazyBuffers = builder.lazyBuffers;
+    this.ringBuffer = builder.ringBuffer;
+    this.ioLoopMaxRounds = Math.max(1, builder.ioLoopMaxRounds);
+    this.ioLoopMaxBytes = builder.ioLoopMaxBytes * KB;
+    this.cutThrough = builder.cutThrough;
+    this.tcpNoDelay = builder.tcpNoDelay;
+    this.spliceTunnels = builder.spliceTunnels;
+    this.splicePipeSize = builder.splicePipeSize * KB;
+    this.backpressure = builder.backpressure;
+    this.lowWaterMark = builder.bufferSize * KB / 100 * builder.lowWaterMark;
+    this.maxInFlight = (long) builder.maxInFlight * MB;
+    this.workerMaxInFlight = (long) builder.workerMaxInFlight * MB;
     this.monitorUpdateInterval = builder.monitorUpdateInterval;
+    this.resolverThreads = builder.resolverThreads;
+    this.dnsCacheTtl = builder.dnsCacheTtl;
+    this.dnsNegativeCacheTtl = builder.dnsNegativeCacheTtl;
+    this.dnsCacheSize = builder.dnsCacheSize;
+    this.upstreamPoolMaxIdle = builder.upstreamPoolMaxIdle;
+    this.upstreamPoolIdleTimeout = builder.upstreamPoolIdleTimeout;
+    this.connectTimeout = builder.connectTimeout;
+    this.headerReadTimeout = builder.headerReadTimeout;
+    this.idleTimeout = builder.idleTimeout;
+    this.maxConnectionLifetime = builder.maxConnectionLifetime;
+    this.slowHandlerThreshold = TimeUnit.MILLISECONDS.toNanos(builder.slowHandlerThreshold);
+    this.accessLogFile = builder.accessLogFile;
+    this.accessLogRingSize = builder.accessLogRingSize;
+    this.cacheMaxMemory = builder.cacheMaxMemory;
+    this.cacheMaxEntrySize = builder.cacheMaxEntrySize;
     this.bufferPool = createBufferPoll();
+    this.resolver = createResolver(builder.nameService);
+    this.metrics = new MetricsRegistry(bufferPool);
+    /**
+     * only the workers of the nio engine write to it
+     */
+    this.accessLog = accessLogFile.isEmpty() || isBlockingEngine() ?
+        null : new AccessLog(accessLogFile, accessLogRingSize);
+    this.responseCache = 0 == cacheMaxMemory ?
+        null : new ResponseCache((long) cacheMaxMemory * MB, cacheMaxEntrySize * KB);
+  }
+
+  private HostResolver createResolver(NameService nameService) {
+    return new CachingHostResolver(
+        null == nameService ? NameService.SYSTEM : nameService,
+        Executors.newFixedThreadPool(
+            resolverThreads,
+            new ThreadFactoryBuilder().setNameFormat("Resolver-%d").setDaemon(true).build()),
+        dnsCacheTtl, dnsNegativeCacheTtl, dnsCacheSize);
   }
 
   private ChannelBufferPool<ChannelBuffer> createBufferPoll() {
-    return useDirectBuffer ? new DirectChannelBufferPool(minBuffers, maxBuffers, bufferSize) :
-        new HeapChannelBufferPool(bufferSize);
+    /**
+     * the per worker caches together never hold more than half of the pool, connection threads of
+     * the blocking engine are short lived so their caches would only strand buffers
+     */
+    int localCacheSize = isBlockingEngine() ?
+        0 : Math.min(localBufferCacheSize, maxBuffers / (2 * Math.max(1, numWorkers)));
+    if (useSlabBuffer) {
+      return new SlabChannelBufferPool(new SlabAllocator((long) slabMaxMemory * MB));
+    }
+    return useDirectBuffer ?
+        new DirectChannelBufferPool(minBuffers, maxBuffers, bufferSize, localCacheSize,
+                                    ringBuffer) :
+        new HeapChannelBufferPool(bufferSize, ringBuffer);
   }
 
   public ChannelBufferPool<ChannelBuffer> getBufferPool() {
     return bufferPool;
   }
 
+  public HostResolver getResolver() {
+    return resolver;
+  }
+
+  public MetricsRegistry getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * return the access log, null if disabled or for the blocking engine
+   */
+  public AccessLog getAccessLog() {
+    return accessLog;
+  }
+
+  /**
+   * return the response cache shared by the workers, null if disabled
+   */
+  public ResponseCache getResponseCache() {
+    return responseCache;
+  }
+
+  public String getEngine() {
+    return engine;
+  }
+
+  /**
+   * true if every connection runs on threads of its own doing blocking i/o, instead of being
+   * multiplexed on the selector workers
+   */
+  public boolean isBlockingEngine() {
+    return BLOCKING_ENGINE.equals(engine);
+  }
+
   public BlockingQueue<SocketChannel> getClientQueue() {
     return clientQueue;
   }
@@ -58,10 +222,40 @@ public class SystemContext {
     return port;
   }
 
+  /**
+   * 0 if the admin endpoint is disabled
+   */
+  public int getAdminPort() {
+    return adminPort;
+  }
+
+  /**
+   * return the address the admin endpoint binds to
+   */
+  public String getAdminHost() {
+    return adminHost;
+  }
+
   public int getNumWorkers() {
     return numWorkers;
   }
 
+  /**
+   * 0 means a single {@code ConnectionListener} feeding the {@code Dispatcher} through the client
+   * queue
+   */
+  public int getNumAcceptors() {
+    return numAcceptors;
+  }
+
+  public boolean isReusePort() {
+    return reusePort;
+  }
+
+  public String getWorkerSelection() {
+    return workerSelection;
+  }
+
   public boolean enableMonitor() {
     return enableMonitor;
   }
@@ -70,10 +264,176 @@ public class SystemContext {
     return useDirectBuffer;
   }
 
+  public boolean isUseSlabBuffer() {
+    return useSlabBuffer;
+  }
+
+  /**
+   * true if connections only hold buffers of the pool while there is data to forward
+   */
+  public boolean isLazyBuffers() {
+    return lazyBuffers;
+  }
+
+  /**
+   * true if the fixed size buffers are circular, the elastic slab buffers never are
+   */
+  public boolean isRingBuffer() {
+    return ringBuffer;
+  }
+
+  /**
+   * return the max number of reads from one socket per selected event
+   */
+  public int getIoLoopMaxRounds() {
+    return ioLoopMaxRounds;
+  }
+
+  /**
+   * return the max number of bytes read from one socket per selected event, after which the loop
+   * yields to the other connections of the worker
+   */
+  public int getIoLoopMaxBytes() {
+    return ioLoopMaxBytes;
+  }
+
+  /**
+   * true if data read from one socket is written to the other one in the same event, which then
+   * only listens on write event for what it did not take
+   */
+  public boolean isCutThrough() {
+    return cutThrough;
+  }
+
+  public boolean isTcpNoDelay() {
+    return tcpNoDelay;
+  }
+
+  /**
+   * true if CONNECT tunnels should move their bytes through kernel pipes, when splice is available
+   */
+  public boolean isSpliceTunnels() {
+    return spliceTunnels;
+  }
+
+  /**
+   * return the requested capacity in bytes of the pipes of a spliced tunnel
+   */
+  public int getSplicePipeSize() {
+    return splicePipeSize;
+  }
+
+  /**
+   * true if a side stops being read while the buffer it fills is full, until the other side drained
+   * it below the low water mark
+   */
+  public boolean isBackpressure() {
+    return backpressure;
+  }
+
+  /**
+   * return the bytes below which a paused side is read again
+   */
+  public int getLowWaterMark() {
+    return lowWaterMark;
+  }
+
+  /**
+   * return the bytes all connections may hold in their buffers before accepting and reading pause,
+   * 0 if unlimited
+   */
+  public long getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * return the bytes the connections of one worker may hold in their buffers before its reading
+   * pauses, 0 if unlimited
+   */
+  public long getWorkerMaxInFlight() {
+    return workerMaxInFlight;
+  }
+
+  /**
+   * return the buffer size in KB
+   */
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
   public int getMonitorUpdateInterval() {
     return monitorUpdateInterval;
   }
 
+  public int getUpstreamPoolMaxIdle() {
+    return upstreamPoolMaxIdle;
+  }
+
+  public int getUpstreamPoolIdleTimeout() {
+    return upstreamPoolIdleTimeout;
+  }
+
+  /**
+   * return the seconds a host may take to be resolved and connected, 0 if unlimited
+   */
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * return the seconds a client may take to send its initial request head, 0 if unlimited
+   */
+  public int getHeaderReadTimeout() {
+    return headerReadTimeout;
+  }
+
+  /**
+   * return the seconds a bridged connection may go without moving a byte, 0 if unlimited
+   */
+  public int getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * return the seconds a connection may stay open, 0 if unlimited
+   */
+  public int getMaxConnectionLifetime() {
+    return maxConnectionLifetime;
+  }
+
+  /**
+   * return the nanoseconds an event of a connection may take before it is reported as slow, 0 if
+   * disabled
+   */
+  public long getSlowHandlerThreshold() {
+    return slowHandlerThreshold;
+  }
+
+  /**
+   * empty if the access log is disabled
+   */
+  public String getAccessLogFile() {
+    return accessLogFile;
+  }
+
+  public int getAccessLogRingSize() {
+    return accessLogRingSize;
+  }
+
+  /**
+   * return the memory of the response cache in MB, 0 if disabled
+   */
+  public int getCacheMaxMemory() {
+    return cacheMaxMemory;
+  }
+
+  /**
+   * return the size in KB of the largest response to be cached
+   */
+  public int getCacheMaxEntrySize() {
+    return cacheMaxEntrySize;
+  }
+
   @Override
   public String toString() {
     try {
@@ -86,13 +446,50 @@ public class SystemContext {
   public static class Builder {
     private BlockingQueue<SocketChannel> clientQueue;
     private int port;
+    private int adminPort;
+    private String adminHost = "127.0.0.1";
+    private String engine = NIO_ENGINE;
     private int numWorkers;
+    private int numAcceptors;
+    private boolean reusePort;
+    private String workerSelection;
     private boolean enableMonitor;
     private boolean useDirectBuffer;
+    private boolean useSlabBuffer;
+    private int slabMaxMemory;
+    private boolean lazyBuffers;
+    private boolean ringBuffer;
+    private int ioLoopMaxRounds;
+    private int ioLoopMaxBytes;
+    private boolean cutThrough;
+    private boolean tcpNoDelay;
+    private boolean spliceTunnels;
+    private int splicePipeSize;
+    private boolean backpressure;
+    private int lowWaterMark;
+    private int maxInFlight;
+    private int workerMaxInFlight;
     private int minBuffers;
     private int maxBuffers;
     private int bufferSize;
+    private int localBufferCacheSize;
     private int monitorUpdateInterval;
+    private int resolverThreads;
+    private int dnsCacheTtl;
+    private int dnsNegativeCacheTtl;
+    private int dnsCacheSize;
+    private NameService nameService;
+    private int upstreamPoolMaxIdle;
+    private int upstreamPoolIdleTimeout;
+    private int connectTimeout;
+    private int headerReadTimeout;
+    private int idleTimeout;
+    private int maxConnectionLifetime;
+    private int slowHandlerThreshold;
+    private String accessLogFile = "";
+    private int accessLogRingSize;
+    private int cacheMaxMemory;
+    private int cacheMaxEntrySize;
 
     public Builder clientQueue(BlockingQueue<SocketChannel> queue) {
       this.clientQueue = queue;
@@ -104,16 +501,54 @@ public class SystemContext {
       return this;
     }
 
+    public Builder adminPort(int adminPort) {
+      this.adminPort = adminPort;
+      return this;
+    }
+
+    public Builder adminHost(String adminHost) {
+      this.adminHost = adminHost;
+      return this;
+    }
+
+    /**
+     * @param engine {@link #NIO_ENGINE} or {@link #BLOCKING_ENGINE}
+     */
+    public Builder engine(String engine) {
+      this.engine = engine;
+      return this;
+    }
+
     public Builder numWorkers(int num) {
       this.numWorkers = num;
       return this;
     }
 
+    public Builder numAcceptors(int num) {
+      this.numAcceptors = num;
+      return this;
+    }
+
+    public Builder reusePort(boolean reusePort) {
+      this.reusePort = reusePort;
+      return this;
+    }
+
+    public Builder workerSelection(String workerSelection) {
+      this.workerSelection = workerSelection;
+      return this;
+    }
+
     public Builder bufferSize(int size) {
       this.bufferSize = size;
       return this;
     }
 
+    public Builder localBufferCacheSize(int localBufferCacheSize) {
+      this.localBufferCacheSize = localBufferCacheSize;
+      return this;
+    }
+
     public Builder enableMonitor(boolean enableMonitor) {
       this.enableMonitor = enableMonitor;
       return this;
@@ -134,12 +569,216 @@ public class SystemContext {
       return this;
     }
 
+    public Builder useSlabBuffer(boolean useSlabBuffer) {
+      this.useSlabBuffer = useSlabBuffer;
+      return this;
+    }
+
+    /**
+     * @param slabMaxMemory in MB
+     */
+    public Builder slabMaxMemory(int slabMaxMemory) {
+      this.slabMaxMemory = slabMaxMemory;
+      return this;
+    }
+
+    public Builder lazyBuffers(boolean lazyBuffers) {
+      this.lazyBuffers = lazyBuffers;
+      return this;
+    }
+
+    public Builder ringBuffer(boolean ringBuffer) {
+      this.ringBuffer = ringBuffer;
+      return this;
+    }
+
+    public Builder ioLoopMaxRounds(int ioLoopMaxRounds) {
+      this.ioLoopMaxRounds = ioLoopMaxRounds;
+      return this;
+    }
+
+    /**
+     * @param ioLoopMaxBytes in KB
+     */
+    public Builder ioLoopMaxBytes(int ioLoopMaxBytes) {
+      this.ioLoopMaxBytes = ioLoopMaxBytes;
+      return this;
+    }
+
+    public Builder cutThrough(boolean cutThrough) {
+      this.cutThrough = cutThrough;
+      return this;
+    }
+
+    public Builder tcpNoDelay(boolean tcpNoDelay) {
+      this.tcpNoDelay = tcpNoDelay;
+      return this;
+    }
+
+    public Builder spliceTunnels(boolean spliceTunnels) {
+      this.spliceTunnels = spliceTunnels;
+      return this;
+    }
+
+    /**
+     * @param splicePipeSize in KB
+     */
+    public Builder splicePipeSize(int splicePipeSize) {
+      this.splicePipeSize = splicePipeSize;
+      return this;
+    }
+
+    public Builder backpressure(boolean backpressure) {
+      this.backpressure = backpressure;
+      return this;
+    }
+
+    /**
+     * @param lowWaterMark in percent of the buffer size
+     */
+    public Builder lowWaterMark(int lowWaterMark) {
+      this.lowWaterMark = lowWaterMark;
+      return this;
+    }
+
+    /**
+     * @param maxInFlight in MB
+     */
+    public Builder maxInFlight(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * @param workerMaxInFlight in MB
+     */
+    public Builder workerMaxInFlight(int workerMaxInFlight) {
+      this.workerMaxInFlight = workerMaxInFlight;
+      return this;
+    }
+
     public Builder monitorUpdateInterval(int monitorUpdateInterval) {
       this.monitorUpdateInterval = monitorUpdateInterval;
       return this;
     }
 
+    public Builder resolverThreads(int resolverThreads) {
+      this.resolverThreads = resolverThreads;
+      return this;
+    }
+
+    public Builder dnsCacheTtl(int dnsCacheTtl) {
+      this.dnsCacheTtl = dnsCacheTtl;
+      return this;
+    }
+
+    public Builder dnsNegativeCacheTtl(int dnsNegativeCacheTtl) {
+      this.dnsNegativeCacheTtl = dnsNegativeCacheTtl;
+      return this;
+    }
+
+    public Builder dnsCacheSize(int dnsCacheSize) {
+      this.dnsCacheSize = dnsCacheSize;
+      return this;
+    }
+
+    /**
+     * Replace the system name service, e.g. with a local stand-in resolver
+     */
+    public Builder nameService(NameService nameService) {
+      this.nameService = nameService;
+      return this;
+    }
+
+    public Builder upstreamPoolMaxIdle(int upstreamPoolMaxIdle) {
+      this.upstreamPoolMaxIdle = upstreamPoolMaxIdle;
+      return this;
+    }
+
+    public Builder upstreamPoolIdleTimeout(int upstreamPoolIdleTimeout) {
+      this.upstreamPoolIdleTimeout = upstreamPoolIdleTimeout;
+      return this;
+    }
+
+    /**
+     * @param connectTimeout in second
+     */
+    public Builder connectTimeout(int connectTimeout) {
+      this.connectTimeout = connectTimeout;
+      return this;
+    }
+
+    /**
+     * @param headerReadTimeout in second
+     */
+    public Builder headerReadTimeout(int headerReadTimeout) {
+      this.headerReadTimeout = headerReadTimeout;
+      return this;
+    }
+
+    /**
+     * @param idleTimeout in second
+     */
+    public Builder idleTimeout(int idleTimeout) {
+      this.idleTimeout = idleTimeout;
+      return this;
+    }
+
+    /**
+     * @param maxConnectionLifetime in second
+     */
+    public Builder maxConnectionLifetime(int maxConnectionLifetime) {
+      this.maxConnectionLifetime = maxConnectionLifetime;
+      return this;
+    }
+
+    /**
+     * @param slowHandlerThreshold in ms
+     */
+    public Builder slowHandlerThreshold(int slowHandlerThreshold) {
+      this.slowHandlerThreshold = slowHandlerThreshold;
+      return this;
+    }
+
+    /**
+     * @param accessLogFile empty disables the access log
+     */
+    public Builder accessLogFile(String accessLogFile) {
+      this.accessLogFile = accessLogFile;
+      return this;
+    }
+
+    /**
+     * @param accessLogRingSize records buffered per worker
+     */
+    public Builder accessLogRingSize(int accessLogRingSize) {
+      this.accessLogRingSize = accessLogRingSize;
+      return this;
+    }
+
+    /**
+     * @param cacheMaxMemory in MB, 0 disables the response cache
+     */
+    public Builder cacheMaxMemory(int cacheMaxMemory) {
+      this.cacheMaxMemory = cacheMaxMemory;
+      return this;
+    }
+
+    /**
+     * @param cacheMaxEntrySize in KB
+     */
+    public Builder cacheMaxEntrySize(int cacheMaxEntrySize) {
+      this.cacheMaxEntrySize = cacheMaxEntrySize;
+      return this;
+    }
+
     public SystemContext build() {
+      if (!NIO_ENGINE.equals(engine) && !BLOCKING_ENGINE.equals(engine)) {
+        throw new IllegalArgumentException("unknown engine " + engine);
+      }
+      if (lowWaterMark < 0 || lowWaterMark > 100) {
+        throw new IllegalArgumentException("lowWaterMark should be a percent, got " + lowWaterMark);
+      }
       return new SystemContext(this);
     }
   }
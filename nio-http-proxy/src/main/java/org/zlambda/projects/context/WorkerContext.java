@@ -1,20 +1,87 @@
 package org.zlambda.projects.context;
 
+import org.zlambda.projects.accesslog.AccessLogRing;
+import org.zlambda.projects.metrics.WorkerMetrics;
+import org.zlambda.projects.timer.TimingWheel;
+import org.zlambda.projects.upstream.UpstreamConnectionPool;
+
+import java.io.IOException;
 import java.nio.channels.Selector;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WorkerContext {
-  private final Object wakeupBarrier = new Object();
-  private final Object contextSetMonitor;
-  private final Set<WorkerContext> contextSet;
+  /**
+   * Transfer rates older than this are from a worker which went idle
+   */
+  private static final long TRANSFER_RATE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+  /**
+   * The worker group this worker belongs to, threadsafe
+   */
+  private final Collection<WorkerContext> workers;
   private final Selector selector;
+  private final UpstreamConnectionPool upstreamPool;
+  private final TimingWheel timingWheel;
+  private final WorkerMetrics metrics;
+  /**
+   * null if the access log is disabled
+   */
+  private final AccessLogRing accessLog;
+  /**
+   * Tasks published by other threads which must run on the worker thread
+   */
+  private final Queue<PendingTask> pendingTasks = new ConcurrentLinkedQueue<>();
+  /**
+   * Set by the first task published since the worker last started to select, so a burst of tasks
+   * wakes the selector up once
+   */
+  private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
   private volatile String name = "unnamed (not-start)";
-  private volatile int numConnections = 0;
+  /**
+   * Load of the worker, published by the worker thread once per select loop iteration, except
+   * {@link #numAssigned} which is counted by the threads handing clients over
+   */
+  private final AtomicInteger numAssigned = new AtomicInteger(0);
+  private volatile int numChannels = 0;
+  private volatile long loopLatency = 0;
+  private volatile long transferRate = 0;
+  private volatile long transferRateUpdatedAt = System.nanoTime();
+  /**
+   * Only accessed by the worker thread
+   */
+  private long bytesTransferred = 0;
+  /**
+   * Caps on the bytes held in connection buffers, 0 if unlimited
+   */
+  private final long maxInFlight;
+  private final long workerMaxInFlight;
+  /**
+   * Bytes held in the buffers of the worker's connections, only accessed by the worker thread and
+   * published once per select loop iteration
+   */
+  private long inFlightBytes = 0;
+  private volatile long publishedInFlightBytes = 0;
+  /**
+   * Only accessed by the worker thread
+   */
+  private boolean memoryPressure = false;
+  private final List<ProxyContext> pausedConnections = new ArrayList<>();
 
   private WorkerContext(Builder builder) {
     this.selector = builder.selector;
-    this.contextSet = builder.contextSet;
-    this.contextSetMonitor = builder.contextSetMonitor;
+    this.workers = builder.workers;
+    this.upstreamPool = builder.upstreamPool;
+    this.timingWheel = builder.timingWheel;
+    this.metrics = builder.metrics;
+    this.accessLog = builder.accessLog;
+    this.maxInFlight = builder.maxInFlight;
+    this.workerMaxInFlight = builder.workerMaxInFlight;
   }
 
   public String getName() {
@@ -23,36 +90,233 @@ public class WorkerContext {
 
   public void setName(String name) {
     this.name = name;
+    metrics.setName(name);
+  }
+
+  /**
+   * Should only be updated by the worker thread
+   */
+  public WorkerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Should only be filled by the worker thread, null if the access log is disabled
+   */
+  public AccessLogRing getAccessLog() {
+    return accessLog;
   }
 
+  /**
+   * return the channels registered with the worker as of its last select loop iteration plus the
+   * clients handed over since
+   */
   public int getNumConnections() {
-    return numConnections;
+    return numChannels + numAssigned.get();
+  }
+
+  /**
+   * return the moving average of the time the worker spends handling the events of one select, in
+   * nanoseconds
+   */
+  public long getLoopLatency() {
+    return loopLatency;
+  }
+
+  /**
+   * return the moving average of the bytes the worker forwards per second
+   */
+  public long getTransferRate() {
+    return System.nanoTime() - transferRateUpdatedAt > 2 * TRANSFER_RATE_INTERVAL ?
+        0 : transferRate;
+  }
+
+  /**
+   * Threadsafe. A client is about to be handed over, see {@link #onRegistered()}
+   */
+  public void onAssigned() {
+    numAssigned.incrementAndGet();
+  }
+
+  /**
+   * Should only be called by the worker thread, once the client handed over is registered
+   */
+  public void onRegistered() {
+    numAssigned.decrementAndGet();
+  }
+
+  /**
+   * Should only be called by the worker thread
+   */
+  public void onBytesTransferred(int numOfBytes) {
+    bytesTransferred += numOfBytes;
+  }
+
+  /**
+   * Should only be called by the worker thread, at the end of each select loop iteration
+   *
+   * @param busyTime nanoseconds spent on the iteration, not counting the select itself
+   */
+  public void updateLoad(long busyTime) {
+    numChannels = selector.keys().size();
+    loopLatency += (busyTime - loopLatency) >> 3;
+    metrics.onLoop(busyTime);
+    metrics.setIdlePooledHosts(upstreamPool.size());
+    long now = System.nanoTime();
+    long elapsed = now - transferRateUpdatedAt;
+    if (elapsed >= TRANSFER_RATE_INTERVAL) {
+      long rate = bytesTransferred * TimeUnit.SECONDS.toNanos(1) / elapsed;
+      /**
+       * after an idle period the old rate is stale, start over
+       */
+      transferRate = elapsed > 2 * TRANSFER_RATE_INTERVAL ?
+          rate : transferRate + ((rate - transferRate) >> 2);
+      transferRateUpdatedAt = now;
+      bytesTransferred = 0;
+    }
+  }
+
+  /**
+   * Should only be called by the worker thread
+   *
+   * @param numOfBytes change of the bytes held in the buffers of one connection
+   */
+  public void onBuffered(long numOfBytes) {
+    inFlightBytes += numOfBytes;
+  }
+
+  /**
+   * return the bytes held in the buffers of the worker's connections as of its last select loop
+   * iteration
+   */
+  public long getInFlightBytes() {
+    return publishedInFlightBytes;
+  }
+
+  /**
+   * Threadsafe. return the bytes held in the buffers of all {@code workers}
+   */
+  public static long getInFlightBytes(Collection<WorkerContext> workers) {
+    long inFlight = 0;
+    for (WorkerContext worker : workers) {
+      inFlight += worker.getInFlightBytes();
+    }
+    return inFlight;
+  }
+
+  /**
+   * Should only be called by the worker thread. return true if the worker's connections, or those
+   * of all workers, hold more bytes than allowed, so they should stop reading.
+   */
+  public boolean isUnderMemoryPressure() {
+    return memoryPressure || (workerMaxInFlight > 0 && inFlightBytes > workerMaxInFlight);
+  }
+
+  /**
+   * Should only be called by the worker thread. {@code connection} stopped reading because of
+   * memory pressure, it is resumed once the pressure is gone.
+   */
+  public void onPausedByMemoryPressure(ProxyContext connection) {
+    pausedConnections.add(connection);
+  }
+
+  public boolean hasPausedConnections() {
+    return !pausedConnections.isEmpty();
+  }
+
+  /**
+   * Should only be called by the worker thread, once per select loop iteration
+   */
+  public void updateMemoryPressure() {
+    publishedInFlightBytes = inFlightBytes;
+    memoryPressure = (workerMaxInFlight > 0 && inFlightBytes > workerMaxInFlight)
+                     || (maxInFlight > 0 && getInFlightBytes(workers) > maxInFlight);
+    if (!memoryPressure && !pausedConnections.isEmpty()) {
+      List<ProxyContext> resumed = new ArrayList<>(pausedConnections);
+      pausedConnections.clear();
+      resumed.forEach(ProxyContext::applyBackpressure);
+    }
   }
 
-  public void setNumConnections(int numConnections) {
-    this.numConnections = numConnections;
+  /**
+   * Threadsafe. Run {@code task} on the worker thread on its next select loop iteration.
+   */
+  public void execute(Runnable task) {
+    pendingTasks.offer(new PendingTask(task));
+    if (wakeupPending.compareAndSet(false, true)) {
+      selector.wakeup();
+    }
   }
 
-  public Object getWakeupBarrier() {
-    return wakeupBarrier;
+  /**
+   * Should only be called by the worker thread. Same as {@link Selector#select(long)}, but returns
+   * immediately when tasks are pending.
+   *
+   * The flag is cleared before the queue is checked and set after a task is queued, so a task
+   * published concurrently is either seen here or wakes the selector up.
+   */
+  public int select(long timeout) throws IOException {
+    wakeupPending.set(false);
+    if (!pendingTasks.isEmpty()) {
+      return selector.selectNow();
+    }
+    return selector.select(timeout);
+  }
+
+  /**
+   * Should only be called by the worker thread
+   */
+  public void runPendingTasks() {
+    PendingTask task;
+    while (null != (task = pendingTasks.poll())) {
+      metrics.onTaskRun(System.nanoTime() - task.queuedAt);
+      task.task.run();
+    }
   }
 
   public Selector getSelector() {
     return selector;
   }
 
-  public Object getContextSetMonitor() {
-    return contextSetMonitor;
+  /**
+   * Should only be used by the worker thread
+   */
+  public UpstreamConnectionPool getUpstreamPool() {
+    return upstreamPool;
+  }
+
+  /**
+   * Should only be used by the worker thread
+   */
+  public TimingWheel getTimingWheel() {
+    return timingWheel;
   }
 
-  public Set<WorkerContext> getContextSet() {
-    return contextSet;
+  public Collection<WorkerContext> getWorkers() {
+    return workers;
+  }
+
+  /**
+   * A task and when it was handed over, which tells how late the worker is
+   */
+  private static class PendingTask {
+    private final Runnable task;
+    private final long queuedAt = System.nanoTime();
+
+    private PendingTask(Runnable task) {
+      this.task = task;
+    }
   }
 
   public static class Builder {
     private Selector selector;
-    private Set<WorkerContext> contextSet;
-    private Object contextSetMonitor;
+    private Collection<WorkerContext> workers;
+    private UpstreamConnectionPool upstreamPool;
+    private TimingWheel timingWheel;
+    private WorkerMetrics metrics;
+    private AccessLogRing accessLog;
+    private long maxInFlight;
+    private long workerMaxInFlight;
 
     public Builder() {
     }
@@ -62,13 +326,44 @@ public class WorkerContext {
       return this;
     }
 
-    public Builder contextSetMonitor(Object contextSetMonitor) {
-      this.contextSetMonitor = contextSetMonitor;
+    public Builder workers(Collection<WorkerContext> workers) {
+      this.workers = workers;
+      return this;
+    }
+
+    public Builder upstreamPool(UpstreamConnectionPool upstreamPool) {
+      this.upstreamPool = upstreamPool;
+      return this;
+    }
+
+    public Builder timingWheel(TimingWheel timingWheel) {
+      this.timingWheel = timingWheel;
+      return this;
+    }
+
+    public Builder metrics(WorkerMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    public Builder accessLog(AccessLogRing accessLog) {
+      this.accessLog = accessLog;
+      return this;
+    }
+
+    /**
+     * @param maxInFlight in bytes, for all workers together
+     */
+    public Builder maxInFlight(long maxInFlight) {
+      this.maxInFlight = maxInFlight;
       return this;
     }
 
-    public Builder contextSet(Set<WorkerContext> contextSet) {
-      this.contextSet = contextSet;
+    /**
+     * @param workerMaxInFlight in bytes
+     */
+    public Builder workerMaxInFlight(long workerMaxInFlight) {
+      this.workerMaxInFlight = workerMaxInFlight;
       return this;
     }
 
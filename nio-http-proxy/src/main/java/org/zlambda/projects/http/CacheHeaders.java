@@ -0,0 +1,142 @@
+package org.zlambda.projects.http;
+
+import org.zlambda.projects.buffer.ChannelBuffer;
+
+/**
+ * Not Threadsafe Class
+ *
+ * The header fields of the last message head which decide whether and for how long it may be
+ * cached, collected by {@link HttpMessageFramer} while the head is parsed. Values are only decoded
+ * to strings for the few fields a cache needs.
+ *
+ * Reference https://tools.ietf.org/html/rfc7234
+ */
+public class CacheHeaders {
+  private String cacheControl;
+  private boolean pragmaNoCache;
+  private boolean authorization;
+  private boolean range;
+  private boolean conditional;
+  private String expires;
+  private String date;
+  private String etag;
+  private String lastModified;
+  private long age;
+  private boolean vary;
+  private boolean setCookie;
+
+  public CacheHeaders() {
+    reset();
+  }
+
+  public void reset() {
+    cacheControl = null;
+    pragmaNoCache = false;
+    authorization = false;
+    range = false;
+    conditional = false;
+    expires = null;
+    date = null;
+    etag = null;
+    lastModified = null;
+    age = -1;
+    vary = false;
+    setCookie = false;
+  }
+
+  /**
+   * Collect the header [{@code nameStart}, {@code nameEnd}): [{@code valueStart}, {@code
+   * valueEnd}) of {@code buffer} if a cache cares about it
+   */
+  public void onHeader(ChannelBuffer buffer, int nameStart, int nameEnd, int valueStart,
+                       int valueEnd) {
+    if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "cache-control")) {
+      String value = HttpHeadParser.toString(buffer, valueStart, valueEnd);
+      cacheControl = null == cacheControl ? value : cacheControl + "," + value;
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "pragma")) {
+      pragmaNoCache |= HttpHeadParser.containsIgnoreCase(buffer, valueStart, valueEnd, "no-cache");
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "authorization")) {
+      authorization = true;
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "range")) {
+      range = true;
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "if-none-match")
+               || HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "if-modified-since")
+               || HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "if-match")
+               || HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd,
+                                                  "if-unmodified-since")
+               || HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "if-range")) {
+      conditional = true;
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "expires")) {
+      expires = HttpHeadParser.toString(buffer, valueStart, valueEnd);
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "date")) {
+      date = HttpHeadParser.toString(buffer, valueStart, valueEnd);
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "etag")) {
+      etag = HttpHeadParser.toString(buffer, valueStart, valueEnd);
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "last-modified")) {
+      lastModified = HttpHeadParser.toString(buffer, valueStart, valueEnd);
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "age")) {
+      age = HttpHeadParser.parseDecimal(buffer, valueStart, valueEnd);
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "vary")) {
+      vary = true;
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "set-cookie")) {
+      setCookie = true;
+    }
+  }
+
+  /**
+   * return the Cache-Control directives, comma separated if the field repeats, null if absent
+   */
+  public String getCacheControl() {
+    return cacheControl;
+  }
+
+  public boolean isPragmaNoCache() {
+    return pragmaNoCache;
+  }
+
+  public boolean hasAuthorization() {
+    return authorization;
+  }
+
+  public boolean hasRange() {
+    return range;
+  }
+
+  /**
+   * return true if the request carries any of the If-* preconditions
+   */
+  public boolean isConditional() {
+    return conditional;
+  }
+
+  public String getExpires() {
+    return expires;
+  }
+
+  public String getDate() {
+    return date;
+  }
+
+  public String getEtag() {
+    return etag;
+  }
+
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * return the Age in second, -1 if absent or malformed
+   */
+  public long getAge() {
+    return age;
+  }
+
+  public boolean hasVary() {
+    return vary;
+  }
+
+  public boolean hasSetCookie() {
+    return setCookie;
+  }
+}
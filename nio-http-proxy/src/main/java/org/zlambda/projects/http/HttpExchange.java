@@ -0,0 +1,324 @@
+package org.zlambda.projects.http;
+
+import org.zlambda.projects.buffer.ChannelBuffer;
+
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.Queue;
+
+/**
+ * Not Threadsafe Class
+ *
+ * Routes the requests of a plain HTTP client connection. Every request head found in the upstream
+ * buffer is matched against the origin of the current host connection: requests to the same origin
+ * (pipelined or not) are forwarded right away, while the first request to another origin is held
+ * back until every response of the current host has been received, so responses always reach the
+ * client in request order.
+ *
+ * Offsets are relative to the first unconsumed byte of the upstream buffer, see {@link
+ * #onUpstreamWritten(int)}.
+ */
+public class HttpExchange {
+  private final Queue<String> pendingMethods = new ArrayDeque<>();
+  private final int maxHeadSize;
+  private final boolean collectCacheHeaders;
+  private final HttpMessageFramer requests;
+  private HttpMessageFramer responses;
+  /**
+   * upstream bytes already followed by the request framer
+   */
+  private int scanned = 0;
+  /**
+   * upstream bytes which may be sent to the current host
+   */
+  private int routable = 0;
+  /**
+   * offset of the request head being parsed
+   */
+  private int headStart = 0;
+  /**
+   * offset of the response head being parsed, response heads are held back until complete since
+   * they are parsed in place
+   */
+  private int responseHeadStart = 0;
+  /**
+   * number of requests routed to the current host
+   */
+  private int numRouted = 0;
+  private boolean requestKeepAlive = true;
+  private RequestTarget target;
+  private RequestTarget pendingTarget;
+  private boolean malformed = false;
+
+  /**
+   * @param maxHeadSize larger heads cannot be routed, should not exceed the buffer size
+   */
+  public HttpExchange(int maxHeadSize) {
+    this(maxHeadSize, false);
+  }
+
+  /**
+   * @param collectCacheHeaders true if the exchange is looked at by a response cache
+   */
+  public HttpExchange(int maxHeadSize, boolean collectCacheHeaders) {
+    this.maxHeadSize = maxHeadSize;
+    this.collectCacheHeaders = collectCacheHeaders;
+    this.requests = new HttpMessageFramer(HttpMessageFramer.Type.REQUEST, pendingMethods,
+                                          maxHeadSize, collectCacheHeaders);
+    this.responses = newResponseFramer();
+  }
+
+  private HttpMessageFramer newResponseFramer() {
+    return new HttpMessageFramer(HttpMessageFramer.Type.RESPONSE, pendingMethods, maxHeadSize,
+                                 collectCacheHeaders);
+  }
+
+  /**
+   * Follow the bytes of {@code upstream} which have not been followed yet
+   *
+   * @return false if the client sent something which cannot be routed
+   */
+  public boolean onUpstreamRead(ChannelBuffer upstream) {
+    int size = upstream.size();
+    while (null == pendingTarget && !malformed && scanned < size) {
+      if (requests.isAtBoundary()) {
+        headStart = scanned;
+      }
+      int numHeads = requests.getNumHeads();
+      scanned += requests.feed(upstream, scanned, size);
+      if (requests.isBroken()) {
+        malformed = true;
+      } else if (numHeads != requests.getNumHeads()) {
+        onRequestHead();
+      } else if (!requests.isParsingHead()) {
+        routable = scanned;
+      }
+    }
+    return !malformed;
+  }
+
+  private void onRequestHead() {
+    Optional<RequestTarget> requestTarget = RequestTarget.of(
+        requests.getMethod(), requests.getUri(), requests.getHostHeader());
+    if (!requestTarget.isPresent()) {
+      malformed = true;
+      return;
+    }
+    if (null != target && !target.equals(requestTarget.get())) {
+      pendingTarget = requestTarget.get();
+      return;
+    }
+    target = requestTarget.get();
+    numRouted++;
+    requestKeepAlive = requests.isKeepAlive();
+    routable = scanned;
+  }
+
+  /**
+   * {@code numOfWritten} upstream bytes have been sent to the host and dropped from the buffer
+   */
+  public void onUpstreamWritten(int numOfWritten) {
+    scanned -= numOfWritten;
+    routable -= numOfWritten;
+    headStart -= numOfWritten;
+    requests.shift(numOfWritten);
+  }
+
+  /**
+   * Follow bytes [{@code from}, {@code to}) of {@code downstream} sent by the host
+   */
+  public void onDownstreamRead(ChannelBuffer downstream, int from, int to) {
+    while (from < to) {
+      if (responses.isAtBoundary()) {
+        responseHeadStart = from;
+      }
+      from += responses.feed(downstream, from, to);
+    }
+  }
+
+  /**
+   * {@code numOfWritten} downstream bytes have been sent to the client and dropped from the buffer
+   */
+  public void onDownstreamWritten(int numOfWritten) {
+    responseHeadStart -= numOfWritten;
+    responses.shift(numOfWritten);
+  }
+
+  /**
+   * return the number of downstream bytes which may be sent to the client
+   */
+  public int getWritableDownstreamBytes(int size) {
+    return responses.isParsingHead() ? responseHeadStart : size;
+  }
+
+  /**
+   * Route the held back request to its origin, the caller is responsible for replacing the host
+   * connection.
+   */
+  public void switchToPendingTarget(ChannelBuffer upstream) {
+    target = pendingTarget;
+    pendingTarget = null;
+    responses = newResponseFramer();
+    numRouted = 1;
+    requestKeepAlive = requests.isKeepAlive();
+    routable = scanned;
+    onUpstreamRead(upstream);
+  }
+
+  /**
+   * Start over as if the client connection was new, should only be called while both the client
+   * and the host are idle and the upstream buffer is empty
+   */
+  public void reset() {
+    pendingMethods.clear();
+    requests.reset();
+    responses.reset();
+    scanned = 0;
+    routable = 0;
+    headStart = 0;
+    responseHeadStart = 0;
+    numRouted = 0;
+    requestKeepAlive = true;
+    target = null;
+    pendingTarget = null;
+    malformed = false;
+  }
+
+  /**
+   * return true if the upstream buffer holds exactly one complete request without a body, which
+   * has been routed but not sent yet
+   */
+  public boolean isSingleRequest(ChannelBuffer upstream) {
+    return 1 == numRouted && null == pendingTarget && requests.isAtBoundary()
+           && 0 == responses.getNumHeads() && responses.isAtBoundary()
+           && 0 == headStart && scanned == upstream.size() && routable == scanned
+           && requests.getHeadLength() == scanned;
+  }
+
+  /**
+   * Replace the single request, see {@link #isSingleRequest(ChannelBuffer)}, with {@code request}
+   */
+  public void rewriteRequest(ChannelBuffer upstream, byte[] request) {
+    upstream.clear();
+    upstream.put(request);
+    scanned = request.length;
+    routable = request.length;
+  }
+
+  /**
+   * return the origin of the current host connection, null until the first request head arrives
+   */
+  public RequestTarget getTarget() {
+    return target;
+  }
+
+  /**
+   * return the origin of the request held back, null if there is none
+   */
+  public RequestTarget getPendingTarget() {
+    return pendingTarget;
+  }
+
+  public String getMethod() {
+    return requests.getMethod();
+  }
+
+  public String getUri() {
+    return requests.getUri();
+  }
+
+  public int getRoutableBytes() {
+    return routable;
+  }
+
+  /**
+   * return the number of requests routed to the current host
+   */
+  public int getNumRoutedRequests() {
+    return numRouted;
+  }
+
+  /**
+   * return true if the last routed request allows the connection to be reused
+   */
+  public boolean isRequestKeepAlive() {
+    return requestKeepAlive;
+  }
+
+  /**
+   * return the cache related fields of the last request head, null if not collected
+   */
+  public CacheHeaders getRequestCacheHeaders() {
+    return requests.getCacheHeaders();
+  }
+
+  /**
+   * return the number of final response heads received from the current host
+   */
+  public int getNumResponseHeads() {
+    return responses.getNumHeads();
+  }
+
+  /**
+   * return the number of complete responses received from the current host
+   */
+  public int getNumResponses() {
+    return responses.getNumMessages();
+  }
+
+  /**
+   * return the status code of the last response head
+   */
+  public int getResponseStatus() {
+    return responses.getStatusCode();
+  }
+
+  /**
+   * return the size in bytes of the last response head
+   */
+  public int getResponseHeadLength() {
+    return responses.getHeadLength();
+  }
+
+  /**
+   * return the Content-Length of the last response head, -1 if absent or chunked
+   */
+  public long getResponseContentLength() {
+    return responses.isChunked() ? -1 : responses.getContentLength();
+  }
+
+  /**
+   * return true if the last response head allows the connection to be reused
+   */
+  public boolean isResponseKeepAlive() {
+    return responses.isKeepAlive();
+  }
+
+  /**
+   * return the cache related fields of the last response head, null if not collected
+   */
+  public CacheHeaders getResponseCacheHeaders() {
+    return responses.getCacheHeaders();
+  }
+
+  /**
+   * return true if every routed request has been sent and got its complete response
+   */
+  public boolean isHostIdle() {
+    return 0 == routable && numRouted == responses.getNumMessages() && responses.isAtBoundary();
+  }
+
+  /**
+   * return true if the host is idle and both sides agreed to keep the connection alive
+   */
+  public boolean isHostReusable() {
+    return numRouted > 0 && isHostIdle() && requestKeepAlive && responses.isKeepAlive();
+  }
+
+  /**
+   * return true if the client has no partial request in flight
+   */
+  public boolean isClientIdle() {
+    return null == pendingTarget && requests.isAtBoundary();
+  }
+}
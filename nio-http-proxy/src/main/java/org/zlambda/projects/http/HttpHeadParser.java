@@ -0,0 +1,320 @@
+package org.zlambda.projects.http;
+
+import org.zlambda.projects.buffer.ChannelBuffer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Not Threadsafe Class
+ *
+ * Resumable byte level parser of an HTTP/1.x message head, i.e. the start line and the header
+ * fields up to the empty line. It works in place on the bytes of a {@link ChannelBuffer}: nothing
+ * is decoded or copied, the parser only remembers the state it stopped in and the offsets of the
+ * three start line tokens and of every header name and value.
+ *
+ * Offsets are relative to the first unconsumed byte of the buffer, so the bytes of a head must stay
+ * in the buffer until the head is complete, and {@link #shift(int)} must be called when bytes
+ * in front of the head are consumed.
+ *
+ * Reference https://tools.ietf.org/html/rfc7230#section-3
+ */
+public class HttpHeadParser {
+  private static final int MAX_HEADERS = 128;
+  private static final byte CR = '\r';
+  private static final byte LF = '\n';
+  private static final byte SP = ' ';
+  private static final byte HT = '\t';
+
+  private enum State {
+    LEADING_CRLF, FIRST_TOKEN, SECOND_TOKEN, THIRD_TOKEN, START_LINE_LF, NAME_START, NAME,
+    VALUE_START, VALUE, VALUE_LF, END_LF, COMPLETE, MALFORMED
+  }
+
+  private final int maxHeadSize;
+  /**
+   * [start, end) of the three start line tokens: method, request target and version for a
+   * request, version, status code and reason phrase for a response
+   */
+  private final int[] startLine = new int[6];
+  /**
+   * [nameStart, nameEnd, valueStart, valueEnd) of each header field
+   */
+  private final int[] headers = new int[4 * MAX_HEADERS];
+  private int numHeaders;
+  private State state;
+  private int size;
+  /**
+   * end of the value without trailing white spaces
+   */
+  private int valueEnd;
+
+  /**
+   * @param maxHeadSize heads larger than this are malformed
+   */
+  public HttpHeadParser(int maxHeadSize) {
+    this.maxHeadSize = maxHeadSize;
+    reset();
+  }
+
+  public void reset() {
+    state = State.LEADING_CRLF;
+    numHeaders = 0;
+    size = 0;
+  }
+
+  /**
+   * Consume bytes [{@code from}, {@code to}) of {@code buffer}, stopping right after the empty
+   * line ending the head.
+   *
+   * @return the number of bytes consumed
+   */
+  public int parse(ChannelBuffer buffer, int from, int to) {
+    int i = from;
+    while (i < to && State.COMPLETE != state && State.MALFORMED != state) {
+      byte b = buffer.get(i);
+      switch (state) {
+        case LEADING_CRLF:
+          /**
+           * robustness: ignore empty lines before a start line
+           */
+          if (CR != b && LF != b) {
+            startLine[0] = i;
+            state = State.FIRST_TOKEN;
+            continue;
+          }
+          break;
+        case FIRST_TOKEN:
+          if (SP == b) {
+            startLine[1] = i;
+            startLine[2] = i + 1;
+            state = State.SECOND_TOKEN;
+          } else if (CR == b || LF == b) {
+            state = State.MALFORMED;
+          }
+          break;
+        case SECOND_TOKEN:
+          if (SP == b) {
+            startLine[3] = i;
+            startLine[4] = i + 1;
+            state = State.THIRD_TOKEN;
+          } else if (CR == b || LF == b) {
+            /**
+             * status line without reason phrase
+             */
+            startLine[3] = i;
+            startLine[4] = i;
+            startLine[5] = i;
+            state = State.START_LINE_LF;
+            continue;
+          }
+          break;
+        case THIRD_TOKEN:
+          if (CR == b || LF == b) {
+            startLine[5] = i;
+            state = State.START_LINE_LF;
+            continue;
+          }
+          break;
+        case START_LINE_LF:
+        case VALUE_LF:
+          if (LF == b) {
+            state = State.NAME_START;
+          } else if (CR != b) {
+            state = State.MALFORMED;
+          }
+          break;
+        case NAME_START:
+          if (CR == b) {
+            state = State.END_LF;
+          } else if (LF == b) {
+            state = State.COMPLETE;
+          } else if (SP == b || HT == b || ':' == b || MAX_HEADERS == numHeaders) {
+            /**
+             * obsolete line folding is rejected, see rfc7230#section-3.2.4
+             */
+            state = State.MALFORMED;
+          } else {
+            headers[4 * numHeaders] = i;
+            state = State.NAME;
+          }
+          break;
+        case NAME:
+          if (':' == b) {
+            headers[4 * numHeaders + 1] = i;
+            state = State.VALUE_START;
+          } else if (CR == b || LF == b || SP == b || HT == b) {
+            state = State.MALFORMED;
+          }
+          break;
+        case VALUE_START:
+          if (SP == b || HT == b) {
+            break;
+          }
+          headers[4 * numHeaders + 2] = i;
+          valueEnd = i;
+          state = State.VALUE;
+          continue;
+        case VALUE:
+          if (CR == b || LF == b) {
+            headers[4 * numHeaders + 3] = valueEnd;
+            numHeaders++;
+            state = State.VALUE_LF;
+            continue;
+          }
+          if (SP != b && HT != b) {
+            valueEnd = i + 1;
+          }
+          break;
+        case END_LF:
+          state = LF == b ? State.COMPLETE : State.MALFORMED;
+          break;
+        default:
+          throw new IllegalStateException("unexpected state " + state);
+      }
+      i++;
+      if (++size >= maxHeadSize && State.COMPLETE != state) {
+        state = State.MALFORMED;
+      }
+    }
+    return i - from;
+  }
+
+  /**
+   * Bytes in front of the head have been consumed from the buffer
+   */
+  public void shift(int numOfConsumed) {
+    for (int i = 0; i < startLine.length; ++i) {
+      startLine[i] -= numOfConsumed;
+    }
+    for (int i = 0; i < Math.min(headers.length, 4 * numHeaders + 3); ++i) {
+      headers[i] -= numOfConsumed;
+    }
+    valueEnd -= numOfConsumed;
+  }
+
+  public boolean isComplete() {
+    return State.COMPLETE == state;
+  }
+
+  public boolean isMalformed() {
+    return State.MALFORMED == state;
+  }
+
+  /**
+   * return true if the first byte of the start line has been consumed
+   */
+  public boolean isStarted() {
+    return State.LEADING_CRLF != state;
+  }
+
+  /**
+   * @param token 0, 1 or 2
+   */
+  public int tokenStart(int token) {
+    return startLine[2 * token];
+  }
+
+  /**
+   * @param token 0, 1 or 2
+   */
+  public int tokenEnd(int token) {
+    return startLine[2 * token + 1];
+  }
+
+  /**
+   * return the number of bytes consumed, leading empty lines included
+   */
+  public int getSize() {
+    return size;
+  }
+
+  public int getNumHeaders() {
+    return numHeaders;
+  }
+
+  public int nameStart(int header) {
+    return headers[4 * header];
+  }
+
+  public int nameEnd(int header) {
+    return headers[4 * header + 1];
+  }
+
+  public int valueStart(int header) {
+    return headers[4 * header + 2];
+  }
+
+  public int valueEnd(int header) {
+    return headers[4 * header + 3];
+  }
+
+  /**
+   * return true if [{@code start}, {@code end}) of {@code buffer} equals {@code lowerCase},
+   * ignoring case
+   */
+  public static boolean equalsIgnoreCase(ChannelBuffer buffer, int start, int end,
+                                         String lowerCase) {
+    if (end - start != lowerCase.length()) {
+      return false;
+    }
+    for (int i = start; i < end; ++i) {
+      if (lowerCase.charAt(i - start) != toLowerCase(buffer.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * return true if [{@code start}, {@code end}) of {@code buffer} contains {@code lowerCase},
+   * ignoring case
+   */
+  public static boolean containsIgnoreCase(ChannelBuffer buffer, int start, int end,
+                                           String lowerCase) {
+    for (int i = start; i <= end - lowerCase.length(); ++i) {
+      if (equalsIgnoreCase(buffer, i, i + lowerCase.length(), lowerCase)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * return true if [{@code start}, {@code end}) of {@code buffer} ends with {@code lowerCase},
+   * ignoring case
+   */
+  public static boolean endsWithIgnoreCase(ChannelBuffer buffer, int start, int end,
+                                           String lowerCase) {
+    return end - start >= lowerCase.length()
+           && equalsIgnoreCase(buffer, end - lowerCase.length(), end, lowerCase);
+  }
+
+  /**
+   * @return the non-negative decimal number in [{@code start}, {@code end}) of {@code buffer}, -1
+   * if it is not one
+   */
+  public static long parseDecimal(ChannelBuffer buffer, int start, int end) {
+    if (start == end || end - start > 18) {
+      return -1;
+    }
+    long ret = 0;
+    for (int i = start; i < end; ++i) {
+      byte b = buffer.get(i);
+      if (b < '0' || b > '9') {
+        return -1;
+      }
+      ret = ret * 10 + (b - '0');
+    }
+    return ret;
+  }
+
+  public static String toString(ChannelBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    buffer.get(start, bytes, 0, bytes.length);
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+
+  private static char toLowerCase(byte b) {
+    return (char) (b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b);
+  }
+}
@@ -0,0 +1,396 @@
+package org.zlambda.projects.http;
+
+import org.zlambda.projects.buffer.ChannelBuffer;
+
+import java.util.Queue;
+
+/**
+ * Not Threadsafe Class
+ *
+ * Incrementally follows the boundaries of HTTP/1.x messages passing through a {@link
+ * ChannelBuffer}. Heads are parsed in place by {@link HttpHeadParser}, chunk size lines are decoded
+ * byte by byte and message bodies are skipped without being looked at, so nothing is copied.
+ *
+ * Reference https://tools.ietf.org/html/rfc7230#section-3.3.3
+ */
+public class HttpMessageFramer {
+  private static final byte CR = '\r';
+  private static final byte LF = '\n';
+
+  public enum Type {
+    REQUEST, RESPONSE
+  }
+
+  private enum State {
+    HEAD, FIXED_BODY, CHUNK_SIZE, CHUNK_EXTENSION, CHUNK_DATA, CHUNK_DATA_END, TRAILERS,
+    UNTIL_CLOSE, ERROR
+  }
+
+  private final Type type;
+  /**
+   * Methods of requests waiting for a response, offered by the request framer and polled by the
+   * response framer, since the response to HEAD never has a body
+   */
+  private final Queue<String> requestMethods;
+  private final HttpHeadParser head;
+  /**
+   * null unless the heads are looked at by a cache
+   */
+  private final CacheHeaders cacheHeaders;
+  private State state = State.HEAD;
+  private long remaining;
+  private boolean hasChunkSize;
+  private int trailerLineLength;
+  private int numHeads = 0;
+  private int numMessages = 0;
+  private boolean keepAlive = true;
+
+  /**
+   * last message head
+   */
+  private String method;
+  private String uri;
+  private String hostHeader;
+  private int statusCode;
+  private boolean isHttp11;
+  private boolean connectionClose;
+  private boolean connectionKeepAlive;
+  private long contentLength;
+  private boolean chunked;
+  private int headLength;
+
+  /**
+   * @param maxHeadSize heads larger than this break the framer
+   */
+  public HttpMessageFramer(Type type, Queue<String> requestMethods, int maxHeadSize) {
+    this(type, requestMethods, maxHeadSize, false);
+  }
+
+  /**
+   * @param collectCacheHeaders true if the fields deciding cacheability should be collected, see
+   *                            {@link #getCacheHeaders()}
+   */
+  public HttpMessageFramer(Type type, Queue<String> requestMethods, int maxHeadSize,
+                           boolean collectCacheHeaders) {
+    this.type = type;
+    this.requestMethods = requestMethods;
+    this.head = new HttpHeadParser(maxHeadSize);
+    this.cacheHeaders = collectCacheHeaders ? new CacheHeaders() : null;
+  }
+
+  /**
+   * Consume bytes [{@code from}, {@code to}) of {@code buffer}, stopping right after the end of a
+   * message head or of a message.
+   *
+   * @return the number of bytes consumed, which is always > 0 when {@code from < to}
+   */
+  public int feed(ChannelBuffer buffer, int from, int to) {
+    int i = from;
+    while (i < to) {
+      switch (state) {
+        case HEAD:
+          i += head.parse(buffer, i, to);
+          if (head.isMalformed()) {
+            state = State.ERROR;
+          } else if (head.isComplete()) {
+            /**
+             * stop after interim heads too, so the caller sees where the next head starts
+             */
+            onHeadComplete(buffer);
+            return i - from;
+          }
+          break;
+        case FIXED_BODY:
+        case CHUNK_DATA: {
+          int n = (int) Math.min(remaining, to - i);
+          i += n;
+          remaining -= n;
+          if (0 == remaining) {
+            if (State.FIXED_BODY == state) {
+              completeMessage();
+              return i - from;
+            }
+            state = State.CHUNK_DATA_END;
+          }
+          break;
+        }
+        case CHUNK_SIZE:
+          onChunkSize(buffer.get(i++));
+          break;
+        case CHUNK_EXTENSION:
+          if (LF == buffer.get(i++)) {
+            state = 0 == remaining ? State.TRAILERS : State.CHUNK_DATA;
+          }
+          break;
+        case CHUNK_DATA_END: {
+          byte b = buffer.get(i++);
+          if (LF == b) {
+            startChunk();
+          } else if (CR != b) {
+            state = State.ERROR;
+          }
+          break;
+        }
+        case TRAILERS: {
+          byte b = buffer.get(i++);
+          if (LF == b) {
+            if (0 == trailerLineLength) {
+              completeMessage();
+              return i - from;
+            }
+            trailerLineLength = 0;
+          } else if (CR != b) {
+            trailerLineLength++;
+          }
+          break;
+        }
+        case UNTIL_CLOSE:
+        case ERROR:
+          return to - from;
+        default:
+          throw new IllegalStateException("unexpected state " + state);
+      }
+    }
+    return i - from;
+  }
+
+  /**
+   * Bytes in front of a partially parsed head have been consumed from the buffer
+   */
+  public void shift(int numOfConsumed) {
+    if (isParsingHead()) {
+      head.shift(numOfConsumed);
+    }
+  }
+
+  private void onHeadComplete(ChannelBuffer buffer) {
+    connectionClose = false;
+    connectionKeepAlive = false;
+    contentLength = -1;
+    chunked = false;
+    hostHeader = null;
+    headLength = head.getSize();
+    if (null != cacheHeaders) {
+      cacheHeaders.reset();
+    }
+    if (Type.REQUEST == type) {
+      method = HttpMethods.toMethod(buffer, head.tokenStart(0), head.tokenEnd(0));
+      uri = HttpHeadParser.toString(buffer, head.tokenStart(1), head.tokenEnd(1));
+      isHttp11 = HttpHeadParser.equalsIgnoreCase(
+          buffer, head.tokenStart(2), head.tokenEnd(2), "http/1.1");
+    } else {
+      isHttp11 = HttpHeadParser.equalsIgnoreCase(
+          buffer, head.tokenStart(0), head.tokenEnd(0), "http/1.1");
+      statusCode = (int) HttpHeadParser.parseDecimal(
+          buffer, head.tokenStart(1), head.tokenEnd(1));
+    }
+    for (int i = 0; i < head.getNumHeaders(); ++i) {
+      onHeader(buffer, i);
+    }
+    head.reset();
+    if (state == State.ERROR || (Type.RESPONSE == type && statusCode < 0)) {
+      state = State.ERROR;
+      return;
+    }
+    keepAlive = isHttp11 ? !connectionClose : connectionKeepAlive;
+    if (Type.REQUEST == type) {
+      numHeads++;
+      requestMethods.offer(method);
+      startBody();
+      return;
+    }
+    if (statusCode >= 100 && statusCode < 200 && 101 != statusCode) {
+      /**
+       * interim response, the final one is still to come
+       */
+      return;
+    }
+    numHeads++;
+    String requestMethod = requestMethods.poll();
+    if (HttpMethods.HEAD.equals(requestMethod) || 204 == statusCode || 304 == statusCode) {
+      completeMessage();
+      return;
+    }
+    if (101 == statusCode || HttpMethods.CONNECT.equals(requestMethod)
+        || (!chunked && contentLength < 0)) {
+      state = State.UNTIL_CLOSE;
+      keepAlive = false;
+      return;
+    }
+    startBody();
+  }
+
+  private void onHeader(ChannelBuffer buffer, int i) {
+    int nameStart = head.nameStart(i);
+    int nameEnd = head.nameEnd(i);
+    int valueStart = head.valueStart(i);
+    int valueEnd = head.valueEnd(i);
+    if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "content-length")) {
+      contentLength = HttpHeadParser.parseDecimal(buffer, valueStart, valueEnd);
+      if (contentLength < 0) {
+        state = State.ERROR;
+      }
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "transfer-encoding")) {
+      chunked = HttpHeadParser.endsWithIgnoreCase(buffer, valueStart, valueEnd, "chunked");
+    } else if (HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "connection")
+               || HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd,
+                                                  "proxy-connection")) {
+      connectionClose |= HttpHeadParser.containsIgnoreCase(buffer, valueStart, valueEnd, "close");
+      connectionKeepAlive |=
+          HttpHeadParser.containsIgnoreCase(buffer, valueStart, valueEnd, "keep-alive");
+    } else if (Type.REQUEST == type
+               && HttpHeadParser.equalsIgnoreCase(buffer, nameStart, nameEnd, "host")) {
+      hostHeader = HttpHeadParser.toString(buffer, valueStart, valueEnd);
+    } else if (null != cacheHeaders) {
+      cacheHeaders.onHeader(buffer, nameStart, nameEnd, valueStart, valueEnd);
+    }
+  }
+
+  private void startBody() {
+    if (chunked) {
+      startChunk();
+    } else if (contentLength > 0) {
+      remaining = contentLength;
+      state = State.FIXED_BODY;
+    } else {
+      completeMessage();
+    }
+  }
+
+  private void startChunk() {
+    remaining = 0;
+    hasChunkSize = false;
+    state = State.CHUNK_SIZE;
+  }
+
+  private void onChunkSize(byte b) {
+    int digit = Character.digit(b, 16);
+    if (digit >= 0) {
+      if (remaining > (Long.MAX_VALUE >> 4)) {
+        state = State.ERROR;
+        return;
+      }
+      remaining = (remaining << 4) + digit;
+      hasChunkSize = true;
+    } else if (!hasChunkSize) {
+      state = State.ERROR;
+    } else if (LF == b) {
+      state = 0 == remaining ? State.TRAILERS : State.CHUNK_DATA;
+      trailerLineLength = 0;
+    } else {
+      /**
+       * chunk extensions and the CR are ignored
+       */
+      state = State.CHUNK_EXTENSION;
+    }
+  }
+
+  private void completeMessage() {
+    numMessages++;
+    state = State.HEAD;
+  }
+
+  /**
+   * return the number of complete message heads seen so far
+   */
+  public int getNumHeads() {
+    return numHeads;
+  }
+
+  /**
+   * return the method of the last request head
+   */
+  public String getMethod() {
+    return method;
+  }
+
+  /**
+   * return the request target of the last request head
+   */
+  public String getUri() {
+    return uri;
+  }
+
+  /**
+   * return the Host header of the last request head, null if absent
+   */
+  public String getHostHeader() {
+    return hostHeader;
+  }
+
+  /**
+   * return the status code of the last response head
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * return the size in bytes of the last message head
+   */
+  public int getHeadLength() {
+    return headLength;
+  }
+
+  /**
+   * return the Content-Length of the last message head, -1 if absent
+   */
+  public long getContentLength() {
+    return contentLength;
+  }
+
+  public boolean isChunked() {
+    return chunked;
+  }
+
+  /**
+   * return the cache related fields of the last message head, null if not collected
+   */
+  public CacheHeaders getCacheHeaders() {
+    return cacheHeaders;
+  }
+
+  /**
+   * return the number of complete messages seen so far
+   */
+  public int getNumMessages() {
+    return numMessages;
+  }
+
+  /**
+   * return true if the last message head allows the connection to be reused
+   */
+  public boolean isKeepAlive() {
+    return keepAlive;
+  }
+
+  /**
+   * return true if no partial message has been consumed
+   */
+  public boolean isAtBoundary() {
+    return State.HEAD == state && !head.isStarted();
+  }
+
+  /**
+   * return true if part of a message head has been consumed but not the whole head
+   */
+  public boolean isParsingHead() {
+    return State.HEAD == state && head.isStarted();
+  }
+
+  /**
+   * Start over with the counters of a new connection, should only be called at a message
+   * boundary
+   */
+  public void reset() {
+    state = State.HEAD;
+    head.reset();
+    numHeads = 0;
+    numMessages = 0;
+    keepAlive = true;
+  }
+
+  public boolean isBroken() {
+    return State.ERROR == state;
+  }
+}
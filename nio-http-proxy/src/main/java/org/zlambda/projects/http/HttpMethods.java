@@ -0,0 +1,36 @@
+package org.zlambda.projects.http;
+
+import org.zlambda.projects.buffer.ChannelBuffer;
+
+public enum HttpMethods {
+  ;
+
+  public static final String GET = "GET";
+  public static final String HEAD = "HEAD";
+  public static final String POST = "POST";
+  public static final String PUT = "PUT";
+  public static final String DELETE = "DELETE";
+  public static final String CONNECT = "CONNECT";
+  public static final String OPTIONS = "OPTIONS";
+  public static final String TRACE = "TRACE";
+  public static final String PATCH = "PATCH";
+  private static final String[] KNOWN = {
+      GET, HEAD, POST, PUT, DELETE, CONNECT, OPTIONS, TRACE, PATCH
+  };
+  private static final String[] KNOWN_LOWER_CASE = {
+      "get", "head", "post", "put", "delete", "connect", "options", "trace", "patch"
+  };
+
+  /**
+   * return the method in [{@code start}, {@code end}) of {@code buffer}, well-known methods are
+   * returned as the constants above, so they can be compared by identity and cost no allocation
+   */
+  public static String toMethod(ChannelBuffer buffer, int start, int end) {
+    for (int i = 0; i < KNOWN.length; ++i) {
+      if (HttpHeadParser.equalsIgnoreCase(buffer, start, end, KNOWN_LOWER_CASE[i])) {
+        return KNOWN[i];
+      }
+    }
+    return HttpHeadParser.toString(buffer, start, end);
+  }
+}
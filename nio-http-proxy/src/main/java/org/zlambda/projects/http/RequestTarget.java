@@ -0,0 +1,77 @@
+package org.zlambda.projects.http;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Optional;
+
+/**
+ * The origin a request is routed to
+ */
+public class RequestTarget {
+  private final String hostName;
+  private final int port;
+
+  public RequestTarget(String hostName, int port) {
+    this.hostName = hostName;
+    this.port = port;
+  }
+
+  /**
+   * Reference https://tools.ietf.org/html/rfc7230#section-5.3
+   *
+   * @param hostHeader used for origin-form requests, may be null
+   */
+  public static Optional<RequestTarget> of(String method, String uri, String hostHeader) {
+    String url;
+    if ("CONNECT".equalsIgnoreCase(method)) {
+      /**
+       * authority-form, Java URL cannot parse uri without protocol
+       */
+      url = uri.contains("://") ? uri : "https://" + uri;
+    } else if (uri.contains("://")) {
+      url = uri;
+    } else if (null != hostHeader && !hostHeader.isEmpty()) {
+      url = "http://" + hostHeader;
+    } else {
+      return Optional.empty();
+    }
+    try {
+      URL parsed = new URL(url);
+      int port = parsed.getPort() == -1 ? parsed.getDefaultPort() : parsed.getPort();
+      return parsed.getHost().isEmpty() ?
+          Optional.empty() : Optional.of(new RequestTarget(parsed.getHost(), port));
+    } catch (MalformedURLException e) {
+      return Optional.empty();
+    }
+  }
+
+  public String getHostName() {
+    return hostName;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof RequestTarget)) {
+      return false;
+    }
+    RequestTarget that = (RequestTarget) o;
+    return port == that.port && hostName.equalsIgnoreCase(that.hostName);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * hostName.toLowerCase().hashCode() + port;
+  }
+
+  @Override
+  public String toString() {
+    return hostName + ":" + port;
+  }
+}
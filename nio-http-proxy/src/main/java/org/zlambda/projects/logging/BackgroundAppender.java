@@ -0,0 +1,323 @@
+package org.zlambda.projects.logging;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Layout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Threadsafe Class
+ *
+ * A log4j appender which never does formatting or i/o on the logging thread. An event is put on a
+ * bounded lock-free queue, and a background thread formats the queued events with the layout and
+ * writes them in batches to {@code Target} (System.out or System.err) or {@code File}. Like
+ * log4j's ConsoleAppender it writes through whatever System.out or System.err is at the time, so
+ * redirecting them redirects the log too, unless {@code Follow} is false, which writes to the
+ * file descriptor of the process directly.
+ *
+ * The queue never blocks a worker. Once it is half full, events below WARN are sampled, one of
+ * every {@code SampleRate} is kept, and once it is full events are dropped. The background thread
+ * reports how many were lost. Pending events are written on JVM shutdown, so the error logged
+ * before {@code System.exit} is not lost.
+ *
+ * <pre>
+ * log4j.appender.BG=org.zlambda.projects.logging.BackgroundAppender
+ * log4j.appender.BG.Target=System.out
+ * log4j.appender.BG.BufferSize=8192
+ * log4j.appender.BG.SampleRate=10
+ * log4j.appender.BG.layout=org.apache.log4j.PatternLayout
+ * </pre>
+ */
+public class BackgroundAppender extends AppenderSkeleton {
+  /**
+   * the writer thread wakes up this often, or once the queue is a quarter full, instead of on
+   * every event
+   */
+  private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long SHUTDOWN_WAIT = TimeUnit.SECONDS.toMillis(1);
+  private int bufferSize = 8192;
+  private int sampleRate = 10;
+  private boolean locationInfo = false;
+  private String target = "System.out";
+  private boolean follow = true;
+  private String file;
+  private MpscRingQueue<LoggingEvent> queue;
+  private Thread writerThread;
+  private Writer writer;
+  /**
+   * Set by the writer thread before it parks, so a producer only unparks it if it may be waiting
+   */
+  private volatile boolean isIdle = false;
+  private volatile boolean isClosing = false;
+  private final AtomicLong sampled = new AtomicLong(0);
+  private final AtomicLong sampledOut = new AtomicLong(0);
+  private final AtomicLong dropped = new AtomicLong(0);
+
+  /**
+   * @param bufferSize events the queue holds, rounded up to a power of 2
+   */
+  public void setBufferSize(int bufferSize) {
+    this.bufferSize = bufferSize;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * @param sampleRate keep one of every {@code sampleRate} events below WARN while the queue is
+   *                   more than half full, 1 keeps them all until it is full
+   */
+  public void setSampleRate(int sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * @param locationInfo true if the layout prints the caller (%C, %F, %L, %M), which has to be
+   *                     taken on the logging thread at the cost of a stack walk per event
+   */
+  public void setLocationInfo(boolean locationInfo) {
+    this.locationInfo = locationInfo;
+  }
+
+  public boolean getLocationInfo() {
+    return locationInfo;
+  }
+
+  /**
+   * @param target System.out or System.err, ignored if {@code File} is set
+   */
+  public void setTarget(String target) {
+    this.target = target;
+  }
+
+  public String getTarget() {
+    return target;
+  }
+
+  /**
+   * @param follow false to write to the standard file descriptor of {@code Target} instead of
+   *               the current System.out or System.err
+   */
+  public void setFollow(boolean follow) {
+    this.follow = follow;
+  }
+
+  public boolean getFollow() {
+    return follow;
+  }
+
+  public void setFile(String file) {
+    this.file = file;
+  }
+
+  public String getFile() {
+    return file;
+  }
+
+  @Override
+  public void activateOptions() {
+    try {
+      writer = new BufferedWriter(new OutputStreamWriter(openOutput(), StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      LogLog.error("failed to open " + (null == file ? target : file) + " for " + name, e);
+      return;
+    }
+    queue = new MpscRingQueue<>(bufferSize);
+    writerThread = new Thread(this::writeEvents, "BackgroundAppender-" + name);
+    writerThread.setDaemon(true);
+    writerThread.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+  }
+
+  private OutputStream openOutput() throws IOException {
+    if (null != file) {
+      return new FileOutputStream(file, true);
+    }
+    boolean isErr = "System.err".equalsIgnoreCase(target);
+    if (!follow) {
+      return new FileOutputStream(isErr ? FileDescriptor.err : FileDescriptor.out);
+    }
+    return new SystemStream(isErr);
+  }
+
+  /**
+   * Not synchronized unlike {@link AppenderSkeleton#doAppend}, so logging threads only meet on the
+   * queue
+   */
+  @Override
+  public void doAppend(LoggingEvent event) {
+    if (closed || !isAsSevereAsThreshold(event.getLevel())) {
+      return;
+    }
+    for (Filter filter = getFirstFilter(); null != filter; filter = filter.getNext()) {
+      int decision = filter.decide(event);
+      if (Filter.DENY == decision) {
+        return;
+      } else if (Filter.ACCEPT == decision) {
+        break;
+      }
+    }
+    append(event);
+  }
+
+  @Override
+  protected void append(LoggingEvent event) {
+    if (null == queue) {
+      return;
+    }
+    if (queue.size() >= queue.capacity() / 2 && !event.getLevel().isGreaterOrEqual(Level.WARN)
+        && 0 != sampled.getAndIncrement() % Math.max(1, sampleRate)) {
+      sampledOut.incrementAndGet();
+      return;
+    }
+    /**
+     * what depends on the logging thread must be taken before the event leaves it
+     */
+    event.getThreadName();
+    event.getNDC();
+    event.getMDCCopy();
+    if (locationInfo) {
+      event.getLocationInformation();
+    }
+    if (!queue.offer(event)) {
+      dropped.incrementAndGet();
+      return;
+    }
+    if (isIdle && queue.size() >= queue.capacity() / 4) {
+      LockSupport.unpark(writerThread);
+    }
+  }
+
+  private void writeEvents() {
+    while (true) {
+      LoggingEvent event;
+      while (null != (event = queue.poll())) {
+        write(event);
+      }
+      reportLostEvents();
+      flush();
+      if (isClosing && 0 == queue.size()) {
+        return;
+      }
+      isIdle = true;
+      /**
+       * a burst published right before going idle is seen here, a later one unparks
+       */
+      if (queue.size() < queue.capacity() / 4 && !isClosing) {
+        LockSupport.parkNanos(this, FLUSH_INTERVAL);
+      }
+      isIdle = false;
+    }
+  }
+
+  private void write(LoggingEvent event) {
+    try {
+      writer.write(layout.format(event));
+      if (layout.ignoresThrowable()) {
+        String[] throwable = event.getThrowableStrRep();
+        if (null != throwable) {
+          for (String line : throwable) {
+            writer.write(line);
+            writer.write(Layout.LINE_SEP);
+          }
+        }
+      }
+    } catch (Exception e) {
+      errorHandler.error("failed to write log event", e, 0, event);
+    }
+  }
+
+  private void reportLostEvents() {
+    long numOfDropped = dropped.getAndSet(0);
+    long numOfSampledOut = sampledOut.getAndSet(0);
+    if (0 == numOfDropped && 0 == numOfSampledOut) {
+      return;
+    }
+    write(new LoggingEvent(BackgroundAppender.class.getName(), Logger.getLogger(getClass()),
+                           Level.WARN, String.format(
+        "log queue overflowed, dropped <%d> and sampled out <%d> events.", numOfDropped,
+        numOfSampledOut), null));
+  }
+
+  private void flush() {
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      errorHandler.error("failed to flush log events", e, 0);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (null == writerThread) {
+      return;
+    }
+    isClosing = true;
+    LockSupport.unpark(writerThread);
+    try {
+      writerThread.join(SHUTDOWN_WAIT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public boolean requiresLayout() {
+    return true;
+  }
+
+  /**
+   * Writes to System.out or System.err as they are at the time of the write, never closes them
+   */
+  private static class SystemStream extends OutputStream {
+    private final boolean isErr;
+
+    SystemStream(boolean isErr) {
+      this.isErr = isErr;
+    }
+
+    private PrintStream stream() {
+      return isErr ? System.err : System.out;
+    }
+
+    @Override
+    public void write(int b) {
+      stream().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      stream().write(b, off, len);
+    }
+
+    @Override
+    public void flush() {
+      stream().flush();
+    }
+  }
+}
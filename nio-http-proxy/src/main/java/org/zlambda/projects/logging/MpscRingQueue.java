@@ -0,0 +1,97 @@
+package org.zlambda.projects.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi producer, single consumer queue, never blocking either side.
+ *
+ * Every slot carries a sequence telling whether it is free for the producer of a position or
+ * filled for the consumer, so a producer claims a position with one CAS and publishes its item
+ * with ordered writes (lazySet), and the consumer takes it without any CAS.
+ */
+class MpscRingQueue<T> {
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static final AtomicLongFieldUpdater<MpscRingQueue<?>> HEAD =
+      (AtomicLongFieldUpdater) AtomicLongFieldUpdater.newUpdater(MpscRingQueue.class, "head");
+  private final AtomicReferenceArray<T> items;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  /**
+   * Next position to claim, shared by the producers
+   */
+  private final AtomicLong tail = new AtomicLong(0);
+  /**
+   * Next position to take, only written by the consumer
+   */
+  private volatile long head = 0;
+
+  /**
+   * @param capacity rounded up to a power of 2
+   */
+  MpscRingQueue(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.items = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    this.mask = size - 1;
+    for (int i = 0; i < size; ++i) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Threadsafe
+   *
+   * @return false if the queue is full
+   */
+  boolean offer(T item) {
+    while (true) {
+      long position = tail.get();
+      int index = (int) (position & mask);
+      long lag = sequences.get(index) - position;
+      if (0 == lag) {
+        if (tail.compareAndSet(position, position + 1)) {
+          items.lazySet(index, item);
+          sequences.lazySet(index, position + 1);
+          return true;
+        }
+      } else if (lag < 0) {
+        /**
+         * the consumer has not taken the item a lap ago yet
+         */
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Should only be called by the consumer
+   *
+   * @return the oldest item, or null if none is published yet
+   */
+  T poll() {
+    long position = head;
+    int index = (int) (position & mask);
+    if (sequences.get(index) != position + 1) {
+      return null;
+    }
+    T item = items.get(index);
+    items.lazySet(index, null);
+    sequences.lazySet(index, position + mask + 1);
+    HEAD.lazySet(this, position + 1);
+    return item;
+  }
+
+  /**
+   * Threadsafe, an estimate while producers are claiming
+   */
+  int size() {
+    return (int) Math.max(0, tail.get() - head);
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+}
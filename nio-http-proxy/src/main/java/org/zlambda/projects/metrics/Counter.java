@@ -0,0 +1,43 @@
+package org.zlambda.projects.metrics;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Single writer counter: only the thread owning it may update it, any thread may read it.
+ *
+ * Updates are ordered writes (lazySet) of a plain sum, neither a lock nor a CAS, and readers see
+ * them shortly after.
+ */
+public class Counter {
+  private static final AtomicLongFieldUpdater<Counter> VALUE =
+      AtomicLongFieldUpdater.newUpdater(Counter.class, "value");
+  private volatile long value = 0;
+
+  /**
+   * Should only be called by the owning thread
+   */
+  public void increment() {
+    add(1);
+  }
+
+  /**
+   * Should only be called by the owning thread
+   */
+  public void add(long delta) {
+    VALUE.lazySet(this, value + delta);
+  }
+
+  /**
+   * Should only be called by the owning thread, for a counter used as a gauge
+   */
+  public void set(long newValue) {
+    VALUE.lazySet(this, newValue);
+  }
+
+  /**
+   * Threadsafe
+   */
+  public long get() {
+    return value;
+  }
+}
@@ -0,0 +1,156 @@
+package org.zlambda.projects.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Single writer histogram of non-negative values, e.g. durations in nanoseconds: only the thread
+ * owning it may record, any thread may take a snapshot.
+ *
+ * Buckets are log-linear, every power of 2 is cut into {@value #SUB_BUCKETS} buckets, so a
+ * percentile is off by at most a quarter of its value whatever the range. Recording is a few
+ * ordered writes (lazySet), neither a lock nor a CAS.
+ */
+public class Histogram {
+  private static final int SUB_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  public static final int NUM_BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+  private static final AtomicLongFieldUpdater<Histogram> SUM =
+      AtomicLongFieldUpdater.newUpdater(Histogram.class, "sum");
+  private static final AtomicLongFieldUpdater<Histogram> MAX =
+      AtomicLongFieldUpdater.newUpdater(Histogram.class, "max");
+  private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+  private volatile long sum = 0;
+  private volatile long max = 0;
+
+  /**
+   * Should only be called by the owning thread, negative values count as 0
+   */
+  public void record(long value) {
+    value = Math.max(0, value);
+    int index = indexOf(value);
+    buckets.lazySet(index, buckets.get(index) + 1);
+    SUM.lazySet(this, sum + value);
+    if (value > max) {
+      MAX.lazySet(this, value);
+    }
+  }
+
+  /**
+   * Threadsafe, the snapshot may miss the values recorded while it is taken
+   */
+  public Snapshot snapshot() {
+    long[] counts = new long[NUM_BUCKETS];
+    long numOfValues = 0;
+    for (int i = 0; i < NUM_BUCKETS; ++i) {
+      counts[i] = buckets.get(i);
+      numOfValues += counts[i];
+    }
+    return new Snapshot(counts, numOfValues, sum, max);
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * return the largest value counted by bucket {@code index}
+   */
+  public static long upperBoundOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+    int sub = index % SUB_BUCKETS;
+    long lowerBound = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    return lowerBound + (1L << (exponent - SUB_BITS)) - 1;
+  }
+
+  /**
+   * Immutable, snapshots of the histograms of several threads merge into one
+   */
+  public static class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    private Snapshot(long[] counts, long count, long sum, long max) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public static Snapshot empty() {
+      return new Snapshot(new long[NUM_BUCKETS], 0, 0, 0);
+    }
+
+    public Snapshot merge(Snapshot other) {
+      long[] merged = new long[NUM_BUCKETS];
+      for (int i = 0; i < NUM_BUCKETS; ++i) {
+        merged[i] = counts[i] + other.counts[i];
+      }
+      return new Snapshot(merged, count + other.count, sum + other.sum,
+                          Math.max(max, other.max));
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getSum() {
+      return sum;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public long getMean() {
+      return 0 == count ? 0 : sum / count;
+    }
+
+    /**
+     * return the number of values counted by bucket {@code index}
+     */
+    public long getBucketCount(int index) {
+      return counts[index];
+    }
+
+    /**
+     * return the number of values counted by the buckets holding no value above {@code value}
+     */
+    public long getCountAtOrBelow(long value) {
+      long numOfValues = 0;
+      for (int i = 0; i < NUM_BUCKETS && upperBoundOf(i) <= value; ++i) {
+        numOfValues += counts[i];
+      }
+      return numOfValues;
+    }
+
+    /**
+     * @param percentile in (0, 100]
+     * @return the upper bound of the bucket holding the percentile, never above the max
+     */
+    public long getPercentile(double percentile) {
+      if (0 == count) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(count * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < NUM_BUCKETS; ++i) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(upperBoundOf(i), max);
+        }
+      }
+      return max;
+    }
+  }
+}
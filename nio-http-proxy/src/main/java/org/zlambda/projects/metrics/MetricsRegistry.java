@@ -0,0 +1,44 @@
+package org.zlambda.projects.metrics;
+
+import org.zlambda.projects.buffer.ChannelBuffer;
+import org.zlambda.projects.buffer.ChannelBufferPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Threadsafe Class
+ *
+ * Keeps the metrics of every worker. Each worker updates its own {@link WorkerMetrics}, so nothing
+ * on the I/O path takes a lock or contends with another worker, and a snapshot sums them up when
+ * read.
+ */
+public class MetricsRegistry {
+  private final List<WorkerMetrics> workers = new CopyOnWriteArrayList<>();
+  private final ChannelBufferPool<ChannelBuffer> bufferPool;
+
+  public MetricsRegistry(ChannelBufferPool<ChannelBuffer> bufferPool) {
+    this.bufferPool = bufferPool;
+  }
+
+  /**
+   * return the metrics of a new worker, to be updated by the worker thread only
+   */
+  public WorkerMetrics newWorkerMetrics() {
+    WorkerMetrics metrics = new WorkerMetrics("worker-" + workers.size());
+    workers.add(metrics);
+    return metrics;
+  }
+
+  public MetricsSnapshot snapshot() {
+    List<WorkerMetrics.Snapshot> perWorker = new ArrayList<>();
+    WorkerMetrics.Snapshot total = new WorkerMetrics("all").snapshot();
+    for (WorkerMetrics metrics : workers) {
+      WorkerMetrics.Snapshot snapshot = metrics.snapshot();
+      perWorker.add(snapshot);
+      total = total.merge("all", snapshot);
+    }
+    return new MetricsSnapshot(total, perWorker, bufferPool.numUsedBuffers());
+  }
+}
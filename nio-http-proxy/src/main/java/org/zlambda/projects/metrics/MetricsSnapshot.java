@@ -0,0 +1,89 @@
+package org.zlambda.projects.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable, the metrics of all workers as of one {@link MetricsRegistry#snapshot()}
+ */
+public class MetricsSnapshot {
+  private final WorkerMetrics.Snapshot total;
+  private final List<WorkerMetrics.Snapshot> workers;
+  private final int usedBuffers;
+
+  MetricsSnapshot(WorkerMetrics.Snapshot total, List<WorkerMetrics.Snapshot> workers,
+                  int usedBuffers) {
+    this.total = total;
+    this.workers = workers;
+    this.usedBuffers = usedBuffers;
+  }
+
+  /**
+   * return the metrics of all workers together
+   */
+  public WorkerMetrics.Snapshot getTotal() {
+    return total;
+  }
+
+  public List<WorkerMetrics.Snapshot> getWorkers() {
+    return workers;
+  }
+
+  /**
+   * return the buffers taken from the buffer pool and not released yet
+   */
+  public int getUsedBuffers() {
+    return usedBuffers;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("connections: accepted <%d>, active <%d>\n",
+                            total.getAcceptedConnections(), total.getActiveConnections()));
+    sb.append(String.format("bytes: upstream <%d>, downstream <%d>\n",
+                            total.getUpstreamBytes(), total.getDownstreamBytes()));
+    sb.append(String.format("pooled hosts: hits <%d>, misses <%d>, idle <%d>\n",
+                            total.getPooledHostHits(), total.getPooledHostMisses(),
+                            total.getIdlePooledHosts()));
+    if (0 != total.getCacheHits() + total.getCacheMisses() + total.getCacheCoalesced()) {
+      sb.append(String.format("response cache: hits <%d>, misses <%d>, coalesced <%d>, "
+                              + "revalidated <%d>\n", total.getCacheHits(),
+                              total.getCacheMisses(), total.getCacheCoalesced(),
+                              total.getCacheRevalidated()));
+    }
+    appendLatency(sb, "connect latency", total.getConnectLatency());
+    appendLatency(sb, "header read time", total.getHeaderReadTime());
+    appendLatency(sb, "event loop lag", total.getEventLoopLag());
+    appendLatency(sb, "loop time", total.getLoopTime());
+    total.getHandlerTimes().forEach((handler, states) -> states.forEach(
+        (state, time) -> appendLatency(sb, handler + " " + state, time)));
+    for (WorkerMetrics.Snapshot worker : workers) {
+      sb.append(String.format("%s: active <%d>, loop time p99 <%dus>, ready keys p99 <%d>, "
+                              + "slow events <%d>\n", worker.getName(),
+                              worker.getActiveConnections(),
+                              toMicros(worker.getLoopTime().getPercentile(99)),
+                              worker.getReadyKeys().getPercentile(99),
+                              worker.getSlowHandlers()));
+    }
+    if (null != total.getLastSlowHandler()) {
+      sb.append(String.format("last slow event: %s\n", total.getLastSlowHandler()));
+    }
+    if (0 != total.getDroppedAccessLogs()) {
+      sb.append(String.format("dropped access log records <%d>\n", total.getDroppedAccessLogs()));
+    }
+    sb.append(String.format("un-release buffers <%d>\n", usedBuffers));
+    return sb.toString();
+  }
+
+  private static void appendLatency(StringBuilder sb, String name, Histogram.Snapshot latency) {
+    sb.append(String.format("%s: count <%d>, mean <%dus>, p50 <%dus>, p99 <%dus>, max <%dus>\n",
+                            name, latency.getCount(), toMicros(latency.getMean()),
+                            toMicros(latency.getPercentile(50)),
+                            toMicros(latency.getPercentile(99)), toMicros(latency.getMax())));
+  }
+
+  private static long toMicros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+}
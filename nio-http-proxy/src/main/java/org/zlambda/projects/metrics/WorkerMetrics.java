@@ -0,0 +1,380 @@
+package org.zlambda.projects.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics of one worker, only updated by the worker thread and read by any thread, so the
+ * workers never contend on a shared counter.
+ */
+public class WorkerMetrics {
+  private volatile String name;
+  private final Counter acceptedConnections = new Counter();
+  private final Counter closedConnections = new Counter();
+  private final Counter upstreamBytes = new Counter();
+  private final Counter downstreamBytes = new Counter();
+  private final Counter pooledHostHits = new Counter();
+  private final Counter pooledHostMisses = new Counter();
+  private final Counter idlePooledHosts = new Counter();
+  private final Counter slowHandlers = new Counter();
+  private final Counter droppedAccessLogs = new Counter();
+  private final Counter cacheHits = new Counter();
+  private final Counter cacheMisses = new Counter();
+  private final Counter cacheCoalesced = new Counter();
+  private final Counter cacheRevalidated = new Counter();
+  /**
+   * in nanoseconds
+   */
+  private final Histogram connectLatency = new Histogram();
+  private final Histogram headerReadTime = new Histogram();
+  private final Histogram eventLoopLag = new Histogram();
+  private final Histogram loopTime = new Histogram();
+  /**
+   * keys ready per select
+   */
+  private final Histogram readyKeys = new Histogram();
+  /**
+   * Time spent on the events of each handler state, keyed by the state. Only the worker adds
+   * entries, once per state.
+   */
+  private final Map<Enum<?>, HandlerTime> handlerTimes = new ConcurrentHashMap<>();
+  private volatile String lastSlowHandler;
+
+  WorkerMetrics(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public void onAccepted() {
+    acceptedConnections.increment();
+  }
+
+  public void onClosed() {
+    closedConnections.increment();
+  }
+
+  public void onUpstreamWritten(int numOfBytes) {
+    upstreamBytes.add(numOfBytes);
+  }
+
+  public void onDownstreamWritten(int numOfBytes) {
+    downstreamBytes.add(numOfBytes);
+  }
+
+  /**
+   * @param isHit true if a pooled host connection was reused
+   */
+  public void onPooledHostLookup(boolean isHit) {
+    (isHit ? pooledHostHits : pooledHostMisses).increment();
+  }
+
+  public void setIdlePooledHosts(int numIdle) {
+    idlePooledHosts.set(numIdle);
+  }
+
+  /**
+   * @param latency nanoseconds from resolving the host until it is connected
+   */
+  public void onHostConnected(long latency) {
+    connectLatency.record(latency);
+  }
+
+  /**
+   * @param time nanoseconds from accepting the client until its initial request head is read
+   */
+  public void onInitialRequestRead(long time) {
+    headerReadTime.record(time);
+  }
+
+  /**
+   * @param numOfKeys keys ready after a select
+   */
+  public void onSelected(int numOfKeys) {
+    readyKeys.record(numOfKeys);
+  }
+
+  /**
+   * @param lag nanoseconds a task handed to the worker, e.g. a new client or a resolved host,
+   *            waited until it ran
+   */
+  public void onTaskRun(long lag) {
+    eventLoopLag.record(lag);
+  }
+
+  /**
+   * @param time nanoseconds a select loop iteration spent on what it selected, not counting the
+   *             select itself
+   */
+  public void onLoop(long time) {
+    loopTime.record(time);
+  }
+
+  /**
+   * @param handler e.g. client or host
+   * @param state   the state of the handler when the event came
+   * @param time    nanoseconds spent on the event
+   */
+  public void onHandled(String handler, Enum<?> state, long time) {
+    HandlerTime handlerTime = handlerTimes.get(state);
+    if (null == handlerTime) {
+      handlerTime = new HandlerTime(handler, state.name());
+      handlerTimes.put(state, handlerTime);
+    }
+    handlerTime.time.record(time);
+  }
+
+  /**
+   * @param description of the event which took longer than allowed
+   */
+  public void onSlowHandler(String description) {
+    slowHandlers.increment();
+    lastSlowHandler = description;
+  }
+
+  /**
+   * The access log ring was full, so the record of a closed connection is lost
+   */
+  public void onAccessLogDropped() {
+    droppedAccessLogs.increment();
+  }
+
+  /**
+   * A fresh cached response answered the request
+   */
+  public void onCacheHit() {
+    cacheHits.increment();
+  }
+
+  /**
+   * The request fetches or revalidates the response for the cache
+   */
+  public void onCacheMiss() {
+    cacheMisses.increment();
+  }
+
+  /**
+   * The request waits for the response another request is fetching
+   */
+  public void onCacheCoalesced() {
+    cacheCoalesced.increment();
+  }
+
+  /**
+   * The origin answered 304 to a revalidation, so the stale response was served
+   */
+  public void onCacheRevalidated() {
+    cacheRevalidated.increment();
+  }
+
+  /**
+   * Threadsafe
+   */
+  public Snapshot snapshot() {
+    return new Snapshot(this);
+  }
+
+  private static class HandlerTime {
+    private final String handler;
+    private final String state;
+    private final Histogram time = new Histogram();
+
+    private HandlerTime(String handler, String state) {
+      this.handler = handler;
+      this.state = state;
+    }
+  }
+
+  /**
+   * Immutable
+   */
+  public static class Snapshot {
+    private final String name;
+    private final long acceptedConnections;
+    private final long closedConnections;
+    private final long upstreamBytes;
+    private final long downstreamBytes;
+    private final long pooledHostHits;
+    private final long pooledHostMisses;
+    private final long idlePooledHosts;
+    private final long slowHandlers;
+    private final long droppedAccessLogs;
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final long cacheCoalesced;
+    private final long cacheRevalidated;
+    private final String lastSlowHandler;
+    private final Histogram.Snapshot connectLatency;
+    private final Histogram.Snapshot headerReadTime;
+    private final Histogram.Snapshot eventLoopLag;
+    private final Histogram.Snapshot loopTime;
+    private final Histogram.Snapshot readyKeys;
+    /**
+     * handler, then state
+     */
+    private final Map<String, Map<String, Histogram.Snapshot>> handlerTimes = new TreeMap<>();
+
+    private Snapshot(WorkerMetrics metrics) {
+      this.name = metrics.name;
+      /**
+       * closed before accepted, so active connections never turn negative
+       */
+      this.closedConnections = metrics.closedConnections.get();
+      this.acceptedConnections = metrics.acceptedConnections.get();
+      this.upstreamBytes = metrics.upstreamBytes.get();
+      this.downstreamBytes = metrics.downstreamBytes.get();
+      this.pooledHostHits = metrics.pooledHostHits.get();
+      this.pooledHostMisses = metrics.pooledHostMisses.get();
+      this.idlePooledHosts = metrics.idlePooledHosts.get();
+      this.slowHandlers = metrics.slowHandlers.get();
+      this.droppedAccessLogs = metrics.droppedAccessLogs.get();
+      this.cacheHits = metrics.cacheHits.get();
+      this.cacheMisses = metrics.cacheMisses.get();
+      this.cacheCoalesced = metrics.cacheCoalesced.get();
+      this.cacheRevalidated = metrics.cacheRevalidated.get();
+      this.lastSlowHandler = metrics.lastSlowHandler;
+      this.connectLatency = metrics.connectLatency.snapshot();
+      this.headerReadTime = metrics.headerReadTime.snapshot();
+      this.eventLoopLag = metrics.eventLoopLag.snapshot();
+      this.loopTime = metrics.loopTime.snapshot();
+      this.readyKeys = metrics.readyKeys.snapshot();
+      for (HandlerTime handlerTime : metrics.handlerTimes.values()) {
+        handlerTimes.computeIfAbsent(handlerTime.handler, h -> new TreeMap<>())
+            .put(handlerTime.state, handlerTime.time.snapshot());
+      }
+    }
+
+    private Snapshot(String name, Snapshot left, Snapshot right) {
+      this.name = name;
+      this.closedConnections = left.closedConnections + right.closedConnections;
+      this.acceptedConnections = left.acceptedConnections + right.acceptedConnections;
+      this.upstreamBytes = left.upstreamBytes + right.upstreamBytes;
+      this.downstreamBytes = left.downstreamBytes + right.downstreamBytes;
+      this.pooledHostHits = left.pooledHostHits + right.pooledHostHits;
+      this.pooledHostMisses = left.pooledHostMisses + right.pooledHostMisses;
+      this.idlePooledHosts = left.idlePooledHosts + right.idlePooledHosts;
+      this.slowHandlers = left.slowHandlers + right.slowHandlers;
+      this.droppedAccessLogs = left.droppedAccessLogs + right.droppedAccessLogs;
+      this.cacheHits = left.cacheHits + right.cacheHits;
+      this.cacheMisses = left.cacheMisses + right.cacheMisses;
+      this.cacheCoalesced = left.cacheCoalesced + right.cacheCoalesced;
+      this.cacheRevalidated = left.cacheRevalidated + right.cacheRevalidated;
+      this.lastSlowHandler = null == right.lastSlowHandler ?
+          left.lastSlowHandler : right.lastSlowHandler;
+      this.connectLatency = left.connectLatency.merge(right.connectLatency);
+      this.headerReadTime = left.headerReadTime.merge(right.headerReadTime);
+      this.eventLoopLag = left.eventLoopLag.merge(right.eventLoopLag);
+      this.loopTime = left.loopTime.merge(right.loopTime);
+      this.readyKeys = left.readyKeys.merge(right.readyKeys);
+      for (Snapshot snapshot : new Snapshot[]{left, right}) {
+        snapshot.handlerTimes.forEach((handler, states) -> states.forEach(
+            (state, time) -> handlerTimes.computeIfAbsent(handler, h -> new TreeMap<>())
+                .merge(state, time, Histogram.Snapshot::merge)));
+      }
+    }
+
+    /**
+     * return the metrics of both snapshots together, under {@code name}
+     */
+    public Snapshot merge(String name, Snapshot other) {
+      return new Snapshot(name, this, other);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getAcceptedConnections() {
+      return acceptedConnections;
+    }
+
+    public long getActiveConnections() {
+      return acceptedConnections - closedConnections;
+    }
+
+    public long getUpstreamBytes() {
+      return upstreamBytes;
+    }
+
+    public long getDownstreamBytes() {
+      return downstreamBytes;
+    }
+
+    public long getPooledHostHits() {
+      return pooledHostHits;
+    }
+
+    public long getPooledHostMisses() {
+      return pooledHostMisses;
+    }
+
+    public long getIdlePooledHosts() {
+      return idlePooledHosts;
+    }
+
+    public long getSlowHandlers() {
+      return slowHandlers;
+    }
+
+    public long getDroppedAccessLogs() {
+      return droppedAccessLogs;
+    }
+
+    public long getCacheHits() {
+      return cacheHits;
+    }
+
+    public long getCacheMisses() {
+      return cacheMisses;
+    }
+
+    public long getCacheCoalesced() {
+      return cacheCoalesced;
+    }
+
+    public long getCacheRevalidated() {
+      return cacheRevalidated;
+    }
+
+    /**
+     * return the description of the last event which took longer than allowed, or null
+     */
+    public String getLastSlowHandler() {
+      return lastSlowHandler;
+    }
+
+    public Histogram.Snapshot getConnectLatency() {
+      return connectLatency;
+    }
+
+    public Histogram.Snapshot getHeaderReadTime() {
+      return headerReadTime;
+    }
+
+    public Histogram.Snapshot getEventLoopLag() {
+      return eventLoopLag;
+    }
+
+    public Histogram.Snapshot getLoopTime() {
+      return loopTime;
+    }
+
+    public Histogram.Snapshot getReadyKeys() {
+      return readyKeys;
+    }
+
+    /**
+     * return the time spent on events, by handler, then by state
+     */
+    public Map<String, Map<String, Histogram.Snapshot>> getHandlerTimes() {
+      return handlerTimes;
+    }
+  }
+}
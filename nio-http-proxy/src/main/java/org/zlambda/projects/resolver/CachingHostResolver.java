@@ -0,0 +1,143 @@
+package org.zlambda.projects.resolver;
+
+import com.google.common.base.Preconditions;
+import com.google.common.net.InetAddresses;
+
+import org.slf4j.Logger;
+import org.zlambda.projects.utils.Common;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threadsafe Class
+ *
+ * Lookups run on {@code executor}, never on the caller's thread. Answers are cached for {@code
+ * ttl} seconds, failures for {@code negativeTtl} seconds, and concurrent lookups of the same host
+ * share a single in-flight future.
+ */
+public class CachingHostResolver implements HostResolver {
+  private static final Logger LOGGER = Common.getSystemLogger();
+  private final NameService nameService;
+  private final Executor executor;
+  private final long ttlNanos;
+  private final long negativeTtlNanos;
+  private final int maxEntries;
+  private final ConcurrentMap<String, CachedAnswer> cache = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, CompletableFuture<InetAddress>> inflight =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @param ttl         in second
+   * @param negativeTtl in second
+   */
+  public CachingHostResolver(NameService nameService, Executor executor, int ttl,
+                             int negativeTtl, int maxEntries) {
+    Preconditions.checkArgument(
+        ttl >= 0 && negativeTtl >= 0 && maxEntries > 0,
+        "ttl, negativeTtl should >= 0 and maxEntries should > 0"
+    );
+    this.nameService = nameService;
+    this.executor = executor;
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttl);
+    this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtl);
+    this.maxEntries = maxEntries;
+  }
+
+  @Override
+  public CompletableFuture<InetAddress> resolve(String host) {
+    /**
+     * literal addresses never need a lookup
+     */
+    if (InetAddresses.isInetAddress(host)) {
+      return CompletableFuture.completedFuture(InetAddresses.forString(host));
+    }
+    CachedAnswer answer = cache.get(host);
+    if (null != answer) {
+      if (!answer.isExpired(System.nanoTime())) {
+        return answer.result;
+      }
+      cache.remove(host, answer);
+    }
+    return inflight.computeIfAbsent(host, this::submit);
+  }
+
+  @Override
+  public int size() {
+    return cache.size();
+  }
+
+  private CompletableFuture<InetAddress> submit(String host) {
+    CompletableFuture<InetAddress> future = new CompletableFuture<>();
+    try {
+      executor.execute(() -> lookup(host, future));
+    } catch (RejectedExecutionException e) {
+      LOGGER.error("cannot schedule lookup of <{}>.", host, e);
+      /**
+       * cannot remove the mapping from within computeIfAbsent, so complete it asynchronously and
+       * let the next caller retry
+       */
+      CompletableFuture.runAsync(() -> {
+        inflight.remove(host, future);
+        future.completeExceptionally(e);
+      });
+    }
+    return future;
+  }
+
+  private void lookup(String host, CompletableFuture<InetAddress> future) {
+    try {
+      InetAddress address = nameService.lookup(host);
+      store(host, future, ttlNanos);
+      inflight.remove(host, future);
+      future.complete(address);
+    } catch (UnknownHostException e) {
+      LOGGER.debug("cannot resolve <{}>, reason <{}>.", host, e.getMessage());
+      store(host, future, negativeTtlNanos);
+      inflight.remove(host, future);
+      future.completeExceptionally(e);
+    } catch (Exception e) {
+      LOGGER.error("lookup of <{}> failed.", host, e);
+      inflight.remove(host, future);
+      future.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * The answer is cached before the in-flight entry is dropped, so a concurrent caller always
+   * finds one of them.
+   */
+  private void store(String host, CompletableFuture<InetAddress> result, long ttl) {
+    if (0 == ttl) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (cache.size() >= maxEntries) {
+      cache.values().removeIf(answer -> answer.isExpired(now));
+      if (cache.size() >= maxEntries) {
+        return;
+      }
+    }
+    cache.put(host, new CachedAnswer(result, now + ttl));
+  }
+
+  private static class CachedAnswer {
+    private final CompletableFuture<InetAddress> result;
+    private final long expireAt;
+
+    CachedAnswer(CompletableFuture<InetAddress> result, long expireAt) {
+      this.result = result;
+      this.expireAt = expireAt;
+    }
+
+    boolean isExpired(long now) {
+      return now - expireAt >= 0;
+    }
+  }
+}
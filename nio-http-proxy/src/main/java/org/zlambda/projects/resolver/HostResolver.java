@@ -0,0 +1,18 @@
+package org.zlambda.projects.resolver;
+
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+
+public interface HostResolver {
+  /**
+   * Resolve {@code host} without blocking the caller. The returned future may already be completed
+   * when the answer is cached; a failed lookup completes it exceptionally with {@link
+   * java.net.UnknownHostException}.
+   */
+  CompletableFuture<InetAddress> resolve(String host);
+
+  /**
+   * return the current number of cached answers, including negative ones
+   */
+  int size();
+}
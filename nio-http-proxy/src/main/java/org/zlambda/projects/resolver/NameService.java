@@ -0,0 +1,33 @@
+package org.zlambda.projects.resolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Blocking name lookup used by {@link CachingHostResolver}. It is only ever invoked from resolver
+ * threads, so implementations are free to block.
+ *
+ * Besides the system name service, any implementation with a public no-argument constructor can be
+ * configured by its class name, e.g. a local stand-in resolver.
+ */
+public interface NameService {
+  String SYSTEM_NAME = "system";
+  NameService SYSTEM = InetAddress::getByName;
+
+  InetAddress lookup(String host) throws UnknownHostException;
+
+  /**
+   * @param name {@link #SYSTEM_NAME} or a class name
+   */
+  static NameService create(String name) {
+    if (SYSTEM_NAME.equals(name)) {
+      return SYSTEM;
+    }
+    try {
+      return Class.forName(name).asSubclass(NameService.class).getDeclaredConstructor()
+          .newInstance();
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      throw new IllegalArgumentException("unknown name service " + name, e);
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package org.zlambda.projects.timer;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Not Threadsafe Class, each worker owns one wheel and only uses it from its own thread.
+ *
+ * Hashed timing wheel, as in Varghese and Lauck, Hashed and Hierarchical Timing Wheels (SOSP 87).
+ *
+ * Time is cut into ticks, and a timeout due at tick {@code t} is linked into slot {@code t mod
+ * numSlots}. Scheduling and cancelling only link and unlink a node. Advancing the wheel visits the
+ * slots of the ticks which passed since the last advance, and in each of them skips the timeouts of
+ * later rounds, so the cost does not depend on how many connections wait for a timeout. Timeouts
+ * fire up to one tick late, never early.
+ */
+public class TimingWheel {
+  private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+  private final long tickNanos;
+  private final int mask;
+  private final Timeout[] slots;
+  private final LongSupplier nanoTime;
+  private final long startedAt;
+  /**
+   * the next tick to visit
+   */
+  private long tick = 0;
+  private int size = 0;
+  /**
+   * scratch list of the timeouts due on an advance
+   */
+  private final List<Timeout> due = new ArrayList<>();
+
+  /**
+   * @param tick     in ms
+   * @param numSlots rounded up to a power of 2, a round of the wheel should cover the common
+   *                 timeouts
+   */
+  public TimingWheel(long tick, int numSlots) {
+    this(tick, numSlots, System::nanoTime);
+  }
+
+  /**
+   * @param nanoTime the clock, tests move it by hand
+   */
+  TimingWheel(long tick, int numSlots, LongSupplier nanoTime) {
+    Preconditions.checkArgument(tick > 0 && numSlots > 0, "tick, numSlots should > 0");
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tick);
+    int capacity = Integer.highestOneBit(numSlots);
+    this.slots = new Timeout[capacity < numSlots ? capacity << 1 : capacity];
+    this.mask = slots.length - 1;
+    this.nanoTime = nanoTime;
+    this.startedAt = nanoTime.getAsLong();
+  }
+
+  /**
+   * Run {@code task} on the thread advancing the wheel once {@code delay} ms passed
+   */
+  public Timeout schedule(Runnable task, long delay) {
+    long deadline = nanoTime.getAsLong() - startedAt + TimeUnit.MILLISECONDS.toNanos(delay);
+    /**
+     * first tick starting at or after the deadline, and never a tick already visited
+     */
+    long deadlineTick = Math.max(tick, (deadline + tickNanos - 1) / tickNanos);
+    Timeout timeout = new Timeout(this, task, deadlineTick);
+    link(timeout);
+    return timeout;
+  }
+
+  /**
+   * Run the tasks of the timeouts which are due
+   *
+   * @return the number of tasks run
+   */
+  public int advance() {
+    long currentTick = (nanoTime.getAsLong() - startedAt) / tickNanos;
+    if (0 == size) {
+      tick = Math.max(tick, currentTick + 1);
+      return 0;
+    }
+    /**
+     * after a long pause every slot is visited once
+     */
+    long lastTick = Math.min(currentTick, tick + slots.length - 1);
+    for (; tick <= lastTick; ++tick) {
+      for (Timeout timeout = slots[(int) (tick & mask)]; null != timeout; timeout = timeout.next) {
+        if (timeout.deadlineTick <= currentTick) {
+          due.add(timeout);
+        }
+      }
+    }
+    tick = Math.max(tick, currentTick + 1);
+    /**
+     * unlink first, a task may cancel or schedule other timeouts
+     */
+    due.forEach(this::unlink);
+    int numRun = 0;
+    for (Timeout timeout : due) {
+      if (timeout.state == State.PENDING) {
+        timeout.state = State.EXPIRED;
+        timeout.task.run();
+        ++numRun;
+      }
+    }
+    due.clear();
+    return numRun;
+  }
+
+  /**
+   * return the ms until the next tick, at least 1, or 0 if no timeout is pending
+   */
+  public long millisToNextTick() {
+    if (0 == size) {
+      return 0;
+    }
+    long remaining = tick * tickNanos - (nanoTime.getAsLong() - startedAt);
+    return Math.max(1, (remaining + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI);
+  }
+
+  /**
+   * return the number of pending timeouts
+   */
+  public int size() {
+    return size;
+  }
+
+  private void link(Timeout timeout) {
+    int index = (int) (timeout.deadlineTick & mask);
+    Timeout head = slots[index];
+    timeout.next = head;
+    if (null != head) {
+      head.prev = timeout;
+    }
+    slots[index] = timeout;
+    ++size;
+  }
+
+  private void unlink(Timeout timeout) {
+    if (null != timeout.prev) {
+      timeout.prev.next = timeout.next;
+    } else {
+      slots[(int) (timeout.deadlineTick & mask)] = timeout.next;
+    }
+    if (null != timeout.next) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.prev = null;
+    timeout.next = null;
+    --size;
+  }
+
+  private enum State {
+    PENDING, CANCELLED, EXPIRED
+  }
+
+  /**
+   * Not Threadsafe Class, handle of a scheduled task
+   */
+  public static class Timeout {
+    private final TimingWheel wheel;
+    private final Runnable task;
+    private final long deadlineTick;
+    private State state = State.PENDING;
+    private Timeout prev;
+    private Timeout next;
+
+    private Timeout(TimingWheel wheel, Runnable task, long deadlineTick) {
+      this.wheel = wheel;
+      this.task = task;
+      this.deadlineTick = deadlineTick;
+    }
+
+    /**
+     * Idempotent, has no effect once the task ran
+     */
+    public void cancel() {
+      if (state != State.PENDING) {
+        return;
+      }
+      /**
+       * a due timeout is already unlinked while the tasks of its advance run
+       */
+      if (null != prev || null != next || wheel.slots[(int) (deadlineTick & wheel.mask)] == this) {
+        wheel.unlink(this);
+      }
+      state = State.CANCELLED;
+    }
+
+    public boolean isPending() {
+      return state == State.PENDING;
+    }
+  }
+}
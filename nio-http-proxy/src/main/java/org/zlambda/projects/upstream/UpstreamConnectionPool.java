@@ -0,0 +1,197 @@
+package org.zlambda.projects.upstream;
+
+import org.slf4j.Logger;
+import org.zlambda.projects.EventHandler;
+import org.zlambda.projects.context.ConnectionContext;
+import org.zlambda.projects.utils.Common;
+import org.zlambda.projects.utils.SelectionKeyUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Not Threadsafe Class, each worker owns one pool and only uses it from its own thread.
+ *
+ * Keeps idle keep-alive host connections keyed by host:port. An idle connection stays registered
+ * with the worker selector on OP_READ, so an origin closing it (or sending unsolicited bytes) evicts
+ * it right away.
+ */
+public class UpstreamConnectionPool {
+  private static final Logger LOGGER = Common.getSystemLogger();
+  private static final long EVICTION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private final int maxIdlePerHost;
+  private final long idleTimeoutNanos;
+  private final Map<String, Deque<IdleConnection>> idleConnections = new HashMap<>();
+  /**
+   * scratch buffer of the non-blocking read used as health check
+   */
+  private final ByteBuffer probe = ByteBuffer.allocate(1);
+  private int numIdle = 0;
+  private long nextEvictionAt = System.nanoTime();
+
+  /**
+   * @param maxIdlePerHost 0 disables pooling
+   * @param idleTimeout    in second
+   */
+  public UpstreamConnectionPool(int maxIdlePerHost, int idleTimeout) {
+    this.maxIdlePerHost = maxIdlePerHost;
+    this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeout);
+  }
+
+  public boolean isEnabled() {
+    return maxIdlePerHost > 0;
+  }
+
+  /**
+   * return the number of idle connections
+   */
+  public int size() {
+    return numIdle;
+  }
+
+  /**
+   * Take the most recently used healthy connection to {@code hostName}:{@code port}.
+   *
+   * @return null if there is none, otherwise the connection whose key has no interest ops and no
+   * attachment
+   */
+  public ConnectionContext acquire(String hostName, int port) {
+    Deque<IdleConnection> connections = idleConnections.get(toKey(hostName, port));
+    if (null == connections) {
+      return null;
+    }
+    long now = System.nanoTime();
+    IdleConnection idle;
+    while (null != (idle = connections.pollLast())) {
+      numIdle--;
+      if (!idle.isExpired(now) && isHealthy(idle.connection)) {
+        idle.connection.getKey().interestOps(0);
+        idle.connection.getKey().attach(null);
+        LOGGER.debug("reuse host connection <{}>.", idle.connection.getName());
+        return idle.connection;
+      }
+      idle.connection.closeIO();
+    }
+    return null;
+  }
+
+  /**
+   * Park {@code connection} which must sit at an HTTP message boundary.
+   *
+   * @return false if the pool is disabled or full, the caller still owns the connection then
+   */
+  public boolean release(String hostName, int port, ConnectionContext connection) {
+    if (!isEnabled() || !connection.isOpen()) {
+      return false;
+    }
+    Deque<IdleConnection> connections =
+        idleConnections.computeIfAbsent(toKey(hostName, port), k -> new ArrayDeque<>());
+    if (connections.size() >= maxIdlePerHost) {
+      return false;
+    }
+    IdleConnection idle = new IdleConnection(connection, System.nanoTime() + idleTimeoutNanos);
+    SelectionKey key = connection.getKey();
+    key.interestOps(SelectionKey.OP_READ);
+    key.attach(new IdleConnectionHandler(connections, idle));
+    connections.offerLast(idle);
+    numIdle++;
+    LOGGER.debug("park host connection <{}>.", connection.getName());
+    return true;
+  }
+
+  /**
+   * Close the connections idle for longer than the idle timeout, does a full pass at most once per
+   * second
+   */
+  public void evictExpired() {
+    if (0 == numIdle) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (now - nextEvictionAt < 0) {
+      return;
+    }
+    nextEvictionAt = now + EVICTION_INTERVAL_NANOS;
+    Iterator<Deque<IdleConnection>> it = idleConnections.values().iterator();
+    while (it.hasNext()) {
+      Deque<IdleConnection> connections = it.next();
+      /**
+       * connections are ordered by release time, so expired ones sit at the head
+       */
+      while (!connections.isEmpty() && connections.peekFirst().isExpired(now)) {
+        connections.pollFirst().connection.closeIO();
+        numIdle--;
+      }
+      if (connections.isEmpty()) {
+        it.remove();
+      }
+    }
+  }
+
+  private boolean isHealthy(ConnectionContext connection) {
+    SocketChannel channel = connection.getChannel();
+    if (!connection.getKey().isValid() || !channel.isOpen() || !channel.isConnected()) {
+      return false;
+    }
+    try {
+      probe.clear();
+      return 0 == channel.read(probe);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static String toKey(String hostName, int port) {
+    return hostName.toLowerCase() + ":" + port;
+  }
+
+  private static class IdleConnection {
+    private final ConnectionContext connection;
+    private final long expireAt;
+
+    IdleConnection(ConnectionContext connection, long expireAt) {
+      this.connection = connection;
+      this.expireAt = expireAt;
+    }
+
+    boolean isExpired(long now) {
+      return now - expireAt >= 0;
+    }
+  }
+
+  /**
+   * Any read event on an idle connection is either EOF or bytes nobody asked for, so evict it.
+   */
+  private class IdleConnectionHandler implements EventHandler {
+    private final Deque<IdleConnection> connections;
+    private final IdleConnection idle;
+
+    IdleConnectionHandler(Deque<IdleConnection> connections, IdleConnection idle) {
+      this.connections = connections;
+      this.idle = idle;
+    }
+
+    @Override
+    public void execute(SelectionKey key) {
+      /**
+       * the key may still carry ready ops selected before the connection was parked
+       */
+      if (key.isValid() && !key.isReadable()) {
+        return;
+      }
+      if (connections.remove(idle)) {
+        numIdle--;
+      }
+      LOGGER.debug("evict idle host connection <{}>.", SelectionKeyUtils.getName(key));
+      idle.connection.closeIO();
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package org.zlambda.projects.utils;
+
+import java.nio.ByteBuffer;
+
+public enum ByteBufferUtils {
+  ;
+
+  /**
+   * Copy {@code length} bytes of {@code buffer} from {@code index} into {@code dst} at {@code
+   * offset}, where the data of {@code buffer} runs from 0 to its position. Position and limit are
+   * left as they were.
+   */
+  public static void get(ByteBuffer buffer, int index, byte[] dst, int offset, int length) {
+    int position = buffer.position();
+    if (index < 0 || length < 0 || index + length > position) {
+      throw new IndexOutOfBoundsException();
+    }
+    int limit = buffer.limit();
+    buffer.limit(index + length);
+    buffer.position(index);
+    buffer.get(dst, offset, length);
+    buffer.limit(limit);
+    buffer.position(position);
+  }
+}
@@ -5,6 +5,7 @@ import org.zlambda.projects.buffer.ChannelBuffer;
 
 import java.io.IOException;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 
 public enum SocketChannelUtils {
@@ -34,17 +35,36 @@ public enum SocketChannelUtils {
   }
 
   public static int writeToChannel(SocketChannel channel, ChannelBuffer buffer) {
+    return writeToChannel(channel, buffer, Integer.MAX_VALUE);
+  }
+
+  public static int writeToChannel(SocketChannel channel, ChannelBuffer buffer, int maxBytes) {
     try {
-      return buffer.write(channel);
+      return buffer.write(channel, maxBytes);
     } catch (IOException e) {
-      if ("Broken pipe".equals(e.getMessage())) {
-        LOGGER.debug("Failed to write to <{}>, reason <{}>.", getRemoteAddress(channel),
-                     e.getMessage());
-      } else {
-        LOGGER.error("Failed to write to <{}>.", channel.toString(), e);
-      }
-      return -1;
+      return onWriteFailure(channel, e);
+    }
+  }
+
+  public static int writeToChannel(SocketChannel channel, ByteBuffer buffer) {
+    try {
+      return channel.write(buffer);
+    } catch (IOException e) {
+      return onWriteFailure(channel, e);
+    }
+  }
+
+  /**
+   * @return -1, as a write reaching EOF
+   */
+  private static int onWriteFailure(SocketChannel channel, IOException e) {
+    if ("Broken pipe".equals(e.getMessage())) {
+      LOGGER.debug("Failed to write to <{}>, reason <{}>.", getRemoteAddress(channel),
+                   e.getMessage());
+    } else {
+      LOGGER.error("Failed to write to <{}>.", channel.toString(), e);
     }
+    return -1;
   }
 
   public static String getName(SocketChannel channel) {
@@ -0,0 +1,123 @@
+/*
+ * JNI binding of splice(2) for org.zlambda.projects.buffer.Splice, Linux only.
+ *
+ * Build with bin/build-splice.sh, the proxy falls back to byte buffers when the library cannot be
+ * loaded.
+ */
+#define _GNU_SOURCE
+#include <errno.h>
+#include <fcntl.h>
+#include <string.h>
+#include <unistd.h>
+#include <jni.h>
+
+static void throwIOException(JNIEnv *env, int error) {
+  jclass clazz = (*env)->FindClass(env, "java/io/IOException");
+  if (NULL != clazz) {
+    (*env)->ThrowNew(env, clazz, strerror(error));
+  }
+}
+
+/*
+ * return the file descriptor of a sun.nio.ch.SocketChannelImpl, -1 if it has none
+ */
+JNIEXPORT jint JNICALL
+Java_org_zlambda_projects_buffer_Splice_fdOf(JNIEnv *env, jclass clazz, jobject channel) {
+  jclass channelClass = (*env)->GetObjectClass(env, channel);
+  jfieldID field = (*env)->GetFieldID(env, channelClass, "fdVal", "I");
+  if (NULL == field) {
+    (*env)->ExceptionClear(env);
+    return -1;
+  }
+  return (*env)->GetIntField(env, channel, field);
+}
+
+/*
+ * open a non-blocking pipe into fds {read end, write end}, return its capacity
+ */
+JNIEXPORT jint JNICALL
+Java_org_zlambda_projects_buffer_Splice_pipe(JNIEnv *env, jclass clazz, jintArray fds,
+                                             jint size) {
+  int pipefd[2];
+  if (-1 == pipe2(pipefd, O_NONBLOCK | O_CLOEXEC)) {
+    throwIOException(env, errno);
+    return -1;
+  }
+  if (size > 0) {
+    /* best effort, limited by /proc/sys/fs/pipe-max-size */
+    fcntl(pipefd[1], F_SETPIPE_SZ, size);
+  }
+  jint values[2] = {pipefd[0], pipefd[1]};
+  (*env)->SetIntArrayRegion(env, fds, 0, 2, values);
+  return fcntl(pipefd[1], F_GETPIPE_SZ);
+}
+
+/*
+ * move up to len bytes from in to out, return the number of bytes moved, 0 if either side would
+ * block, -1 on end of stream
+ */
+JNIEXPORT jint JNICALL
+Java_org_zlambda_projects_buffer_Splice_splice(JNIEnv *env, jclass clazz, jint in, jint out,
+                                               jint len) {
+  ssize_t ret;
+  do {
+    ret = splice(in, NULL, out, NULL, len, SPLICE_F_MOVE | SPLICE_F_NONBLOCK);
+  } while (-1 == ret && EINTR == errno);
+  if (-1 == ret) {
+    if (EAGAIN == errno) {
+      return 0;
+    }
+    throwIOException(env, errno);
+    return -1;
+  }
+  return 0 == ret ? -1 : (jint) ret;
+}
+
+/*
+ * write bytes into fd, return the number of bytes written
+ */
+JNIEXPORT jint JNICALL
+Java_org_zlambda_projects_buffer_Splice_write(JNIEnv *env, jclass clazz, jint fd,
+                                              jbyteArray bytes) {
+  jsize len = (*env)->GetArrayLength(env, bytes);
+  jbyte *data = (*env)->GetByteArrayElements(env, bytes, NULL);
+  ssize_t ret;
+  do {
+    ret = write(fd, data, len);
+  } while (-1 == ret && EINTR == errno);
+  (*env)->ReleaseByteArrayElements(env, bytes, data, JNI_ABORT);
+  if (-1 == ret) {
+    if (EAGAIN == errno) {
+      return 0;
+    }
+    throwIOException(env, errno);
+    return -1;
+  }
+  return (jint) ret;
+}
+
+/*
+ * read and drop up to len bytes from fd, return the number of bytes dropped
+ */
+JNIEXPORT jint JNICALL
+Java_org_zlambda_projects_buffer_Splice_skip(JNIEnv *env, jclass clazz, jint fd, jint len) {
+  char scratch[4096];
+  jint total = 0;
+  while (total < len) {
+    size_t chunk = len - total < (jint) sizeof(scratch) ? (size_t) (len - total) : sizeof(scratch);
+    ssize_t ret = read(fd, scratch, chunk);
+    if (-1 == ret && EINTR == errno) {
+      continue;
+    }
+    if (ret <= 0) {
+      break;
+    }
+    total += ret;
+  }
+  return total;
+}
+
+JNIEXPORT void JNICALL
+Java_org_zlambda_projects_buffer_Splice_close(JNIEnv *env, jclass clazz, jint fd) {
+  close(fd);
+}
@@ -0,0 +1,243 @@
+package org.zlambda.projects;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.zlambda.projects.context.SystemContext;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Clients of the blocking engine talking to two loopback origins, A and B
+ */
+public class BlockingEngineTest {
+  private static ServerSocket originA;
+  private static ServerSocket originB;
+  private static int proxyPort;
+
+  @BeforeClass
+  public static void start() throws Exception {
+    originA = startOrigin("A");
+    originB = startOrigin("B");
+    proxyPort = startEngine(new SystemContext.Builder());
+  }
+
+  @AfterClass
+  public static void stop() throws IOException {
+    originA.close();
+    originB.close();
+  }
+
+  @Test
+  public void pipelinedRequestsToTwoOrigins() throws Exception {
+    try (Socket client = client(proxyPort)) {
+      /**
+       * all in one write, so the requests to B and back to A are held back until the responses
+       * before them are through
+       */
+      send(client, request(originA, "/1") + request(originA, "/2") + request(originB, "/3")
+                   + request(originA, "/4"));
+      assertEquals("A /1", readResponse(client));
+      assertEquals("A /2", readResponse(client));
+      assertEquals("B /3", readResponse(client));
+      assertEquals("A /4", readResponse(client));
+      send(client, request(originB, "/5"));
+      assertEquals("B /5", readResponse(client));
+    }
+  }
+
+  @Test
+  public void clientEofAfterRequest() throws Exception {
+    try (Socket client = client(proxyPort)) {
+      send(client, request(originA, "/1") + request(originA, "/2"));
+      client.shutdownOutput();
+      assertEquals("the host still answers what was sent", "A /1", readResponse(client));
+      assertEquals("A /2", readResponse(client));
+      assertEquals(-1, client.getInputStream().read());
+    }
+  }
+
+  @Test
+  public void hostEofEndsResponse() throws Exception {
+    try (Socket client = client(proxyPort)) {
+      send(client, request(originB, "/close"));
+      assertEquals("B /close", readToEof(client));
+    }
+  }
+
+  @Test
+  public void idleConnectionsExpire() throws Exception {
+    int port = startEngine(new SystemContext.Builder().idleTimeout(1));
+    try (Socket silent = client(port); Socket bridged = client(port)) {
+      send(bridged, request(originA, "/1"));
+      assertEquals("A /1", readResponse(bridged));
+      long idleSince = System.nanoTime();
+      assertEquals("never sent a request", -1, silent.getInputStream().read());
+      assertEquals(-1, bridged.getInputStream().read());
+      assertTrue(System.nanoTime() - idleSince >= TimeUnit.MILLISECONDS.toNanos(900));
+    }
+  }
+
+  /**
+   * @return the port the engine listens on
+   */
+  private static int startEngine(SystemContext.Builder builder) throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    SystemContext systemContext = builder
+        .engine(SystemContext.BLOCKING_ENGINE)
+        .port(port)
+        .bufferSize(10)
+        .lazyBuffers(true)
+        .tcpNoDelay(true)
+        .resolverThreads(1)
+        .dnsCacheTtl(60)
+        .dnsCacheSize(16)
+        .build();
+    BlockingEngine engine = new BlockingEngine(systemContext);
+    engine.setDaemon(true);
+    engine.start();
+    for (int i = 0; i < 100; ++i) {
+      try (Socket ignored = new Socket("127.0.0.1", port)) {
+        return port;
+      } catch (IOException e) {
+        TimeUnit.MILLISECONDS.sleep(50);
+      }
+    }
+    throw new IOException("the engine does not listen on " + port);
+  }
+
+  private static Socket client(int port) throws IOException {
+    Socket ret = new Socket("127.0.0.1", port);
+    ret.setSoTimeout(5000);
+    return ret;
+  }
+
+  private static String request(ServerSocket origin, String path) {
+    String host = "127.0.0.1:" + origin.getLocalPort();
+    return "GET http://" + host + path + " HTTP/1.1\r\nHost: " + host + "\r\n\r\n";
+  }
+
+  private static void send(Socket socket, String data) throws IOException {
+    socket.getOutputStream().write(data.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * @return the body of a response framed by its Content-Length
+   */
+  private static String readResponse(Socket socket) throws IOException {
+    InputStream in = socket.getInputStream();
+    readLine(in);
+    int contentLength = 0;
+    for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+      if (line.toLowerCase().startsWith("content-length:")) {
+        contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+      }
+    }
+    byte[] body = new byte[contentLength];
+    for (int n = 0; n < contentLength; ) {
+      int read = in.read(body, n, contentLength - n);
+      if (-1 == read) {
+        throw new IOException("unexpected EOF");
+      }
+      n += read;
+    }
+    return new String(body, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * @return the body of a response delimited by the end of the stream
+   */
+  private static String readToEof(Socket socket) throws IOException {
+    InputStream in = socket.getInputStream();
+    while (!readLine(in).isEmpty()) {
+      // skip the head
+    }
+    StringBuilder body = new StringBuilder();
+    for (int b = in.read(); -1 != b; b = in.read()) {
+      body.append((char) b);
+    }
+    return body.toString();
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    for (int b = in.read(); '\n' != b; b = in.read()) {
+      if (-1 == b) {
+        throw new IOException("unexpected EOF");
+      }
+      if ('\r' != b) {
+        line.append((char) b);
+      }
+    }
+    return line.toString();
+  }
+
+  private static ServerSocket startOrigin(String name) throws IOException {
+    ServerSocket origin = new ServerSocket(0);
+    Thread acceptor = new Thread(() -> {
+      while (!origin.isClosed()) {
+        try {
+          Socket socket = origin.accept();
+          Thread connection = new Thread(() -> serveOrigin(name, socket), "Origin-" + name);
+          connection.setDaemon(true);
+          connection.start();
+        } catch (IOException e) {
+          return;
+        }
+      }
+    }, "Origin-" + name);
+    acceptor.setDaemon(true);
+    acceptor.start();
+    return origin;
+  }
+
+  /**
+   * Answers "<name> <path>", framed by the end of the stream for /close, until the proxy is done
+   */
+  private static void serveOrigin(String name, Socket socket) {
+    try (Socket ignored = socket) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      OutputStream out = socket.getOutputStream();
+      while (true) {
+        String path;
+        try {
+          path = readLine(in).split(" ")[1].replaceFirst("^http://[^/]*", "");
+        } catch (IOException e) {
+          /**
+           * the proxy passed the end of the client requests on
+           */
+          return;
+        }
+        while (!readLine(in).isEmpty()) {
+          // skip the headers
+        }
+        String body = name + " " + path;
+        if ("/close".equals(path)) {
+          out.write(("HTTP/1.1 200 OK\r\nConnection: close\r\n\r\n" + body)
+                        .getBytes(StandardCharsets.ISO_8859_1));
+          return;
+        }
+        out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length() + "\r\n\r\n" + body)
+                      .getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+      }
+    } catch (IOException e) {
+      /**
+       * the proxy closed the connection
+       */
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package org.zlambda.projects;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A client which pipelines its next request while the proxy revalidates a stale cached response
+ * gets the renewed response, then the response to the next request.
+ */
+public class ResponseCacheRevalidationTest {
+  private static ServerSocket origin;
+  private static int proxyPort;
+  private static final Map<String, AtomicInteger> originRequests = new ConcurrentHashMap<>();
+
+  @BeforeClass
+  public static void start() throws Exception {
+    origin = new ServerSocket(0);
+    Thread acceptor = new Thread(ResponseCacheRevalidationTest::serveOrigin, "Origin");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    try (ServerSocket socket = new ServerSocket(0)) {
+      proxyPort = socket.getLocalPort();
+    }
+    System.setProperty("port", String.valueOf(proxyPort));
+    System.setProperty("worker", "2");
+    System.setProperty("enableMonitor", "false");
+    System.setProperty("cacheMaxMemory", "16");
+    new NIOHttpProxy().start();
+    for (int i = 0; i < 100; ++i) {
+      try (Socket ignored = new Socket("127.0.0.1", proxyPort)) {
+        return;
+      } catch (IOException e) {
+        TimeUnit.MILLISECONDS.sleep(50);
+      }
+    }
+  }
+
+  @AfterClass
+  public static void stop() throws IOException {
+    origin.close();
+  }
+
+  @Test
+  public void pipelinedRequestToSameOrigin() throws Exception {
+    assertRevalidatedThen("/same", "http://127.0.0.1:" + origin.getLocalPort() + "/other");
+  }
+
+  @Test
+  public void pipelinedRequestToOtherOrigin() throws Exception {
+    assertRevalidatedThen("/switch", "http://localhost:" + origin.getLocalPort() + "/other");
+  }
+
+  private static void assertRevalidatedThen(String path, String next) throws Exception {
+    String url = "http://127.0.0.1:" + origin.getLocalPort() + path;
+    try (Socket client = client()) {
+      send(client, url);
+      assertEquals("200 etag " + path, readResponse(client));
+    }
+    try (Socket client = client()) {
+      send(client, url);
+      /**
+       * the origin holds the 304 back, so the next request arrives meanwhile
+       */
+      TimeUnit.MILLISECONDS.sleep(100);
+      send(client, next);
+      assertEquals("200 etag " + path, readResponse(client));
+      assertEquals("200 other", readResponse(client));
+    }
+    assertEquals(1, originRequests.get("304 " + path).get());
+  }
+
+  private static Socket client() throws IOException {
+    Socket ret = new Socket("127.0.0.1", proxyPort);
+    ret.setSoTimeout(5000);
+    return ret;
+  }
+
+  private static void send(Socket socket, String url) throws IOException {
+    String host = url.substring(url.indexOf("://") + 3, url.indexOf('/', url.indexOf("://") + 3));
+    socket.getOutputStream().write(("GET " + url + " HTTP/1.1\r\nHost: " + host + "\r\n\r\n")
+                                       .getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * @return the status code and the body
+   */
+  private static String readResponse(Socket socket) throws IOException {
+    InputStream in = socket.getInputStream();
+    String statusLine = readLine(in);
+    int contentLength = 0;
+    for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+      if (line.toLowerCase().startsWith("content-length:")) {
+        contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+      }
+    }
+    byte[] body = new byte[contentLength];
+    for (int n = 0; n < contentLength; ) {
+      int read = in.read(body, n, contentLength - n);
+      if (-1 == read) {
+        throw new IOException("unexpected EOF");
+      }
+      n += read;
+    }
+    return statusLine.split(" ")[1] + " " + new String(body, StandardCharsets.ISO_8859_1);
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    for (int b = in.read(); '\n' != b; b = in.read()) {
+      if (-1 == b) {
+        throw new IOException("unexpected EOF");
+      }
+      if ('\r' != b) {
+        line.append((char) b);
+      }
+    }
+    return line.toString();
+  }
+
+  private static void serveOrigin() {
+    while (!origin.isClosed()) {
+      try {
+        Socket socket = origin.accept();
+        Thread connection = new Thread(() -> serveOrigin(socket), "Origin-Connection");
+        connection.setDaemon(true);
+        connection.start();
+      } catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * /other answers "other", any other path an ETag validated "etag <path>" which is stale at once
+   */
+  private static void serveOrigin(Socket socket) {
+    try (Socket ignored = socket) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      OutputStream out = socket.getOutputStream();
+      while (true) {
+        String path = readLine(in).split(" ")[1].replaceFirst("^http://[^/]*", "");
+        boolean isConditional = false;
+        for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+          isConditional |= line.toLowerCase().startsWith("if-none-match:");
+        }
+        String response;
+        if ("/other".equals(path)) {
+          response = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nother";
+        } else if (isConditional) {
+          TimeUnit.MILLISECONDS.sleep(300);
+          response = "HTTP/1.1 304 Not Modified\r\nETag: \"v1\"\r\n\r\n";
+          path = "304 " + path;
+        } else {
+          String body = "etag " + path;
+          response = "HTTP/1.1 200 OK\r\nETag: \"v1\"\r\nCache-Control: max-age=0\r\n"
+                     + "Content-Length: " + body.length() + "\r\n\r\n" + body;
+        }
+        originRequests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+        out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+      }
+    } catch (IOException | InterruptedException e) {
+      /**
+       * the proxy closed the connection
+       */
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package org.zlambda.projects.accesslog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AccessLogRingTest {
+  @Test
+  public void drainInOrder() {
+    AccessLogRing ring = new AccessLogRing(4);
+    publish(ring, 0);
+    publish(ring, 1);
+    publish(ring, 2);
+    List<Long> drained = new ArrayList<>();
+    assertEquals(3, ring.drain(record -> drained.add(upstreamBytesOf(record))));
+    assertEquals(Arrays.asList(0L, 1L, 2L), drained);
+    assertEquals(0, ring.drain(record -> drained.add(upstreamBytesOf(record))));
+  }
+
+  @Test
+  public void claimWithoutPublish() {
+    AccessLogRing ring = new AccessLogRing(4);
+    AccessLogRecord record = ring.claim();
+    assertSame("not handed over yet", record, ring.claim());
+    assertEquals(0, ring.drain(r -> { }));
+    ring.publish();
+    assertEquals(1, ring.drain(r -> { }));
+  }
+
+  @Test
+  public void fullRingDrops() {
+    AccessLogRing ring = new AccessLogRing(3);
+    for (int i = 0; i < 4; ++i) {
+      publish(ring, i);
+    }
+    assertNull("rounded up to 4, then full", ring.claim());
+    assertEquals(4, ring.drain(record -> { }));
+    assertNotNull(ring.claim());
+  }
+
+  @Test
+  public void wrapAround() {
+    AccessLogRing ring = new AccessLogRing(4);
+    List<Long> drained = new ArrayList<>();
+    AccessLogRecord first = ring.claim();
+    for (int round = 0; round < 10; ++round) {
+      for (int i = 0; i < 3; ++i) {
+        publish(ring, round * 3 + i);
+      }
+      assertEquals(3, ring.drain(record -> drained.add(upstreamBytesOf(record))));
+    }
+    assertEquals(30, drained.size());
+    for (int i = 0; i < drained.size(); ++i) {
+      assertEquals(i, (long) drained.get(i));
+    }
+    /**
+     * 30 records went through, so the next two take the last slots and the first comes back
+     */
+    publish(ring, 30);
+    publish(ring, 31);
+    assertSame("slots are reused", first, ring.claim());
+  }
+
+  @Test
+  public void drainedRecordCleared() {
+    AccessLogRing ring = new AccessLogRing(2);
+    AccessLogRecord record = ring.claim();
+    record.setClient("client");
+    ring.publish();
+    ring.drain(r -> assertTrue(lineOf(r).contains(" client ")));
+    assertTrue(lineOf(record).contains(" null "));
+  }
+
+  @Test
+  public void concurrentProducerAndConsumer() throws InterruptedException {
+    AccessLogRing ring = new AccessLogRing(64);
+    int numOfRecords = 200_000;
+    long[] dropped = new long[1];
+    Thread producer = new Thread(() -> {
+      for (int i = 0; i < numOfRecords; ++i) {
+        AccessLogRecord record = ring.claim();
+        if (null == record) {
+          ++dropped[0];
+          continue;
+        }
+        record.setUpstreamBytes(i);
+        ring.publish();
+      }
+    }, "Producer");
+    producer.start();
+    long[] last = {-1};
+    long received = 0;
+    boolean isDone;
+    do {
+      /**
+       * once the producer is seen done, one more drain takes whatever it published
+       */
+      isDone = !producer.isAlive();
+      received += ring.drain(record -> {
+        long sequence = upstreamBytesOf(record);
+        assertTrue(sequence > last[0]);
+        last[0] = sequence;
+      });
+    } while (!isDone);
+    producer.join();
+    assertTrue(received > 0);
+    assertEquals(numOfRecords, received + dropped[0]);
+  }
+
+  private static void publish(AccessLogRing ring, long sequence) {
+    AccessLogRecord record = ring.claim();
+    assertNotNull(record);
+    record.setUpstreamBytes(sequence);
+    ring.publish();
+  }
+
+  private static String lineOf(AccessLogRecord record) {
+    StringBuilder sb = new StringBuilder();
+    record.appendTo(sb);
+    return sb.toString();
+  }
+
+  private static long upstreamBytesOf(AccessLogRecord record) {
+    return Long.parseLong(lineOf(record).split(" ")[4]);
+  }
+}
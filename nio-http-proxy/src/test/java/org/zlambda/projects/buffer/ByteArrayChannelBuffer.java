@@ -0,0 +1,105 @@
+package org.zlambda.projects.buffer;
+
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Not Threadsafe Class
+ *
+ * Unbounded {@link ChannelBuffer} over a byte array, so parsers can be fed and drained without a
+ * channel: bytes come in through {@link #put(byte[])} and leave through {@link #consume(int)}.
+ */
+public class ByteArrayChannelBuffer implements ChannelBuffer {
+  private byte[] bytes = new byte[64];
+  private int head = 0;
+  private int tail = 0;
+
+  public ByteArrayChannelBuffer put(String data) {
+    put(data.getBytes(StandardCharsets.ISO_8859_1));
+    return this;
+  }
+
+  /**
+   * Drop the first {@code numOfBytes} unconsumed bytes, as a write to a channel would
+   */
+  public void consume(int numOfBytes) {
+    if (numOfBytes > size()) {
+      throw new IllegalArgumentException("consume " + numOfBytes + " of " + size());
+    }
+    head += numOfBytes;
+  }
+
+  /**
+   * return the unconsumed bytes as a string
+   */
+  public String content() {
+    return new String(bytes, head, size(), StandardCharsets.ISO_8859_1);
+  }
+
+  @Override
+  public int read(SocketChannel channel) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public int write(SocketChannel channel) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public int write(SocketChannel channel, int maxBytes) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void put(byte[] data) {
+    if (tail + data.length > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, tail + data.length));
+    }
+    System.arraycopy(data, 0, bytes, tail, data.length);
+    tail += data.length;
+  }
+
+  @Override
+  public byte get(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("index " + index + " of " + size());
+    }
+    return bytes[head + index];
+  }
+
+  @Override
+  public void get(int index, byte[] dst, int offset, int length) {
+    if (index < 0 || length < 0 || index + length > size()) {
+      throw new IndexOutOfBoundsException("index " + index + " of " + size());
+    }
+    System.arraycopy(bytes, head + index, dst, offset, length);
+  }
+
+  @Override
+  public int size() {
+    return tail - head;
+  }
+
+  @Override
+  public boolean empty() {
+    return 0 == size();
+  }
+
+  @Override
+  public boolean full() {
+    return false;
+  }
+
+  @Override
+  public void clear() {
+    head = 0;
+    tail = 0;
+  }
+
+  @Override
+  public void free() {
+    clear();
+  }
+}
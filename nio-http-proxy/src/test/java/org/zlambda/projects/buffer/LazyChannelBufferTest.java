@@ -0,0 +1,120 @@
+package org.zlambda.projects.buffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LazyChannelBufferTest {
+  private final HeapChannelBufferPool pool = new HeapChannelBufferPool(1);
+  private final ChannelBuffer buffer = pool.takeLazy();
+  /**
+   * the buffer reads from and writes to {@code local}, the other end is {@code peer}
+   */
+  private SocketChannel local;
+  private SocketChannel peer;
+
+  @Before
+  public void connect() throws IOException {
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      local = SocketChannel.open(server.getLocalAddress());
+      peer = server.accept();
+    }
+    local.configureBlocking(false);
+  }
+
+  @After
+  public void close() throws IOException {
+    local.close();
+    peer.close();
+  }
+
+  @Test
+  public void putTakesWriteReleases() throws IOException {
+    assertEquals(0, pool.numUsedBuffers());
+    assertTrue(buffer.empty());
+    buffer.put(bytes("hello"));
+    assertEquals(1, pool.numUsedBuffers());
+    assertEquals('h', buffer.get(0));
+
+    assertEquals(2, buffer.write(local, 2));
+    assertEquals("not drained yet", 1, pool.numUsedBuffers());
+    assertEquals(3, buffer.write(local));
+    assertEquals(0, pool.numUsedBuffers());
+    assertTrue(buffer.empty());
+    assertEquals("hello", receive(5));
+  }
+
+  @Test
+  public void readTakesUntilDrainedAndEof() throws IOException {
+    assertEquals("nothing to read, nothing held", 0, buffer.read(local));
+    assertEquals(0, pool.numUsedBuffers());
+
+    peer.write(ByteBuffer.wrap(bytes("abc")));
+    while (buffer.size() < 3) {
+      buffer.read(local);
+    }
+    assertEquals(1, pool.numUsedBuffers());
+    assertEquals(3, buffer.write(local));
+    assertEquals(0, pool.numUsedBuffers());
+    assertEquals("abc", receive(3));
+
+    peer.shutdownOutput();
+    int numOfRead;
+    while (0 == (numOfRead = buffer.read(local))) {
+      Thread.yield();
+    }
+    assertEquals(-1, numOfRead);
+    assertEquals("EOF on an empty buffer releases it", 0, pool.numUsedBuffers());
+  }
+
+  @Test
+  public void nothingHeld() throws IOException {
+    assertEquals(0, buffer.size());
+    assertEquals(0, buffer.write(local));
+    assertEquals(0, buffer.write(local, 10));
+    assertEquals(0, pool.numUsedBuffers());
+    try {
+      buffer.get(0);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void clearAndFreeRelease() {
+    buffer.put(bytes("x"));
+    buffer.clear();
+    assertEquals(0, pool.numUsedBuffers());
+    assertTrue(buffer.empty());
+    buffer.put(bytes("y"));
+    buffer.free();
+    buffer.free();
+    assertEquals(0, pool.numUsedBuffers());
+  }
+
+  private String receive(int numOfBytes) throws IOException {
+    ByteBuffer received = ByteBuffer.allocate(numOfBytes);
+    while (received.hasRemaining()) {
+      peer.read(received);
+    }
+    return new String(received.array(), StandardCharsets.ISO_8859_1);
+  }
+
+  private static byte[] bytes(String data) {
+    return data.getBytes(StandardCharsets.ISO_8859_1);
+  }
+}
@@ -0,0 +1,210 @@
+package org.zlambda.projects.buffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RingBufferTest {
+  private final RingBuffer ring = new RingBuffer(ByteBuffer.allocate(16));
+  /**
+   * the ring reads from and writes to {@code local}, the other end is {@code peer}
+   */
+  private SocketChannel local;
+  private SocketChannel peer;
+
+  @Before
+  public void connect() throws IOException {
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      local = SocketChannel.open(server.getLocalAddress());
+      peer = server.accept();
+    }
+  }
+
+  @After
+  public void close() throws IOException {
+    local.close();
+    peer.close();
+  }
+
+  @Test
+  public void partialWriteThenPutAcrossEnd() throws IOException {
+    ring.put(bytes("0123456789"));
+    assertEquals(6, ring.write(local, 6));
+    assertEquals("012345", receive(6));
+    assertEquals("6789", content());
+
+    /**
+     * 6 bytes fit before the end, the other 2 go to the start
+     */
+    ring.put(bytes("abcdefgh"));
+    assertEquals(12, ring.size());
+    assertEquals("6789abcdefgh", content());
+
+    assertEquals("gathering write of both regions", 12, ring.write(local, 100));
+    assertEquals("6789abcdefgh", receive(12));
+    assertEquals(0, ring.size());
+  }
+
+  @Test
+  public void partialWritesAcrossWrapPoint() throws IOException {
+    ring.put(bytes("0123456789abcdef"));
+    assertTrue(ring.full());
+    assertEquals(12, ring.write(local, 12));
+    ring.put(bytes("ghijklmnop"));
+    assertEquals("cdefghijklmnop", content());
+
+    /**
+     * the write starts in the end region and stops in the start region
+     */
+    assertEquals(6, ring.write(local, 6));
+    assertEquals("0123456789abcdefgh", receive(18));
+    assertEquals("ijklmnop", content());
+    assertEquals(3, ring.write(local, 3));
+    assertEquals("lmnop", content());
+    ring.put(bytes("qrstuvwxyzA"));
+    assertTrue(ring.full());
+    assertEquals("lmnopqrstuvwxyzA", content());
+    assertEquals(16, ring.write(local, 16));
+    assertEquals("ijklmnopqrstuvwxyzA", receive(19));
+  }
+
+  @Test
+  public void getAfterHeadWraps() throws IOException {
+    ring.put(bytes("0123456789abcdef"));
+    consume(12);
+    ring.put(bytes("ghijklmnop"));
+    consume(8);
+    /**
+     * head went past the end, so index 0 is at 4
+     */
+    assertEquals("klmnop", content());
+    try {
+      ring.get(6);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    try {
+      ring.get(-1);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void bulkGetAcrossWrapPoint() throws IOException {
+    ring.put(bytes("0123456789abcdef"));
+    consume(12);
+    ring.put(bytes("ghijklmn"));
+    byte[] dst = new byte[14];
+    ring.get(1, dst, 2, 10);
+    assertEquals("defghijklm", new String(dst, 2, 10, StandardCharsets.ISO_8859_1));
+    ring.get(5, dst, 0, 7);
+    assertEquals("hijklmn", new String(dst, 0, 7, StandardCharsets.ISO_8859_1));
+    try {
+      ring.get(5, dst, 0, 8);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void scatteringReadAcrossEnd() throws IOException {
+    ring.put(bytes("0123456789ab"));
+    consume(8);
+    send("cdefghijklmn");
+    int numRead = 0;
+    while (numRead < 12) {
+      numRead += ring.read(local);
+    }
+    assertTrue(ring.full());
+    assertEquals(0, ring.read(local));
+    assertEquals("89abcdefghijklmn", content());
+  }
+
+  @Test
+  public void readIntoStartRegion() throws IOException {
+    ring.put(bytes("0123456789abcdef"));
+    consume(14);
+    ring.put(bytes("gh"));
+    /**
+     * the tail is back at the start, so the free bytes run up to the head
+     */
+    send("ijklmnopqrst");
+    int numRead = 0;
+    while (numRead < 12) {
+      numRead += ring.read(local);
+    }
+    assertEquals("efghijklmnopqrst", content());
+  }
+
+  @Test
+  public void drainedRingStartsOver() throws IOException {
+    ring.put(bytes("0123456789"));
+    consume(10);
+    send("0123456789abcdef");
+    int numRead = 0;
+    while (numRead < 16) {
+      numRead += ring.read(local);
+    }
+    assertEquals("the whole ring in one region", "0123456789abcdef", content());
+  }
+
+  @Test(expected = BufferOverflowException.class)
+  public void putOverflow() throws IOException {
+    ring.put(bytes("0123456789"));
+    consume(4);
+    ring.put(bytes("abcdefghi"));
+    assertFalse(ring.full());
+    ring.put(bytes("xy"));
+  }
+
+  private void consume(int numOfBytes) throws IOException {
+    assertEquals(numOfBytes, ring.write(local, numOfBytes));
+    receive(numOfBytes);
+  }
+
+  private String content() {
+    StringBuilder ret = new StringBuilder();
+    for (int i = 0; i < ring.size(); ++i) {
+      ret.append((char) ring.get(i));
+    }
+    return ret.toString();
+  }
+
+  private void send(String data) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes(data));
+    while (buffer.hasRemaining()) {
+      peer.write(buffer);
+    }
+  }
+
+  private String receive(int numOfBytes) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(numOfBytes);
+    while (buffer.hasRemaining()) {
+      peer.read(buffer);
+    }
+    return new String(buffer.array(), StandardCharsets.ISO_8859_1);
+  }
+
+  private static byte[] bytes(String data) {
+    return data.getBytes(StandardCharsets.ISO_8859_1);
+  }
+}
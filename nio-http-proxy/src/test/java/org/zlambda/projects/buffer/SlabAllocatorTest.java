@@ -0,0 +1,86 @@
+package org.zlambda.projects.buffer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SlabAllocatorTest {
+  private static final int SLAB_SIZE = 1024 * 1024;
+
+  private final SlabAllocator allocator = new SlabAllocator(SLAB_SIZE);
+
+  @Test
+  public void sizeClassOf() {
+    assertEquals(0, allocator.sizeClassOf(0));
+    assertEquals(0, allocator.sizeClassOf(2 * 1024));
+    assertEquals(1, allocator.sizeClassOf(2 * 1024 + 1));
+    assertEquals(2, allocator.sizeClassOf(32 * 1024));
+    assertEquals(3, allocator.sizeClassOf(128 * 1024));
+    assertEquals("the largest class if none holds it", 3, allocator.sizeClassOf(SLAB_SIZE));
+  }
+
+  @Test
+  public void slabCarvedOnFirstAllocation() {
+    assertEquals(0, allocator.getReservedMemory());
+    ByteBuffer chunk = allocator.allocate(1);
+    assertEquals(8 * 1024, chunk.capacity());
+    assertEquals(chunk.capacity(), chunk.remaining());
+    SlabAllocator.SizeClass sizeClass = allocator.getSizeClasses().get(1);
+    assertEquals(SLAB_SIZE, allocator.getReservedMemory());
+    assertEquals(1, sizeClass.getNumSlabs());
+    assertEquals(SLAB_SIZE / (8 * 1024), sizeClass.getNumChunks());
+    assertEquals(1, sizeClass.getNumUsedChunks());
+    assertEquals(0, allocator.getSizeClasses().get(0).getNumChunks());
+  }
+
+  @Test
+  public void chunksDoNotOverlap() {
+    ByteBuffer first = allocator.allocate(0);
+    ByteBuffer second = allocator.allocate(0);
+    for (int i = 0; i < first.capacity(); ++i) {
+      first.put((byte) 1);
+    }
+    for (int i = 0; i < second.capacity(); ++i) {
+      assertEquals(0, second.get(i));
+    }
+  }
+
+  @Test
+  public void exhausted() {
+    SlabAllocator.SizeClass sizeClass = allocator.getSizeClasses().get(3);
+    for (int i = 0; i < SLAB_SIZE / (128 * 1024); ++i) {
+      assertNotNull(allocator.allocate(3));
+    }
+    assertNull(allocator.allocate(3));
+    assertNull("the slab belongs to another class", allocator.allocate(0));
+    assertEquals(1, sizeClass.getNumExhausted());
+    assertEquals(1, allocator.getSizeClasses().get(0).getNumExhausted());
+    assertEquals(SLAB_SIZE, allocator.getReservedMemory());
+  }
+
+  @Test
+  public void releasedChunkRecycledCleared() {
+    for (int i = 0; i < SLAB_SIZE / (128 * 1024) - 1; ++i) {
+      allocator.allocate(3);
+    }
+    ByteBuffer chunk = allocator.allocate(3);
+    chunk.put(new byte[100]).limit(200);
+    allocator.release(3, chunk);
+    assertEquals(SLAB_SIZE / (128 * 1024) - 1,
+                 allocator.getSizeClasses().get(3).getNumUsedChunks());
+    ByteBuffer recycled = allocator.allocate(3);
+    assertSame(chunk, recycled);
+    assertEquals(0, recycled.position());
+    assertEquals(recycled.capacity(), recycled.limit());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void lessThanOneSlab() {
+    new SlabAllocator(SLAB_SIZE - 1);
+  }
+}
@@ -0,0 +1,160 @@
+package org.zlambda.projects.buffer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlabChannelBufferPoolTest {
+  private static final int KB = 1024;
+  private static final int SLAB_SIZE = 1024 * KB;
+
+  private final SlabChannelBufferPool pool =
+      new SlabChannelBufferPool(new SlabAllocator(8 * SLAB_SIZE));
+  /**
+   * one slab, which goes to the first size class asking for it
+   */
+  private final SlabChannelBufferPool small =
+      new SlabChannelBufferPool(new SlabAllocator(SLAB_SIZE));
+
+  @Test
+  public void putGrowsToLargerChunk() {
+    ChannelBuffer buffer = pool.take();
+    assertEquals(1, usedChunks(pool, 0));
+    buffer.put(pattern(0, 2 * KB - 1));
+    buffer.put(pattern(2 * KB - 1, 3 * KB));
+    assertEquals(0, usedChunks(pool, 0));
+    assertEquals(1, usedChunks(pool, 1));
+    assertPattern(buffer, 3 * KB);
+  }
+
+  @Test(expected = BufferOverflowException.class)
+  public void putBeyondLargestChunk() {
+    ChannelBuffer buffer = pool.take();
+    buffer.put(new byte[128 * KB]);
+    buffer.put(new byte[1]);
+  }
+
+  @Test
+  public void putOnHeapWhenExhausted() {
+    ChannelBuffer buffer = small.take();
+    buffer.put(pattern(0, KB));
+    buffer.put(pattern(KB, 5 * KB));
+    assertPattern(buffer, 5 * KB);
+    assertEquals("the chunk went back", 0, usedChunks(small, 0));
+    assertEquals(1, small.getAllocator().getSizeClasses().get(1).getNumExhausted());
+
+    buffer.put(pattern(5 * KB, 20 * KB));
+    assertPattern(buffer, 20 * KB);
+    buffer.free();
+    assertEquals(0, usedChunks(small, 0));
+    assertEquals(0, small.numUsedBuffers());
+  }
+
+  @Test
+  public void attachOnHeapWhenExhausted() {
+    ChannelBuffer buffer = small.takeLazy();
+    for (int i = 0; i < SLAB_SIZE / (2 * KB); ++i) {
+      small.take();
+    }
+    buffer.put(pattern(0, KB));
+    assertPattern(buffer, KB);
+    buffer.free();
+    assertEquals("no chunk to give back", SLAB_SIZE / (2 * KB), usedChunks(small, 0));
+  }
+
+  @Test
+  public void lazyBufferHoldsChunkOnlyWhileNotEmpty() {
+    ChannelBuffer buffer = pool.takeLazy();
+    assertEquals(0, usedChunks(pool, 0));
+    assertTrue(buffer.empty());
+    buffer.put(pattern(0, 10));
+    assertEquals(1, usedChunks(pool, 0));
+    buffer.clear();
+    assertEquals(0, usedChunks(pool, 0));
+    assertEquals(1, pool.numUsedBuffers());
+    buffer.free();
+    buffer.free();
+    assertEquals(0, pool.numUsedBuffers());
+  }
+
+  @Test
+  public void readGrowsThenShrinksWhenDrained() throws IOException {
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      try (SocketChannel local = SocketChannel.open(server.getLocalAddress());
+           SocketChannel peer = server.accept()) {
+        local.configureBlocking(false);
+        peer.configureBlocking(false);
+        ChannelBuffer buffer = pool.take();
+        transfer(peer, buffer, local, 64 * KB);
+        assertPattern(buffer, 64 * KB);
+        assertFalse(buffer.full());
+        assertEquals("full chunks moved on to the largest class", 1, usedChunks(pool, 3));
+        drain(buffer, local, peer);
+        /**
+         * a small read after the burst tells the next one is small too
+         */
+        transfer(peer, buffer, local, 100);
+        drain(buffer, local, peer);
+        assertEquals(1, usedChunks(pool, 0));
+        assertEquals(0, usedChunks(pool, 3));
+        buffer.free();
+        assertEquals(0, usedChunks(pool, 0));
+      }
+    }
+  }
+
+  /**
+   * Send {@code size} bytes of the pattern from {@code from} until {@code buffer} read them all
+   */
+  private static void transfer(SocketChannel from, ChannelBuffer buffer, SocketChannel to,
+                               int size) throws IOException {
+    ByteBuffer data = ByteBuffer.wrap(pattern(0, size));
+    while (buffer.size() < size) {
+      from.write(data);
+      buffer.read(to);
+    }
+  }
+
+  private static void drain(ChannelBuffer buffer, SocketChannel from, SocketChannel to)
+      throws IOException {
+    ByteBuffer received = ByteBuffer.allocate(64 * KB);
+    while (!buffer.empty()) {
+      buffer.write(from);
+      received.clear();
+      to.read(received);
+    }
+  }
+
+  private static int usedChunks(SlabChannelBufferPool pool, int sizeClass) {
+    return pool.getAllocator().getSizeClasses().get(sizeClass).getNumUsedChunks();
+  }
+
+  /**
+   * return bytes [{@code from}, {@code to}) of a pattern which tells offsets apart
+   */
+  private static byte[] pattern(int from, int to) {
+    byte[] ret = new byte[to - from];
+    for (int i = from; i < to; ++i) {
+      ret[i - from] = (byte) (i % 251);
+    }
+    return ret;
+  }
+
+  private static void assertPattern(ChannelBuffer buffer, int size) {
+    assertEquals(size, buffer.size());
+    for (int i = 0; i < size; ++i) {
+      assertEquals(i % 251, buffer.get(i) & 0xFF);
+    }
+  }
+}
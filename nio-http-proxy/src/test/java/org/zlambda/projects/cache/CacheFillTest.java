@@ -0,0 +1,224 @@
+package org.zlambda.projects.cache;
+
+import org.junit.Test;
+import org.zlambda.projects.buffer.ByteArrayChannelBuffer;
+import org.zlambda.projects.http.CacheHeaders;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.zlambda.projects.cache.ResponseCacheTest.headers;
+
+public class CacheFillTest {
+  private static final long NOW = 1000L;
+  private static final String HEAD = "HTTP/1.1 200 OK\r\nETag: \"v1\"\r\nContent-Length: 5\r\n\r\n";
+  private static final String RESPONSE = HEAD + "hello";
+  private static final String REQUEST = "GET /a HTTP/1.1\r\nHost: a.com\r\n\r\n";
+  private static final String LAST_MODIFIED = "Sun, 06 Nov 1994 08:49:37 GMT";
+  private static final long LIFETIME = TimeUnit.SECONDS.toNanos(10);
+  private static final long STALE = NOW + LIFETIME;
+
+  private final ResponseCache cache = new ResponseCache(1024, 256);
+
+  @Test
+  public void captureInPieces() {
+    CacheFill fill = cache.lookup("a", NOW).getFill();
+    CompletableFuture<CachedResponse> pending = cache.lookup("a", NOW).getPending();
+    assertTrue(fill.onResponseHead(200, HEAD.length(), 5, true, headers("ETag: \"v1\"")));
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put("prefix" + RESPONSE);
+    for (int i = "prefix".length(); i < buffer.size(); i += 7) {
+      assertTrue(fill.capture(buffer, i, Math.min(i + 7, buffer.size())));
+    }
+    fill.complete(NOW);
+
+    CachedResponse response = pending.getNow(null);
+    assertNotNull(response);
+    assertEquals(RESPONSE, bytesOf(response));
+    assertEquals("\"v1\"", response.getEtag());
+    assertTrue(response.isKeepAlive());
+    assertFalse("no freshness, revalidated on every use", response.isFresh(NOW));
+    assertTrue(cache.lookup("a", NOW).getFill().hasStaleResponse());
+  }
+
+  @Test
+  public void freshResponseServed() {
+    CacheFill fill = cache.lookup("a", NOW).getFill();
+    assertTrue(fill.onResponseHead(200, HEAD.length(), 5, false,
+                                   headers("Cache-Control: max-age=60")));
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(RESPONSE);
+    assertTrue(fill.capture(buffer, 0, buffer.size()));
+    fill.complete(NOW);
+    CachedResponse hit = cache.lookup("a", NOW + TimeUnit.SECONDS.toNanos(59)).getHit();
+    assertNotNull(hit);
+    assertFalse(hit.isKeepAlive());
+    assertNull(cache.lookup("a", NOW + TimeUnit.SECONDS.toNanos(60)).getHit());
+  }
+
+  @Test
+  public void responseHeadNotStorable() {
+    CacheHeaders fresh = headers("Cache-Control: max-age=60");
+    assertFalse(newFill().onResponseHead(206, HEAD.length(), 5, true, fresh));
+    assertFalse("chunked", newFill().onResponseHead(200, HEAD.length(), -1, true, fresh));
+    assertFalse("too large", newFill().onResponseHead(200, 200, 57, true, fresh));
+    assertTrue(newFill().onResponseHead(200, 200, 56, true, fresh));
+    assertFalse(newFill().onResponseHead(200, HEAD.length(), 5, true,
+                                         headers("Cache-Control: no-store, max-age=60")));
+    assertFalse(newFill().onResponseHead(200, HEAD.length(), 5, true,
+                                         headers("Cache-Control: max-age=60", "Vary: Cookie")));
+    assertFalse("neither fresh nor revalidatable",
+                newFill().onResponseHead(200, HEAD.length(), 5, true, headers()));
+    assertTrue(newFill().onResponseHead(200, HEAD.length(), 5, true,
+                                        headers("Last-Modified: " + LAST_MODIFIED)));
+  }
+
+  @Test
+  public void captureBeyondLimit() {
+    CacheFill fill = newFill();
+    fill.onResponseHead(200, HEAD.length(), 5, true, headers("ETag: \"v1\""));
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(RESPONSE + "!");
+    assertFalse("more than Content-Length", fill.capture(buffer, 0, buffer.size()));
+
+    CacheFill headless = newFill();
+    buffer = new ByteArrayChannelBuffer().put(new String(new char[257]));
+    assertTrue("before the head, at most maxEntrySize", headless.capture(buffer, 0, 256));
+    assertFalse(headless.capture(buffer, 256, 257));
+  }
+
+  @Test
+  public void incompleteResponseAbandoned() {
+    CacheFill fill = cache.lookup("a", NOW).getFill();
+    CompletableFuture<CachedResponse> pending = cache.lookup("a", NOW).getPending();
+    fill.onResponseHead(200, HEAD.length(), 5, true, headers("ETag: \"v1\""));
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(RESPONSE);
+    fill.capture(buffer, 0, buffer.size() - 1);
+    fill.complete(NOW);
+    assertTrue(pending.isDone());
+    assertNull(pending.getNow(null));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void abandonOnClose() {
+    CacheFill fill = cache.lookup("a", NOW).getFill();
+    CompletableFuture<CachedResponse> pending = cache.lookup("a", NOW).getPending();
+    fill.onResponseHead(200, HEAD.length(), 5, true, headers("ETag: \"v1\""));
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(RESPONSE);
+    fill.capture(buffer, 0, 10);
+    /**
+     * the connection closes mid-response
+     */
+    fill.abandon(NOW);
+    assertTrue(pending.isDone());
+    assertNull(pending.getNow(null));
+
+    CacheFill next = cache.lookup("a", NOW).getFill();
+    assertNotNull(next);
+    fill.abandon(NOW);
+    fill.complete(NOW);
+    assertNull("a finished fill leaves the next one be", cache.lookup("a", NOW).getFill());
+    assertFalse(cache.lookup("a", NOW).getPending().isDone());
+  }
+
+  @Test
+  public void conditionalRequest() {
+    CacheFill fill = revalidation("a", "\"v1\"", LAST_MODIFIED);
+    assertTrue(fill.hasStaleResponse());
+    assertFalse(fill.isRevalidating());
+    byte[] conditional = fill.toConditionalRequest(bytes(REQUEST), 1024);
+    assertEquals("GET /a HTTP/1.1\r\nHost: a.com\r\nIf-None-Match: \"v1\"\r\n"
+                 + "If-Modified-Since: " + LAST_MODIFIED + "\r\n\r\n",
+                 new String(conditional, StandardCharsets.ISO_8859_1));
+    assertTrue(fill.isRevalidating());
+    assertTrue(fill.isHolding());
+
+    assertEquals("GET /a HTTP/1.1\r\nHost: a.com\r\nIf-None-Match: \"v1\"\r\n\r\n",
+                 new String(revalidation("b", "\"v1\"", null)
+                                .toConditionalRequest(bytes(REQUEST), 1024),
+                            StandardCharsets.ISO_8859_1));
+  }
+
+  @Test
+  public void conditionalRequestNotSpliced() {
+    String request = "GET /a HTTP/1.1\r\nHost: a.com\r\n\r\n";
+    String conditional = request + "If-None-Match: \"v1\"\r\n";
+    assertNull(newFill().toConditionalRequest(bytes(request), 1024));
+    assertNull("bare LF", revalidation("b", "\"v1\"", null)
+        .toConditionalRequest(bytes("GET /a HTTP/1.1\nHost: a.com\n\n"), 1024));
+    assertNull("too short",
+               revalidation("c", "\"v1\"", null).toConditionalRequest(bytes("\r\n"), 1024));
+    CacheFill fill = revalidation("d", "\"v1\"", null);
+    assertNull(fill.toConditionalRequest(bytes(request), conditional.length() - 1));
+    assertFalse(fill.isRevalidating());
+    assertNotNull(fill.toConditionalRequest(bytes(request), conditional.length()));
+  }
+
+  @Test
+  public void notModifiedRenews() {
+    CacheFill fill = revalidation("a", "\"v1\"", null);
+    CompletableFuture<CachedResponse> pending = cache.lookup("a", STALE).getPending();
+    fill.toConditionalRequest(bytes(REQUEST), 1024);
+    long later = NOW + TimeUnit.SECONDS.toNanos(20);
+    CachedResponse renewed = fill.onNotModified(headers("Cache-Control: max-age=30"), later);
+    assertFalse(fill.isHolding());
+    assertSame(renewed, pending.getNow(null));
+    assertEquals(RESPONSE, bytesOf(renewed));
+    assertSame(renewed, cache.lookup("a", later + TimeUnit.SECONDS.toNanos(29)).getHit());
+    assertNull(cache.lookup("a", later + TimeUnit.SECONDS.toNanos(30)).getHit());
+  }
+
+  @Test
+  public void notModifiedKeepsFormerLifetime() {
+    CacheFill fill = revalidation("a", "\"v1\"", null);
+    long later = NOW + TimeUnit.SECONDS.toNanos(20);
+    CachedResponse renewed = fill.onNotModified(headers("ETag: \"v1\""), later);
+    assertTrue(renewed.isFresh(later + TimeUnit.SECONDS.toNanos(9)));
+    assertFalse(renewed.isFresh(later + TimeUnit.SECONDS.toNanos(10)));
+  }
+
+  @Test
+  public void notModifiedNotStorable() {
+    CacheFill fill = revalidation("a", "\"v1\"", null);
+    long later = NOW + TimeUnit.SECONDS.toNanos(20);
+    CachedResponse renewed = fill.onNotModified(headers("Cache-Control: no-store"), later);
+    assertEquals("still served to this client", RESPONSE, bytesOf(renewed));
+    assertEquals("but the stale one is dropped", 0, cache.size());
+  }
+
+  private CacheFill newFill() {
+    return new ResponseCache(1024, 256).lookup("a", NOW).getFill();
+  }
+
+  /**
+   * return the fill revalidating {@link #RESPONSE} cached under {@code key}, which stayed fresh
+   * for {@link #LIFETIME}
+   */
+  private CacheFill revalidation(String key, String etag, String lastModified) {
+    ByteBuffer bytes = ByteBuffer.allocateDirect(RESPONSE.length());
+    bytes.put(bytes(RESPONSE));
+    bytes.flip();
+    cache.complete(cache.lookup(key, NOW).getFill(),
+                   new CachedResponse(key, bytes, STALE, LIFETIME, etag, lastModified, true), NOW);
+    CacheFill ret = cache.lookup(key, STALE).getFill();
+    assertNotNull(ret);
+    return ret;
+  }
+
+  private static byte[] bytes(String data) {
+    return data.getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  private static String bytesOf(CachedResponse response) {
+    ByteBuffer reader = response.newReader();
+    byte[] ret = new byte[reader.remaining()];
+    reader.get(ret);
+    return new String(ret, StandardCharsets.ISO_8859_1);
+  }
+}
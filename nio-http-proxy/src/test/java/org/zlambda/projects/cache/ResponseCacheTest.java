@@ -0,0 +1,219 @@
+package org.zlambda.projects.cache;
+
+import org.junit.Test;
+import org.zlambda.projects.buffer.ByteArrayChannelBuffer;
+import org.zlambda.projects.http.CacheHeaders;
+import org.zlambda.projects.http.HttpHeadParser;
+import org.zlambda.projects.http.RequestTarget;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheTest {
+  private static final long NOW = 1000L;
+  private static final String DATE = "Sun, 06 Nov 1994 08:49:37 GMT";
+
+  @Test
+  public void keyOf() {
+    RequestTarget target = new RequestTarget("a.com", 80);
+    assertEquals("a.com:80/x?y=1", ResponseCache.keyOf(target, "/x?y=1"));
+    assertEquals("absolute form shares the entry", "a.com:80/x?y=1",
+                 ResponseCache.keyOf(target, "http://a.com/x?y=1"));
+    assertEquals("a.com:80/", ResponseCache.keyOf(target, "http://a.com"));
+  }
+
+  @Test
+  public void freshnessLifetime() {
+    assertEquals(60, ResponseCache.getFreshnessLifetime(headers("Cache-Control: max-age=60")));
+    assertEquals("less the age", 50, ResponseCache.getFreshnessLifetime(
+        headers("Cache-Control: public, max-age=60", "Age: 10")));
+    assertEquals(0, ResponseCache.getFreshnessLifetime(
+        headers("Cache-Control: max-age=60", "Age: 100")));
+    assertEquals("s-maxage first", 30, ResponseCache.getFreshnessLifetime(
+        headers("Cache-Control: max-age=60, s-maxage=30")));
+    assertEquals("repeated field", 30, ResponseCache.getFreshnessLifetime(
+        headers("Cache-Control: public", "Cache-Control: S-MaxAge=\"30\"")));
+    assertEquals(0, ResponseCache.getFreshnessLifetime(
+        headers("Cache-Control: no-cache, max-age=60")));
+    assertEquals("Expires less Date", 100, ResponseCache.getFreshnessLifetime(
+        headers("Date: " + DATE, "Expires: Sun, 06 Nov 1994 08:51:17 GMT")));
+    assertEquals("max-age over Expires", 60, ResponseCache.getFreshnessLifetime(
+        headers("Cache-Control: max-age=60", "Date: " + DATE, "Expires: " + DATE)));
+    assertEquals("malformed max-age falls back to Expires", 100,
+                 ResponseCache.getFreshnessLifetime(
+                     headers("Cache-Control: max-age=x", "Date: " + DATE,
+                             "Expires: Sun, 06 Nov 1994 08:51:17 GMT")));
+    assertEquals(0, ResponseCache.getFreshnessLifetime(headers("Date: " + DATE, "Expires: 0")));
+    assertEquals(0, ResponseCache.getFreshnessLifetime(headers("Expires: " + DATE)));
+    assertEquals(0, ResponseCache.getFreshnessLifetime(headers()));
+  }
+
+  @Test
+  public void isCacheable() {
+    assertTrue(ResponseCache.isCacheable("GET", headers()));
+    assertTrue(ResponseCache.isCacheable("GET", headers("Cache-Control: max-age=10")));
+    assertFalse(ResponseCache.isCacheable("HEAD", headers()));
+    assertFalse(ResponseCache.isCacheable("POST", headers()));
+    String[] uncacheable = {
+        "Authorization: Basic eDp5",
+        "Range: bytes=0-10",
+        "If-None-Match: \"v1\"",
+        "If-Modified-Since: " + DATE,
+        "Pragma: no-cache",
+        "Cache-Control: no-cache",
+        "Cache-Control: No-Store",
+        "Cache-Control: max-age=0",
+    };
+    for (String field : uncacheable) {
+      assertFalse(field, ResponseCache.isCacheable("GET", headers(field)));
+    }
+  }
+
+  @Test
+  public void isStorable() {
+    assertTrue(ResponseCache.isStorable(headers()));
+    assertTrue(ResponseCache.isStorable(headers("Cache-Control: public, max-age=60")));
+    String[] unstorable = {
+        "Vary: Accept-Encoding",
+        "Set-Cookie: a=b",
+        "Cache-Control: no-store",
+        "Cache-Control: private, max-age=60",
+    };
+    for (String field : unstorable) {
+      assertFalse(field, ResponseCache.isStorable(headers(field)));
+    }
+  }
+
+  @Test
+  public void missThenHit() {
+    ResponseCache cache = new ResponseCache(1024, 1024);
+    ResponseCache.Lookup miss = cache.lookup("a", NOW);
+    assertNull(miss.getHit());
+    assertNull(miss.getPending());
+    assertNotNull(miss.getFill());
+    assertFalse(miss.getFill().hasStaleResponse());
+
+    CachedResponse response = response("a", 100, NOW + 10, "\"v1\"");
+    cache.complete(miss.getFill(), response, NOW);
+    assertSame(response, cache.lookup("a", NOW + 9).getHit());
+    assertEquals(1, cache.size());
+    assertEquals(100, cache.getUsedMemory());
+  }
+
+  @Test
+  public void coalescedMiss() {
+    ResponseCache cache = new ResponseCache(1024, 1024);
+    CacheFill fill = cache.lookup("a", NOW).getFill();
+    CompletableFuture<CachedResponse> first = cache.lookup("a", NOW).getPending();
+    CompletableFuture<CachedResponse> second = cache.lookup("a", NOW).getPending();
+    assertSame("one fill for all", first, second);
+    assertNull(cache.lookup("a", NOW).getFill());
+    assertNotNull("other keys miss on their own", cache.lookup("b", NOW).getFill());
+    assertFalse(first.isDone());
+
+    CachedResponse response = response("a", 100, NOW + 10, null);
+    cache.complete(fill, response, NOW);
+    assertSame(response, first.getNow(null));
+  }
+
+  @Test
+  public void abandonedMiss() {
+    ResponseCache cache = new ResponseCache(1024, 1024);
+    CacheFill fill = cache.lookup("a", NOW).getFill();
+    CompletableFuture<CachedResponse> pending = cache.lookup("a", NOW).getPending();
+    fill.abandon(NOW);
+    assertTrue(pending.isDone());
+    assertNull(pending.getNow(response("x", 1, NOW, null)));
+    assertEquals(0, cache.size());
+    assertNotNull("the next lookup fills again", cache.lookup("a", NOW).getFill());
+  }
+
+  @Test
+  public void staleResponse() {
+    ResponseCache cache = new ResponseCache(1024, 1024);
+    cache.complete(cache.lookup("etag", NOW).getFill(), response("etag", 100, NOW + 10, "\"v\""),
+                   NOW);
+    cache.complete(cache.lookup("plain", NOW).getFill(), response("plain", 100, NOW + 10, null),
+                   NOW);
+
+    CacheFill revalidation = cache.lookup("etag", NOW + 10).getFill();
+    assertNotNull(revalidation);
+    assertTrue(revalidation.hasStaleResponse());
+    CacheFill refetch = cache.lookup("plain", NOW + 10).getFill();
+    assertNotNull(refetch);
+    assertFalse("nothing to revalidate with", refetch.hasStaleResponse());
+
+    refetch.abandon(NOW + 10);
+    assertEquals("the stale response is dropped", 1, cache.size());
+    assertEquals(100, cache.getUsedMemory());
+  }
+
+  @Test
+  public void leastRecentlyUsedEvicted() {
+    ResponseCache cache = new ResponseCache(300, 300);
+    store(cache, "a", 100);
+    store(cache, "b", 100);
+    store(cache, "c", 100);
+    assertEquals(300, cache.getUsedMemory());
+
+    assertNotNull(cache.lookup("a", NOW).getHit());
+    store(cache, "d", 100);
+    assertEquals(3, cache.size());
+    assertEquals(300, cache.getUsedMemory());
+    assertNull("b is the least recently used", cache.lookup("b", NOW).getHit());
+    assertNotNull(cache.lookup("a", NOW).getHit());
+
+    store(cache, "e", 250);
+    assertEquals(1, cache.size());
+    assertEquals(250, cache.getUsedMemory());
+    assertNotNull(cache.lookup("e", NOW).getHit());
+  }
+
+  @Test
+  public void replacedResponseAccounted() {
+    ResponseCache cache = new ResponseCache(1024, 1024);
+    store(cache, "a", 100);
+    cache.complete(cache.lookup("a", NOW + 10).getFill(), response("a", 40, NOW + 20, null),
+                   NOW + 10);
+    assertEquals(1, cache.size());
+    assertEquals(40, cache.getUsedMemory());
+  }
+
+  /**
+   * return the cache headers of a response head carrying {@code fields}
+   */
+  static CacheHeaders headers(String... fields) {
+    StringBuilder head = new StringBuilder("HTTP/1.1 200 OK\r\n");
+    for (String field : fields) {
+      head.append(field).append("\r\n");
+    }
+    head.append("\r\n");
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(head.toString());
+    HttpHeadParser parser = new HttpHeadParser(1024);
+    parser.parse(buffer, 0, buffer.size());
+    assertTrue(parser.isComplete());
+    CacheHeaders ret = new CacheHeaders();
+    for (int i = 0; i < parser.getNumHeaders(); ++i) {
+      ret.onHeader(buffer, parser.nameStart(i), parser.nameEnd(i), parser.valueStart(i),
+                   parser.valueEnd(i));
+    }
+    return ret;
+  }
+
+  private static void store(ResponseCache cache, String key, int size) {
+    cache.complete(cache.lookup(key, NOW).getFill(), response(key, size, NOW + 10, null), NOW);
+  }
+
+  private static CachedResponse response(String key, int size, long expireAt, String etag) {
+    return new CachedResponse(key, ByteBuffer.allocateDirect(size), expireAt,
+                              TimeUnit.SECONDS.toNanos(10), etag, null, true);
+  }
+}
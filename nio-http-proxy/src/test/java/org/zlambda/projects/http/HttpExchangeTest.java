@@ -0,0 +1,274 @@
+package org.zlambda.projects.http;
+
+import org.junit.Test;
+import org.zlambda.projects.buffer.ByteArrayChannelBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HttpExchangeTest {
+  private static final String GET_A = "GET http://a.com/1 HTTP/1.1\r\nHost: a.com\r\n\r\n";
+  private static final String GET_A2 = "GET /2 HTTP/1.1\r\nHost: a.com\r\n\r\n";
+  private static final String GET_B =
+      "GET http://b.com:8080/1 HTTP/1.1\r\nHost: b.com:8080\r\n\r\n";
+  private static final String GET_B2 = "GET /2 HTTP/1.1\r\nHost: b.com:8080\r\n\r\n";
+  private static final String OK_HELLO = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello";
+  private static final String OK_CHUNKED = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                                           + "3\r\nabc\r\n0\r\n\r\n";
+
+  private final ByteArrayChannelBuffer upstream = new ByteArrayChannelBuffer();
+  private final ByteArrayChannelBuffer downstream = new ByteArrayChannelBuffer();
+  private final HttpExchange exchange = new HttpExchange(1024);
+
+  @Test
+  public void requestHeadRoutableOnceComplete() {
+    for (int i = 0; i < GET_A.length() - 1; ++i) {
+      clientSends(GET_A.substring(i, i + 1));
+      assertEquals(0, exchange.getRoutableBytes());
+      assertNull(exchange.getTarget());
+    }
+    clientSends(GET_A.substring(GET_A.length() - 1));
+    assertEquals(GET_A.length(), exchange.getRoutableBytes());
+    assertEquals(new RequestTarget("a.com", 80), exchange.getTarget());
+  }
+
+  @Test
+  public void requestBodyRoutableAsItArrives() {
+    String head = "POST /form HTTP/1.1\r\nHost: a.com\r\nContent-Length: 10\r\n\r\n";
+    clientSends(head);
+    assertEquals(head.length(), exchange.getRoutableBytes());
+    assertEquals(head, sendRoutable());
+    for (int i = 0; i < 10; ++i) {
+      clientSends("x");
+      assertEquals(1, exchange.getRoutableBytes());
+      assertEquals(9 == i, exchange.isClientIdle());
+      sendRoutable();
+    }
+    assertTrue(exchange.isClientIdle());
+  }
+
+  @Test
+  public void chunkedRequestBodySplit() {
+    String request = "PUT /put HTTP/1.1\r\nHost: a.com\r\nTransfer-Encoding: chunked\r\n\r\n"
+                     + "4\r\nabcd\r\n10\r\n0123456789abcdef\r\n0\r\n\r\n";
+    StringBuilder sent = new StringBuilder();
+    for (int i = 0; i < request.length(); i += 3) {
+      clientSends(request.substring(i, Math.min(i + 3, request.length())));
+      sent.append(sendRoutable());
+    }
+    assertEquals(request, sent.toString());
+    assertTrue(exchange.isClientIdle());
+  }
+
+  @Test
+  public void pipelinedRequestsToSameHost() {
+    clientSends(GET_A + GET_A2 + GET_A.substring(0, 10));
+    assertEquals(GET_A.length() + GET_A2.length(), exchange.getRoutableBytes());
+    assertEquals(GET_A + GET_A2, sendRoutable());
+    assertFalse(exchange.isClientIdle());
+    clientSends(GET_A.substring(10));
+    assertEquals(GET_A, sendRoutable());
+
+    hostSends(OK_HELLO + OK_CHUNKED);
+    assertFalse(exchange.isHostIdle());
+    hostSends(OK_HELLO);
+    assertEquals(3, exchange.getNumResponses());
+    assertTrue(exchange.isHostReusable());
+  }
+
+  @Test
+  public void switchHostInPipeline() {
+    String pipeline = GET_A + GET_B + GET_B2 + GET_A2;
+    for (int i = 0; i < pipeline.length(); ++i) {
+      clientSends(pipeline.substring(i, i + 1));
+      assertEquals(i + 1 < GET_A.length() ? 0 : GET_A.length(), exchange.getRoutableBytes());
+    }
+    assertEquals(new RequestTarget("b.com", 8080), exchange.getPendingTarget());
+    assertEquals(GET_A, sendRoutable());
+    assertFalse("the response is still to come", exchange.isHostIdle());
+
+    hostSends(OK_HELLO.substring(0, 20));
+    assertFalse(exchange.isHostIdle());
+    hostSends(OK_HELLO.substring(20));
+    assertTrue(exchange.isHostIdle());
+    assertTrue(exchange.isHostReusable());
+
+    exchange.switchToPendingTarget(upstream);
+    assertEquals(new RequestTarget("b.com", 8080), exchange.getTarget());
+    assertEquals("the next switch is held back", new RequestTarget("a.com", 80),
+                 exchange.getPendingTarget());
+    assertEquals(GET_B + GET_B2, sendRoutable());
+    assertEquals("responses of the former host are not counted", 0, exchange.getNumResponses());
+
+    hostSends(OK_HELLO);
+    assertFalse(exchange.isHostIdle());
+    hostSends(OK_CHUNKED);
+    assertTrue(exchange.isHostIdle());
+
+    exchange.switchToPendingTarget(upstream);
+    assertEquals(new RequestTarget("a.com", 80), exchange.getTarget());
+    assertNull(exchange.getPendingTarget());
+    assertEquals(GET_A2, sendRoutable());
+  }
+
+  @Test
+  public void responseHeadHeldBackUntilComplete() {
+    clientSends(GET_A);
+    sendRoutable();
+    int headLength = OK_HELLO.indexOf("hello");
+    for (int i = 0; i < OK_HELLO.length(); ++i) {
+      hostSends(OK_HELLO.substring(i, i + 1));
+      assertEquals(i + 1 < headLength ? 0 : i + 1,
+                   exchange.getWritableDownstreamBytes(downstream.size()));
+    }
+    assertEquals(OK_HELLO, sendWritable());
+    assertTrue(exchange.isHostReusable());
+  }
+
+  @Test
+  public void pipelinedResponseHeadHeldBack() {
+    clientSends(GET_A + GET_A2);
+    sendRoutable();
+    hostSends(OK_HELLO + OK_CHUNKED.substring(0, 25));
+    assertEquals(OK_HELLO.length(), exchange.getWritableDownstreamBytes(downstream.size()));
+    assertEquals(OK_HELLO, sendWritable());
+    assertEquals(0, exchange.getWritableDownstreamBytes(downstream.size()));
+
+    hostSends(OK_CHUNKED.substring(25, 40));
+    assertEquals(0, exchange.getWritableDownstreamBytes(downstream.size()));
+    hostSends(OK_CHUNKED.substring(40, 56));
+    assertEquals("the head is complete, the body follows as it arrives", 56,
+                 exchange.getWritableDownstreamBytes(downstream.size()));
+    hostSends(OK_CHUNKED.substring(56));
+    assertEquals(OK_CHUNKED, sendWritable());
+    assertTrue(exchange.isHostIdle());
+  }
+
+  @Test
+  public void interimResponseWritable() {
+    clientSends("POST /form HTTP/1.1\r\nHost: a.com\r\nExpect: 100-continue\r\n"
+                + "Content-Length: 2\r\n\r\n");
+    sendRoutable();
+    String interim = "HTTP/1.1 100 Continue\r\n\r\n";
+    hostSends(interim + OK_HELLO.substring(0, 10));
+    assertEquals(interim, sendWritable());
+    assertFalse(exchange.isHostIdle());
+    clientSends("ab");
+    assertEquals("ab", sendRoutable());
+    hostSends(OK_HELLO.substring(10));
+    assertEquals(OK_HELLO, sendWritable());
+    assertEquals(1, exchange.getNumResponseHeads());
+    assertTrue(exchange.isHostReusable());
+  }
+
+  @Test
+  public void responseToHeadHasNoBody() {
+    clientSends("HEAD /1 HTTP/1.1\r\nHost: a.com\r\n\r\n" + GET_A2);
+    sendRoutable();
+    String head = "HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n";
+    hostSends(head + OK_HELLO);
+    assertEquals(head + OK_HELLO, sendWritable());
+    assertEquals(2, exchange.getNumResponses());
+    assertTrue(exchange.isHostReusable());
+  }
+
+  @Test
+  public void noBodyFor204And304() {
+    clientSends(GET_A + GET_A2);
+    sendRoutable();
+    String notModified = "HTTP/1.1 304 Not Modified\r\nContent-Length: 100\r\n\r\n";
+    String noContent = "HTTP/1.1 204 No Content\r\n\r\n";
+    hostSends(notModified + noContent);
+    assertEquals(notModified + noContent, sendWritable());
+    assertTrue(exchange.isHostReusable());
+  }
+
+  @Test
+  public void connectTunnel() {
+    String connect = "CONNECT a.com:443 HTTP/1.1\r\nHost: a.com:443\r\n\r\n";
+    clientSends(connect);
+    assertEquals(new RequestTarget("a.com", 443), exchange.getTarget());
+    assertEquals(connect, sendRoutable());
+    hostSends("HTTP/1.1 200 Connection established\r\n\r\n\u0016\u0003\u0001");
+    assertEquals(downstream.size(), exchange.getWritableDownstreamBytes(downstream.size()));
+    assertFalse(exchange.isHostReusable());
+  }
+
+  @Test
+  public void switchingProtocols() {
+    clientSends("GET /ws HTTP/1.1\r\nHost: a.com\r\nConnection: Upgrade\r\n"
+                + "Upgrade: websocket\r\n\r\n");
+    sendRoutable();
+    hostSends("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n\r\n\u0081\u0002");
+    assertEquals(downstream.size(), exchange.getWritableDownstreamBytes(downstream.size()));
+    assertFalse(exchange.isHostReusable());
+  }
+
+  @Test
+  public void connectionClose() {
+    clientSends("GET /1 HTTP/1.1\r\nHost: a.com\r\nConnection: close\r\n\r\n");
+    sendRoutable();
+    hostSends(OK_HELLO);
+    sendWritable();
+    assertTrue(exchange.isHostIdle());
+    assertFalse(exchange.isHostReusable());
+  }
+
+  @Test
+  public void malformedRequest() {
+    upstream.put("GET /1 HTTP/1.1\r\n\r\n");
+    assertFalse("no host to route to", exchange.onUpstreamRead(upstream));
+    HttpExchange other = new HttpExchange(1024);
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put("GET /1 HTTP/1.1\r\n X\r\n");
+    assertFalse(other.onUpstreamRead(buffer));
+  }
+
+  @Test
+  public void singleRequestRewrite() {
+    clientSends(GET_A);
+    assertTrue(exchange.isSingleRequest(upstream));
+    String conditional = GET_A.substring(0, GET_A.length() - 2) + "If-None-Match: \"x\"\r\n\r\n";
+    exchange.rewriteRequest(upstream, conditional.getBytes());
+    assertEquals(conditional, sendRoutable());
+
+    HttpExchange pipelined = new HttpExchange(1024);
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(GET_A + GET_A2);
+    pipelined.onUpstreamRead(buffer);
+    assertFalse(pipelined.isSingleRequest(buffer));
+  }
+
+  private void clientSends(String data) {
+    upstream.put(data);
+    assertTrue(exchange.onUpstreamRead(upstream));
+  }
+
+  /**
+   * Send the routable upstream bytes to the host
+   */
+  private String sendRoutable() {
+    int numOfWritten = exchange.getRoutableBytes();
+    String ret = upstream.content().substring(0, numOfWritten);
+    upstream.consume(numOfWritten);
+    exchange.onUpstreamWritten(numOfWritten);
+    return ret;
+  }
+
+  private void hostSends(String data) {
+    int from = downstream.size();
+    downstream.put(data);
+    exchange.onDownstreamRead(downstream, from, downstream.size());
+  }
+
+  /**
+   * Send the writable downstream bytes to the client
+   */
+  private String sendWritable() {
+    int numOfWritten = exchange.getWritableDownstreamBytes(downstream.size());
+    String ret = downstream.content().substring(0, numOfWritten);
+    downstream.consume(numOfWritten);
+    exchange.onDownstreamWritten(numOfWritten);
+    return ret;
+  }
+}
@@ -0,0 +1,199 @@
+package org.zlambda.projects.http;
+
+import org.junit.Test;
+import org.zlambda.projects.buffer.ByteArrayChannelBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpHeadParserTest {
+  private static final String REQUEST = "GET http://a.com/x?y=1 HTTP/1.1\r\n"
+                                        + "Host: a.com\r\n"
+                                        + "Accept:*/*\r\n"
+                                        + "X-Padded: \t value with spaces \t \r\n"
+                                        + "X-Empty:\r\n"
+                                        + "\r\n";
+
+  @Test
+  public void wholeHead() {
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(REQUEST + "body");
+    HttpHeadParser parser = new HttpHeadParser(1024);
+    assertEquals("stops right after the head", REQUEST.length(),
+                 parser.parse(buffer, 0, buffer.size()));
+    assertRequest(buffer, parser);
+  }
+
+  @Test
+  public void oneByteAtATime() {
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(REQUEST + "body");
+    HttpHeadParser parser = new HttpHeadParser(1024);
+    for (int i = 0; i < REQUEST.length(); ++i) {
+      assertFalse(parser.isComplete());
+      assertEquals(1, parser.parse(buffer, i, i + 1));
+    }
+    assertEquals(0, parser.parse(buffer, REQUEST.length(), buffer.size()));
+    assertRequest(buffer, parser);
+  }
+
+  @Test
+  public void shiftedWhileParsing() {
+    String previous = "previous message";
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(previous);
+    HttpHeadParser parser = new HttpHeadParser(1024);
+    int split = 40;
+    buffer.put(REQUEST.substring(0, split));
+    parser.parse(buffer, previous.length(), buffer.size());
+    buffer.consume(previous.length());
+    parser.shift(previous.length());
+    buffer.put(REQUEST.substring(split));
+    parser.parse(buffer, split, buffer.size());
+    assertRequest(buffer, parser);
+  }
+
+  @Test
+  public void bareLf() {
+    String head = "HTTP/1.0 404 Not Found\nContent-Length: 0\nServer: x\n\n";
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(head);
+    HttpHeadParser parser = new HttpHeadParser(1024);
+    assertEquals(head.length(), parser.parse(buffer, 0, buffer.size()));
+    assertTrue(parser.isComplete());
+    assertEquals("HTTP/1.0", token(buffer, parser, 0));
+    assertEquals("404", token(buffer, parser, 1));
+    assertEquals("Not Found", token(buffer, parser, 2));
+    assertEquals(2, parser.getNumHeaders());
+    assertEquals("Server", name(buffer, parser, 1));
+    assertEquals("x", value(buffer, parser, 1));
+  }
+
+  @Test
+  public void leadingEmptyLines() {
+    String head = "\r\n\nGET / HTTP/1.1\r\nHost: a\r\n\r\n";
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(head);
+    HttpHeadParser parser = new HttpHeadParser(1024);
+    parser.parse(buffer, 0, buffer.size());
+    assertTrue(parser.isComplete());
+    assertEquals("GET", token(buffer, parser, 0));
+    assertEquals(head.length(), parser.getSize());
+  }
+
+  @Test
+  public void statusLineWithoutReason() {
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put("HTTP/1.1 200\r\n\r\n");
+    HttpHeadParser parser = new HttpHeadParser(1024);
+    parser.parse(buffer, 0, buffer.size());
+    assertTrue(parser.isComplete());
+    assertEquals("200", token(buffer, parser, 1));
+    assertEquals("", token(buffer, parser, 2));
+  }
+
+  @Test
+  public void headerLimit() {
+    assertTrue(parse(headWithHeaders(128), 64 * 1024).isComplete());
+    assertTrue(parse(headWithHeaders(129), 64 * 1024).isMalformed());
+  }
+
+  @Test
+  public void headSizeLimit() {
+    String head = headWithHeaders(3);
+    assertTrue(parse(head, head.length()).isComplete());
+    assertTrue(parse(head, head.length() - 1).isMalformed());
+    HttpHeadParser parser = new HttpHeadParser(head.length() - 1);
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(head);
+    for (int i = 0; i < head.length() && !parser.isMalformed(); ++i) {
+      parser.parse(buffer, i, i + 1);
+    }
+    assertTrue("the limit holds when parsed piece by piece", parser.isMalformed());
+  }
+
+  @Test
+  public void obsoleteLineFolding() {
+    assertTrue(parse("GET / HTTP/1.1\r\nX-Folded: a\r\n b\r\n\r\n", 1024).isMalformed());
+    assertTrue(parse("GET / HTTP/1.1\r\nX-Folded: a\r\n\tb\r\n\r\n", 1024).isMalformed());
+  }
+
+  @Test
+  public void malformed() {
+    String[] heads = {
+        "GET\r\n\r\n",
+        "GET / HTTP/1.1\rX\n\r\n",
+        "GET / HTTP/1.1\r\nHost : a\r\n\r\n",
+        "GET / HTTP/1.1\r\n: a\r\n\r\n",
+        "GET / HTTP/1.1\r\nHost\r\n\r\n",
+        "GET / HTTP/1.1\r\nHost: a\r\n\rX",
+    };
+    for (String head : heads) {
+      HttpHeadParser parser = parse(head, 1024);
+      assertTrue(head, parser.isMalformed());
+      assertFalse(head, parser.isComplete());
+    }
+  }
+
+  @Test
+  public void incomplete() {
+    HttpHeadParser parser = parse("GET / HTTP/1.1\r\nHost: a\r\n\r", 1024);
+    assertFalse(parser.isComplete());
+    assertFalse(parser.isMalformed());
+    assertTrue(parser.isStarted());
+    assertFalse(parse("\r\n", 1024).isStarted());
+  }
+
+  @Test
+  public void helpers() {
+    ByteArrayChannelBuffer buffer =
+        new ByteArrayChannelBuffer().put("Keep-Alive, Upgrade|12345|1234567890123456789|12a");
+    assertTrue(HttpHeadParser.equalsIgnoreCase(buffer, 0, 10, "keep-alive"));
+    assertFalse(HttpHeadParser.equalsIgnoreCase(buffer, 0, 9, "keep-alive"));
+    assertTrue(HttpHeadParser.containsIgnoreCase(buffer, 0, 19, "upgrade"));
+    assertFalse(HttpHeadParser.containsIgnoreCase(buffer, 0, 18, "upgrade"));
+    assertTrue(HttpHeadParser.endsWithIgnoreCase(buffer, 0, 19, "upgrade"));
+    assertFalse(HttpHeadParser.endsWithIgnoreCase(buffer, 0, 18, "upgrade"));
+    assertEquals(12345, HttpHeadParser.parseDecimal(buffer, 20, 25));
+    assertEquals("too many digits", -1, HttpHeadParser.parseDecimal(buffer, 26, 45));
+    assertEquals(-1, HttpHeadParser.parseDecimal(buffer, 46, 49));
+    assertEquals(-1, HttpHeadParser.parseDecimal(buffer, 20, 20));
+    assertEquals("12345", HttpHeadParser.toString(buffer, 20, 25));
+  }
+
+  private static void assertRequest(ByteArrayChannelBuffer buffer, HttpHeadParser parser) {
+    assertTrue(parser.isComplete());
+    assertEquals(REQUEST.length(), parser.getSize());
+    assertEquals("GET", token(buffer, parser, 0));
+    assertEquals("http://a.com/x?y=1", token(buffer, parser, 1));
+    assertEquals("HTTP/1.1", token(buffer, parser, 2));
+    assertEquals(4, parser.getNumHeaders());
+    assertEquals("Host", name(buffer, parser, 0));
+    assertEquals("a.com", value(buffer, parser, 0));
+    assertEquals("*/*", value(buffer, parser, 1));
+    assertEquals("value with spaces", value(buffer, parser, 2));
+    assertEquals("X-Empty", name(buffer, parser, 3));
+    assertEquals("", value(buffer, parser, 3));
+  }
+
+  private static String headWithHeaders(int numHeaders) {
+    StringBuilder sb = new StringBuilder("GET / HTTP/1.1\r\n");
+    for (int i = 0; i < numHeaders; ++i) {
+      sb.append("X-Header-").append(i).append(": ").append(i).append("\r\n");
+    }
+    return sb.append("\r\n").toString();
+  }
+
+  private static HttpHeadParser parse(String head, int maxHeadSize) {
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(head);
+    HttpHeadParser parser = new HttpHeadParser(maxHeadSize);
+    parser.parse(buffer, 0, buffer.size());
+    return parser;
+  }
+
+  private static String token(ByteArrayChannelBuffer buffer, HttpHeadParser parser, int token) {
+    return HttpHeadParser.toString(buffer, parser.tokenStart(token), parser.tokenEnd(token));
+  }
+
+  private static String name(ByteArrayChannelBuffer buffer, HttpHeadParser parser, int header) {
+    return HttpHeadParser.toString(buffer, parser.nameStart(header), parser.nameEnd(header));
+  }
+
+  private static String value(ByteArrayChannelBuffer buffer, HttpHeadParser parser, int header) {
+    return HttpHeadParser.toString(buffer, parser.valueStart(header), parser.valueEnd(header));
+  }
+}
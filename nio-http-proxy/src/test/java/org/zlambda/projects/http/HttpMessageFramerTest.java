@@ -0,0 +1,233 @@
+package org.zlambda.projects.http;
+
+import org.junit.Test;
+import org.zlambda.projects.buffer.ByteArrayChannelBuffer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpMessageFramerTest {
+  private static final String OK_HELLO = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello";
+  private static final String OK_EMPTY = "HTTP/1.1 200 OK\r\ncontent-length: 0\r\n\r\n";
+
+  @Test
+  public void contentLength() {
+    assertMessageEnds(methods("GET", "GET"), OK_HELLO + OK_EMPTY,
+                      OK_HELLO.length(), OK_HELLO.length() + OK_EMPTY.length());
+  }
+
+  @Test
+  public void chunkedBody() {
+    /**
+     * the third chunk holds what would end a chunked body if it was parsed
+     */
+    String chunked = "HTTP/1.1 200 OK\r\nTransfer-Encoding: gzip, chunked\r\n\r\n"
+                     + "5\r\nhello\r\n"
+                     + "A;name=value\r\n0123456789\r\n"
+                     + "7\r\n\r\n0\r\n\r\n\r\n"
+                     + "0\r\nX-Trailer: t\r\n\r\n";
+    assertMessageEnds(methods("GET", "GET"), chunked + OK_HELLO,
+                      chunked.length(), chunked.length() + OK_HELLO.length());
+  }
+
+  @Test
+  public void chunkedBodyWithBareLf() {
+    String chunked = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                     + "3\nabc\n0\n\n";
+    assertMessageEnds(methods("GET", "GET"), chunked + OK_HELLO,
+                      chunked.length(), chunked.length() + OK_HELLO.length());
+  }
+
+  @Test
+  public void malformedChunkSize() {
+    HttpMessageFramer framer = responses("GET");
+    feed(framer, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n", 1);
+    assertTrue(framer.isBroken());
+  }
+
+  @Test
+  public void malformedContentLength() {
+    HttpMessageFramer framer = responses("GET");
+    feed(framer, "HTTP/1.1 200 OK\r\nContent-Length: -1\r\n\r\n", Integer.MAX_VALUE);
+    assertTrue(framer.isBroken());
+  }
+
+  @Test
+  public void interimResponses() {
+    String interim = "HTTP/1.1 100 Continue\r\n\r\n"
+                     + "HTTP/1.1 103 Early Hints\r\nLink: </style.css>\r\n\r\n";
+    for (int piece = 1; piece <= interim.length() + OK_HELLO.length(); ++piece) {
+      Queue<String> methods = new ArrayDeque<>(Arrays.asList("GET", "GET"));
+      HttpMessageFramer framer =
+          new HttpMessageFramer(HttpMessageFramer.Type.RESPONSE, methods, 1024);
+      assertEquals(Arrays.asList(interim.length() + OK_HELLO.length()),
+                   feed(framer, interim + OK_HELLO, piece));
+      assertEquals(1, framer.getNumHeads());
+      assertEquals(200, framer.getStatusCode());
+      assertEquals("interim responses answer no request", 1, methods.size());
+    }
+  }
+
+  @Test
+  public void noBodyFor204And304() {
+    String notModified = "HTTP/1.1 304 Not Modified\r\nContent-Length: 100\r\n\r\n";
+    String noContent = "HTTP/1.1 204 No Content\r\nTransfer-Encoding: chunked\r\n\r\n";
+    assertMessageEnds(methods("GET", "GET", "GET"), notModified + noContent + OK_HELLO,
+                      notModified.length(), notModified.length() + noContent.length(),
+                      notModified.length() + noContent.length() + OK_HELLO.length());
+  }
+
+  @Test
+  public void noBodyForHead() {
+    String head = "HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n";
+    assertMessageEnds(methods("HEAD", "GET"), head + OK_HELLO,
+                      head.length(), head.length() + OK_HELLO.length());
+  }
+
+  @Test
+  public void switchingProtocols() {
+    String stream = "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n\r\n" + OK_HELLO;
+    for (int piece = 1; piece <= stream.length(); ++piece) {
+      HttpMessageFramer framer = responses("GET");
+      assertEquals(0, feed(framer, stream, piece).size());
+      assertEquals("bytes after the head belong to another protocol", 1, framer.getNumHeads());
+      assertFalse(framer.isKeepAlive());
+      assertFalse(framer.isBroken());
+    }
+  }
+
+  @Test
+  public void connectResponse() {
+    String stream = "HTTP/1.1 200 Connection established\r\n\r\n" + OK_HELLO;
+    for (int piece = 1; piece <= stream.length(); ++piece) {
+      HttpMessageFramer framer = responses("CONNECT");
+      assertEquals(0, feed(framer, stream, piece).size());
+      assertEquals(1, framer.getNumHeads());
+      assertFalse(framer.isKeepAlive());
+    }
+  }
+
+  @Test
+  public void bodyUntilClose() {
+    HttpMessageFramer framer = responses("GET", "GET");
+    assertEquals(0, feed(framer, "HTTP/1.1 200 OK\r\n\r\n" + OK_HELLO, 7).size());
+    assertEquals(1, framer.getNumHeads());
+    assertFalse(framer.isKeepAlive());
+  }
+
+  @Test
+  public void keepAlive() {
+    HttpMessageFramer framer = responses("GET", "GET", "GET", "GET");
+    feed(framer, "HTTP/1.0 200 OK\r\nContent-Length: 0\r\n\r\n", Integer.MAX_VALUE);
+    assertFalse(framer.isKeepAlive());
+    feed(framer, "HTTP/1.0 200 OK\r\nConnection: Keep-Alive\r\nContent-Length: 0\r\n\r\n",
+         Integer.MAX_VALUE);
+    assertTrue(framer.isKeepAlive());
+    feed(framer, "HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 0\r\n\r\n",
+         Integer.MAX_VALUE);
+    assertFalse(framer.isKeepAlive());
+    feed(framer, OK_EMPTY, Integer.MAX_VALUE);
+    assertTrue(framer.isKeepAlive());
+  }
+
+  @Test
+  public void requests() {
+    String post = "POST /form HTTP/1.1\r\nHost: a.com\r\nContent-Length: 3\r\n\r\nabc";
+    String chunked = "PUT /put HTTP/1.1\r\nHost: a.com\r\nTransfer-Encoding: chunked\r\n\r\n"
+                     + "2\r\nab\r\n0\r\n\r\n";
+    String get = "GET http://b.com:8080/x?y HTTP/1.1\r\nHost: a.com\r\n\r\n";
+    String stream = post + chunked + get;
+    for (int piece = 1; piece <= stream.length(); ++piece) {
+      Queue<String> methods = new ArrayDeque<>();
+      HttpMessageFramer framer =
+          new HttpMessageFramer(HttpMessageFramer.Type.REQUEST, methods, 1024);
+      assertEquals(
+          Arrays.asList(post.length(), post.length() + chunked.length(), stream.length()),
+          feed(framer, stream, piece));
+      assertEquals(Arrays.asList("POST", "PUT", "GET"), new ArrayList<>(methods));
+      assertEquals("http://b.com:8080/x?y", framer.getUri());
+      assertEquals("a.com", framer.getHostHeader());
+      assertTrue(framer.isAtBoundary());
+    }
+  }
+
+  @Test
+  public void shiftKeepsPartialHead() {
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer();
+    HttpMessageFramer framer = responses("GET", "GET");
+    String second = "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n";
+    buffer.put(OK_HELLO + second.substring(0, 20));
+    int consumed = 0;
+    while (consumed < buffer.size()) {
+      consumed += framer.feed(buffer, consumed, buffer.size());
+    }
+    assertTrue(framer.isParsingHead());
+    buffer.consume(OK_HELLO.length());
+    framer.shift(OK_HELLO.length());
+    consumed -= OK_HELLO.length();
+    buffer.put(second.substring(20));
+    framer.feed(buffer, consumed, buffer.size());
+    assertEquals(2, framer.getNumMessages());
+    assertEquals(404, framer.getStatusCode());
+    assertEquals(second.length(), framer.getHeadLength());
+  }
+
+  @Test
+  public void oversizedHead() {
+    HttpMessageFramer framer =
+        new HttpMessageFramer(HttpMessageFramer.Type.RESPONSE, new ArrayDeque<>(), 32);
+    feed(framer, "HTTP/1.1 200 OK\r\nX-Long: 0123456789abcdef\r\n\r\n", 5);
+    assertTrue(framer.isBroken());
+  }
+
+  private static String[] methods(String... requestMethods) {
+    return requestMethods;
+  }
+
+  private static HttpMessageFramer responses(String... requestMethods) {
+    return new HttpMessageFramer(HttpMessageFramer.Type.RESPONSE,
+                                 new ArrayDeque<>(Arrays.asList(requestMethods)), 1024);
+  }
+
+  /**
+   * Check the framer finds the same message ends whatever the size of the pieces the stream
+   * arrives in
+   */
+  private static void assertMessageEnds(String[] requestMethods, String stream, Integer... ends) {
+    for (int piece = 1; piece <= stream.length(); ++piece) {
+      HttpMessageFramer framer = responses(requestMethods);
+      assertEquals("piece of " + piece, Arrays.asList(ends), feed(framer, stream, piece));
+      assertTrue(framer.isAtBoundary());
+    }
+  }
+
+  /**
+   * Feed {@code stream} as if it arrived {@code piece} bytes per read
+   *
+   * @return the offsets right after each complete message
+   */
+  static List<Integer> feed(HttpMessageFramer framer, String stream, int piece) {
+    ByteArrayChannelBuffer buffer = new ByteArrayChannelBuffer().put(stream);
+    List<Integer> ends = new ArrayList<>();
+    int readable = 0;
+    int consumed = 0;
+    while (readable < buffer.size()) {
+      readable = (int) Math.min(buffer.size(), (long) readable + piece);
+      while (consumed < readable) {
+        int numMessages = framer.getNumMessages();
+        consumed += framer.feed(buffer, consumed, readable);
+        if (numMessages != framer.getNumMessages()) {
+          ends.add(consumed);
+        }
+      }
+    }
+    return ends;
+  }
+}
@@ -0,0 +1,125 @@
+package org.zlambda.projects.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+  @Test
+  public void smallValuesHaveOwnBuckets() {
+    for (int value = 0; value < 4; ++value) {
+      assertEquals(value, Histogram.indexOf(value));
+      assertEquals(value, Histogram.upperBoundOf(value));
+    }
+    assertEquals(4, Histogram.indexOf(4));
+    assertEquals(7, Histogram.indexOf(7));
+    assertEquals("8 and 9 share a bucket", 8, Histogram.indexOf(9));
+    assertEquals(9, Histogram.upperBoundOf(8));
+  }
+
+  @Test
+  public void bucketsTileAllValues() {
+    for (int i = 0; i < Histogram.NUM_BUCKETS - 1; ++i) {
+      long upperBound = Histogram.upperBoundOf(i);
+      assertEquals(i, Histogram.indexOf(upperBound));
+      assertEquals("the next value starts the next bucket", i + 1,
+                   Histogram.indexOf(upperBound + 1));
+    }
+    assertEquals(Histogram.NUM_BUCKETS - 1, Histogram.indexOf(Long.MAX_VALUE));
+    assertEquals(Long.MAX_VALUE, Histogram.upperBoundOf(Histogram.NUM_BUCKETS - 1));
+  }
+
+  @Test
+  public void powersOfTwoStartBuckets() {
+    for (int exponent = 2; exponent < 63; ++exponent) {
+      long value = 1L << exponent;
+      int index = Histogram.indexOf(value);
+      assertEquals(value - 1, Histogram.upperBoundOf(index - 1));
+      long width = Histogram.upperBoundOf(index) - value + 1;
+      assertEquals("a quarter of the power of 2", value / 4, width);
+      assertEquals(index + 3, Histogram.indexOf(2 * value - 1));
+    }
+  }
+
+  @Test
+  public void percentileOfUniformValues() {
+    Histogram histogram = new Histogram();
+    for (int value = 1; value <= 1000; ++value) {
+      histogram.record(value);
+    }
+    Histogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(1000, snapshot.getCount());
+    assertEquals(500500, snapshot.getSum());
+    assertEquals(500, snapshot.getMean());
+    for (double percentile : new double[]{1, 25, 50, 90, 99, 99.9}) {
+      long exact = (long) Math.ceil(10 * percentile);
+      assertWithinBucket(exact, snapshot, percentile);
+    }
+    assertEquals("capped by the max", 1000, snapshot.getPercentile(100));
+  }
+
+  @Test
+  public void percentileOfSkewedValues() {
+    Histogram histogram = new Histogram();
+    for (int i = 0; i < 990; ++i) {
+      histogram.record(1_000);
+    }
+    for (int i = 0; i < 10; ++i) {
+      histogram.record(5_000_000);
+    }
+    Histogram.Snapshot snapshot = histogram.snapshot();
+    assertWithinBucket(1_000, snapshot, 50);
+    assertWithinBucket(1_000, snapshot, 99);
+    assertEquals(5_000_000, snapshot.getPercentile(99.1));
+    assertEquals(5_000_000, snapshot.getMax());
+  }
+
+  @Test
+  public void emptyAndNegative() {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.snapshot().getPercentile(99));
+    histogram.record(-5);
+    Histogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(1, snapshot.getBucketCount(0));
+    assertEquals(0, snapshot.getSum());
+    assertEquals(0, snapshot.getPercentile(100));
+  }
+
+  @Test
+  public void merge() {
+    Histogram first = new Histogram();
+    Histogram second = new Histogram();
+    Histogram both = new Histogram();
+    for (int value = 0; value < 500; ++value) {
+      first.record(value * 3);
+      second.record(value * 7 + 100);
+      both.record(value * 3);
+      both.record(value * 7 + 100);
+    }
+    Histogram.Snapshot merged =
+        Histogram.Snapshot.empty().merge(first.snapshot()).merge(second.snapshot());
+    Histogram.Snapshot expected = both.snapshot();
+    assertEquals(expected.getCount(), merged.getCount());
+    assertEquals(expected.getSum(), merged.getSum());
+    assertEquals(expected.getMax(), merged.getMax());
+    for (int i = 0; i < Histogram.NUM_BUCKETS; ++i) {
+      assertEquals(expected.getBucketCount(i), merged.getBucketCount(i));
+    }
+    for (double percentile : new double[]{50, 90, 99, 100}) {
+      assertEquals(expected.getPercentile(percentile), merged.getPercentile(percentile));
+    }
+    assertEquals("merging leaves the operands as they are", 500, first.snapshot().getCount());
+  }
+
+  /**
+   * the percentile is the upper bound of the bucket holding {@code exact}, or the max
+   */
+  private static void assertWithinBucket(long exact, Histogram.Snapshot snapshot,
+                                         double percentile) {
+    long ret = snapshot.getPercentile(percentile);
+    assertEquals(Math.min(Histogram.upperBoundOf(Histogram.indexOf(exact)), snapshot.getMax()),
+                 ret);
+    assertTrue(ret >= exact && ret <= exact + exact / 4);
+  }
+}
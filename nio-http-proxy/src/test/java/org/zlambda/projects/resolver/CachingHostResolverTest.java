@@ -0,0 +1,160 @@
+package org.zlambda.projects.resolver;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CachingHostResolverTest {
+  private final DelayingNameService nameService = new DelayingNameService(20);
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @After
+  public void shutdown() {
+    nameService.release();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void literalAddressNeedsNoLookup() throws Exception {
+    CompletableFuture<InetAddress> future = resolver(60, 10, 100).resolve("127.0.0.1");
+    assertTrue(future.isDone());
+    assertEquals(InetAddress.getByName("127.0.0.1"), future.get());
+    assertEquals(0, nameService.lookups("127.0.0.1"));
+  }
+
+  @Test
+  public void concurrentLookupsShareOneQuery() throws Exception {
+    HostResolver resolver = resolver(60, 10, 100);
+    CompletableFuture<InetAddress> first = resolver.resolve("slow.a.com");
+    for (int i = 0; i < 10; ++i) {
+      assertSame(first, resolver.resolve("slow.a.com"));
+    }
+    nameService.release();
+    assertEquals("10.0.0.1", first.get(5, TimeUnit.SECONDS).getHostAddress());
+    assertEquals(1, nameService.lookups("slow.a.com"));
+  }
+
+  @Test
+  public void slowLookupDoesNotDelayOthers() throws Exception {
+    HostResolver resolver = resolver(60, 10, 100);
+    CompletableFuture<InetAddress> slow = resolver.resolve("slow.a.com");
+    assertEquals("10.0.0.1", resolver.resolve("b.com").get(5, TimeUnit.SECONDS).getHostAddress());
+    assertFalse(slow.isDone());
+  }
+
+  @Test
+  public void answersExpireAfterTtl() throws Exception {
+    HostResolver resolver = resolver(1, 10, 100);
+    resolver.resolve("a.com").get(5, TimeUnit.SECONDS);
+    CompletableFuture<InetAddress> cached = resolver.resolve("a.com");
+    assertTrue("answered from the cache", cached.isDone());
+    assertEquals(1, nameService.lookups("a.com"));
+    assertEquals(1, resolver.size());
+
+    TimeUnit.MILLISECONDS.sleep(1100);
+    resolver.resolve("a.com").get(5, TimeUnit.SECONDS);
+    assertEquals(2, nameService.lookups("a.com"));
+  }
+
+  @Test
+  public void zeroTtlDisablesCaching() throws Exception {
+    HostResolver resolver = resolver(0, 0, 100);
+    resolver.resolve("a.com").get(5, TimeUnit.SECONDS);
+    resolver.resolve("a.com").get(5, TimeUnit.SECONDS);
+    assertEquals(2, nameService.lookups("a.com"));
+    assertEquals(0, resolver.size());
+  }
+
+  @Test
+  public void failuresCachedForNegativeTtl() throws Exception {
+    HostResolver resolver = resolver(60, 1, 100);
+    assertUnknownHost(resolver.resolve("a.invalid"));
+    CompletableFuture<InetAddress> cached = resolver.resolve("a.invalid");
+    assertTrue("answered from the cache", cached.isDone());
+    assertUnknownHost(cached);
+    assertEquals(1, nameService.lookups("a.invalid"));
+
+    TimeUnit.MILLISECONDS.sleep(1100);
+    assertUnknownHost(resolver.resolve("a.invalid"));
+    assertEquals(2, nameService.lookups("a.invalid"));
+  }
+
+  @Test
+  public void zeroNegativeTtlRetriesFailures() throws Exception {
+    HostResolver resolver = resolver(60, 0, 100);
+    assertUnknownHost(resolver.resolve("a.invalid"));
+    assertUnknownHost(resolver.resolve("a.invalid"));
+    assertEquals(2, nameService.lookups("a.invalid"));
+  }
+
+  @Test
+  public void boundedNumberOfAnswers() throws Exception {
+    HostResolver resolver = resolver(60, 10, 2);
+    for (String host : new String[]{"a.com", "b.com", "c.com"}) {
+      resolver.resolve(host).get(5, TimeUnit.SECONDS);
+    }
+    assertEquals(2, resolver.size());
+    resolver.resolve("c.com").get(5, TimeUnit.SECONDS);
+    assertEquals("the answer which did not fit is looked up again", 2,
+                 nameService.lookups("c.com"));
+  }
+
+  @Test
+  public void rejectedLookupIsRetried() throws Exception {
+    AtomicBoolean reject = new AtomicBoolean(true);
+    HostResolver resolver = new CachingHostResolver(nameService, command -> {
+      if (reject.get()) {
+        throw new RejectedExecutionException("saturated");
+      }
+      executor.execute(command);
+    }, 60, 10, 100);
+    try {
+      resolver.resolve("a.com").get(5, TimeUnit.SECONDS);
+      fail("rejected lookup should fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+    reject.set(false);
+    for (int i = 0; i < 100; ++i) {
+      CompletableFuture<InetAddress> retry = resolver.resolve("a.com");
+      try {
+        assertEquals("10.0.0.1", retry.get(5, TimeUnit.SECONDS).getHostAddress());
+        return;
+      } catch (ExecutionException e) {
+        /**
+         * the failed in-flight entry is dropped asynchronously
+         */
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+    }
+    fail("lookup was never retried");
+  }
+
+  private HostResolver resolver(int ttl, int negativeTtl, int maxEntries) {
+    return new CachingHostResolver(nameService, executor, ttl, negativeTtl, maxEntries);
+  }
+
+  private static void assertUnknownHost(CompletableFuture<InetAddress> future) throws Exception {
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail("lookup should fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof UnknownHostException);
+    }
+  }
+}
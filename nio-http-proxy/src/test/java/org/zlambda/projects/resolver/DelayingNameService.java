@@ -0,0 +1,56 @@
+package org.zlambda.projects.resolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threadsafe Class
+ *
+ * Local stand-in resolver: every lookup takes {@code delay} milliseconds, names under {@code
+ * .invalid} do not exist, names under {@code slow.} hang until {@link #release()}, and any other
+ * name resolves to 10.0.0.1. Lookups are counted per name.
+ */
+class DelayingNameService implements NameService {
+  private final long delay;
+  private final CountDownLatch gate = new CountDownLatch(1);
+  private final ConcurrentMap<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+
+  /**
+   * @param delay in millisecond
+   */
+  DelayingNameService(long delay) {
+    this.delay = delay;
+  }
+
+  @Override
+  public InetAddress lookup(String host) throws UnknownHostException {
+    lookups.computeIfAbsent(host, ignored -> new AtomicInteger()).incrementAndGet();
+    try {
+      TimeUnit.MILLISECONDS.sleep(delay);
+      if (host.startsWith("slow.")) {
+        gate.await();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UnknownHostException(host + ": interrupted");
+    }
+    if (host.endsWith(".invalid")) {
+      throw new UnknownHostException(host);
+    }
+    return InetAddress.getByAddress(host, new byte[]{10, 0, 0, 1});
+  }
+
+  void release() {
+    gate.countDown();
+  }
+
+  int lookups(String host) {
+    AtomicInteger ret = lookups.get(host);
+    return null == ret ? 0 : ret.get();
+  }
+}
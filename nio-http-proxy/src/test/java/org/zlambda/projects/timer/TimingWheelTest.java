@@ -0,0 +1,196 @@
+package org.zlambda.projects.timer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+  private static final long TICK = 100;
+  private static final int SLOTS = 512;
+
+  /**
+   * in ms, the clock of the wheel
+   */
+  private long now = 0;
+  private final TimingWheel wheel =
+      new TimingWheel(TICK, SLOTS, () -> TimeUnit.MILLISECONDS.toNanos(now));
+  private final List<String> fired = new ArrayList<>();
+
+  @Test
+  public void firesNoEarlierThanDeadline() {
+    TimingWheel.Timeout timeout = schedule("a", 250);
+    assertEquals(1, wheel.size());
+    advanceTo(299);
+    assertTrue(fired.isEmpty());
+    assertTrue(timeout.isPending());
+    advanceTo(300);
+    assertEquals(Arrays.asList("a"), fired);
+    assertFalse(timeout.isPending());
+    assertEquals(0, wheel.size());
+    assertEquals(0, wheel.millisToNextTick());
+  }
+
+  @Test
+  public void deadlineBeyondOneRound() {
+    long round = TICK * SLOTS;
+    schedule("later round", round + 500);
+    schedule("two rounds later", 2 * round + 500);
+    schedule("this round", 500);
+    /**
+     * all of them share one slot, visited every tick on the way
+     */
+    advanceTo(500);
+    assertEquals(Arrays.asList("this round"), fired);
+    advanceTo(round + 499);
+    assertEquals(1, fired.size());
+    advanceTo(round + 500);
+    assertEquals(Arrays.asList("this round", "later round"), fired);
+    advanceTo(2 * round + 499);
+    assertEquals(2, fired.size());
+    advanceTo(2 * round + 500);
+    assertEquals("two rounds later", fired.get(2));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void cancel() {
+    TimingWheel.Timeout cancelled = schedule("cancelled", 200);
+    TimingWheel.Timeout other = schedule("other", 200);
+    cancelled.cancel();
+    cancelled.cancel();
+    assertFalse(cancelled.isPending());
+    assertEquals(1, wheel.size());
+    advanceTo(200);
+    assertEquals(Arrays.asList("other"), fired);
+    assertFalse(other.isPending());
+  }
+
+  @Test
+  public void cancelAfterFire() {
+    TimingWheel.Timeout timeout = schedule("a", 100);
+    schedule("b", 300);
+    advanceTo(100);
+    timeout.cancel();
+    assertEquals("the other timeout is still linked", 1, wheel.size());
+    advanceTo(300);
+    assertEquals(Arrays.asList("a", "b"), fired);
+  }
+
+  @Test
+  public void cancelFromTask() {
+    List<TimingWheel.Timeout> timeouts = new ArrayList<>();
+    /**
+     * whichever runs first cancels the other, both being due on the same advance
+     */
+    for (int i = 0; i < 2; ++i) {
+      String name = String.valueOf(i);
+      timeouts.add(wheel.schedule(() -> {
+        fired.add(name);
+        timeouts.forEach(TimingWheel.Timeout::cancel);
+      }, 100));
+    }
+    advanceTo(100);
+    assertEquals(1, fired.size());
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void reArm() {
+    TimingWheel.Timeout idle = schedule("idle", 300);
+    /**
+     * as a connection does on every read, the timeout is replaced by a later one
+     */
+    for (now = 100; now <= 1000; now += 100) {
+      wheel.advance();
+      idle.cancel();
+      idle = schedule("idle", 300);
+      assertEquals(1, wheel.size());
+    }
+    assertTrue(fired.isEmpty());
+    advanceTo(1299);
+    assertTrue(fired.isEmpty());
+    advanceTo(1300);
+    assertEquals(Arrays.asList("idle"), fired);
+  }
+
+  @Test
+  public void reArmFromTask() {
+    wheel.schedule(new Runnable() {
+      @Override
+      public void run() {
+        fired.add("tick");
+        if (fired.size() < 3) {
+          wheel.schedule(this, 0);
+        }
+      }
+    }, 100);
+    advanceTo(100);
+    assertEquals("not run again on the same advance", 1, fired.size());
+    assertEquals(1, wheel.size());
+    advanceTo(199);
+    assertEquals(1, fired.size());
+    advanceTo(200);
+    advanceTo(300);
+    assertEquals(3, fired.size());
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void advanceAfterLongStall() {
+    schedule("a", 100);
+    schedule("b", 10_000);
+    schedule("c", 2 * TICK * SLOTS + 100);
+    schedule("d", 10 * TICK * SLOTS);
+    now = 3 * TICK * SLOTS;
+    assertEquals(3, wheel.advance());
+    assertEquals(Arrays.asList("a", "b", "c"), sorted(fired));
+    assertEquals(1, wheel.size());
+    assertEquals("caught up with the clock", TICK, wheel.millisToNextTick());
+
+    schedule("e", 50);
+    advanceTo(now + 99);
+    assertEquals(3, fired.size());
+    advanceTo(now + 1);
+    assertEquals("e", fired.get(3));
+    advanceTo(10 * TICK * SLOTS);
+    assertEquals("d", fired.get(4));
+  }
+
+  @Test
+  public void scheduleAfterIdleStretch() {
+    now = 100_000;
+    assertEquals(0, wheel.advance());
+    schedule("a", 50);
+    advanceTo(100_099);
+    assertTrue("not due by a stale tick", fired.isEmpty());
+    advanceTo(100_100);
+    assertEquals(Arrays.asList("a"), fired);
+  }
+
+  private TimingWheel.Timeout schedule(String name, long delay) {
+    return wheel.schedule(() -> fired.add(name), delay);
+  }
+
+  /**
+   * Move the clock forward to {@code time} ms one ms at a time, advancing the wheel each step
+   */
+  private void advanceTo(long time) {
+    while (now < time) {
+      ++now;
+      wheel.advance();
+    }
+  }
+
+  private static List<String> sorted(List<String> names) {
+    List<String> ret = new ArrayList<>(names);
+    ret.sort(null);
+    return ret;
+  }
+}
@@ -0,0 +1,165 @@
+package org.zlambda.projects.upstream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zlambda.projects.EventHandler;
+import org.zlambda.projects.context.ConnectionContext;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UpstreamConnectionPoolTest {
+  private static final String HOST = "a.com";
+  private static final int PORT = 80;
+
+  private Selector selector;
+  private ServerSocketChannel origin;
+  /**
+   * the origin side of each connection, in the order of {@link #connect()}
+   */
+  private final List<SocketChannel> peers = new ArrayList<>();
+
+  @Before
+  public void open() throws IOException {
+    selector = Selector.open();
+    origin = ServerSocketChannel.open();
+    origin.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+  }
+
+  @After
+  public void close() throws IOException {
+    for (SocketChannel peer : peers) {
+      peer.close();
+    }
+    for (SelectionKey key : selector.keys()) {
+      key.channel().close();
+    }
+    selector.close();
+    origin.close();
+  }
+
+  @Test
+  public void reuseMostRecentlyReleased() throws IOException {
+    UpstreamConnectionPool pool = new UpstreamConnectionPool(8, 30);
+    ConnectionContext first = connect();
+    ConnectionContext second = connect();
+    assertTrue(pool.release(HOST, PORT, first));
+    assertTrue(pool.release("A.COM", PORT, second));
+    assertEquals(2, pool.size());
+    assertEquals(SelectionKey.OP_READ, second.getKey().interestOps());
+    assertTrue(second.getKey().attachment() instanceof EventHandler);
+
+    assertNull("other port", pool.acquire(HOST, 8080));
+    assertSame(second, pool.acquire(HOST, PORT));
+    assertEquals(0, second.getKey().interestOps());
+    assertNull(second.getKey().attachment());
+    assertSame(first, pool.acquire(HOST, PORT));
+    assertNull(pool.acquire(HOST, PORT));
+    assertEquals(0, pool.size());
+    assertTrue(first.isOpen());
+  }
+
+  @Test
+  public void originClosesIdleConnection() throws Exception {
+    UpstreamConnectionPool pool = new UpstreamConnectionPool(8, 30);
+    ConnectionContext connection = connect();
+    pool.release(HOST, PORT, connection);
+    peers.get(0).close();
+    assertEquals(1, selector.select(TimeUnit.SECONDS.toMillis(5)));
+    dispatch();
+    assertEquals(0, pool.size());
+    assertFalse(connection.isOpen());
+    assertNull(pool.acquire(HOST, PORT));
+  }
+
+  @Test
+  public void acquireSkipsUnhealthy() throws Exception {
+    UpstreamConnectionPool pool = new UpstreamConnectionPool(8, 30);
+    ConnectionContext closed = connect();
+    ConnectionContext chatty = connect();
+    ConnectionContext healthy = connect();
+    pool.release(HOST, PORT, healthy);
+    pool.release(HOST, PORT, chatty);
+    pool.release(HOST, PORT, closed);
+    /**
+     * acquired before the selector reports them, the probe read tells
+     */
+    peers.get(0).close();
+    peers.get(1).write(ByteBuffer.wrap(new byte[]{'x'}));
+    TimeUnit.MILLISECONDS.sleep(100);
+    assertSame(healthy, pool.acquire(HOST, PORT));
+    assertFalse(closed.isOpen());
+    assertFalse("unsolicited bytes", chatty.isOpen());
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void evictExpired() throws Exception {
+    UpstreamConnectionPool pool = new UpstreamConnectionPool(8, 1);
+    ConnectionContext older = connect();
+    ConnectionContext newer = connect();
+    ConnectionContext otherHost = connect();
+    pool.release(HOST, PORT, older);
+    TimeUnit.MILLISECONDS.sleep(600);
+    pool.release(HOST, PORT, newer);
+    pool.release("b.com", PORT, otherHost);
+    TimeUnit.MILLISECONDS.sleep(500);
+    pool.evictExpired();
+    assertEquals(2, pool.size());
+    assertFalse(older.isOpen());
+    assertTrue(newer.isOpen());
+
+    TimeUnit.MILLISECONDS.sleep(600);
+    assertNull("expired on acquire", pool.acquire(HOST, PORT));
+    assertFalse(newer.isOpen());
+    assertEquals(1, pool.size());
+  }
+
+  @Test
+  public void maxIdlePerHost() throws IOException {
+    UpstreamConnectionPool pool = new UpstreamConnectionPool(2, 30);
+    assertTrue(pool.release(HOST, PORT, connect()));
+    assertTrue(pool.release(HOST, PORT, connect()));
+    ConnectionContext rejected = connect();
+    assertFalse(pool.release(HOST, PORT, rejected));
+    assertTrue("the caller still owns it", rejected.isOpen());
+    assertNull(rejected.getKey().attachment());
+    assertTrue("per host", pool.release("b.com", PORT, connect()));
+    assertEquals(3, pool.size());
+
+    UpstreamConnectionPool disabled = new UpstreamConnectionPool(0, 30);
+    assertFalse(disabled.isEnabled());
+    assertFalse(disabled.release(HOST, PORT, connect()));
+  }
+
+  private ConnectionContext connect() throws IOException {
+    SocketChannel channel = SocketChannel.open(origin.getLocalAddress());
+    peers.add(origin.accept());
+    channel.configureBlocking(false);
+    SelectionKey key = channel.register(selector, 0);
+    return new ConnectionContext(key, "host-" + peers.size());
+  }
+
+  private void dispatch() {
+    for (SelectionKey key : selector.selectedKeys()) {
+      ((EventHandler) key.attachment()).execute(key);
+    }
+    selector.selectedKeys().clear();
+  }
+}